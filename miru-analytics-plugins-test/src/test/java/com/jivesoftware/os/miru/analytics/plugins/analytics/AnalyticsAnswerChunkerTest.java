@@ -0,0 +1,117 @@
+package com.jivesoftware.os.miru.analytics.plugins.analytics;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.miru.api.query.filter.MiruValue;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import com.jivesoftware.os.miru.plugin.solution.Waveform;
+import java.util.List;
+import java.util.Map;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class AnalyticsAnswerChunkerTest {
+
+    private static final int SEGMENTS = 4;
+
+    private final Map<String, Integer> scoreSets = ImmutableMap.of("a", SEGMENTS, "b", SEGMENTS);
+    private final MiruSolutionLog solutionLog = new MiruSolutionLog(MiruSolutionLogLevel.NONE);
+
+    @Test
+    public void testChunksMergeToOriginal() throws Exception {
+        for (int maxItemsPerChunk : new int[] { 1, 3, 4, 10, 100 }) {
+            AnalyticsAnswer answer = answer(0, 10, 0, 4, 1);
+            Map<String, Map<MiruValue, List<Long>>> expected = decode(answer);
+
+            List<AnalyticsAnswer> chunks = Lists.newArrayList();
+            new AnalyticsAnswerChunker().chunk(answer, maxItemsPerChunk, chunks::add);
+            assertEquals(chunks.size(), (10 + maxItemsPerChunk - 1) / maxItemsPerChunk);
+
+            AnalyticsAnswer merged = mergeAll(Optional.absent(), chunks);
+            assertEquals(decode(merged), expected, "Mismatch for maxItemsPerChunk " + maxItemsPerChunk);
+            assertTrue(merged.resultsExhausted);
+        }
+    }
+
+    @Test
+    public void testChunkedMergeMatchesWholeMerge() throws Exception {
+        // overlapping terms across two partitions must sum the same whether or not the first arrives in chunks
+        AnalyticsAnswer first = answer(0, 10, 0, 6, 1);
+        AnalyticsAnswer second = answer(5, 15, 3, 8, 10);
+
+        AnalyticsAnswer whole = new AnalyticsAnswerMerger(scoreSets).merge(Optional.of(answer(0, 10, 0, 6, 1)), second, solutionLog);
+
+        List<AnalyticsAnswer> chunks = Lists.newArrayList();
+        new AnalyticsAnswerChunker().chunk(first, 3, chunks::add);
+        AnalyticsAnswer chunked = mergeAll(Optional.absent(), chunks);
+        chunked = new AnalyticsAnswerMerger(scoreSets).merge(Optional.of(chunked), answer(5, 15, 3, 8, 10), solutionLog);
+
+        assertEquals(decode(chunked), decode(whole));
+    }
+
+    @Test
+    public void testEmptyAnswerProducesOneChunk() throws Exception {
+        Map<String, List<Waveform>> waveforms = Maps.newHashMap();
+        waveforms.put("a", Lists.newArrayList());
+        waveforms.put("b", Lists.newArrayList());
+        List<AnalyticsAnswer> chunks = Lists.newArrayList();
+        new AnalyticsAnswerChunker().chunk(new AnalyticsAnswer(waveforms, true), 3, chunks::add);
+
+        assertEquals(chunks.size(), 1);
+        assertTrue(chunks.get(0).waveforms.get("a").isEmpty());
+        assertTrue(chunks.get(0).waveforms.get("b").isEmpty());
+    }
+
+    private AnalyticsAnswer mergeAll(Optional<AnalyticsAnswer> last, List<AnalyticsAnswer> chunks) {
+        AnalyticsAnswerMerger merger = new AnalyticsAnswerMerger(scoreSets);
+        for (AnalyticsAnswer chunk : chunks) {
+            last = Optional.of(merger.merge(last, chunk, solutionLog));
+        }
+        return merger.done(last, AnalyticsAnswer.EMPTY_RESULTS, solutionLog);
+    }
+
+    private static AnalyticsAnswer answer(int fromA, int toA, int fromB, int toB, long scale) {
+        Map<String, List<Waveform>> waveforms = Maps.newHashMap();
+        waveforms.put("a", waveforms(fromA, toA, scale));
+        waveforms.put("b", waveforms(fromB, toB, scale));
+        return new AnalyticsAnswer(waveforms, true);
+    }
+
+    private static List<Waveform> waveforms(int from, int to, long scale) {
+        List<Waveform> waveforms = Lists.newArrayList();
+        for (int i = from; i < to; i++) {
+            long[] raw = new long[SEGMENTS];
+            for (int j = 0; j < SEGMENTS; j++) {
+                raw[j] = (i + j) * scale;
+            }
+            waveforms.add(Waveform.compressed(new MiruValue(String.valueOf(i)), raw));
+        }
+        return waveforms;
+    }
+
+    private static Map<String, Map<MiruValue, List<Long>>> decode(AnalyticsAnswer answer) {
+        Map<String, Map<MiruValue, List<Long>>> decoded = Maps.newHashMap();
+        for (Map.Entry<String, List<Waveform>> entry : answer.waveforms.entrySet()) {
+            Map<MiruValue, List<Long>> terms = Maps.newHashMap();
+            for (Waveform waveform : entry.getValue()) {
+                long[] raw = new long[SEGMENTS];
+                waveform.mergeWaveform(raw);
+                List<Long> values = Lists.newArrayList();
+                for (long value : raw) {
+                    values.add(value);
+                }
+                assertEquals(terms.put(waveform.getId(), values), null, "Duplicate term " + waveform.getId());
+            }
+            decoded.put(entry.getKey(), terms);
+        }
+        return decoded;
+    }
+}
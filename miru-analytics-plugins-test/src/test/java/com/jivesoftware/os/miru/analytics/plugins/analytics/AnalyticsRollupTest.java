@@ -0,0 +1,296 @@
+package com.jivesoftware.os.miru.analytics.plugins.analytics;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.jivesoftware.os.filer.io.api.StackBuffer;
+import com.jivesoftware.os.miru.analytics.plugins.analytics.Analytics.AnalyticsScoreable;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.miru.api.activity.MiruActivity;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.activity.schema.DefaultMiruSchemaDefinition;
+import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.base.MiruTermId;
+import com.jivesoftware.os.miru.api.field.MiruFieldType;
+import com.jivesoftware.os.miru.api.query.filter.MiruAuthzExpression;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
+import com.jivesoftware.os.miru.api.wal.RCVSSipCursor;
+import com.jivesoftware.os.miru.bitmaps.roaring6.MiruBitmapsRoaring;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
+import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
+import com.jivesoftware.os.miru.plugin.index.BloomIndex;
+import com.jivesoftware.os.miru.plugin.index.MiruActivityAndId;
+import com.jivesoftware.os.miru.plugin.index.MiruFieldIndex;
+import com.jivesoftware.os.miru.plugin.index.MiruTermRollup;
+import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.plugin.solution.MiruRequestHandle;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import com.jivesoftware.os.miru.plugin.solution.MiruTimeRange;
+import com.jivesoftware.os.miru.service.IndexTestUtil;
+import com.jivesoftware.os.miru.service.stream.MiruContext;
+import com.jivesoftware.os.miru.service.stream.MiruIndexAuthz;
+import com.jivesoftware.os.miru.service.stream.MiruIndexBloom;
+import com.jivesoftware.os.miru.service.stream.MiruIndexLatest;
+import com.jivesoftware.os.miru.service.stream.MiruIndexPairedLatest;
+import com.jivesoftware.os.miru.service.stream.MiruIndexPrimaryFields;
+import com.jivesoftware.os.miru.service.stream.MiruIndexValueBits;
+import com.jivesoftware.os.miru.service.stream.MiruIndexer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import org.roaringbitmap.RoaringBitmap;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class AnalyticsRollupTest {
+
+    private static final long GRANULARITY = 1_000;
+    private static final long BASE_TIME = 10_000 * GRANULARITY;
+    private static final long TIME_PER_ID = GRANULARITY / 10;
+
+    private final MiruTenantId tenantId = new MiruTenantId("rollupTenant".getBytes());
+    private final MiruPartitionCoord coord = new MiruPartitionCoord(tenantId, MiruPartitionId.of(0), new MiruHost("logicalName"));
+    private final MiruFieldDefinition fieldDefinition = DefaultMiruSchemaDefinition.FIELDS[0];
+    private final MiruSolutionLog solutionLog = new MiruSolutionLog(MiruSolutionLogLevel.NONE);
+    private final StackBuffer stackBuffer = new StackBuffer();
+
+    private final MiruTimeRange timeRange = new MiruTimeRange(BASE_TIME, BASE_TIME + 200 * TIME_PER_ID);
+    private final AnalyticsScoreable[] scoreables = {
+        // every segment boundary falls on a rollup bucket boundary
+        new AnalyticsScoreable(new MiruTimeRange(BASE_TIME, BASE_TIME + 20 * GRANULARITY), 10),
+        // every segment boundary cuts a rollup bucket in half, so each segment has bitmap-counted edges
+        new AnalyticsScoreable(new MiruTimeRange(BASE_TIME + GRANULARITY / 2, BASE_TIME + GRANULARITY / 2 + 18 * GRANULARITY), 6)
+    };
+
+    private MiruBitmapsRoaring bitmaps;
+    private MiruContext<RoaringBitmap, RoaringBitmap, RCVSSipCursor> context;
+    private MiruIndexer<RoaringBitmap, RoaringBitmap> indexer;
+    private MiruRequestHandle<RoaringBitmap, RoaringBitmap, RCVSSipCursor> handle;
+    private MiruTermId[] termIds;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        bitmaps = new MiruBitmapsRoaring();
+        context = IndexTestUtil.buildInMemoryContext(4, true, false, bitmaps, coord, GRANULARITY, new String[] { fieldDefinition.name });
+        indexer = new MiruIndexer<>(new MiruIndexAuthz<>(),
+            new MiruIndexPrimaryFields<>(),
+            new MiruIndexValueBits<>(),
+            new MiruIndexBloom<>(new BloomIndex<>(bitmaps, Hashing.murmur3_128(), 100_000, 0.01f)),
+            new MiruIndexLatest<>(),
+            new MiruIndexPairedLatest<>(),
+            2,
+            0);
+        handle = handle();
+
+        // "t9" has no activities until it is repaired in, so it starts out with an empty rollup
+        termIds = new MiruTermId[] { term("t0"), term("t1"), term("t2"), term("t9") };
+    }
+
+    @Test
+    public void testRollupsMatchBitmaps() throws Exception {
+        index(0, 150);
+        assertRollupsMatchBitmaps();
+        for (MiruTermId termId : termIds) {
+            MiruTermRollup rollup = context.getRollupIndex().get(fieldDefinition.fieldId, termId);
+            assertNotNull(rollup, "Missing rollup for " + termId);
+            assertEquals(rollup.getLastId(), 149);
+        }
+
+        // answered entirely from existing rollups
+        assertRollupsMatchBitmaps();
+
+        // extends existing rollups to the new last id
+        index(150, 200);
+        assertRollupsMatchBitmaps();
+        assertEquals(context.getRollupIndex().get(fieldDefinition.fieldId, term("t0")).getLastId(), 199);
+    }
+
+    @Test
+    public void testTooManyBucketsSkipsRollups() throws Exception {
+        index(0, 150);
+        long farTimestamp = BASE_TIME + (MiruTermRollup.MAX_BUCKETS + 1) * GRANULARITY;
+        context.getTimeIndex().nextId(stackBuffer, new long[] { farTimestamp }, new int[] { 150 }, new long[] { farTimestamp });
+        indexer.index(context, coord, Lists.newArrayList(new MiruActivityAndId<>(activity(150, 0, "t0"), 150, farTimestamp)), false,
+            MoreExecutors.sameThreadExecutor());
+
+        assertRollupsMatchBitmaps();
+        for (MiruTermId termId : termIds) {
+            assertNull(context.getRollupIndex().get(fieldDefinition.fieldId, termId));
+        }
+    }
+
+    @Test
+    public void testRemoveInvalidatesRollups() throws Exception {
+        index(0, 200);
+        assertRollupsMatchBitmaps();
+
+        for (int id : new int[] { 15, 42, 190 }) {
+            indexer.remove(context, activity(id, 1, "t" + (id % 3)), id);
+        }
+        MiruTermRollup rollup = context.getRollupIndex().get(fieldDefinition.fieldId, term("t0"));
+        assertTrue(rollup.hasInvalidBuckets());
+
+        assertRollupsMatchBitmaps();
+        assertFalse(rollup.hasInvalidBuckets());
+    }
+
+    @Test
+    public void testRepairInvalidatesRollups() throws Exception {
+        index(0, 200);
+        assertRollupsMatchBitmaps();
+
+        List<MiruActivityAndId<MiruActivity>> repairs = Lists.newArrayList();
+        for (int id : new int[] { 5, 77, 155 }) {
+            repairs.add(new MiruActivityAndId<>(activity(id, 0, "t9"), id, timestamp(id)));
+        }
+        indexer.index(context, coord, repairs, false, MoreExecutors.sameThreadExecutor());
+        assertTrue(context.getRollupIndex().get(fieldDefinition.fieldId, term("t9")).hasInvalidBuckets());
+
+        Map<MiruTermId, List<List<Long>>> repaired = assertRollupsMatchBitmaps();
+        long total = 0;
+        for (List<Long> waveform : repaired.get(term("t9"))) {
+            for (long count : waveform) {
+                total += count;
+            }
+        }
+        // each repaired id lands in a segment of both scoreables
+        assertEquals(total, 6);
+    }
+
+    private Map<MiruTermId, List<List<Long>>> assertRollupsMatchBitmaps() throws Exception {
+        Analytics analytics = new Analytics();
+
+        Map<MiruTermId, List<List<Long>>> expected = Maps.newHashMap();
+        MiruFieldIndex<RoaringBitmap, RoaringBitmap> fieldIndex = context.getFieldIndexProvider().getFieldIndex(MiruFieldType.primary);
+        analytics.analyze("test", solutionLog, handle, context, MiruAuthzExpression.NOT_PROVIDED, timeRange, MiruFilter.NO_FILTER, scoreables,
+            stackBuffer,
+            (Analytics.ToAnalyze<MiruTermId, RoaringBitmap> toAnalyze) -> {
+                for (MiruTermId termId : termIds) {
+                    BitmapAndLastId<RoaringBitmap> container = new BitmapAndLastId<>();
+                    fieldIndex.get("test", fieldDefinition.fieldId, termId).getIndex(container, stackBuffer);
+                    RoaringBitmap bitmap = container.isSet() ? container.getBitmap().clone() : new RoaringBitmap();
+                    if (!toAnalyze.analyze(termId, bitmap)) {
+                        return false;
+                    }
+                }
+                return true;
+            },
+            (index, termId, waveform) -> collect(expected, index, termId, waveform));
+
+        Map<MiruTermId, List<List<Long>>> rolledUp = Maps.newHashMap();
+        analytics.analyzeTerms("test", solutionLog, handle, context, MiruAuthzExpression.NOT_PROVIDED, timeRange, MiruFilter.NO_FILTER, scoreables,
+            stackBuffer,
+            fieldDefinition.fieldId,
+            termIds,
+            (index, termId, waveform) -> collect(rolledUp, index, termId, waveform));
+
+        assertEquals(rolledUp, expected);
+        return rolledUp;
+    }
+
+    private boolean collect(Map<MiruTermId, List<List<Long>>> waveforms, int index, MiruTermId termId, long[] waveform) {
+        List<List<Long>> termWaveforms = waveforms.computeIfAbsent(termId, key -> Lists.newArrayList());
+        assertEquals(termWaveforms.size(), index);
+        List<Long> counts = Lists.newArrayList();
+        for (int j = 0; j < scoreables[index].divideTimeRangeIntoNSegments; j++) {
+            counts.add(waveform != null ? waveform[j] : 0L);
+        }
+        termWaveforms.add(counts);
+        return true;
+    }
+
+    private void index(int fromId, int toId) throws Exception {
+        int count = toId - fromId;
+        long[] timestamps = new long[count];
+        int[] ids = new int[count];
+        List<MiruActivityAndId<MiruActivity>> activityAndIds = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            int id = fromId + i;
+            timestamps[i] = timestamp(id);
+            ids[i] = id;
+            activityAndIds.add(new MiruActivityAndId<>(activity(id, 0, "t" + (id % 3)), id, timestamps[i]));
+        }
+        context.getTimeIndex().nextId(stackBuffer, timestamps, ids, Arrays.copyOf(timestamps, count));
+        indexer.index(context, coord, activityAndIds, false, MoreExecutors.sameThreadExecutor());
+    }
+
+    private long timestamp(int id) {
+        return BASE_TIME + id * TIME_PER_ID;
+    }
+
+    private MiruActivity activity(int id, long version, String term) {
+        return new MiruActivity.Builder(tenantId, timestamp(id), version, false, new String[0])
+            .putFieldValue(fieldDefinition.name, term)
+            .build();
+    }
+
+    private MiruTermId term(String term) throws Exception {
+        return context.getTermComposer().compose(context.getSchema(), fieldDefinition, stackBuffer, term);
+    }
+
+    private MiruRequestHandle<RoaringBitmap, RoaringBitmap, RCVSSipCursor> handle() {
+        return new MiruRequestHandle<RoaringBitmap, RoaringBitmap, RCVSSipCursor>() {
+            @Override
+            public MiruBitmaps<RoaringBitmap, RoaringBitmap> getBitmaps() {
+                return bitmaps;
+            }
+
+            @Override
+            public MiruRequestContext<RoaringBitmap, RoaringBitmap, RCVSSipCursor> getRequestContext() {
+                return context;
+            }
+
+            @Override
+            public boolean isLocal() {
+                return true;
+            }
+
+            @Override
+            public boolean canBackfill() {
+                return false;
+            }
+
+            @Override
+            public MiruPartitionCoord getCoord() {
+                return coord;
+            }
+
+            @Override
+            public TrackError getTrackError() {
+                return null;
+            }
+
+            @Override
+            public void submit(ExecutorService executorService, AsyncQuestion<RoaringBitmap, RoaringBitmap> asyncQuestion) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void acquireChitsAndMerge(String name, long batchSize) throws Exception {
+            }
+
+            @Override
+            public void compact() throws Exception {
+            }
+
+            @Override
+            public void close() throws Exception {
+            }
+        };
+    }
+}
@@ -0,0 +1,74 @@
+package com.jivesoftware.os.miru.analytics.plugins.metrics;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.jivesoftware.os.miru.api.query.filter.MiruValue;
+import com.jivesoftware.os.miru.bitmaps.roaring6.MiruBitmapsRoaring;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator.Aggregates;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import com.jivesoftware.os.miru.plugin.solution.MiruTimeRange;
+import com.jivesoftware.os.miru.plugin.solution.Waveform;
+import java.util.List;
+import org.roaringbitmap.RoaringBitmap;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ *
+ */
+public class MetricsAnswerMergerTest {
+
+    private static final int NUM_BITS = 8;
+
+    private final MiruSolutionLog solutionLog = new MiruSolutionLog(MiruSolutionLogLevel.NONE);
+
+    @Test
+    public void testBucketSplitAcrossPartitions() throws Exception {
+        // bucket 1 holds { 10, 2 } from the first partition and { 5, 40, 1 } from the second
+        Aggregates first = aggregate(new long[] { 3, 7, 10, 2 }, new int[] { 0, 2, 4 });
+        Aggregates second = aggregate(new long[] { 5, 40, 1 }, new int[] { 0, 0, 3 });
+
+        assertMerged(MetricsQuery.Strategy.SUM, 0, first, second, new long[] { 10, 58 });
+        assertMerged(MetricsQuery.Strategy.MIN, 0, first, second, new long[] { 3, 1 });
+        assertMerged(MetricsQuery.Strategy.MAX, 0, first, second, new long[] { 7, 40 });
+        assertMerged(MetricsQuery.Strategy.AVG, 0, first, second, new long[] { 5, 11 });
+        assertMerged(MetricsQuery.Strategy.PERCENTILE, 50, first, second, new long[] { 3, 5 });
+    }
+
+    private void assertMerged(MetricsQuery.Strategy strategy, double percentile, Aggregates first, Aggregates second, long[] expected) {
+        MetricsAnswerMerger merger = new MetricsAnswerMerger(new MiruTimeRange(0, 100), 2, strategy, percentile);
+        MetricsAnswer merged = merger.merge(Optional.of(answer(strategy, percentile, first)), answer(strategy, percentile, second), solutionLog);
+
+        assertEquals(merged.waveforms.size(), 1);
+        long[] actual = new long[2];
+        merged.waveforms.get(0).mergeWaveform(actual);
+        assertEquals(actual, expected, strategy.name());
+    }
+
+    private MetricsAnswer answer(MetricsQuery.Strategy strategy, double percentile, Aggregates aggregates) {
+        List<Waveform> waveforms = Lists.newArrayList(Waveform.compressed(new MiruValue("a"), Metrics.reduce(aggregates, strategy, percentile)));
+        return new MetricsAnswer(waveforms, ImmutableMap.of("a", aggregates), true);
+    }
+
+    private Aggregates aggregate(long[] values, int[] indexes) {
+        MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+        RoaringBitmap answer = new RoaringBitmap();
+        List<RoaringBitmap> slices = Lists.newArrayList();
+        for (int i = 0; i < NUM_BITS; i++) {
+            slices.add(new RoaringBitmap());
+        }
+        for (int id = 0; id < values.length; id++) {
+            answer.add(id);
+            for (int i = 0; i < NUM_BITS; i++) {
+                if ((values[id] & (1L << i)) != 0) {
+                    slices.get(i).add(id);
+                }
+            }
+        }
+        return new MiruBitSlicedAggregator().aggregate(bitmaps, answer, null, slices, indexes, NUM_BITS, true);
+    }
+}
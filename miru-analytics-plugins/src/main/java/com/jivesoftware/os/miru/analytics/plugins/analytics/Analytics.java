@@ -2,11 +2,16 @@ package com.jivesoftware.os.miru.analytics.plugins.analytics;
 
 import com.jivesoftware.os.filer.io.api.StackBuffer;
 import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.miru.api.base.MiruTermId;
+import com.jivesoftware.os.miru.api.field.MiruFieldType;
 import com.jivesoftware.os.miru.api.query.filter.MiruAuthzExpression;
 import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmapsDebug;
 import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
+import com.jivesoftware.os.miru.plugin.index.MiruFieldIndex;
+import com.jivesoftware.os.miru.plugin.index.MiruRollupIndex;
+import com.jivesoftware.os.miru.plugin.index.MiruTermRollup;
 import com.jivesoftware.os.miru.plugin.index.MiruTimeIndex;
 import com.jivesoftware.os.miru.plugin.solution.MiruAggregateUtil;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequestHandle;
@@ -105,25 +110,27 @@ public class Analytics {
 
         int lastId = context.getActivityIndex().lastId(stackBuffer);
 
+        // 1) Time range and authz masks, which are pushed down into the filter when we have one
+        List<IBM> masks = new ArrayList<>();
         long start = System.currentTimeMillis();
-        ands.add(bitmaps.buildTimeRangeMask(timeIndex, timeRange.smallestTimestamp, timeRange.largestTimestamp, stackBuffer));
+        masks.add(bitmaps.buildTimeRangeMask(timeIndex, timeRange.smallestTimestamp, timeRange.largestTimestamp, stackBuffer));
         solutionLog.log(MiruSolutionLogLevel.INFO, "analytics timeRangeMask: {} millis.", System.currentTimeMillis() - start);
 
-        // 1) Execute the combined filter above on the given stream, add the bitmap
+        if (!MiruAuthzExpression.NOT_PROVIDED.equals(authzExpression)) {
+            masks.add(context.getAuthzIndex().getCompositeAuthz(authzExpression, stackBuffer));
+        }
+
+        // 2) Execute the combined filter above on the given stream, add the bitmap
         if (MiruFilter.NO_FILTER.equals(constraintsFilter)) {
             solutionLog.log(MiruSolutionLogLevel.INFO, "analytics filter: no constraints.");
+            ands.addAll(masks);
         } else {
             start = System.currentTimeMillis();
-            BM filtered = aggregateUtil.filter(name, bitmaps, context, constraintsFilter, solutionLog, null, lastId, -1, -1, stackBuffer);
+            BM filtered = aggregateUtil.filter(name, bitmaps, context, constraintsFilter, solutionLog, null, lastId, -1, -1, masks, stackBuffer);
             solutionLog.log(MiruSolutionLogLevel.INFO, "analytics filter: {} millis.", System.currentTimeMillis() - start);
             ands.add(filtered);
         }
 
-        // 2) Add in the authz check if we have it
-        if (!MiruAuthzExpression.NOT_PROVIDED.equals(authzExpression)) {
-            ands.add(context.getAuthzIndex().getCompositeAuthz(authzExpression, stackBuffer));
-        }
-
         // 3) Mask out anything that hasn't made it into the activityIndex yet, or that has been removed from the index
         start = System.currentTimeMillis();
         ands.add(bitmaps.buildIndexMask(lastId, context.getRemovalIndex(), null, stackBuffer));
@@ -140,26 +147,10 @@ public class Analytics {
         }
 
         start = System.currentTimeMillis();
-        int[][] indexes = new int[scoreables.length][];
+        int[][] indexes = segmentBoundaries(timeIndex, scoreables, stackBuffer);
         long[][] rawWaveformBuffer = new long[scoreables.length][];
         for (int i = 0; i < scoreables.length; i++) {
-            AnalyticsScoreable scoreable = scoreables[i];
-            long currentTime = scoreable.timeRange.smallestTimestamp;
-            long segmentDuration = (scoreable.timeRange.largestTimestamp - scoreable.timeRange.smallestTimestamp) / scoreable.divideTimeRangeIntoNSegments;
-            if (segmentDuration < 1) {
-                throw new RuntimeException("Time range is insufficient to be divided into " + scoreable.divideTimeRangeIntoNSegments + " segments");
-            }
-
-            indexes[i] = new int[scoreable.divideTimeRangeIntoNSegments + 1];
-            rawWaveformBuffer[i] = new long[scoreable.divideTimeRangeIntoNSegments];
-            for (int j = 0; j < indexes[i].length; j++) {
-                int closestId = timeIndex.getClosestId(currentTime, stackBuffer);
-                if (closestId < 0) {
-                    closestId = -(closestId + 1); // handle negative "theoretical insertion" index
-                }
-                indexes[i][j] = closestId;
-                currentTime += segmentDuration;
-            }
+            rawWaveformBuffer[i] = new long[scoreables[i].divideTimeRangeIntoNSegments];
         }
         solutionLog.log(MiruSolutionLogLevel.INFO, "analytics bucket boundaries: {} millis.", System.currentTimeMillis() - start);
 
@@ -200,4 +191,304 @@ public class Analytics {
         return resultsExhausted;
     }
 
+    /**
+     * Analyzes the given terms of a single field. If the partition rolls up the field and the query has neither constraints
+     * nor authz, the aligned buckets of each segment are answered from the rollups and only the unaligned edges are counted
+     * from bitmaps. Otherwise this is equivalent to {@link #analyze} over the terms' bitmaps.
+     */
+    public <BM extends IBM, IBM> boolean analyzeTerms(String name,
+        MiruSolutionLog solutionLog,
+        MiruRequestHandle<BM, IBM, ?> handle,
+        MiruRequestContext<BM, IBM, ?> context,
+        MiruAuthzExpression authzExpression,
+        MiruTimeRange timeRange,
+        MiruFilter constraintsFilter,
+        AnalyticsScoreable[] scoreables,
+        StackBuffer stackBuffer,
+        int fieldId,
+        MiruTermId[] termIds,
+        Analyzed<MiruTermId> analyzed) throws Exception {
+
+        MiruBitmaps<BM, IBM> bitmaps = handle.getBitmaps();
+        MiruFieldIndex<BM, IBM> primaryFieldIndex = context.getFieldIndexProvider().getFieldIndex(MiruFieldType.primary);
+        MiruRollupIndex rollupIndex = context.getRollupIndex();
+
+        if (rollupIndex == null
+            || !rollupIndex.isRolledUp(fieldId)
+            || !MiruFilter.NO_FILTER.equals(constraintsFilter)
+            || !MiruAuthzExpression.NOT_PROVIDED.equals(authzExpression)
+            || timeRange.largestTimestamp == Long.MAX_VALUE
+            || timeRange.smallestTimestamp == 0
+            || !context.getTimeIndex().intersects(timeRange)
+            || !isAligned(timeRange, scoreables, rollupIndex.getGranularityInMillis())
+            || bucketCount(context.getTimeIndex(), rollupIndex.getGranularityInMillis()) > MiruTermRollup.MAX_BUCKETS) {
+            return analyze(name, solutionLog, handle, context, authzExpression, timeRange, constraintsFilter, scoreables, stackBuffer,
+                (ToAnalyze<MiruTermId, BM> toAnalyze) -> {
+                    bitmaps.multiTx(
+                        (tx, stackBuffer1) -> primaryFieldIndex.multiTxIndex(name, fieldId, termIds, -1, stackBuffer1, tx),
+                        (index, lastId, bitmap) -> toAnalyze.analyze(termIds[index], bitmap),
+                        stackBuffer);
+                    return true;
+                },
+                analyzed);
+        }
+
+        MiruTimeIndex timeIndex = context.getTimeIndex();
+        long granularity = rollupIndex.getGranularityInMillis();
+        boolean resultsExhausted = timeRange.smallestTimestamp > timeIndex.getLargestTimestamp();
+
+        // read before any bitmaps, so a removal or repair racing with this query can't be folded into a rollup
+        long generation = rollupIndex.generation();
+        int lastId = context.getActivityIndex().lastId(stackBuffer);
+
+        long start = System.currentTimeMillis();
+        IBM indexMask = bitmaps.buildIndexMask(lastId, context.getRemovalIndex(), null, stackBuffer);
+        BM constrained = bitmaps.and(Arrays.<IBM>asList(
+            bitmaps.buildTimeRangeMask(timeIndex, timeRange.smallestTimestamp, timeRange.largestTimestamp, stackBuffer),
+            indexMask));
+        solutionLog.log(MiruSolutionLogLevel.INFO, "analytics rollup constrained: {} millis.", System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
+        int[][] indexes = segmentBoundaries(timeIndex, scoreables, stackBuffer);
+
+        // every bucket the partition spans, used to extend rollups
+        long firstBucket = Math.floorDiv(timeIndex.getSmallestTimestamp(), granularity);
+        int[] bucketIds = new int[(int) bucketCount(timeIndex, granularity) + 1];
+        for (int b = 0; b < bucketIds.length; b++) {
+            bucketIds[b] = closestId(timeIndex, (firstBucket + b) * granularity, stackBuffer);
+        }
+
+        // the whole buckets inside each segment, and a mask of whatever is left over at the segment edges
+        long[][] fromBuckets = new long[scoreables.length][];
+        long[][] toBuckets = new long[scoreables.length][];
+        List<BM> edgeMasks = new ArrayList<>(scoreables.length);
+        boolean anyEdges = false;
+        for (int i = 0; i < scoreables.length; i++) {
+            AnalyticsScoreable scoreable = scoreables[i];
+            long segmentDuration = (scoreable.timeRange.largestTimestamp - scoreable.timeRange.smallestTimestamp) / scoreable.divideTimeRangeIntoNSegments;
+            fromBuckets[i] = new long[scoreable.divideTimeRangeIntoNSegments];
+            toBuckets[i] = new long[scoreable.divideTimeRangeIntoNSegments];
+            List<IBM> edges = new ArrayList<>();
+            for (int j = 0; j < scoreable.divideTimeRangeIntoNSegments; j++) {
+                long segmentStart = scoreable.timeRange.smallestTimestamp + j * segmentDuration;
+                long fromBucket = -Math.floorDiv(-segmentStart, granularity);
+                long toBucket = Math.floorDiv(segmentStart + segmentDuration, granularity);
+                if (fromBucket < toBucket) {
+                    int fromId = closestId(timeIndex, fromBucket * granularity, stackBuffer);
+                    int toId = closestId(timeIndex, toBucket * granularity, stackBuffer);
+                    if (indexes[i][j] < fromId) {
+                        edges.add(bitmaps.createWithRange(indexes[i][j], fromId));
+                    }
+                    if (toId < indexes[i][j + 1]) {
+                        edges.add(bitmaps.createWithRange(toId, indexes[i][j + 1]));
+                    }
+                } else {
+                    fromBucket = toBucket;
+                    if (indexes[i][j] < indexes[i][j + 1]) {
+                        edges.add(bitmaps.createWithRange(indexes[i][j], indexes[i][j + 1]));
+                    }
+                }
+                fromBuckets[i][j] = fromBucket;
+                toBuckets[i][j] = toBucket;
+            }
+            if (edges.isEmpty()) {
+                edgeMasks.add(null);
+            } else {
+                edgeMasks.add(bitmaps.or(edges));
+                anyEdges = true;
+            }
+        }
+        solutionLog.log(MiruSolutionLogLevel.INFO, "analytics rollup boundaries: {} millis, edges: {}.", System.currentTimeMillis() - start, anyEdges);
+
+        start = System.currentTimeMillis();
+        long[][][] waveforms = new long[termIds.length][][];
+        MiruTermRollup[] rollups = new MiruTermRollup[termIds.length];
+        boolean[] summed = new boolean[termIds.length];
+        boolean[] fallback = new boolean[termIds.length];
+        List<Integer> fetch = new ArrayList<>();
+        int hits = 0;
+        for (int k = 0; k < termIds.length; k++) {
+            waveforms[k] = new long[scoreables.length][];
+            for (int i = 0; i < scoreables.length; i++) {
+                waveforms[k][i] = new long[scoreables[i].divideTimeRangeIntoNSegments];
+            }
+            MiruTermRollup rollup = rollupIndex.get(fieldId, termIds[k]);
+            if (rollup != null && rollup.getFirstBucket() != firstBucket) {
+                rollup = null;
+            }
+            rollups[k] = rollup;
+            if (rollup != null && rollup.getLastId() >= lastId && !rollup.hasInvalidBuckets()) {
+                if (rollup.sumInto(lastId, fromBuckets, toBuckets, waveforms[k])) {
+                    summed[k] = true;
+                    hits++;
+                } else {
+                    // another query already extended past our lastId, so the rollup would overcount
+                    fallback[k] = true;
+                }
+            }
+            if (!summed[k] || anyEdges) {
+                fetch.add(k);
+            }
+        }
+
+        if (!fetch.isEmpty()) {
+            MiruTermId[] fetchTermIds = new MiruTermId[fetch.size()];
+            for (int f = 0; f < fetchTermIds.length; f++) {
+                fetchTermIds[f] = termIds[fetch.get(f)];
+            }
+            boolean[] seen = new boolean[termIds.length];
+            long[][] edgeBuffer = new long[1][];
+            bitmaps.multiTx(
+                (tx, stackBuffer1) -> primaryFieldIndex.multiTxIndex(name, fieldId, fetchTermIds, -1, stackBuffer1, tx),
+                (index, lastId1, bitmap) -> {
+                    int k = fetch.get(index);
+                    seen[k] = true;
+                    if (!fallback[k] && !summed[k]) {
+                        MiruTermRollup extended = extendRollup(bitmaps, rollupIndex, fieldId, termIds[k], rollups[k], bitmap, indexMask,
+                            firstBucket, bucketIds, lastId, generation);
+                        if (extended != null && extended.sumInto(lastId, fromBuckets, toBuckets, waveforms[k])) {
+                            summed[k] = true;
+                        } else {
+                            fallback[k] = true;
+                        }
+                    }
+
+                    BM answer = bitmaps.and(Arrays.<IBM>asList(bitmap, constrained));
+                    if (fallback[k]) {
+                        bitmaps.boundedCardinalities(answer, indexes, waveforms[k]);
+                    } else if (anyEdges) {
+                        for (int i = 0; i < scoreables.length; i++) {
+                            BM edgeMask = edgeMasks.get(i);
+                            if (edgeMask != null) {
+                                BM edge = bitmaps.and(Arrays.<IBM>asList(answer, edgeMask));
+                                long[] edgeWaveform = new long[scoreables[i].divideTimeRangeIntoNSegments];
+                                edgeBuffer[0] = edgeWaveform;
+                                bitmaps.boundedCardinalities(edge, new int[][] { indexes[i] }, edgeBuffer);
+                                for (int j = 0; j < edgeWaveform.length; j++) {
+                                    waveforms[k][i][j] += edgeWaveform[j];
+                                }
+                            }
+                        }
+                    }
+                    return true;
+                },
+                stackBuffer);
+
+            // terms without a bitmap still get an empty rollup so we don't look for them again
+            for (int k : fetch) {
+                if (!seen[k] && !fallback[k] && !summed[k]) {
+                    extendRollup(bitmaps, rollupIndex, fieldId, termIds[k], rollups[k], null, indexMask, firstBucket, bucketIds, lastId,
+                        generation);
+                }
+            }
+        }
+        solutionLog.log(MiruSolutionLogLevel.INFO, "analytics rollup answered: {} millis, {} hits, {} fetched.",
+            System.currentTimeMillis() - start, hits, fetch.size());
+
+        for (int k = 0; k < termIds.length; k++) {
+            boolean found = false;
+            for (int i = 0; i < scoreables.length && !found; i++) {
+                for (long count : waveforms[k][i]) {
+                    if (count != 0) {
+                        found = true;
+                        break;
+                    }
+                }
+            }
+            for (int i = 0; i < scoreables.length; i++) {
+                if (!analyzed.analyzed(i, termIds[k], found ? waveforms[k][i] : null)) {
+                    return resultsExhausted;
+                }
+            }
+        }
+
+        return resultsExhausted;
+    }
+
+    private <BM extends IBM, IBM> MiruTermRollup extendRollup(MiruBitmaps<BM, IBM> bitmaps,
+        MiruRollupIndex rollupIndex,
+        int fieldId,
+        MiruTermId termId,
+        MiruTermRollup rollup,
+        BM bitmap,
+        IBM indexMask,
+        long firstBucket,
+        int[] bucketIds,
+        int lastId,
+        long generation) {
+
+        MiruTermRollup extended = rollup != null ? rollup : new MiruTermRollup(firstBucket);
+        int coveredLastId = extended.getLastId();
+        long[] delta = new long[bucketIds.length - 1];
+        // buckets invalidated by a removal or repair are recounted in full
+        long[] recounts = extended.hasInvalidBuckets() ? new long[bucketIds.length - 1] : null;
+        if (bitmap != null) {
+            // only count ids the rollup doesn't already cover
+            int[] boundaries = new int[bucketIds.length];
+            for (int b = 0; b < boundaries.length; b++) {
+                boundaries[b] = Math.max(bucketIds[b], coveredLastId + 1);
+            }
+            BM masked = bitmaps.and(Arrays.<IBM>asList(bitmap, indexMask));
+            bitmaps.boundedCardinalities(masked, new int[][] { boundaries }, new long[][] { delta });
+            if (recounts != null) {
+                bitmaps.boundedCardinalities(masked, new int[][] { bucketIds }, new long[][] { recounts });
+            }
+        }
+        long sizeInBytes = extended.sizeInBytes();
+        if (!extended.extend(coveredLastId, generation, delta, recounts, lastId)) {
+            return null;
+        }
+        if (rollup == null) {
+            // still good for this query even if a racing invalidation keeps it out of the index
+            rollupIndex.put(fieldId, termId, extended, generation);
+        } else if (extended.sizeInBytes() != sizeInBytes) {
+            rollupIndex.resized(fieldId, termId, extended);
+        }
+        return extended;
+    }
+
+    private long bucketCount(MiruTimeIndex timeIndex, long granularity) {
+        return Math.floorDiv(timeIndex.getLargestTimestamp(), granularity) - Math.floorDiv(timeIndex.getSmallestTimestamp(), granularity) + 1;
+    }
+
+    private boolean isAligned(MiruTimeRange timeRange, AnalyticsScoreable[] scoreables, long granularity) {
+        for (AnalyticsScoreable scoreable : scoreables) {
+            long segmentDuration = (scoreable.timeRange.largestTimestamp - scoreable.timeRange.smallestTimestamp) / scoreable.divideTimeRangeIntoNSegments;
+            if (segmentDuration < granularity
+                || segmentDuration % granularity != 0
+                || scoreable.timeRange.smallestTimestamp < timeRange.smallestTimestamp
+                || scoreable.timeRange.smallestTimestamp + segmentDuration * scoreable.divideTimeRangeIntoNSegments > timeRange.largestTimestamp) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int[][] segmentBoundaries(MiruTimeIndex timeIndex, AnalyticsScoreable[] scoreables, StackBuffer stackBuffer) throws Exception {
+        int[][] indexes = new int[scoreables.length][];
+        for (int i = 0; i < scoreables.length; i++) {
+            AnalyticsScoreable scoreable = scoreables[i];
+            long currentTime = scoreable.timeRange.smallestTimestamp;
+            long segmentDuration = (scoreable.timeRange.largestTimestamp - scoreable.timeRange.smallestTimestamp) / scoreable.divideTimeRangeIntoNSegments;
+            if (segmentDuration < 1) {
+                throw new RuntimeException("Time range is insufficient to be divided into " + scoreable.divideTimeRangeIntoNSegments + " segments");
+            }
+
+            indexes[i] = new int[scoreable.divideTimeRangeIntoNSegments + 1];
+            for (int j = 0; j < indexes[i].length; j++) {
+                indexes[i][j] = closestId(timeIndex, currentTime, stackBuffer);
+                currentTime += segmentDuration;
+            }
+        }
+        return indexes;
+    }
+
+    private int closestId(MiruTimeIndex timeIndex, long timestamp, StackBuffer stackBuffer) throws Exception {
+        int closestId = timeIndex.getClosestId(timestamp, stackBuffer);
+        if (closestId < 0) {
+            closestId = -(closestId + 1); // handle negative "theoretical insertion" index
+        }
+        return closestId;
+    }
+
 }
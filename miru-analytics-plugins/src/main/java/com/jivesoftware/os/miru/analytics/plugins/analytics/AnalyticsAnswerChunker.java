@@ -0,0 +1,46 @@
+package com.jivesoftware.os.miru.analytics.plugins.analytics;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.miru.plugin.solution.MiruAnswerChunker;
+import com.jivesoftware.os.miru.plugin.solution.Waveform;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Slices every score set's waveforms in lockstep, so each chunk carries every key (possibly with an empty list) as
+ * {@link AnalyticsAnswerMerger} expects.
+ */
+public class AnalyticsAnswerChunker implements MiruAnswerChunker<AnalyticsAnswer> {
+
+    @Override
+    public void chunk(AnalyticsAnswer answer, int maxItemsPerChunk, ChunkStream<AnalyticsAnswer> stream) throws Exception {
+        if (answer.waveforms == null) {
+            stream.stream(answer);
+            return;
+        }
+
+        int largest = 0;
+        for (List<Waveform> waveforms : answer.waveforms.values()) {
+            if (waveforms != null) {
+                largest = Math.max(largest, waveforms.size());
+            }
+        }
+
+        int numChunks = Math.max(1, (largest + maxItemsPerChunk - 1) / maxItemsPerChunk);
+        for (int i = 0; i < numChunks; i++) {
+            int from = i * maxItemsPerChunk;
+            Map<String, List<Waveform>> chunk = Maps.newHashMapWithExpectedSize(answer.waveforms.size());
+            for (Map.Entry<String, List<Waveform>> entry : answer.waveforms.entrySet()) {
+                List<Waveform> waveforms = entry.getValue();
+                if (waveforms == null) {
+                    chunk.put(entry.getKey(), null);
+                } else {
+                    int to = Math.min(from + maxItemsPerChunk, waveforms.size());
+                    chunk.put(entry.getKey(), from < to ? Lists.newArrayList(waveforms.subList(from, to)) : Lists.<Waveform>newArrayList());
+                }
+            }
+            stream.stream(new AnalyticsAnswer(chunk, answer.resultsExhausted));
+        }
+    }
+}
@@ -54,6 +54,9 @@ public class AnalyticsAnswerMerger implements MiruAnswerMerger<AnalyticsAnswer>
                     solutionLog.log(MiruSolutionLogLevel.WARN, "merge: current waveforms are null, using last answer.");
                     mergedWaveforms = lastWaveforms;
                 }
+            } else if (lastWaveforms == null) {
+                solutionLog.log(MiruSolutionLogLevel.WARN, "merge: last waveforms are null, using current answer.");
+                mergedWaveforms = currentWaveforms;
             } else {
                 List<Waveform> biggerList = lastWaveforms.size() > currentWaveforms.size() ? lastWaveforms : currentWaveforms;
                 Map<MiruValue, Waveform> smallerSet = lastWaveforms.size() > currentWaveforms.size()
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.plugin.partition.MiruPartitionUnavailableException;
+import com.jivesoftware.os.miru.plugin.solution.ChunkedPartitionResponseWriter;
 import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResponse;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequestAndReport;
@@ -20,6 +21,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import org.nustaq.serialization.FSTConfiguration;
 
 import static com.jivesoftware.os.miru.analytics.plugins.analytics.AnalyticsConstants.ANALYTICS_PREFIX;
@@ -31,6 +33,8 @@ public class AnalyticsEndpoints {
 
     private static final MetricLogger log = MetricLoggerFactory.getLogger();
     private static final FSTConfiguration conf = FSTConfiguration.createDefaultConfiguration();
+    private static final ChunkedPartitionResponseWriter chunkedWriter = new ChunkedPartitionResponseWriter(1_000, true);
+    private static final AnalyticsAnswerChunker answerChunker = new AnalyticsAnswerChunker();
 
     private final AnalyticsInjectable injectable;
     private final ObjectMapper objectMapper;
@@ -90,4 +94,28 @@ public class AnalyticsEndpoints {
             return Response.serverError().build();
         }
     }
+
+    @POST
+    @Path(CUSTOM_QUERY_ENDPOINT + "/{partitionId}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response scoreAnalyticingChunked(@PathParam("partitionId") int id, MiruRequestAndReport<AnalyticsQuery, AnalyticsReport> requestAndReport) {
+        MiruPartitionId partitionId = MiruPartitionId.of(id);
+        StreamingOutput stream = os -> {
+            ChunkedPartitionResponseWriter.Session<AnalyticsAnswer> session = chunkedWriter.open(os);
+            MiruPartitionResponse<AnalyticsAnswer> result;
+            try {
+                result = injectable.score(partitionId, requestAndReport, session, chunkedWriter.getMaxItemsPerChunk());
+            } catch (MiruPartitionUnavailableException | InterruptedException e) {
+                session.fail(true, "Unavailable " + e.getMessage());
+                return;
+            } catch (Exception e) {
+                log.error("Failed to score chunked analytics for partition: " + partitionId.getId(), e);
+                session.fail(false, e.getMessage());
+                return;
+            }
+            session.finish(result, answerChunker);
+        };
+        return Response.ok(stream, MediaType.APPLICATION_OCTET_STREAM).build();
+    }
 }
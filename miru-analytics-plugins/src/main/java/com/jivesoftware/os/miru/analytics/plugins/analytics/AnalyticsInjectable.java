@@ -8,6 +8,7 @@ import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.plugin.Miru;
 import com.jivesoftware.os.miru.plugin.MiruProvider;
 import com.jivesoftware.os.miru.plugin.partition.MiruPartitionUnavailableException;
+import com.jivesoftware.os.miru.plugin.solution.MiruAnswerChunker;
 import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResponse;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequestAndReport;
@@ -63,6 +64,17 @@ public class AnalyticsInjectable {
 
     public MiruPartitionResponse<AnalyticsAnswer> score(MiruPartitionId partitionId,
         MiruRequestAndReport<AnalyticsQuery, AnalyticsReport> requestAndReport) throws MiruQueryServiceException, InterruptedException {
+        return score(partitionId, requestAndReport, null, -1);
+    }
+
+    /**
+     * Streams partial answers of at most maxItemsPerChunk waveforms to chunkStream while the partition is solved. The
+     * returned response holds whatever was not yet streamed.
+     */
+    public MiruPartitionResponse<AnalyticsAnswer> score(MiruPartitionId partitionId,
+        MiruRequestAndReport<AnalyticsQuery, AnalyticsReport> requestAndReport,
+        MiruAnswerChunker.ChunkStream<AnalyticsAnswer> chunkStream,
+        int maxItemsPerChunk) throws MiruQueryServiceException, InterruptedException {
         try {
             LOG.debug("askImmediate: partitionId={} request={}", partitionId, requestAndReport.request);
             LOG.trace("askImmediate: report={}", requestAndReport.report);
@@ -72,7 +84,9 @@ public class AnalyticsInjectable {
                 partitionId,
                 new MiruSolvableFactory<>(requestAndReport.request.name, miruProvider.getStats(), "scoreAnalytics", new AnalyticsQuestion(trending,
                     requestAndReport.request,
-                    miruProvider.getRemotePartition(AnalyticsRemotePartition.class))),
+                    miruProvider.getRemotePartition(AnalyticsRemotePartition.class),
+                    chunkStream,
+                    maxItemsPerChunk)),
                 Optional.fromNullable(requestAndReport.report),
                 AnalyticsAnswer.EMPTY_RESULTS,
                 requestAndReport.request.logLevel);
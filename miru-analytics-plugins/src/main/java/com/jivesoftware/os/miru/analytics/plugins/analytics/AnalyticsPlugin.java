@@ -4,8 +4,11 @@ import com.jivesoftware.os.miru.plugin.Miru;
 import com.jivesoftware.os.miru.plugin.MiruProvider;
 import com.jivesoftware.os.miru.plugin.plugin.MiruEndpointInjectable;
 import com.jivesoftware.os.miru.plugin.plugin.MiruPlugin;
+import com.jivesoftware.os.miru.plugin.solution.ChunkedRemotePartitionConfig;
+import com.jivesoftware.os.miru.plugin.solution.ChunkedRemotePartitionReader;
 import com.jivesoftware.os.miru.plugin.solution.FstRemotePartitionReader;
 import com.jivesoftware.os.miru.plugin.solution.MiruRemotePartition;
+import com.jivesoftware.os.miru.plugin.solution.MiruRemotePartitionReader;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -31,7 +34,11 @@ public class AnalyticsPlugin implements MiruPlugin<AnalyticsEndpoints, Analytics
 
     @Override
     public Collection<MiruRemotePartition<?, ?, ?>> getRemotePartitions(MiruProvider<? extends Miru> miruProvider) {
-        return Collections.singletonList(new AnalyticsRemotePartition(
-            new FstRemotePartitionReader(miruProvider.getReaderHttpClient(), miruProvider.getReaderStrategyCache(), false)));
+        ChunkedRemotePartitionConfig chunkedConfig = miruProvider.getConfig(ChunkedRemotePartitionConfig.class);
+        MiruRemotePartitionReader remotePartitionReader = chunkedConfig.getChunkedRemotePartitionEnabled()
+            ? new ChunkedRemotePartitionReader(miruProvider.getReaderHttpClient(), miruProvider.getReaderStrategyCache(),
+                chunkedConfig.getChunkedRemotePartitionMaxFrameSizeInBytes())
+            : new FstRemotePartitionReader(miruProvider.getReaderHttpClient(), miruProvider.getReaderStrategyCache(), false);
+        return Collections.singletonList(new AnalyticsRemotePartition(remotePartitionReader));
     }
 }
@@ -13,6 +13,7 @@ import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmapsDebug;
 import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
 import com.jivesoftware.os.miru.plugin.solution.MiruAggregateUtil;
+import com.jivesoftware.os.miru.plugin.solution.MiruAnswerChunker;
 import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResponse;
 import com.jivesoftware.os.miru.plugin.solution.MiruRemotePartition;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
@@ -32,15 +33,32 @@ public class AnalyticsQuestion implements Question<AnalyticsQuery, AnalyticsAnsw
     private final Analytics analytics;
     private final MiruRequest<AnalyticsQuery> request;
     private final MiruRemotePartition<AnalyticsQuery, AnalyticsAnswer, AnalyticsReport> remotePartition;
+    private final MiruAnswerChunker.ChunkStream<AnalyticsAnswer> chunkStream;
+    private final int maxItemsPerChunk;
     private final MiruBitmapsDebug bitmapsDebug = new MiruBitmapsDebug();
     private final MiruAggregateUtil aggregateUtil = new MiruAggregateUtil();
 
     public AnalyticsQuestion(Analytics analytics,
         MiruRequest<AnalyticsQuery> request,
         MiruRemotePartition<AnalyticsQuery, AnalyticsAnswer, AnalyticsReport> remotePartition) {
+        this(analytics, request, remotePartition, null, -1);
+    }
+
+    /**
+     * @param chunkStream      if not null, receives partial answers of at most maxItemsPerChunk waveforms while solving, and
+     *                         the local answer only holds what was left over
+     * @param maxItemsPerChunk the number of waveforms across all score sets to accumulate before streaming a chunk
+     */
+    public AnalyticsQuestion(Analytics analytics,
+        MiruRequest<AnalyticsQuery> request,
+        MiruRemotePartition<AnalyticsQuery, AnalyticsAnswer, AnalyticsReport> remotePartition,
+        MiruAnswerChunker.ChunkStream<AnalyticsAnswer> chunkStream,
+        int maxItemsPerChunk) {
         this.analytics = analytics;
         this.request = request;
         this.remotePartition = remotePartition;
+        this.chunkStream = chunkStream;
+        this.maxItemsPerChunk = maxItemsPerChunk;
     }
 
     @Override
@@ -62,6 +80,7 @@ public class AnalyticsQuestion implements Question<AnalyticsQuery, AnalyticsAnsw
         long minTimestamp = Long.MAX_VALUE;
         long maxTimestamp = Long.MIN_VALUE;
 
+        int[] pending = { 0 };
         int ssi = 0;
         for (AnalyticsQueryScoreSet scoreSet : scoreSets) {
             keys[ssi] = scoreSet.key;
@@ -69,6 +88,7 @@ public class AnalyticsQuestion implements Question<AnalyticsQuery, AnalyticsAnsw
             scoreables[ssi] = new Analytics.AnalyticsScoreable(scoreSet.timeRange, scoreSet.divideTimeRangeIntoNSegments);
             minTimestamp = Math.min(minTimestamp, scoreSet.timeRange.smallestTimestamp);
             maxTimestamp = Math.max(maxTimestamp, scoreSet.timeRange.largestTimestamp);
+            ssi++;
         }
 
         boolean resultsExhausted = analytics.analyze("analytics",
@@ -96,18 +116,29 @@ public class AnalyticsQuestion implements Question<AnalyticsQuery, AnalyticsAnsw
                 } else {
                     waveforms[index].add(Waveform.compressed(term, waveformBuffer));
                 }
+                if (chunkStream != null && ++pending[0] >= maxItemsPerChunk) {
+                    // every term is analyzed once per score set, so chunks never overlap and merge as a union
+                    chunkStream.stream(new AnalyticsAnswer(drain(keys, waveforms), false));
+                    pending[0] = 0;
+                }
                 return true;
             });
 
-        Map<String, List<Waveform>> resultWaveforms = Maps.newHashMap();
-        for (int i = 0; i < waveforms.length; i++) {
-            resultWaveforms.put(keys[i], waveforms[i]);
-        }
-        AnalyticsAnswer result = new AnalyticsAnswer(resultWaveforms, resultsExhausted);
+        AnalyticsAnswer result = new AnalyticsAnswer(drain(keys, waveforms), resultsExhausted);
 
         return new MiruPartitionResponse<>(result, solutionLog.asList());
     }
 
+    private static Map<String, List<Waveform>> drain(String[] keys, List<Waveform>[] waveforms) {
+        // every key is present in every chunk, as AnalyticsAnswerMerger expects
+        Map<String, List<Waveform>> drained = Maps.newHashMapWithExpectedSize(keys.length);
+        for (int i = 0; i < waveforms.length; i++) {
+            drained.put(keys[i], waveforms[i]);
+            waveforms[i] = Lists.newArrayList();
+        }
+        return drained;
+    }
+
     @Override
     public MiruPartitionResponse<AnalyticsAnswer> askRemote(MiruHost host,
         MiruPartitionId partitionId,
@@ -124,6 +155,12 @@ public class AnalyticsQuestion implements Question<AnalyticsQuery, AnalyticsAnsw
         return report;
     }
 
+    @Override
+    public Optional<MiruRequest<AnalyticsQuery>> getCacheableRequest() {
+        // a streamed answer has already left by the time the local answer could be cached
+        return chunkStream == null ? Optional.of(request) : Optional.absent();
+    }
+
     @Override
     public String toString() {
         return "AnalyticsQuestion{"
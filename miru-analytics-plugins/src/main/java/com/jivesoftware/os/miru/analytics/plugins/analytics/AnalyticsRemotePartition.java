@@ -1,6 +1,7 @@
 package com.jivesoftware.os.miru.analytics.plugins.analytics;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
 import com.jivesoftware.os.miru.api.MiruHost;
 import com.jivesoftware.os.miru.api.MiruQueryServiceException;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
@@ -11,6 +12,7 @@ import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
 import com.jivesoftware.os.mlogger.core.EndPointMetrics;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Map;
 
 import static com.jivesoftware.os.miru.analytics.plugins.analytics.AnalyticsConstants.ANALYTICS_PREFIX;
 import static com.jivesoftware.os.miru.analytics.plugins.analytics.AnalyticsConstants.CUSTOM_QUERY_ENDPOINT;
@@ -38,6 +40,10 @@ public class AnalyticsRemotePartition implements MiruRemotePartition<AnalyticsQu
         MiruPartitionId partitionId,
         MiruRequest<AnalyticsQuery> request,
         Optional<AnalyticsReport> report) throws MiruQueryServiceException {
+        Map<String, Integer> keyedSegments = Maps.newHashMap();
+        for (AnalyticsQueryScoreSet scoreSet : request.query.scoreSets) {
+            keyedSegments.put(scoreSet.key, scoreSet.divideTimeRangeIntoNSegments);
+        }
         return remotePartitionReader.read("analytics",
             host,
             getEndpoint(partitionId),
@@ -45,7 +51,8 @@ public class AnalyticsRemotePartition implements MiruRemotePartition<AnalyticsQu
             AnalyticsAnswer.class,
             report,
             endPointMetrics,
-            AnalyticsAnswer.EMPTY_RESULTS);
+            AnalyticsAnswer.EMPTY_RESULTS,
+            new AnalyticsAnswerMerger(keyedSegments));
     }
 
 }
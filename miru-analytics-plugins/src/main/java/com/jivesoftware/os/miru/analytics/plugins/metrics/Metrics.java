@@ -1,6 +1,8 @@
 package com.jivesoftware.os.miru.analytics.plugins.metrics;
 
 import com.jivesoftware.os.miru.api.query.filter.MiruValue;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator.Aggregates;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.solution.Waveform;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
@@ -15,6 +17,8 @@ public class Metrics {
 
     private static final MetricLogger log = MetricLoggerFactory.getLogger();
 
+    private final MiruBitSlicedAggregator aggregator = new MiruBitSlicedAggregator();
+
     public <BM extends IBM, IBM> Waveform metricingSum(String id,
         MiruBitmaps<BM, IBM> bitmaps,
         BM rawAnswer,
@@ -50,6 +54,48 @@ public class Metrics {
         return Waveform.compressed(new MiruValue(id), waveform);
     }
 
+    /**
+     * Aggregates the fused strategies with a single pass over the value bits, where bit i is worth 2^i.
+     */
+    public <BM extends IBM, IBM> Aggregates metricingAggregate(MiruBitmaps<BM, IBM> bitmaps,
+        BM rawAnswer,
+        List<BM> answers,
+        int[] indexes,
+        int numBits,
+        MetricsQuery.Strategy strategy)
+        throws Exception {
+
+        log.debug("Get metricing aggregate for answers={}", answers);
+
+        boolean histograms = strategy == MetricsQuery.Strategy.PERCENTILE;
+        Aggregates aggregates = aggregator.aggregate(bitmaps, rawAnswer, null, answers, indexes, numBits, histograms);
+        if (aggregates.overflows > 0) {
+            log.inc("overflows", aggregates.overflows);
+        }
+        return aggregates;
+    }
+
+    /**
+     * Reduces aggregates, possibly merged across partitions, to the raw waveform for a fused strategy.
+     */
+    public static long[] reduce(Aggregates aggregates, MetricsQuery.Strategy strategy, double percentile) {
+        long[] waveform;
+        if (strategy == MetricsQuery.Strategy.SUM) {
+            waveform = aggregates.sum;
+        } else if (strategy == MetricsQuery.Strategy.AVG) {
+            waveform = aggregates.avg();
+        } else if (strategy == MetricsQuery.Strategy.MIN) {
+            waveform = aggregates.min;
+        } else if (strategy == MetricsQuery.Strategy.MAX) {
+            waveform = aggregates.max;
+        } else if (strategy == MetricsQuery.Strategy.PERCENTILE) {
+            waveform = aggregates.percentile(percentile);
+        } else {
+            throw new IllegalArgumentException("Unsupported aggregate strategy: " + strategy);
+        }
+        return waveform;
+    }
+
     /*
     1,2,3,4,1 avg = avg 4.3, max 4, min 1
 
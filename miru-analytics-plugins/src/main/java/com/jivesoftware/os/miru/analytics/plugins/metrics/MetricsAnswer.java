@@ -2,9 +2,11 @@ package com.jivesoftware.os.miru.analytics.plugins.metrics;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator.Aggregates;
 import com.jivesoftware.os.miru.plugin.solution.Waveform;
 import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -15,13 +17,23 @@ public class MetricsAnswer implements Serializable {
         true);
 
     public final List<Waveform> waveforms;
+    public final Map<String, Aggregates> aggregates;
     public final boolean resultsExhausted;
 
+    public MetricsAnswer(List<Waveform> waveforms, boolean resultsExhausted) {
+        this(waveforms, null, resultsExhausted);
+    }
+
+    /**
+     * @param aggregates per filter name, the aggregates behind each fused strategy waveform so that partitions can be merged, or null
+     */
     @JsonCreator
     public MetricsAnswer(
         @JsonProperty("waveforms") List<Waveform> waveforms,
+        @JsonProperty("aggregates") Map<String, Aggregates> aggregates,
         @JsonProperty("resultsExhausted") boolean resultsExhausted) {
         this.waveforms = waveforms;
+        this.aggregates = aggregates;
         this.resultsExhausted = resultsExhausted;
     }
 
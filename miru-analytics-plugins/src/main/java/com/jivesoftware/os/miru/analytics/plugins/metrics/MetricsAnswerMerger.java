@@ -3,6 +3,7 @@ package com.jivesoftware.os.miru.analytics.plugins.metrics;
 import com.google.common.base.Optional;
 import com.google.common.collect.Maps;
 import com.jivesoftware.os.miru.api.query.filter.MiruValue;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator.Aggregates;
 import com.jivesoftware.os.miru.plugin.solution.MiruAnswerMerger;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
@@ -19,10 +20,18 @@ public class MetricsAnswerMerger implements MiruAnswerMerger<MetricsAnswer> {
 
     private final MiruTimeRange timeRange;
     private final int divideTimeRangeIntoNSegments;
+    private final MetricsQuery.Strategy strategy;
+    private final double percentile;
 
-    public MetricsAnswerMerger(MiruTimeRange timeRange, int divideTimeRangeIntoNSegments) {
+    /**
+     * @param strategy   the query strategy, fused strategies merge by their aggregates so buckets spanning partitions stay exact
+     * @param percentile the query percentile, used by {@link MetricsQuery.Strategy#PERCENTILE}
+     */
+    public MetricsAnswerMerger(MiruTimeRange timeRange, int divideTimeRangeIntoNSegments, MetricsQuery.Strategy strategy, double percentile) {
         this.timeRange = timeRange;
         this.divideTimeRangeIntoNSegments = divideTimeRangeIntoNSegments;
+        this.strategy = strategy;
+        this.percentile = percentile;
     }
 
     /**
@@ -41,6 +50,7 @@ public class MetricsAnswerMerger implements MiruAnswerMerger<MetricsAnswer> {
         }
 
         List<Waveform> mergedWaveforms;
+        Map<String, Aggregates> mergedAggregates = null;
         MetricsAnswer lastAnswer = last.get();
         if (currentAnswer.waveforms == null) {
             if (lastAnswer.waveforms == null) {
@@ -49,21 +59,28 @@ public class MetricsAnswerMerger implements MiruAnswerMerger<MetricsAnswer> {
             } else {
                 solutionLog.log(MiruSolutionLogLevel.WARN, "merge: current waveforms are null, using last answer.");
                 mergedWaveforms = lastAnswer.waveforms;
+                mergedAggregates = lastAnswer.aggregates;
             }
         } else {
+            if (currentAnswer.aggregates != null && lastAnswer.aggregates != null) {
+                mergedAggregates = Maps.newHashMap(lastAnswer.aggregates);
+                for (Map.Entry<String, Aggregates> entry : currentAnswer.aggregates.entrySet()) {
+                    mergedAggregates.merge(entry.getKey(), entry.getValue(), Aggregates::merge);
+                }
+            }
 
             List<Waveform> biggerList = lastAnswer.waveforms.size() > currentAnswer.waveforms.size() ? lastAnswer.waveforms : currentAnswer.waveforms;
             Map<MiruValue, Waveform> smallerSet = lastAnswer.waveforms.size() > currentAnswer.waveforms.size()
                 ? toMap(currentAnswer.waveforms)
                 : toMap(lastAnswer.waveforms);
 
-            mergeWaveform(smallerSet, biggerList, solutionLog);
+            mergeWaveform(smallerSet, biggerList, mergedAggregates, solutionLog);
             mergedWaveforms = biggerList;
             solutionLog.log(MiruSolutionLogLevel.INFO, "merge: merged last answer size={}, with current answer size={}.",
                 lastAnswer.waveforms.size(), currentAnswer.waveforms.size());
         }
 
-        return new MetricsAnswer(mergedWaveforms, currentAnswer.resultsExhausted);
+        return new MetricsAnswer(mergedWaveforms, mergedAggregates, currentAnswer.resultsExhausted);
 
     }
 
@@ -75,16 +92,24 @@ public class MetricsAnswerMerger implements MiruAnswerMerger<MetricsAnswer> {
         return map;
     }
 
-    private void mergeWaveform(Map<MiruValue, Waveform> mergedWaveforms, List<Waveform> waveforms, MiruSolutionLog solutionLog) {
+    private void mergeWaveform(Map<MiruValue, Waveform> mergedWaveforms,
+        List<Waveform> waveforms,
+        Map<String, Aggregates> mergedAggregates,
+        MiruSolutionLog solutionLog) {
         long[] mergedWaveform = new long[divideTimeRangeIntoNSegments];
         for (Waveform waveform : waveforms) {
 
             Waveform had = mergedWaveforms.remove(waveform.getId());
             if (had != null) {
-                Arrays.fill(mergedWaveform, 0);
-                waveform.mergeWaveform(mergedWaveform);
-                had.mergeWaveform(mergedWaveform);
-                waveform.compress(mergedWaveform);
+                Aggregates aggregates = mergedAggregates != null ? mergedAggregates.get(waveform.getId().last()) : null;
+                if (aggregates != null) {
+                    waveform.compress(Metrics.reduce(aggregates, strategy, percentile));
+                } else {
+                    Arrays.fill(mergedWaveform, 0);
+                    waveform.mergeWaveform(mergedWaveform);
+                    had.mergeWaveform(mergedWaveform);
+                    waveform.compress(mergedWaveform);
+                }
                 if (solutionLog.isLogLevelEnabled(MiruSolutionLogLevel.DEBUG)) {
                     solutionLog.log(MiruSolutionLogLevel.DEBUG, "merge: key={} merging {} result {}",
                         waveform.getId(), had, waveform);
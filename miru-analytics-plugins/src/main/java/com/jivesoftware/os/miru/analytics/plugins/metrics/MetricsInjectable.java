@@ -41,7 +41,8 @@ public class MetricsInjectable {
                     request,
                     provider.getRemotePartition(MetricsRemotePartition.class))),
                 new MetricsAnswerEvaluator(),
-                new MetricsAnswerMerger(request.query.timeRange, request.query.divideTimeRangeIntoNSegments),
+                new MetricsAnswerMerger(request.query.timeRange, request.query.divideTimeRangeIntoNSegments,
+                    request.query.strategy, request.query.percentile),
                 MetricsAnswer.EMPTY_RESULTS,
                 miru.getDefaultExecutor(),
                 request.logLevel);
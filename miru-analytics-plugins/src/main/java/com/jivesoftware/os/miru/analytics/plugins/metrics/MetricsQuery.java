@@ -15,11 +15,32 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public class MetricsQuery implements Serializable {
 
+    public enum Strategy {
+        /** Per slice cardinalities averaged per segment. */
+        SLICED_AVG,
+        /** The remaining strategies are answered by a single fused pass over the value bits. */
+        SUM,
+        AVG,
+        MIN,
+        MAX,
+        PERCENTILE
+    }
+
     public final MiruTimeRange timeRange;
     public final int divideTimeRangeIntoNSegments;
     public final String powerBitsFieldName;
     public final MiruFilter constraintsFilter;
     public final Map<String, MiruFilter> filters;
+    public final Strategy strategy;
+    public final double percentile;
+
+    public MetricsQuery(MiruTimeRange timeRange,
+        int divideTimeRangeIntoNSegments,
+        String powerBitsFieldName,
+        MiruFilter constraintsFilter,
+        Map<String, MiruFilter> filters) {
+        this(timeRange, divideTimeRangeIntoNSegments, powerBitsFieldName, constraintsFilter, filters, Strategy.SLICED_AVG, 0d);
+    }
 
     @JsonCreator
     public MetricsQuery(
@@ -27,7 +48,9 @@ public class MetricsQuery implements Serializable {
         @JsonProperty("divideTimeRangeIntoNSegments") int divideTimeRangeIntoNSegments,
         @JsonProperty("powerBitsFieldName") String powerBitsFieldName,
         @JsonProperty("constraintsFilter") MiruFilter constraintsFilter,
-        @JsonProperty("filters") Map<String, MiruFilter> filters) {
+        @JsonProperty("filters") Map<String, MiruFilter> filters,
+        @JsonProperty("strategy") Strategy strategy,
+        @JsonProperty("percentile") double percentile) {
         Preconditions.checkArgument(!MiruTimeRange.ALL_TIME.equals(timeRange), "Requires an explicit time range");
         this.timeRange = checkNotNull(timeRange);
         Preconditions.checkArgument(divideTimeRangeIntoNSegments > 0, "Segments must be at least 1");
@@ -35,6 +58,10 @@ public class MetricsQuery implements Serializable {
         this.powerBitsFieldName = checkNotNull(powerBitsFieldName);
         this.constraintsFilter = checkNotNull(constraintsFilter);
         this.filters = checkNotNull(filters);
+        this.strategy = strategy != null ? strategy : Strategy.SLICED_AVG;
+        Preconditions.checkArgument(this.strategy != Strategy.PERCENTILE || (percentile > 0d && percentile <= 100d),
+            "Percentile must be in the range (0, 100]");
+        this.percentile = percentile;
     }
 
     @Override
@@ -45,6 +72,8 @@ public class MetricsQuery implements Serializable {
             ", powerBitsFieldName='" + powerBitsFieldName + '\'' +
             ", constraintsFilter=" + constraintsFilter +
             ", filters=" + filters +
+            ", strategy=" + strategy +
+            ", percentile=" + percentile +
             '}';
     }
 }
@@ -2,6 +2,7 @@ package com.jivesoftware.os.miru.analytics.plugins.metrics;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.jivesoftware.os.filer.io.api.StackBuffer;
 import com.jivesoftware.os.miru.api.MiruHost;
 import com.jivesoftware.os.miru.api.MiruQueryServiceException;
@@ -13,6 +14,7 @@ import com.jivesoftware.os.miru.api.field.MiruFieldType;
 import com.jivesoftware.os.miru.api.query.filter.MiruAuthzExpression;
 import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
 import com.jivesoftware.os.miru.api.query.filter.MiruValue;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator.Aggregates;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmapsDebug;
 import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
@@ -150,6 +152,9 @@ public class MetricsQuestion implements Question<MetricsQuery, MetricsAnswer, Me
         }
 
         List<Waveform> waveforms = Lists.newArrayListWithCapacity(request.query.filters.size());
+        Map<String, Aggregates> aggregates = request.query.strategy != MetricsQuery.Strategy.SLICED_AVG
+            ? Maps.newHashMapWithExpectedSize(request.query.filters.size())
+            : null;
         start = System.currentTimeMillis();
         for (Map.Entry<String, MiruFilter> entry : request.query.filters.entrySet()) {
             Waveform waveform = null;
@@ -169,7 +174,14 @@ public class MetricsQuestion implements Question<MetricsQuery, MetricsAnswer, Me
                         }
                     }
 
-                    waveform = metrics.metricingAvg(entry.getKey(), bitmaps, rawAnswer, answers, indexes, 64);
+                    if (request.query.strategy == MetricsQuery.Strategy.SLICED_AVG) {
+                        waveform = metrics.metricingAvg(entry.getKey(), bitmaps, rawAnswer, answers, indexes, 64);
+                    } else {
+                        Aggregates aggregate = metrics.metricingAggregate(bitmaps, rawAnswer, answers, indexes, 64, request.query.strategy);
+                        waveform = Waveform.compressed(new MiruValue(entry.getKey()),
+                            Metrics.reduce(aggregate, request.query.strategy, request.query.percentile));
+                        aggregates.put(entry.getKey(), aggregate);
+                    }
                     if (solutionLog.isLogLevelEnabled(MiruSolutionLogLevel.DEBUG)) {
                         int cardinality = 0;
                         for (int i = 0; i < 64; i++) {
@@ -193,7 +205,7 @@ public class MetricsQuestion implements Question<MetricsQuery, MetricsAnswer, Me
         solutionLog.log(MiruSolutionLogLevel.INFO, "metrics answered: {} millis.", System.currentTimeMillis() - start);
         solutionLog.log(MiruSolutionLogLevel.INFO, "metrics answered: {} iterations.", request.query.filters.size());
 
-        MetricsAnswer result = new MetricsAnswer(waveforms, resultsExhausted);
+        MetricsAnswer result = new MetricsAnswer(waveforms, aggregates, resultsExhausted);
 
         return new MiruPartitionResponse<>(result, solutionLog.asList());
     }
@@ -0,0 +1,73 @@
+package com.jivesoftware.os.miru.anomaly.plugins;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.jivesoftware.os.miru.bitmaps.roaring6.MiruBitmapsRoaring;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator.Aggregates;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import java.util.List;
+import org.roaringbitmap.RoaringBitmap;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ *
+ */
+public class AnomalyAnswerMergerTest {
+
+    private static final int NUM_BITS = 8;
+
+    private final MiruSolutionLog solutionLog = new MiruSolutionLog(MiruSolutionLogLevel.NONE);
+
+    @Test
+    public void testBucketSplitAcrossPartitions() throws Exception {
+        // bucket 1 holds { 10, -2 } from the first partition and { 5, 40, 1 } from the second
+        Aggregates first = aggregate(new long[] { 3, 7, 10, -2 }, new int[] { 0, 2, 4 });
+        Aggregates second = aggregate(new long[] { 5, 40, 1 }, new int[] { 0, 0, 3 });
+
+        assertMerged(AnomalyQuery.Strategy.SUM, 0, first, second, new long[] { 10, 54 });
+        assertMerged(AnomalyQuery.Strategy.MIN, 0, first, second, new long[] { 3, -2 });
+        assertMerged(AnomalyQuery.Strategy.MAX, 0, first, second, new long[] { 7, 40 });
+        assertMerged(AnomalyQuery.Strategy.AVG, 0, first, second, new long[] { 5, 10 });
+        assertMerged(AnomalyQuery.Strategy.PERCENTILE, 50, first, second, new long[] { 3, 5 });
+    }
+
+    private void assertMerged(AnomalyQuery.Strategy strategy, double percentile, Aggregates first, Aggregates second, long[] expected) {
+        AnomalyAnswerMerger merger = new AnomalyAnswerMerger(strategy, percentile);
+        AnomalyAnswer merged = merger.merge(Optional.of(answer(strategy, percentile, first)), answer(strategy, percentile, second), solutionLog);
+
+        assertEquals(merged.waveforms.size(), 1);
+        assertEquals(merged.waveforms.get("a").waveform, expected, strategy.name());
+    }
+
+    private AnomalyAnswer answer(AnomalyQuery.Strategy strategy, double percentile, Aggregates aggregates) {
+        return new AnomalyAnswer(ImmutableMap.of("a", Anomaly.waveform(aggregates, strategy, percentile)), ImmutableMap.of("a", aggregates), true);
+    }
+
+    private Aggregates aggregate(long[] values, int[] indexes) {
+        MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+        RoaringBitmap answer = new RoaringBitmap();
+        RoaringBitmap negative = new RoaringBitmap();
+        List<RoaringBitmap> slices = Lists.newArrayList();
+        for (int i = 0; i < NUM_BITS; i++) {
+            slices.add(new RoaringBitmap());
+        }
+        for (int id = 0; id < values.length; id++) {
+            answer.add(id);
+            long magnitude = Math.abs(values[id]);
+            for (int i = 0; i < NUM_BITS; i++) {
+                if ((magnitude & (1L << i)) != 0) {
+                    slices.get(i).add(id);
+                }
+            }
+            if (values[id] < 0) {
+                negative.add(id);
+            }
+        }
+        return new MiruBitSlicedAggregator().aggregate(bitmaps, answer, negative, slices, indexes, NUM_BITS, true);
+    }
+}
@@ -2,6 +2,8 @@ package com.jivesoftware.os.miru.anomaly.plugins;
 
 import com.google.common.math.LongMath;
 import com.jivesoftware.os.miru.anomaly.plugins.AnomalyAnswer.Waveform;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator.Aggregates;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
@@ -18,6 +20,7 @@ public class Anomaly {
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
     private final LinearInterpolator interpolator = new LinearInterpolator();
+    private final MiruBitSlicedAggregator aggregator = new MiruBitSlicedAggregator();
 
     public <BM extends IBM, IBM> Waveform metricingSum(MiruBitmaps<BM, IBM> bitmaps,
         BM rawAnswer,
@@ -98,6 +101,48 @@ public class Anomaly {
         return new Waveform(waveform);
     }
 
+    /**
+     * Aggregates the fused strategies with a single pass over the value bits, where ids in the negative bitmap have negated values.
+     */
+    public <BM extends IBM, IBM> Aggregates metricingAggregate(MiruBitmaps<BM, IBM> bitmaps,
+        BM rawAnswer,
+        BM negative,
+        List<BM> answers,
+        int[] indexes,
+        int numBits,
+        AnomalyQuery.Strategy strategy)
+        throws Exception {
+
+        LOG.debug("Get metricing aggregate for answers={}", answers);
+
+        boolean histograms = strategy == AnomalyQuery.Strategy.PERCENTILE;
+        Aggregates aggregates = aggregator.aggregate(bitmaps, rawAnswer, negative, answers, indexes, numBits, histograms);
+        if (aggregates.overflows > 0) {
+            LOG.inc("overflows", aggregates.overflows);
+        }
+        return aggregates;
+    }
+
+    /**
+     * Reduces aggregates, possibly merged across partitions, to the waveform for a fused strategy.
+     */
+    public static Waveform waveform(Aggregates aggregates, AnomalyQuery.Strategy strategy, double percentile) {
+        long[] waveform;
+        if (strategy == AnomalyQuery.Strategy.SUM) {
+            waveform = aggregates.sum.clone();
+        } else if (strategy == AnomalyQuery.Strategy.AVG) {
+            waveform = aggregates.avg();
+        } else if (strategy == AnomalyQuery.Strategy.MIN) {
+            waveform = aggregates.min.clone();
+        } else if (strategy == AnomalyQuery.Strategy.MAX) {
+            waveform = aggregates.max.clone();
+        } else if (strategy == AnomalyQuery.Strategy.PERCENTILE) {
+            waveform = aggregates.percentile(percentile);
+        } else {
+            throw new IllegalArgumentException("Unsupported aggregate strategy: " + strategy);
+        }
+        return new Waveform(waveform);
+    }
 
     static <BM extends IBM, IBM> long[] sum(int[] indexes, int numBits, List<BM> answers, MiruBitmaps<BM, IBM> bitmaps) {
         long[] waveform = null;
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonGetter;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.jivesoftware.os.filer.io.FilerIO;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator.Aggregates;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Map;
@@ -16,13 +17,23 @@ public class AnomalyAnswer implements Serializable {
     public static final AnomalyAnswer EMPTY_RESULTS = new AnomalyAnswer(null, true);
 
     public final Map<String, Waveform> waveforms;
+    public final Map<String, Aggregates> aggregates;
     public final boolean resultsExhausted;
 
+    public AnomalyAnswer(Map<String, Waveform> waveforms, boolean resultsExhausted) {
+        this(waveforms, null, resultsExhausted);
+    }
+
+    /**
+     * @param aggregates per waveform key, the aggregates behind each fused strategy waveform so that partitions can be merged, or null
+     */
     @JsonCreator
     public AnomalyAnswer(
         @JsonProperty("waveforms") Map<String, Waveform> waveforms,
+        @JsonProperty("aggregates") Map<String, Aggregates> aggregates,
         @JsonProperty("resultsExhausted") boolean resultsExhausted) {
         this.waveforms = waveforms;
+        this.aggregates = aggregates;
         this.resultsExhausted = resultsExhausted;
     }
 
@@ -2,6 +2,7 @@ package com.jivesoftware.os.miru.anomaly.plugins;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Maps;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator.Aggregates;
 import com.jivesoftware.os.miru.plugin.solution.MiruAnswerMerger;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
@@ -13,7 +14,17 @@ import java.util.Map;
  */
 public class AnomalyAnswerMerger implements MiruAnswerMerger<AnomalyAnswer> {
 
-    public AnomalyAnswerMerger() {}
+    private final AnomalyQuery.Strategy strategy;
+    private final double percentile;
+
+    /**
+     * @param strategy   the query strategy, fused strategies merge by their aggregates so buckets spanning partitions stay exact
+     * @param percentile the query percentile, used by {@link AnomalyQuery.Strategy#PERCENTILE}
+     */
+    public AnomalyAnswerMerger(AnomalyQuery.Strategy strategy, double percentile) {
+        this.strategy = strategy;
+        this.percentile = percentile;
+    }
 
     /**
      * Merges the last and current results, returning the merged result.
@@ -31,6 +42,7 @@ public class AnomalyAnswerMerger implements MiruAnswerMerger<AnomalyAnswer> {
         }
 
         Map<String, AnomalyAnswer.Waveform> mergedWaveforms;
+        Map<String, Aggregates> mergedAggregates = null;
         AnomalyAnswer lastAnswer = last.get();
         if (currentAnswer.waveforms == null) {
             if (lastAnswer.waveforms == null) {
@@ -39,22 +51,42 @@ public class AnomalyAnswerMerger implements MiruAnswerMerger<AnomalyAnswer> {
             } else {
                 solutionLog.log(MiruSolutionLogLevel.WARN, "merge: current waveforms are null, using last answer.");
                 mergedWaveforms = lastAnswer.waveforms;
+                mergedAggregates = lastAnswer.aggregates;
             }
         } else {
             mergedWaveforms = Maps.newHashMapWithExpectedSize(Math.max(currentAnswer.waveforms.size(), lastAnswer.waveforms.size()));
-            mergeWaveform(mergedWaveforms, currentAnswer, solutionLog);
-            mergeWaveform(mergedWaveforms, lastAnswer, solutionLog);
+            if (currentAnswer.aggregates != null && lastAnswer.aggregates != null) {
+                mergedAggregates = Maps.newHashMapWithExpectedSize(mergedWaveforms.size());
+            }
+            mergeWaveform(mergedWaveforms, mergedAggregates, currentAnswer, solutionLog);
+            mergeWaveform(mergedWaveforms, mergedAggregates, lastAnswer, solutionLog);
             solutionLog.log(MiruSolutionLogLevel.INFO, "merge: merged last answer size={}, with current answer size={}.",
                 lastAnswer.waveforms.size(), currentAnswer.waveforms.size());
         }
 
-        return new AnomalyAnswer(mergedWaveforms, currentAnswer.resultsExhausted);
+        return new AnomalyAnswer(mergedWaveforms, mergedAggregates, currentAnswer.resultsExhausted);
     }
 
-    private void mergeWaveform(Map<String, AnomalyAnswer.Waveform> mergedWaveforms, AnomalyAnswer addAnswer, MiruSolutionLog solutionLog) {
+    private void mergeWaveform(Map<String, AnomalyAnswer.Waveform> mergedWaveforms,
+        Map<String, Aggregates> mergedAggregates,
+        AnomalyAnswer addAnswer,
+        MiruSolutionLog solutionLog) {
         for (Map.Entry<String, AnomalyAnswer.Waveform> addEntry : addAnswer.waveforms.entrySet()) {
             String key = addEntry.getKey();
             AnomalyAnswer.Waveform addWaveform = addEntry.getValue();
+            Aggregates addAggregates = mergedAggregates != null ? addAnswer.aggregates.get(key) : null;
+            if (addAggregates != null) {
+                Aggregates hadAggregates = mergedAggregates.get(key);
+                Aggregates aggregates = hadAggregates != null ? hadAggregates.merge(addAggregates) : addAggregates;
+                mergedAggregates.put(key, aggregates);
+                mergedWaveforms.put(key, Anomaly.waveform(aggregates, strategy, percentile));
+                if (solutionLog.isLogLevelEnabled(MiruSolutionLogLevel.DEBUG)) {
+                    solutionLog.log(MiruSolutionLogLevel.DEBUG, "merge: key={} merged {} aggregates into {}",
+                        key, strategy, Arrays.toString(mergedWaveforms.get(key).waveform));
+                }
+                continue;
+            }
+
             AnomalyAnswer.Waveform mergedWaveform = mergedWaveforms.get(key);
             if (mergedWaveform == null) {
                 mergedWaveform = new AnomalyAnswer.Waveform(new long[addWaveform.waveform.length]);
@@ -40,7 +40,7 @@ public class AnomalyInjectable {
                     request,
                     provider.getRemotePartition(AnomalyRemotePartition.class))),
                 new AnomalyAnswerEvaluator(),
-                new AnomalyAnswerMerger(),
+                new AnomalyAnswerMerger(request.query.strategy, request.query.percentile),
                 AnomalyAnswer.EMPTY_RESULTS,
                 miru.getDefaultExecutor(),
                 request.logLevel);
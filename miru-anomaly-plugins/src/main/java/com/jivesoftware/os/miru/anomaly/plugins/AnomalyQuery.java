@@ -16,6 +16,17 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public class AnomalyQuery implements Serializable {
 
+    public enum Strategy {
+        /** Per slice cardinalities averaged per segment, with empty segments linearly interpolated. */
+        INTERPOLATED_AVG,
+        /** The remaining strategies are answered by a single fused pass over the value bits. */
+        SUM,
+        AVG,
+        MIN,
+        MAX,
+        PERCENTILE
+    }
+
     public final MiruTimeRange timeRange;
     public final int divideTimeRangeIntoNSegments;
     public final String powerBitsFieldName;
@@ -23,6 +34,19 @@ public class AnomalyQuery implements Serializable {
     public final Map<String, MiruFilter> filters;
     public final String expansionField;
     public final List<String> expansionValues;
+    public final Strategy strategy;
+    public final double percentile;
+
+    public AnomalyQuery(MiruTimeRange timeRange,
+        int divideTimeRangeIntoNSegments,
+        String powerBitsFieldName,
+        MiruFilter constraintsFilter,
+        Map<String, MiruFilter> filters,
+        String expansionField,
+        List<String> expansionValues) {
+        this(timeRange, divideTimeRangeIntoNSegments, powerBitsFieldName, constraintsFilter, filters, expansionField, expansionValues,
+            Strategy.INTERPOLATED_AVG, 0d);
+    }
 
     @JsonCreator
     public AnomalyQuery(
@@ -32,7 +56,9 @@ public class AnomalyQuery implements Serializable {
         @JsonProperty("constraintsFilter") MiruFilter constraintsFilter,
         @JsonProperty("filters") Map<String, MiruFilter> filters,
         @JsonProperty("expansionField") String expansionField,
-        @JsonProperty("expansionValues") List<String> expansionValues) {
+        @JsonProperty("expansionValues") List<String> expansionValues,
+        @JsonProperty("strategy") Strategy strategy,
+        @JsonProperty("percentile") double percentile) {
 
         Preconditions.checkArgument(!MiruTimeRange.ALL_TIME.equals(timeRange), "Requires an explicit time range");
         this.timeRange = Preconditions.checkNotNull(timeRange);
@@ -43,6 +69,10 @@ public class AnomalyQuery implements Serializable {
         this.filters = Preconditions.checkNotNull(filters);
         this.expansionField = expansionField;
         this.expansionValues = expansionValues;
+        this.strategy = strategy != null ? strategy : Strategy.INTERPOLATED_AVG;
+        Preconditions.checkArgument(this.strategy != Strategy.PERCENTILE || (percentile > 0d && percentile <= 100d),
+            "Percentile must be in the range (0, 100]");
+        this.percentile = percentile;
     }
 
     @Override
@@ -54,6 +84,8 @@ public class AnomalyQuery implements Serializable {
             + ", filters=" + filters
             + ", expansionField=" + expansionField
             + ", expansionValues=" + expansionValues
+            + ", strategy=" + strategy
+            + ", percentile=" + percentile
             + '}';
     }
 
@@ -16,6 +16,7 @@ import com.jivesoftware.os.miru.api.field.MiruFieldType;
 import com.jivesoftware.os.miru.api.query.filter.MiruAuthzExpression;
 import com.jivesoftware.os.miru.api.query.filter.MiruFieldFilter;
 import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator.Aggregates;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmapsDebug;
 import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
@@ -202,6 +203,9 @@ public class AnomalyQuestion implements Question<AnomalyQuery, AnomalyAnswer, An
             powerBitsFieldId);
 
         Map<String, AnomalyAnswer.Waveform> waveforms = Maps.newHashMapWithExpectedSize(expand.size());
+        Map<String, Aggregates> aggregates = request.query.strategy != AnomalyQuery.Strategy.INTERPOLATED_AVG
+            ? Maps.newHashMapWithExpectedSize(expand.size())
+            : null;
         start = System.currentTimeMillis();
         int producedWaveformCount = 0;
         for (Map.Entry<String, MiruFilter> entry : expand.entrySet()) {
@@ -210,7 +214,14 @@ public class AnomalyQuestion implements Question<AnomalyQuery, AnomalyAnswer, An
                 BM waveformFiltered = aggregateUtil.filter("anomaly", bitmaps, context, entry.getValue(), solutionLog, null, lastId, -1, -1, stackBuffer);
 
                 BM rawAnswer = bitmaps.and(Arrays.asList(constrained, waveformFiltered));
-                if (!bitmaps.isEmpty(rawAnswer)) {
+                if (!bitmaps.isEmpty(rawAnswer) && request.query.strategy != AnomalyQuery.Strategy.INTERPOLATED_AVG) {
+                    Aggregates aggregate = getAggregates(solutionLog, bitmaps, indexes, powerBitIndexes, negative, rawAnswer);
+                    waveform = Anomaly.waveform(aggregate, request.query.strategy, request.query.percentile);
+                    aggregates.put(entry.getKey(), aggregate);
+                    if (solutionLog.isLogLevelEnabled(MiruSolutionLogLevel.DEBUG)) {
+                        solutionLog.log(MiruSolutionLogLevel.DEBUG, "anomaly name: {}, waveform: {}.", entry.getKey(), Arrays.toString(waveform.waveform));
+                    }
+                } else if (!bitmaps.isEmpty(rawAnswer)) {
                     long[] mergedWaveform = new long[indexes.length - 1];
 
                     if (positive.isSet()) {
@@ -246,7 +257,7 @@ public class AnomalyQuestion implements Question<AnomalyQuery, AnomalyAnswer, An
         solutionLog.log(MiruSolutionLogLevel.INFO, "anomaly answered: {} millis.", System.currentTimeMillis() - start);
         solutionLog.log(MiruSolutionLogLevel.INFO, "anomaly answered: {} iterations.", request.query.filters.size());
 
-        AnomalyAnswer result = new AnomalyAnswer(waveforms, resultsExhausted);
+        AnomalyAnswer result = new AnomalyAnswer(waveforms, aggregates, resultsExhausted);
 
         return new MiruPartitionResponse<>(result, solutionLog.asList());
     }
@@ -285,6 +296,32 @@ public class AnomalyQuestion implements Question<AnomalyQuery, AnomalyAnswer, An
         return waveform;
     }
 
+    private <BM extends IBM, IBM> Aggregates getAggregates(MiruSolutionLog solutionLog,
+        MiruBitmaps<BM, IBM> bitmaps,
+        int[] indexes,
+        List<BitmapAndLastId<BM>> powerBitIndexes,
+        BitmapAndLastId<BM> negative,
+        BM rawAnswer) throws Exception {
+
+        List<BM> answers = Lists.newArrayList();
+        for (int i = 0; i < 64; i++) {
+            BitmapAndLastId<BM> powerBitIndex = powerBitIndexes.get(i);
+            if (powerBitIndex.isSet()) {
+                answers.add(bitmaps.and(Arrays.asList(powerBitIndex.getBitmap(), rawAnswer)));
+            } else {
+                answers.add(null);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        Aggregates aggregates = anomaly.metricingAggregate(bitmaps, rawAnswer, negative.isSet() ? negative.getBitmap() : null, answers, indexes, 64,
+            request.query.strategy);
+        if (solutionLog.isLogLevelEnabled(MiruSolutionLogLevel.DEBUG)) {
+            solutionLog.log(MiruSolutionLogLevel.DEBUG, "anomaly aggregate: {} in {} millis.", request.query.strategy, System.currentTimeMillis() - start);
+        }
+        return aggregates;
+    }
+
     private <BM extends IBM, IBM> BitmapAndLastId<BM> fetchBits(
         MiruRequestContext<BM, IBM, ?> context,
         MiruSchema schema,
@@ -31,6 +31,8 @@ public class MiruSchema {
     private final Map<String, List<String>> bloom;
     private final Map<String, String[]> composite;
     private final Map<String, String[][]> compositePrefixWhitelist;
+    private final boolean columnarActivityStorage;
+    private final boolean termOrdinals;
 
     // Lookup fields
     private final Map<String, Integer> fieldNameToId;
@@ -56,6 +58,8 @@ public class MiruSchema {
         Map<String, List<String>> bloom,
         Map<String, String[]> composite,
         Map<String, String[][]> compositePrefixWhitelist,
+        boolean columnarActivityStorage,
+        boolean termOrdinals,
         ImmutableMap<String, Integer> fieldNameToId,
         ImmutableMap<String, Integer> propNameToId,
         ImmutableList<MiruFieldDefinition>[] fieldToPairedLatestFieldDefinitions,
@@ -74,6 +78,8 @@ public class MiruSchema {
         this.bloom = bloom;
         this.composite = composite;
         this.compositePrefixWhitelist = compositePrefixWhitelist;
+        this.columnarActivityStorage = columnarActivityStorage;
+        this.termOrdinals = termOrdinals;
         this.fieldNameToId = fieldNameToId;
         this.propNameToId = propNameToId;
         this.fieldToPairedLatestFieldDefinitions = fieldToPairedLatestFieldDefinitions;
@@ -94,7 +100,9 @@ public class MiruSchema {
         @JsonProperty("pairedLatest") Map<String, List<String>> pairedLatest,
         @JsonProperty("bloom") Map<String, List<String>> bloom,
         @JsonProperty("composite") Map<String, String[]> composite,
-        @JsonProperty("compositePrefixWhitelist") Map<String, String[][]> compositePrefixWhitelist) {
+        @JsonProperty("compositePrefixWhitelist") Map<String, String[][]> compositePrefixWhitelist,
+        @JsonProperty("columnarActivityStorage") Boolean columnarActivityStorage,
+        @JsonProperty("termOrdinals") Boolean termOrdinals) {
 
         return new Builder(name, version)
             .setFieldDefinitions(fieldDefinitions)
@@ -103,6 +111,8 @@ public class MiruSchema {
             .setBloom(bloom)
             .setComposite(composite)
             .setCompositeWhitelist(compositePrefixWhitelist)
+            .setColumnarActivityStorage(columnarActivityStorage != null && columnarActivityStorage)
+            .setTermOrdinals(termOrdinals != null && termOrdinals)
             .build();
     }
 
@@ -138,6 +148,20 @@ public class MiruSchema {
         return compositePrefixWhitelist;
     }
 
+    /**
+     * @return true if stored fields are kept in id ordered, compressed blocks per field rather than one row per activity and field
+     */
+    public boolean isColumnarActivityStorage() {
+        return columnarActivityStorage;
+    }
+
+    /**
+     * @return true if stored field terms are also kept as per-partition int ordinals, so that aggregation can dedupe on ints
+     */
+    public boolean isTermOrdinals() {
+        return termOrdinals;
+    }
+
     @JsonIgnore
     public int getFieldId(String fieldName) {
         Integer fieldId = fieldNameToId.get(fieldName);
@@ -236,6 +260,12 @@ public class MiruSchema {
             if (a.bloom != null ? !a.bloom.equals(b.bloom) : b.bloom != null) {
                 return false;
             }
+            if (a.columnarActivityStorage != b.columnarActivityStorage) {
+                return false;
+            }
+            if (a.termOrdinals != b.termOrdinals) {
+                return false;
+            }
             if (!deepEqualsComposite(a.composite, b.composite)) {
                     return false;
             }
@@ -301,6 +331,10 @@ public class MiruSchema {
     }
 
     public static boolean checkAdditive(MiruSchema a, MiruSchema b) {
+        if (a.columnarActivityStorage != b.columnarActivityStorage || a.termOrdinals != b.termOrdinals) {
+            // the activity index layout can only change with a rebuild
+            return false;
+        }
         if (b.fieldDefinitions.length < a.fieldDefinitions.length) {
             return false;
         }
@@ -324,6 +358,8 @@ public class MiruSchema {
         private Map<String, List<String>> bloom = Collections.emptyMap();
         private Map<String, String[]> composites = Collections.emptyMap();
         private Map<String, String[][]> compositePrefixWhitelist = Collections.emptyMap();
+        private boolean columnarActivityStorage = false;
+        private boolean termOrdinals = false;
 
         public Builder(String name, int version) {
             this.name = name;
@@ -368,6 +404,16 @@ public class MiruSchema {
             return this;
         }
 
+        public Builder setColumnarActivityStorage(boolean columnarActivityStorage) {
+            this.columnarActivityStorage = columnarActivityStorage;
+            return this;
+        }
+
+        public Builder setTermOrdinals(boolean termOrdinals) {
+            this.termOrdinals = termOrdinals;
+            return this;
+        }
+
         public MiruSchema build() {
             int largestFieldId = -1;
             for (MiruFieldDefinition fieldDefinition : fieldDefinitions) {
@@ -457,6 +503,8 @@ public class MiruSchema {
                 bloom,
                 composites,
                 compositePrefixWhitelist,
+                columnarActivityStorage,
+                termOrdinals,
                 ImmutableMap.copyOf(fieldNameToId),
                 ImmutableMap.copyOf(propNameToId),
                 fieldToPairedLatestFieldDefinitions,
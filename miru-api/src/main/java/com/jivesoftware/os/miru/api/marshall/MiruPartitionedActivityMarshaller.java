@@ -0,0 +1,49 @@
+package com.jivesoftware.os.miru.api.marshall;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
+import com.jivesoftware.os.miru.api.wal.MiruPartitionedActivityCodec;
+import com.jivesoftware.os.rcvs.marshall.api.TypeMarshaller;
+
+/**
+ * Reads partitioned activities stored either as json or with {@link MiruPartitionedActivityCodec}, and writes whichever
+ * format it was told to. Binary writes should only be enabled once every reader of the store understands them.
+ */
+public class MiruPartitionedActivityMarshaller implements TypeMarshaller<MiruPartitionedActivity> {
+
+    private final MiruPartitionedActivityCodec codec;
+    private final ObjectMapper objectMapper;
+    private final boolean writeBinary;
+
+    public MiruPartitionedActivityMarshaller(ObjectMapper objectMapper, boolean writeBinary) {
+        this.codec = new MiruPartitionedActivityCodec(objectMapper);
+        this.objectMapper = objectMapper;
+        this.writeBinary = writeBinary;
+    }
+
+    @Override
+    public MiruPartitionedActivity fromBytes(byte[] bytes) throws Exception {
+        if (MiruPartitionedActivityCodec.isBinary(bytes)) {
+            return codec.decode(bytes);
+        }
+        return objectMapper.readValue(bytes, MiruPartitionedActivity.class);
+    }
+
+    @Override
+    public byte[] toBytes(MiruPartitionedActivity partitionedActivity) throws Exception {
+        if (writeBinary) {
+            return codec.encode(partitionedActivity);
+        }
+        return objectMapper.writeValueAsBytes(partitionedActivity);
+    }
+
+    @Override
+    public MiruPartitionedActivity fromLexBytes(byte[] bytes) throws Exception {
+        return fromBytes(bytes);
+    }
+
+    @Override
+    public byte[] toLexBytes(MiruPartitionedActivity partitionedActivity) throws Exception {
+        return toBytes(partitionedActivity);
+    }
+}
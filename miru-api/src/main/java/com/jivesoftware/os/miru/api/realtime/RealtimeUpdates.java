@@ -0,0 +1,26 @@
+package com.jivesoftware.os.miru.api.realtime;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import java.util.List;
+
+/**
+ * Every realtime update a host gathered for one tenant, across partitions, during a single coalescing window.
+ */
+public class RealtimeUpdates {
+
+    public final MiruHost miruHost;
+    public final MiruTenantId tenantId;
+    public final List<RealtimeUpdate> updates;
+
+    @JsonCreator
+    public RealtimeUpdates(@JsonProperty("miruHost") MiruHost miruHost,
+        @JsonProperty("tenantId") MiruTenantId tenantId,
+        @JsonProperty("updates") List<RealtimeUpdate> updates) {
+        this.miruHost = miruHost;
+        this.tenantId = tenantId;
+        this.updates = updates;
+    }
+}
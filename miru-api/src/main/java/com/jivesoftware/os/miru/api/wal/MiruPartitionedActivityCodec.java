@@ -0,0 +1,453 @@
+package com.jivesoftware.os.miru.api.wal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.miru.api.activity.MiruActivity;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
+import com.jivesoftware.os.miru.api.activity.MiruReadEvent;
+import com.jivesoftware.os.miru.api.activity.TimeAndVersion;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.wal.MiruWALClient.StreamBatch;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary encoding for {@link MiruPartitionedActivity}s, either alone (one WAL row) or in batches (WAL writes and
+ * WAL streams). Strings and tenants are written once per payload and referenced by index after that, so a batch pays for
+ * each field name, authz and repeated value only once. Timestamps and versions are zigzag varints written as deltas from
+ * the previous activity, which keeps WAL-ordered batches small. Read events are rare and carry a filter, so they are
+ * embedded as json.
+ * <p>
+ * Every payload starts with a format version byte. Json always starts with '{' or '[', so callers can use {@link
+ * #isBinary(byte[])} to read both formats side by side.
+ */
+public class MiruPartitionedActivityCodec {
+
+    public static final byte VERSION = 1;
+
+    // codes are persisted, so only ever append
+    private static final MiruPartitionedActivity.Type[] TYPES = {
+        MiruPartitionedActivity.Type.ACTIVITY,
+        MiruPartitionedActivity.Type.REPAIR,
+        MiruPartitionedActivity.Type.REMOVE,
+        MiruPartitionedActivity.Type.READ,
+        MiruPartitionedActivity.Type.UNREAD,
+        MiruPartitionedActivity.Type.MARK_ALL_READ,
+        MiruPartitionedActivity.Type.END,
+        MiruPartitionedActivity.Type.BEGIN
+    };
+    private static final Map<MiruPartitionedActivity.Type, Integer> TYPE_CODES = Maps.newEnumMap(MiruPartitionedActivity.Type.class);
+
+    static {
+        for (int i = 0; i < TYPES.length; i++) {
+            TYPE_CODES.put(TYPES[i], i);
+        }
+    }
+
+    private static final int HAS_ACTIVITY = 1;
+    private static final int HAS_READ_EVENT = 2;
+
+    private final ObjectMapper mapper;
+
+    public MiruPartitionedActivityCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null && bytes.length > 0 && bytes[0] == VERSION;
+    }
+
+    public byte[] encode(MiruPartitionedActivity partitionedActivity) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        writeActivity(out, new Encoder(), partitionedActivity);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public MiruPartitionedActivity decode(byte[] bytes) throws IOException {
+        DataInputStream in = open(bytes);
+        return readActivity(in, new Decoder());
+    }
+
+    public byte[] encodeActivities(List<MiruPartitionedActivity> partitionedActivities) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(partitionedActivities.size() * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        Encoder encoder = new Encoder();
+        writeVarInt(out, partitionedActivities.size());
+        for (MiruPartitionedActivity partitionedActivity : partitionedActivities) {
+            writeActivity(out, encoder, partitionedActivity);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public List<MiruPartitionedActivity> decodeActivities(byte[] bytes) throws IOException {
+        DataInputStream in = open(bytes);
+        Decoder decoder = new Decoder();
+        int count = readVarInt(in);
+        List<MiruPartitionedActivity> partitionedActivities = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            partitionedActivities.add(readActivity(in, decoder));
+        }
+        return partitionedActivities;
+    }
+
+    public <C> byte[] encodeBatch(StreamBatch<MiruWALEntry, C> batch) throws IOException {
+        int size = batch.activities != null ? batch.activities.size() : 0;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + size * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        writeBytes(out, batch.cursor != null ? mapper.writeValueAsBytes(batch.cursor) : null);
+        out.writeBoolean(batch.endOfWAL);
+        if (batch.suppressed == null) {
+            writeVarInt(out, 0);
+        } else {
+            writeVarInt(out, batch.suppressed.size() + 1);
+            for (TimeAndVersion timeAndVersion : batch.suppressed) {
+                writeVarLong(out, zigzag(timeAndVersion.timestamp));
+                writeVarLong(out, zigzag(timeAndVersion.version));
+            }
+        }
+        if (batch.activities == null) {
+            writeVarInt(out, 0);
+        } else {
+            Encoder encoder = new Encoder();
+            writeVarInt(out, size + 1);
+            for (MiruWALEntry entry : batch.activities) {
+                writeActivity(out, encoder, entry.activity);
+                writeVarLong(out, zigzag(entry.collisionId - entry.activity.timestamp));
+                writeVarLong(out, zigzag(entry.version - encoder.lastVersion));
+                encoder.lastVersion = entry.version;
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public <C> StreamBatch<MiruWALEntry, C> decodeBatch(byte[] bytes, Class<C> cursorClass) throws IOException {
+        DataInputStream in = open(bytes);
+        byte[] cursorBytes = readBytes(in);
+        C cursor = cursorBytes != null ? mapper.readValue(cursorBytes, cursorClass) : null;
+        boolean endOfWAL = in.readBoolean();
+        Set<TimeAndVersion> suppressed = null;
+        int suppressedCount = readVarInt(in) - 1;
+        if (suppressedCount >= 0) {
+            suppressed = Sets.newHashSetWithExpectedSize(suppressedCount);
+            for (int i = 0; i < suppressedCount; i++) {
+                suppressed.add(new TimeAndVersion(unzigzag(readVarLong(in)), unzigzag(readVarLong(in))));
+            }
+        }
+        List<MiruWALEntry> entries = null;
+        int entryCount = readVarInt(in) - 1;
+        if (entryCount >= 0) {
+            Decoder decoder = new Decoder();
+            entries = Lists.newArrayListWithCapacity(entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                MiruPartitionedActivity partitionedActivity = readActivity(in, decoder);
+                long collisionId = partitionedActivity.timestamp + unzigzag(readVarLong(in));
+                long version = decoder.lastVersion + unzigzag(readVarLong(in));
+                decoder.lastVersion = version;
+                entries.add(new MiruWALEntry(collisionId, version, partitionedActivity));
+            }
+        }
+        return new StreamBatch<>(entries, cursor, endOfWAL, suppressed);
+    }
+
+    private void writeActivity(DataOutputStream out, Encoder encoder, MiruPartitionedActivity partitionedActivity) throws IOException {
+        writeVarInt(out, TYPE_CODES.get(partitionedActivity.type));
+        writeVarInt(out, zigzag(partitionedActivity.writerId));
+        writeVarInt(out, partitionedActivity.getPartitionId());
+        encoder.writeTenant(out, partitionedActivity.tenantId);
+        writeVarInt(out, zigzag(partitionedActivity.index));
+        writeVarLong(out, zigzag(partitionedActivity.timestamp - encoder.lastTimestamp));
+        writeVarLong(out, zigzag(partitionedActivity.clockTimestamp - encoder.lastClockTimestamp));
+        encoder.lastTimestamp = partitionedActivity.timestamp;
+        encoder.lastClockTimestamp = partitionedActivity.clockTimestamp;
+
+        MiruActivity activity = partitionedActivity.activity.orNull();
+        MiruReadEvent readEvent = partitionedActivity.readEvent.orNull();
+        out.writeByte((activity != null ? HAS_ACTIVITY : 0) | (readEvent != null ? HAS_READ_EVENT : 0));
+        if (activity != null) {
+            encoder.writeTenant(out, activity.tenantId);
+            writeVarLong(out, zigzag(activity.time - partitionedActivity.timestamp));
+            writeVarLong(out, zigzag(activity.version - partitionedActivity.clockTimestamp));
+            out.writeBoolean(activity.realtimeDelivery);
+            if (activity.authz == null) {
+                writeVarInt(out, 0);
+            } else {
+                writeVarInt(out, activity.authz.length + 1);
+                for (String authz : activity.authz) {
+                    encoder.writeString(out, authz);
+                }
+            }
+            writeValues(out, encoder, activity.fieldsValues);
+            writeValues(out, encoder, activity.propsValues);
+        }
+        if (readEvent != null) {
+            writeBytes(out, mapper.writeValueAsBytes(readEvent));
+        }
+    }
+
+    private MiruPartitionedActivity readActivity(DataInputStream in, Decoder decoder) throws IOException {
+        int typeCode = readVarInt(in);
+        if (typeCode >= TYPES.length) {
+            throw new IOException("Unknown activity type code: " + typeCode);
+        }
+        MiruPartitionedActivity.Type type = TYPES[typeCode];
+        int writerId = unzigzag(readVarInt(in));
+        int partitionId = readVarInt(in);
+        MiruTenantId tenantId = decoder.readTenant(in);
+        int index = unzigzag(readVarInt(in));
+        long timestamp = decoder.lastTimestamp + unzigzag(readVarLong(in));
+        long clockTimestamp = decoder.lastClockTimestamp + unzigzag(readVarLong(in));
+        decoder.lastTimestamp = timestamp;
+        decoder.lastClockTimestamp = clockTimestamp;
+
+        int flags = in.readUnsignedByte();
+        MiruActivity activity = null;
+        if ((flags & HAS_ACTIVITY) != 0) {
+            MiruTenantId activityTenantId = decoder.readTenant(in);
+            long time = timestamp + unzigzag(readVarLong(in));
+            long version = clockTimestamp + unzigzag(readVarLong(in));
+            boolean realtimeDelivery = in.readBoolean();
+            String[] authz = null;
+            int authzCount = readVarInt(in) - 1;
+            if (authzCount >= 0) {
+                authz = new String[authzCount];
+                for (int i = 0; i < authzCount; i++) {
+                    authz[i] = decoder.readString(in);
+                }
+            }
+            Map<String, List<String>> fieldsValues = readValues(in, decoder);
+            Map<String, List<String>> propsValues = readValues(in, decoder);
+            activity = new MiruActivity(activityTenantId, time, version, realtimeDelivery, authz, fieldsValues, propsValues);
+        }
+        MiruReadEvent readEvent = null;
+        if ((flags & HAS_READ_EVENT) != 0) {
+            readEvent = mapper.readValue(readBytes(in), MiruReadEvent.class);
+        }
+        return MiruPartitionedActivity.fromJson(type,
+            writerId,
+            partitionId,
+            tenantId != null ? tenantId.getBytes() : null,
+            index,
+            timestamp,
+            clockTimestamp,
+            activity,
+            readEvent);
+    }
+
+    private static void writeValues(DataOutputStream out, Encoder encoder, Map<String, List<String>> values) throws IOException {
+        if (values == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, values.size() + 1);
+        for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+            encoder.writeString(out, entry.getKey());
+            List<String> list = entry.getValue();
+            if (list == null) {
+                writeVarInt(out, 0);
+            } else {
+                writeVarInt(out, list.size() + 1);
+                for (String value : list) {
+                    encoder.writeString(out, value);
+                }
+            }
+        }
+    }
+
+    private static Map<String, List<String>> readValues(DataInputStream in, Decoder decoder) throws IOException {
+        int count = readVarInt(in) - 1;
+        if (count < 0) {
+            return null;
+        }
+        Map<String, List<String>> values = Maps.newHashMapWithExpectedSize(count);
+        for (int i = 0; i < count; i++) {
+            String key = decoder.readString(in);
+            int size = readVarInt(in) - 1;
+            List<String> list = null;
+            if (size >= 0) {
+                list = Lists.newArrayListWithCapacity(size);
+                for (int j = 0; j < size; j++) {
+                    list.add(decoder.readString(in));
+                }
+            }
+            values.put(key, list);
+        }
+        return values;
+    }
+
+    /**
+     * References are 0 for null, 1 for a new entry that follows inline, and otherwise index + 2 into the entries seen so far.
+     */
+    private static class Encoder {
+
+        private final Map<String, Integer> strings = Maps.newHashMap();
+        private final Map<MiruTenantId, Integer> tenants = Maps.newHashMap();
+        private long lastTimestamp;
+        private long lastClockTimestamp;
+        private long lastVersion;
+
+        private void writeString(DataOutputStream out, String value) throws IOException {
+            if (value == null) {
+                writeVarInt(out, 0);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarInt(out, index + 2);
+            } else {
+                strings.put(value, strings.size());
+                writeVarInt(out, 1);
+                writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        private void writeTenant(DataOutputStream out, MiruTenantId tenantId) throws IOException {
+            if (tenantId == null) {
+                writeVarInt(out, 0);
+                return;
+            }
+            Integer index = tenants.get(tenantId);
+            if (index != null) {
+                writeVarInt(out, index + 2);
+            } else {
+                tenants.put(tenantId, tenants.size());
+                writeVarInt(out, 1);
+                writeBytes(out, tenantId.getBytes());
+            }
+        }
+    }
+
+    private static class Decoder {
+
+        private final List<String> strings = Lists.newArrayList();
+        private final List<MiruTenantId> tenants = Lists.newArrayList();
+        private long lastTimestamp;
+        private long lastClockTimestamp;
+        private long lastVersion;
+
+        private String readString(DataInputStream in) throws IOException {
+            int ref = readVarInt(in);
+            if (ref == 0) {
+                return null;
+            } else if (ref == 1) {
+                String value = new String(readBytes(in), StandardCharsets.UTF_8);
+                strings.add(value);
+                return value;
+            } else if (ref - 2 < strings.size()) {
+                return strings.get(ref - 2);
+            }
+            throw new IOException("String reference " + ref + " is out of bounds for size " + strings.size());
+        }
+
+        private MiruTenantId readTenant(DataInputStream in) throws IOException {
+            int ref = readVarInt(in);
+            if (ref == 0) {
+                return null;
+            } else if (ref == 1) {
+                MiruTenantId tenantId = new MiruTenantId(readBytes(in));
+                tenants.add(tenantId);
+                return tenantId;
+            } else if (ref - 2 < tenants.size()) {
+                return tenants.get(ref - 2);
+            }
+            throw new IOException("Tenant reference " + ref + " is out of bounds for size " + tenants.size());
+        }
+    }
+
+    private static DataInputStream open(byte[] bytes) throws IOException {
+        if (!isBinary(bytes)) {
+            throw new IOException("Unsupported activity format version: " + (bytes == null || bytes.length == 0 ? "empty" : String.valueOf(bytes[0])));
+        }
+        return new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            writeVarInt(out, 0);
+        } else {
+            writeVarInt(out, bytes.length + 1);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = readVarInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varlong");
+    }
+}
@@ -3,6 +3,7 @@ package com.jivesoftware.os.miru.api.wal;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
 import com.jivesoftware.os.miru.api.activity.MiruReadEvent;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
 import com.jivesoftware.os.miru.api.activity.TimeAndVersion;
 import com.jivesoftware.os.miru.api.base.MiruStreamId;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
@@ -68,6 +69,13 @@ public interface MiruWALClient<C extends MiruCursor<C, S>, S extends MiruSipCurs
     StreamBatch<MiruWALEntry, S> sipActivity(MiruTenantId tenantId,
         MiruPartitionId partitionId, S cursor, Set<TimeAndVersion> lastSeen, int batchSize) throws Exception;
 
+    /**
+     * Waits up to the given timeout for activity to be written, and returns the partitions that were written since the
+     * previous call. Returns null when the WAL can no longer tell which partitions were written, in which case callers
+     * should assume they all were.
+     */
+    List<TenantAndPartition> pollActivityNotifications(long timeoutMillis) throws Exception;
+
     class StreamBatch<T, C> {
 
         public List<T> activities; // non final for json ser-der
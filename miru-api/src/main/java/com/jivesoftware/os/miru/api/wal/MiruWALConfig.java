@@ -17,4 +17,7 @@ public interface MiruWALConfig extends Config {
 
     @BooleanDefault(false)
     boolean getSecondaryAmzaWAL();
+
+    @BooleanDefault(false)
+    boolean getBinaryActivityWrites(); // enable only once every wal host reads MiruPartitionedActivityCodec
 }
@@ -0,0 +1,36 @@
+package com.jivesoftware.os.miru.api.wal;
+
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
+import java.util.List;
+
+/**
+ * The partitions written on a single WAL host since a notification cursor. The epoch identifies the lifetime of the host's
+ * notifier, and a reset means the host can no longer say which partitions were written since the cursor.
+ */
+public class MiruWALNotifications {
+
+    public long epoch; // non final for json ser-der
+    public long sequence; // non final for json ser-der
+    public boolean reset; // non final for json ser-der
+    public List<TenantAndPartition> partitions; // non final for json ser-der
+
+    public MiruWALNotifications() {
+    }
+
+    public MiruWALNotifications(long epoch, long sequence, boolean reset, List<TenantAndPartition> partitions) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.reset = reset;
+        this.partitions = partitions;
+    }
+
+    @Override
+    public String toString() {
+        return "MiruWALNotifications{" +
+            "epoch=" + epoch +
+            ", sequence=" + sequence +
+            ", reset=" + reset +
+            ", partitions=" + partitions +
+            '}';
+    }
+}
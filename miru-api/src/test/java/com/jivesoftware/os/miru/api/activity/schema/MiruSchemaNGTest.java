@@ -195,6 +195,44 @@ public class MiruSchemaNGTest {
         assertTrue(MiruSchema.checkAdditive(a, b));
     }
 
+    @Test
+    public void testColumnarActivityStorage() throws Exception {
+        MiruFieldDefinition[] fieldDefinitions = {
+            new MiruFieldDefinition(0, "a", Type.singleTerm, Prefix.NONE),
+            new MiruFieldDefinition(1, "b", Type.singleTerm, Prefix.NONE)
+        };
+        MiruSchema a = serdes(new Builder("test", 1)
+            .setFieldDefinitions(fieldDefinitions)
+            .build());
+        MiruSchema b = serdes(new Builder("test", 1)
+            .setFieldDefinitions(fieldDefinitions)
+            .setColumnarActivityStorage(true)
+            .build());
+        assertFalse(a.isColumnarActivityStorage());
+        assertTrue(b.isColumnarActivityStorage());
+        assertTrue(MiruSchema.checkEquals(a, b));
+        assertFalse(MiruSchema.deepEquals(a, b));
+        assertFalse(MiruSchema.checkAdditive(a, b));
+    }
+
+    @Test
+    public void testTermOrdinals() throws Exception {
+        MiruFieldDefinition[] fieldDefinitions = {
+            new MiruFieldDefinition(0, "a", Type.singleTerm, Prefix.NONE)
+        };
+        MiruSchema a = serdes(new Builder("test", 1)
+            .setFieldDefinitions(fieldDefinitions)
+            .build());
+        MiruSchema b = serdes(new Builder("test", 1)
+            .setFieldDefinitions(fieldDefinitions)
+            .setTermOrdinals(true)
+            .build());
+        assertFalse(a.isTermOrdinals());
+        assertTrue(b.isTermOrdinals());
+        assertFalse(MiruSchema.deepEquals(a, b));
+        assertFalse(MiruSchema.checkAdditive(a, b));
+    }
+
     @Test
     public void testComposite() throws Exception {
         MiruSchema schema1 = new Builder("test", 1)
@@ -0,0 +1,117 @@
+package com.jivesoftware.os.miru.api.wal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.miru.api.activity.MiruActivity;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivityFactory;
+import com.jivesoftware.os.miru.api.activity.TimeAndVersion;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.marshall.MiruPartitionedActivityMarshaller;
+import com.jivesoftware.os.miru.api.wal.MiruWALClient.StreamBatch;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class MiruPartitionedActivityCodecTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final MiruPartitionedActivityCodec codec = new MiruPartitionedActivityCodec(mapper);
+    private final MiruPartitionedActivityFactory factory = new MiruPartitionedActivityFactory();
+    private final MiruTenantId tenantId = new MiruTenantId("tenant1".getBytes(StandardCharsets.UTF_8));
+    private final MiruPartitionId partitionId = MiruPartitionId.of(7);
+
+    @Test
+    public void testActivityRoundTrip() throws Exception {
+        MiruPartitionedActivity expected = factory.activity(3, partitionId, 42, activity(1_234_567_890_123L, "user1"));
+
+        byte[] bytes = codec.encode(expected);
+        assertTrue(MiruPartitionedActivityCodec.isBinary(bytes));
+        assertFalse(MiruPartitionedActivityCodec.isBinary(mapper.writeValueAsBytes(expected)));
+
+        assertActivityEquals(codec.decode(bytes), expected);
+    }
+
+    @Test
+    public void testMarshallerReadsBothFormats() throws Exception {
+        MiruPartitionedActivity expected = factory.activity(3, partitionId, 42, activity(1_234_567_890_123L, "user1"));
+        MiruPartitionedActivityMarshaller jsonMarshaller = new MiruPartitionedActivityMarshaller(mapper, false);
+        MiruPartitionedActivityMarshaller binaryMarshaller = new MiruPartitionedActivityMarshaller(mapper, true);
+
+        byte[] jsonBytes = jsonMarshaller.toBytes(expected);
+        byte[] binaryBytes = binaryMarshaller.toBytes(expected);
+        assertTrue(binaryBytes.length < jsonBytes.length / 2, "binary size: " + binaryBytes.length + " json size: " + jsonBytes.length);
+
+        assertActivityEquals(binaryMarshaller.fromBytes(jsonBytes), expected);
+        assertActivityEquals(jsonMarshaller.fromBytes(binaryBytes), expected);
+    }
+
+    @Test
+    public void testBatchRoundTrip() throws Exception {
+        List<MiruWALEntry> entries = Lists.newArrayList();
+        MiruPartitionedActivity begin = factory.begin(3, partitionId, tenantId, 0);
+        entries.add(new MiruWALEntry(begin.writerId, begin.clockTimestamp, begin));
+        for (int i = 0; i < 10; i++) {
+            MiruPartitionedActivity partitionedActivity = factory.activity(3, partitionId, i + 1, activity(1_000_000L + i * 3, "user" + (i % 3)));
+            entries.add(new MiruWALEntry(partitionedActivity.timestamp, partitionedActivity.activity.get().version, partitionedActivity));
+        }
+        StreamBatch<MiruWALEntry, Long> expected = new StreamBatch<>(entries, 1_000_027L, true,
+            Sets.newHashSet(new TimeAndVersion(999_999L, 5L)));
+
+        StreamBatch<MiruWALEntry, Long> batch = codec.decodeBatch(codec.encodeBatch(expected), Long.class);
+        assertEquals(batch.cursor, expected.cursor);
+        assertEquals(batch.endOfWAL, expected.endOfWAL);
+        assertEquals(batch.suppressed, expected.suppressed);
+        assertEquals(batch.activities.size(), entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(batch.activities.get(i).collisionId, entries.get(i).collisionId);
+            assertEquals(batch.activities.get(i).version, entries.get(i).version);
+            assertActivityEquals(batch.activities.get(i).activity, entries.get(i).activity);
+        }
+
+        List<MiruPartitionedActivity> partitionedActivities = Lists.transform(entries, entry -> entry.activity);
+        List<MiruPartitionedActivity> decoded = codec.decodeActivities(codec.encodeActivities(partitionedActivities));
+        assertEquals(decoded.size(), partitionedActivities.size());
+        for (int i = 0; i < decoded.size(); i++) {
+            assertActivityEquals(decoded.get(i), partitionedActivities.get(i));
+        }
+    }
+
+    private MiruActivity activity(long time, String user) {
+        return new MiruActivity.Builder(tenantId, time, 17L, false, new String[] { "authz1", "authz2" })
+            .putFieldValue("user", user)
+            .putFieldValue("verb", "created")
+            .putFieldValue("tags", "a")
+            .putFieldValue("tags", "b")
+            .putPropValue("title", "Hello " + user)
+            .build();
+    }
+
+    private void assertActivityEquals(MiruPartitionedActivity actual, MiruPartitionedActivity expected) {
+        assertEquals(actual.type, expected.type);
+        assertEquals(actual.writerId, expected.writerId);
+        assertEquals(actual.partitionId, expected.partitionId);
+        assertEquals(actual.tenantId, expected.tenantId);
+        assertEquals(actual.index, expected.index);
+        assertEquals(actual.timestamp, expected.timestamp);
+        assertEquals(actual.clockTimestamp, expected.clockTimestamp);
+        assertEquals(actual.activity.isPresent(), expected.activity.isPresent());
+        if (expected.activity.isPresent()) {
+            MiruActivity actualActivity = actual.activity.get();
+            MiruActivity expectedActivity = expected.activity.get();
+            assertEquals(actualActivity.tenantId, expectedActivity.tenantId);
+            assertEquals(actualActivity.time, expectedActivity.time);
+            assertEquals(actualActivity.version, expectedActivity.version);
+            assertEquals(actualActivity.realtimeDelivery, expectedActivity.realtimeDelivery);
+            assertEquals(actualActivity.authz, expectedActivity.authz);
+            assertEquals(actualActivity.fieldsValues, expectedActivity.fieldsValues);
+            assertEquals(actualActivity.propsValues, expectedActivity.propsValues);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.jivesoftware.os.miru.benchmarks;
+
+import com.jivesoftware.os.filer.io.api.StackBuffer;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
+import com.jivesoftware.os.miru.plugin.index.IndexTx;
+import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndex;
+import java.util.List;
+
+/**
+ * Read-only in-memory inverted index so benchmarks measure the bitmaps and not the storage layer.
+ */
+class BenchmarkInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<BM, IBM> {
+
+    private final BM bitmap;
+    private final int lastId;
+
+    BenchmarkInvertedIndex(MiruBitmaps<BM, IBM> bitmaps, BM bitmap) {
+        this.bitmap = bitmap;
+        this.lastId = bitmaps.lastSetBit(bitmap);
+    }
+
+    @Override
+    public void getIndex(BitmapAndLastId<BM> container, StackBuffer stackBuffer) throws Exception {
+        container.set(bitmap, lastId);
+    }
+
+    @Override
+    public <R> R txIndex(IndexTx<R, IBM> tx, StackBuffer stackBuffer) throws Exception {
+        return tx.tx(bitmap, null, -1, stackBuffer);
+    }
+
+    @Override
+    public int lastId(StackBuffer stackBuffer) throws Exception {
+        return lastId;
+    }
+
+    @Override
+    public void set(StackBuffer stackBuffer, int... ids) throws Exception {
+        throw new UnsupportedOperationException("Read only");
+    }
+
+    @Override
+    public void remove(StackBuffer stackBuffer, int... ids) throws Exception {
+        throw new UnsupportedOperationException("Read only");
+    }
+
+    @Override
+    public boolean setIfEmpty(StackBuffer stackBuffer, int id) throws Exception {
+        throw new UnsupportedOperationException("Read only");
+    }
+
+    @Override
+    public void andNotToSourceSize(List<IBM> masks, StackBuffer stackBuffer) throws Exception {
+        throw new UnsupportedOperationException("Read only");
+    }
+
+    @Override
+    public void orToSourceSize(IBM mask, StackBuffer stackBuffer) throws Exception {
+        throw new UnsupportedOperationException("Read only");
+    }
+
+    @Override
+    public void andNot(IBM mask, StackBuffer stackBuffer) throws Exception {
+        throw new UnsupportedOperationException("Read only");
+    }
+
+    @Override
+    public void or(IBM mask, StackBuffer stackBuffer) throws Exception {
+        throw new UnsupportedOperationException("Read only");
+    }
+}
@@ -0,0 +1,37 @@
+package com.jivesoftware.os.miru.benchmarks;
+
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+
+/**
+ * The bitmap implementations under test. Resolved reflectively because roaring5 and roaring6 cannot share a classpath,
+ * so whichever bitmaps module the active build profile pulled in is the one that gets measured.
+ */
+public enum BitmapsBackend {
+
+    roaring("MiruBitmapsRoaring"),
+    roaringBuffer("buffer.MiruBitmapsRoaringBuffer");
+
+    private static final String[] PACKAGES = {
+        "com.jivesoftware.os.miru.bitmaps.roaring6.",
+        "com.jivesoftware.os.miru.bitmaps.roaring5."
+    };
+
+    private final String simpleName;
+
+    BitmapsBackend(String simpleName) {
+        this.simpleName = simpleName;
+    }
+
+    public MiruBitmaps<?, ?> create() throws Exception {
+        for (String pkg : PACKAGES) {
+            Class<?> bitmapsClass;
+            try {
+                bitmapsClass = Class.forName(pkg + simpleName);
+            } catch (ClassNotFoundException e) {
+                continue;
+            }
+            return (MiruBitmaps<?, ?>) bitmapsClass.newInstance();
+        }
+        throw new IllegalStateException("No bitmaps implementation on the classpath for " + name());
+    }
+}
@@ -0,0 +1,150 @@
+package com.jivesoftware.os.miru.benchmarks;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.jivesoftware.os.filer.io.api.StackBuffer;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
+import com.jivesoftware.os.miru.plugin.index.MiruMultiTxIndex;
+import com.jivesoftware.os.miru.plugin.index.MiruTxIndex;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Pre-built inputs for a single bitmaps implementation, generic so the benchmark states don't have to be.
+ */
+class BitmapsFixture<BM extends IBM, IBM> {
+
+    private final MiruBitmaps<BM, IBM> bitmaps;
+    private final int largestId;
+    private final BM[] terms;
+    private final List<MiruTxIndex<IBM>> txIndexes;
+    private final MiruMultiTxIndex<IBM> multiTxIndex;
+    private final BM timeRange;
+    private final BenchmarkInvertedIndex<BM, IBM> removalIndex;
+    private final int[][] indexBoundaries;
+    private final BM union;
+    private final int[] unionKeys;
+    private final int[] extractKeys;
+    private final byte[][] unionAtoms;
+
+    static BitmapsFixture<?, ?> create(BitmapsBackend backend,
+        CardinalityDistribution distribution,
+        int largestId,
+        int numTerms,
+        int numSegments,
+        long seed) throws Exception {
+        return create(backend.create(), distribution, largestId, numTerms, numSegments, seed);
+    }
+
+    private static <BM extends IBM, IBM> BitmapsFixture<BM, IBM> create(MiruBitmaps<BM, IBM> bitmaps,
+        CardinalityDistribution distribution,
+        int largestId,
+        int numTerms,
+        int numSegments,
+        long seed) throws Exception {
+        return new BitmapsFixture<>(bitmaps, distribution, largestId, numTerms, numSegments, seed);
+    }
+
+    private BitmapsFixture(MiruBitmaps<BM, IBM> bitmaps,
+        CardinalityDistribution distribution,
+        int largestId,
+        int numTerms,
+        int numSegments,
+        long seed) throws Exception {
+
+        this.bitmaps = bitmaps;
+        this.largestId = largestId;
+
+        Random random = new Random(seed);
+        this.terms = bitmaps.createArrayOf(numTerms);
+        this.txIndexes = Lists.newArrayListWithCapacity(numTerms);
+        for (int i = 0; i < numTerms; i++) {
+            BM term = bitmaps.createWithBits(distribution.generate(random, largestId));
+            terms[i] = term;
+            txIndexes.add(new BenchmarkInvertedIndex<>(bitmaps, term));
+        }
+        this.multiTxIndex = (tx, stackBuffer) -> {
+            for (int i = 0; i < terms.length; i++) {
+                tx.tx(i, bitmaps.lastSetBit(terms[i]), terms[i], null, -1, stackBuffer);
+            }
+        };
+
+        this.timeRange = bitmaps.createWithBits(CardinalityDistribution.denseTimeRange.generate(random, largestId));
+        this.removalIndex = new BenchmarkInvertedIndex<>(bitmaps,
+            bitmaps.createWithBits(CardinalityDistribution.sparseAuthz.generate(random, largestId)));
+
+        int[] boundaries = new int[numSegments + 1];
+        for (int i = 0; i <= numSegments; i++) {
+            boundaries[i] = (int) ((long) largestId * i / numSegments);
+        }
+        this.indexBoundaries = new int[][] { boundaries };
+
+        StackBuffer stackBuffer = new StackBuffer();
+        this.union = bitmaps.orTx(txIndexes, stackBuffer);
+        this.unionKeys = bitmaps.keys(union);
+        this.extractKeys = new int[(unionKeys.length + 1) / 2];
+        for (int i = 0; i < extractKeys.length; i++) {
+            extractKeys[i] = unionKeys[i * 2];
+        }
+
+        ByteArrayDataOutput[] outputs = new ByteArrayDataOutput[unionKeys.length];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = ByteStreams.newDataOutput();
+        }
+        bitmaps.serializeAtomized(union, unionKeys, outputs);
+        this.unionAtoms = new byte[outputs.length][];
+        for (int i = 0; i < outputs.length; i++) {
+            unionAtoms[i] = outputs[i].toByteArray();
+        }
+    }
+
+    Object orTx(StackBuffer stackBuffer) throws Exception {
+        return bitmaps.orTx(txIndexes, stackBuffer);
+    }
+
+    Object andTx(StackBuffer stackBuffer) throws Exception {
+        return bitmaps.andTx(txIndexes, stackBuffer);
+    }
+
+    long[] andNotMultiTx(StackBuffer stackBuffer) throws Exception {
+        long[] counts = new long[terms.length];
+        bitmaps.andNotMultiTx(timeRange, multiTxIndex, counts, Optional.absent(), stackBuffer);
+        return counts;
+    }
+
+    long[][] boundedCardinalities() {
+        long[][] rawWaveform = new long[1][indexBoundaries[0].length - 1];
+        for (BM term : terms) {
+            bitmaps.boundedCardinalities(term, indexBoundaries, rawWaveform);
+        }
+        return rawWaveform;
+    }
+
+    Object buildIndexMask(StackBuffer stackBuffer) throws Exception {
+        return bitmaps.buildIndexMask(largestId - 1, removalIndex, new BitmapAndLastId<>(), stackBuffer);
+    }
+
+    Object deserializeAtomized() throws Exception {
+        BitmapAndLastId<BM> container = new BitmapAndLastId<>();
+        bitmaps.deserializeAtomized(container, atomStream -> {
+            for (int i = 0; i < unionKeys.length; i++) {
+                if (!atomStream.stream(unionKeys[i], ByteStreams.newDataInput(unionAtoms[i]))) {
+                    return false;
+                }
+            }
+            return true;
+        });
+        return container.getBitmap();
+    }
+
+    Object[] split() {
+        return bitmaps.split(union);
+    }
+
+    Object[] extract() {
+        return bitmaps.extract(union, extractKeys);
+    }
+}
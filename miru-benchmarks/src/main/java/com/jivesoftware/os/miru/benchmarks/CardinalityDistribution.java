@@ -0,0 +1,69 @@
+package com.jivesoftware.os.miru.benchmarks;
+
+import gnu.trove.list.array.TIntArrayList;
+import java.util.Random;
+
+/**
+ * Bit distributions modeled on the indexes a reader actually hosts, from sparse authz bitmaps through dense time range masks.
+ */
+public enum CardinalityDistribution {
+
+    /**
+     * A handful of scattered ids, e.g. a private place or a single user's authz tag.
+     */
+    sparseAuthz {
+        @Override
+        int[] generate(Random random, int largestId) {
+            return uniform(random, largestId, 0.0005);
+        }
+    },
+    /**
+     * Moderately popular term with no locality, e.g. a tag or an author.
+     */
+    uniformTerm {
+        @Override
+        int[] generate(Random random, int largestId) {
+            return uniform(random, largestId, 0.02);
+        }
+    },
+    /**
+     * Bursty activity clustered in short runs, e.g. a busy container or a thread of replies.
+     */
+    clusteredContainer {
+        @Override
+        int[] generate(Random random, int largestId) {
+            TIntArrayList ids = new TIntArrayList();
+            int id = random.nextInt(1_000);
+            while (id < largestId) {
+                int burst = 1 + random.nextInt(64);
+                for (int i = 0; i < burst && id < largestId; i++) {
+                    ids.add(id);
+                    id += 1 + random.nextInt(3);
+                }
+                id += 1_000 + random.nextInt(20_000);
+            }
+            return ids.toArray();
+        }
+    },
+    /**
+     * Nearly every id in range with scattered holes left by removals, e.g. a time range or index mask.
+     */
+    denseTimeRange {
+        @Override
+        int[] generate(Random random, int largestId) {
+            return uniform(random, largestId, 0.99);
+        }
+    };
+
+    abstract int[] generate(Random random, int largestId);
+
+    private static int[] uniform(Random random, int largestId, double density) {
+        TIntArrayList ids = new TIntArrayList((int) (largestId * density) + 1);
+        for (int id = 0; id < largestId; id++) {
+            if (random.nextDouble() < density) {
+                ids.add(id);
+            }
+        }
+        return ids.toArray();
+    }
+}
@@ -0,0 +1,63 @@
+package com.jivesoftware.os.miru.benchmarks;
+
+import com.jivesoftware.os.filer.io.api.StackBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Term aggregation as driven by filters and aggregate counts: orTx, andTx and andNotMultiTx over a set of term indexes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MiruBitmapsAggregationBenchmark {
+
+    @Param({ "roaring", "roaringBuffer" })
+    public BitmapsBackend backend;
+
+    @Param({ "sparseAuthz", "uniformTerm", "clusteredContainer", "denseTimeRange" })
+    public CardinalityDistribution distribution;
+
+    @Param({ "1000000" })
+    public int largestId;
+
+    @Param({ "2", "16" })
+    public int numTerms;
+
+    private BitmapsFixture<?, ?> fixture;
+    private StackBuffer stackBuffer;
+
+    @Setup
+    public void setup() throws Exception {
+        fixture = BitmapsFixture.create(backend, distribution, largestId, numTerms, 30, 1234L);
+        stackBuffer = new StackBuffer();
+    }
+
+    @Benchmark
+    public Object orTx() throws Exception {
+        return fixture.orTx(stackBuffer);
+    }
+
+    @Benchmark
+    public Object andTx() throws Exception {
+        return fixture.andTx(stackBuffer);
+    }
+
+    @Benchmark
+    public long[] andNotMultiTx() throws Exception {
+        return fixture.andNotMultiTx(stackBuffer);
+    }
+}
@@ -0,0 +1,57 @@
+package com.jivesoftware.os.miru.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Atomized storage round trips as driven by the LAB inverted index: deserializeAtomized, split and extract.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MiruBitmapsAtomizedBenchmark {
+
+    @Param({ "roaring", "roaringBuffer" })
+    public BitmapsBackend backend;
+
+    @Param({ "sparseAuthz", "uniformTerm", "clusteredContainer", "denseTimeRange" })
+    public CardinalityDistribution distribution;
+
+    @Param({ "1000000", "10000000" })
+    public int largestId;
+
+    private BitmapsFixture<?, ?> fixture;
+
+    @Setup
+    public void setup() throws Exception {
+        fixture = BitmapsFixture.create(backend, distribution, largestId, 1, 30, 1234L);
+    }
+
+    @Benchmark
+    public Object deserializeAtomized() throws Exception {
+        return fixture.deserializeAtomized();
+    }
+
+    @Benchmark
+    public Object[] split() throws Exception {
+        return fixture.split();
+    }
+
+    @Benchmark
+    public Object[] extract() throws Exception {
+        return fixture.extract();
+    }
+}
@@ -0,0 +1,61 @@
+package com.jivesoftware.os.miru.benchmarks;
+
+import com.jivesoftware.os.filer.io.api.StackBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Waveform and mask construction as driven by analytics and trending: boundedCardinalities per term and buildIndexMask.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MiruBitmapsMaskBenchmark {
+
+    @Param({ "roaring", "roaringBuffer" })
+    public BitmapsBackend backend;
+
+    @Param({ "sparseAuthz", "uniformTerm", "clusteredContainer", "denseTimeRange" })
+    public CardinalityDistribution distribution;
+
+    @Param({ "1000000" })
+    public int largestId;
+
+    @Param({ "16" })
+    public int numTerms;
+
+    @Param({ "30", "720" })
+    public int numSegments;
+
+    private BitmapsFixture<?, ?> fixture;
+    private StackBuffer stackBuffer;
+
+    @Setup
+    public void setup() throws Exception {
+        fixture = BitmapsFixture.create(backend, distribution, largestId, numTerms, numSegments, 1234L);
+        stackBuffer = new StackBuffer();
+    }
+
+    @Benchmark
+    public long[][] boundedCardinalities() throws Exception {
+        return fixture.boundedCardinalities();
+    }
+
+    @Benchmark
+    public Object buildIndexMask() throws Exception {
+        return fixture.buildIndexMask(stackBuffer);
+    }
+}
@@ -0,0 +1,164 @@
+package com.jivesoftware.os.miru.bitmaps.roaring6;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitSlicedAggregator.Aggregates;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.roaringbitmap.RoaringBitmap;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class MiruBitSlicedAggregatorTest {
+
+    @Test
+    public void testAggregateMatchesBruteForce() throws Exception {
+        MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+        Random random = new Random(1234);
+        int numBits = 20;
+        int numIds = 300_000; // spans several 2^16 windows
+        int[] indexes = { 1_000, 50_000, 65_536, 140_000, 140_000, 299_000 };
+
+        long[] values = new long[numIds];
+        RoaringBitmap answer = new RoaringBitmap();
+        RoaringBitmap negative = new RoaringBitmap();
+        List<RoaringBitmap> slices = Lists.newArrayList();
+        for (int i = 0; i < numBits; i++) {
+            slices.add(new RoaringBitmap());
+        }
+        for (int id = 0; id < numIds; id++) {
+            if (random.nextInt(3) == 0) {
+                continue;
+            }
+            answer.add(id);
+            long value = random.nextInt(1 << numBits);
+            for (int i = 0; i < numBits; i++) {
+                if ((value & (1L << i)) != 0) {
+                    slices.get(i).add(id);
+                }
+            }
+            if (random.nextInt(4) == 0) {
+                negative.add(id);
+                value = -value;
+            }
+            values[id] = value;
+        }
+        // negative ids outside the answer must not matter
+        negative.add(numIds + 7);
+
+        Aggregates aggregates = new MiruBitSlicedAggregator().aggregate(bitmaps, answer, negative, slices, indexes, numBits, true);
+
+        for (int b = 0; b < indexes.length - 1; b++) {
+            long count = 0;
+            long sum = 0;
+            long min = 0;
+            long max = 0;
+            long[] bucketValues = new long[Math.max(0, indexes[b + 1] - indexes[b])];
+            for (int id = indexes[b]; id < indexes[b + 1]; id++) {
+                if (answer.contains(id)) {
+                    long value = values[id];
+                    min = count == 0 ? value : Math.min(min, value);
+                    max = count == 0 ? value : Math.max(max, value);
+                    sum += value;
+                    bucketValues[(int) count] = value;
+                    count++;
+                }
+            }
+            assertEquals(aggregates.count[b], count, "bucket " + b);
+            assertEquals(aggregates.sum[b], sum, "bucket " + b);
+            assertEquals(aggregates.min[b], min, "bucket " + b);
+            assertEquals(aggregates.max[b], max, "bucket " + b);
+            assertEquals(aggregates.avg()[b], count > 0 ? sum / count : 0, "bucket " + b);
+
+            if (count > 0) {
+                long[] sorted = Arrays.copyOf(bucketValues, (int) count);
+                Arrays.sort(sorted);
+                for (double percentile : new double[] { 1, 50, 90, 99, 100 }) {
+                    long expected = sorted[(int) Math.ceil(percentile / 100d * count) - 1];
+                    long actual = aggregates.percentile(percentile)[b];
+                    long tolerance = Math.max(1, Math.abs(expected) / 16);
+                    assertTrue(Math.abs(actual - expected) <= tolerance,
+                        "bucket " + b + " p" + percentile + " expected " + expected + " actual " + actual);
+                }
+            } else {
+                assertEquals(aggregates.percentile(50)[b], 0L);
+            }
+        }
+    }
+
+    @Test
+    public void testMissingSlices() throws Exception {
+        MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+        RoaringBitmap answer = bitmaps.createWithBits(0, 1, 2, 3);
+        List<RoaringBitmap> slices = Lists.newArrayList();
+        slices.add(null);
+        slices.add(bitmaps.createWithBits(1, 3));
+        slices.add(null);
+        slices.add(bitmaps.createWithBits(2, 3));
+
+        Aggregates aggregates = new MiruBitSlicedAggregator().aggregate(bitmaps, answer, null, slices, new int[] { 0, 2, 4 }, 4, false);
+
+        assertEquals(aggregates.count, new long[] { 2, 2 });
+        assertEquals(aggregates.sum, new long[] { 2, 18 });
+        assertEquals(aggregates.min, new long[] { 0, 8 });
+        assertEquals(aggregates.max, new long[] { 2, 10 });
+    }
+
+    @Test
+    public void testMergeMatchesSinglePass() throws Exception {
+        MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+        Random random = new Random(4321);
+        int numBits = 12;
+        long[] values = new long[2_000];
+        for (int id = 0; id < values.length; id++) {
+            values[id] = random.nextInt(1 << numBits) * (random.nextInt(5) == 0 ? -1 : 1);
+        }
+
+        // the middle bucket is split across ids [0, 1_000) and [1_000, 2_000) as if they were two partitions
+        int[] indexes = { 0, 600, 1_400, 2_000 };
+        Aggregates whole = aggregate(bitmaps, values, 0, 2_000, indexes, numBits);
+        Aggregates first = aggregate(bitmaps, values, 0, 1_000, indexes, numBits);
+        Aggregates second = aggregate(bitmaps, values, 1_000, 2_000, indexes, numBits);
+
+        ObjectMapper mapper = new ObjectMapper();
+        Aggregates merged = mapper.readValue(mapper.writeValueAsBytes(first), Aggregates.class)
+            .merge(mapper.readValue(mapper.writeValueAsBytes(second), Aggregates.class));
+
+        assertEquals(merged.count, whole.count);
+        assertEquals(merged.sum, whole.sum);
+        assertEquals(merged.min, whole.min);
+        assertEquals(merged.max, whole.max);
+        assertEquals(merged.avg(), whole.avg());
+        for (double percentile : new double[] { 1, 50, 90, 99, 100 }) {
+            assertEquals(merged.percentile(percentile), whole.percentile(percentile), "p" + percentile);
+        }
+        assertEquals(first.count[2], 0L);
+        assertEquals(second.count[0], 0L);
+    }
+
+    private Aggregates aggregate(MiruBitmapsRoaring bitmaps, long[] values, int fromId, int toId, int[] indexes, int numBits) {
+        RoaringBitmap answer = new RoaringBitmap();
+        RoaringBitmap negative = new RoaringBitmap();
+        List<RoaringBitmap> slices = Lists.newArrayList();
+        for (int i = 0; i < numBits; i++) {
+            slices.add(new RoaringBitmap());
+        }
+        for (int id = fromId; id < toId; id++) {
+            answer.add(id);
+            long magnitude = Math.abs(values[id]);
+            for (int i = 0; i < numBits; i++) {
+                if ((magnitude & (1L << i)) != 0) {
+                    slices.get(i).add(id);
+                }
+            }
+            if (values[id] < 0) {
+                negative.add(id);
+            }
+        }
+        return new MiruBitSlicedAggregator().aggregate(bitmaps, answer, negative, slices, indexes, numBits, true);
+    }
+}
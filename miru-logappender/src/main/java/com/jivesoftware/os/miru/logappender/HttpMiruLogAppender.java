@@ -15,6 +15,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import org.apache.logging.log4j.Level;
@@ -40,12 +41,13 @@ public class HttpMiruLogAppender implements MiruLogAppender, Appender {
     private final TenantAwareHttpClient<String> client;
     private final BlockingQueue<MiruLogEvent> queue;
     private final int batchSize;
+    private final int batchMaxSizeInBytes;
     private final boolean blocking;
-    private final long ifSuccessPauseMillis;
-    private final long ifEmptyPauseMillis;
+    private final long flushMaxLatencyMillis;
     private final long ifErrorPauseMillis;
     private final int nonBlockingDrainThreshold;
     private final int nonBlockingDrainCount;
+    private final boolean binary;
 
     private final AtomicBoolean installed = new AtomicBoolean(false);
     private final AtomicBoolean started = new AtomicBoolean(false);
@@ -57,6 +59,7 @@ public class HttpMiruLogAppender implements MiruLogAppender, Appender {
     private final NextClientStrategy nextClientStrategy = new RoundRobinStrategy();
     private final ObjectMapper objectMapper = new ObjectMapper();
     private static final String endpoint = "/miru/stumptown/intake";
+    private static final String binaryEndpoint = "/miru/stumptown/intake/binary";
 
     HttpMiruLogAppender(String datacenter,
         String cluster,
@@ -67,12 +70,13 @@ public class HttpMiruLogAppender implements MiruLogAppender, Appender {
         TenantAwareHttpClient<String> client,
         int queueSize,
         int batchSize,
+        int batchMaxSizeInBytes,
         boolean blocking,
-        long ifSuccessPauseMillis,
-        long ifEmptyPauseMillis,
+        long flushMaxLatencyMillis,
         long ifErrorPauseMillis,
         int nonBlockingDrainThreshold,
-        int nonBlockingDrainCount) {
+        int nonBlockingDrainCount,
+        boolean binary) {
         this.datacenter = datacenter;
         this.host = host;
         this.service = service;
@@ -82,12 +86,13 @@ public class HttpMiruLogAppender implements MiruLogAppender, Appender {
         this.cluster = cluster;
         this.queue = new ArrayBlockingQueue<>(queueSize);
         this.batchSize = batchSize;
+        this.batchMaxSizeInBytes = batchMaxSizeInBytes;
         this.blocking = blocking;
-        this.ifSuccessPauseMillis = ifSuccessPauseMillis;
-        this.ifEmptyPauseMillis = ifEmptyPauseMillis;
+        this.flushMaxLatencyMillis = flushMaxLatencyMillis;
         this.ifErrorPauseMillis = ifErrorPauseMillis;
         this.nonBlockingDrainThreshold = nonBlockingDrainThreshold;
         this.nonBlockingDrainCount = nonBlockingDrainCount;
+        this.binary = binary;
     }
 
     public void install() {
@@ -242,6 +247,10 @@ public class HttpMiruLogAppender implements MiruLogAppender, Appender {
         return !started.get();
     }
 
+    /**
+     * Flushes as soon as a batch is full, by count or by estimated size, or once the oldest event in the batch has waited
+     * for the max latency, whichever comes first.
+     */
     private class QueueConsumer implements Runnable {
 
         private final AtomicBoolean running = new AtomicBoolean(true);
@@ -251,50 +260,94 @@ public class HttpMiruLogAppender implements MiruLogAppender, Appender {
             List<MiruLogEvent> miruLogEvents = new ArrayList<>();
 
             while (running.get()) {
-                queue.drainTo(miruLogEvents, batchSize);
-                if (miruLogEvents.isEmpty()) {
-                    try {
-                        Thread.sleep(ifEmptyPauseMillis);
-                    } catch (InterruptedException e) {
-                        System.err.println("QueueConsumer was interrupted while sleeping due to empty queue");
-                        Thread.interrupted();
+                try {
+                    MiruLogEvent first = queue.poll(flushMaxLatencyMillis, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
                     }
-                } else {
-                    while (true) {
-                        try {
-                            String toJson = objectMapper.writeValueAsString(miruLogEvents);
-                            HttpResponse httpResponse = client.call(
-                                "",
-                                nextClientStrategy,
-                                "ingress",
-                                client -> new ClientCall.ClientResponse<>(client.postJson(endpoint, toJson, null), true));
-                            if (httpResponse.getStatusCode() != 202) {
-                                throw new Exception("Error [" + httpResponse.getStatusCode() + "] posting: " + toJson);
+                    miruLogEvents.add(first);
+                    long batchSizeInBytes = estimateSizeInBytes(first);
+                    long deadline = System.currentTimeMillis() + flushMaxLatencyMillis;
+                    while (miruLogEvents.size() < batchSize && batchSizeInBytes < batchMaxSizeInBytes) {
+                        int offset = miruLogEvents.size();
+                        if (queue.drainTo(miruLogEvents, batchSize - offset) > 0) {
+                            for (int i = offset; i < miruLogEvents.size(); i++) {
+                                batchSizeInBytes += estimateSizeInBytes(miruLogEvents.get(i));
                             }
-
+                            continue;
+                        }
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
                             break;
-                        } catch (Exception e) {
-                            System.err.println("Append failed for logger: " + e.getClass().getCanonicalName() + ": " + e.getMessage());
                         }
-
-                        try {
-                            Thread.sleep(ifErrorPauseMillis);
-                        } catch (InterruptedException e) {
-                            System.err.println("QueueConsumer was interrupted while sleeping due to errors");
-                            Thread.interrupted();
+                        MiruLogEvent next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                        if (next == null) {
+                            break;
                         }
+                        miruLogEvents.add(next);
+                        batchSizeInBytes += estimateSizeInBytes(next);
                     }
+                } catch (InterruptedException e) {
+                    System.err.println("QueueConsumer was interrupted while waiting for events");
+                    Thread.interrupted();
+                }
 
+                if (!miruLogEvents.isEmpty()) {
+                    post(miruLogEvents);
                     miruLogEvents.clear();
+                }
+            }
+        }
 
-                    try {
-                        Thread.sleep(ifSuccessPauseMillis);
-                    } catch (InterruptedException e) {
-                        System.err.println("QueueConsumer was interrupted while sleeping after success");
-                        Thread.interrupted();
+        private void post(List<MiruLogEvent> miruLogEvents) {
+            while (true) {
+                try {
+                    if (binary) {
+                        byte[] bytes = MiruLogEventCodec.encode(miruLogEvents);
+                        HttpResponse httpResponse = client.call(
+                            "",
+                            nextClientStrategy,
+                            "ingress",
+                            client -> new ClientCall.ClientResponse<>(client.postBytes(binaryEndpoint, bytes, null), true));
+                        if (httpResponse.getStatusCode() != 202) {
+                            throw new Exception("Error [" + httpResponse.getStatusCode() + "] posting " + miruLogEvents.size() + " events");
+                        }
+                    } else {
+                        String toJson = objectMapper.writeValueAsString(miruLogEvents);
+                        HttpResponse httpResponse = client.call(
+                            "",
+                            nextClientStrategy,
+                            "ingress",
+                            client -> new ClientCall.ClientResponse<>(client.postJson(endpoint, toJson, null), true));
+                        if (httpResponse.getStatusCode() != 202) {
+                            throw new Exception("Error [" + httpResponse.getStatusCode() + "] posting: " + toJson);
+                        }
                     }
+                    return;
+                } catch (Exception e) {
+                    System.err.println("Append failed for logger: " + e.getClass().getCanonicalName() + ": " + e.getMessage());
+                }
+
+                try {
+                    Thread.sleep(ifErrorPauseMillis);
+                } catch (InterruptedException e) {
+                    System.err.println("QueueConsumer was interrupted while sleeping due to errors");
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        private long estimateSizeInBytes(MiruLogEvent miruLogEvent) {
+            long size = 64;
+            if (miruLogEvent.message != null) {
+                size += miruLogEvent.message.length();
+            }
+            if (miruLogEvent.thrownStackTrace != null) {
+                for (String line : miruLogEvent.thrownStackTrace) {
+                    size += line.length();
                 }
             }
+            return size;
         }
 
         private void stop() {
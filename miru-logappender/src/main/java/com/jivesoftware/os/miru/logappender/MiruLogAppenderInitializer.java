@@ -17,14 +17,14 @@ public class MiruLogAppenderInitializer {
         @IntDefault(10_000)
         int getBatchSize();
 
+        @IntDefault(4 * 1024 * 1024)
+        int getBatchMaxSizeInBytes();
+
         @BooleanDefault(false)
         boolean getQueueIsBlocking();
 
         @LongDefault(1_000)
-        long getIfSuccessPauseMillis();
-
-        @LongDefault(1_000)
-        long getIfEmptyPauseMillis();
+        long getFlushMaxLatencyMillis();
 
         @LongDefault(5_000)
         long getIfErrorPauseMillis();
@@ -37,6 +37,9 @@ public class MiruLogAppenderInitializer {
 
         @BooleanDefault(false)
         boolean getEnabled();
+
+        @BooleanDefault(false)
+        boolean getBinaryEnabled();
     }
 
     public MiruLogAppender initialize(String datacenter,
@@ -58,12 +61,13 @@ public class MiruLogAppenderInitializer {
                 client,
                 config.getQueueMaxDepth(),
                 config.getBatchSize(),
+                config.getBatchMaxSizeInBytes(),
                 config.getQueueIsBlocking(),
-                config.getIfSuccessPauseMillis(),
-                config.getIfEmptyPauseMillis(),
+                config.getFlushMaxLatencyMillis(),
                 config.getIfErrorPauseMillis(),
                 config.getNonBlockingDrainThreshold(),
-                config.getNonBlockingDrainCount());
+                config.getNonBlockingDrainCount(),
+                config.getBinaryEnabled());
         } else {
             return () -> {
             };
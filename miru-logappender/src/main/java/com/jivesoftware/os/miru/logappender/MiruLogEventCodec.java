@@ -0,0 +1,183 @@
+package com.jivesoftware.os.miru.logappender;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Compact binary encoding for a batch of {@link MiruLogEvent}s. Fields that repeat across a batch (datacenter through
+ * exception class, and every stack trace line) are written once to a per-batch dictionary and referenced by index, while
+ * messages and timestamps are written inline. The body is snappy compressed behind a single format version byte.
+ */
+public class MiruLogEventCodec {
+
+    private static final byte VERSION = 1;
+
+    private MiruLogEventCodec() {
+    }
+
+    public static byte[] encode(List<MiruLogEvent> events) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> entries = new ArrayList<>();
+
+        ByteArrayOutputStream eventBytes = new ByteArrayOutputStream(events.size() * 128);
+        DataOutputStream out = new DataOutputStream(eventBytes);
+        writeVarInt(out, events.size());
+        for (MiruLogEvent event : events) {
+            writeRef(out, event.datacenter, dictionary, entries);
+            writeRef(out, event.cluster, dictionary, entries);
+            writeRef(out, event.host, dictionary, entries);
+            writeRef(out, event.service, dictionary, entries);
+            writeRef(out, event.instance, dictionary, entries);
+            writeRef(out, event.version, dictionary, entries);
+            writeRef(out, event.level, dictionary, entries);
+            writeRef(out, event.threadName, dictionary, entries);
+            writeRef(out, event.loggerName, dictionary, entries);
+            writeRef(out, event.methodName, dictionary, entries);
+            writeRef(out, event.lineNumber, dictionary, entries);
+            writeRef(out, event.exceptionClass, dictionary, entries);
+            writeString(out, event.message);
+            writeString(out, event.timestamp);
+            if (event.thrownStackTrace == null) {
+                writeVarInt(out, 0);
+            } else {
+                writeVarInt(out, event.thrownStackTrace.length + 1);
+                for (String line : event.thrownStackTrace) {
+                    writeRef(out, line, dictionary, entries);
+                }
+            }
+        }
+        out.flush();
+
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(eventBytes.size() + entries.size() * 32);
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        writeVarInt(body, entries.size());
+        for (String entry : entries) {
+            writeString(body, entry);
+        }
+        eventBytes.writeTo(body);
+        body.flush();
+
+        byte[] compressed = Snappy.compress(bodyBytes.toByteArray());
+        byte[] bytes = new byte[compressed.length + 1];
+        bytes[0] = VERSION;
+        System.arraycopy(compressed, 0, bytes, 1, compressed.length);
+        return bytes;
+    }
+
+    public static List<MiruLogEvent> decode(byte[] bytes) throws IOException {
+        if (bytes.length == 0 || bytes[0] != VERSION) {
+            throw new IOException("Unsupported log event format version: " + (bytes.length == 0 ? "empty" : String.valueOf(bytes[0])));
+        }
+        byte[] uncompressed = Snappy.uncompress(Arrays.copyOfRange(bytes, 1, bytes.length));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(uncompressed));
+
+        String[] dictionary = new String[readVarInt(in)];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = readString(in);
+        }
+
+        int count = readVarInt(in);
+        List<MiruLogEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MiruLogEvent event = new MiruLogEvent();
+            event.datacenter = readRef(in, dictionary);
+            event.cluster = readRef(in, dictionary);
+            event.host = readRef(in, dictionary);
+            event.service = readRef(in, dictionary);
+            event.instance = readRef(in, dictionary);
+            event.version = readRef(in, dictionary);
+            event.level = readRef(in, dictionary);
+            event.threadName = readRef(in, dictionary);
+            event.loggerName = readRef(in, dictionary);
+            event.methodName = readRef(in, dictionary);
+            event.lineNumber = readRef(in, dictionary);
+            event.exceptionClass = readRef(in, dictionary);
+            event.message = readString(in);
+            event.timestamp = readString(in);
+            int stackTraceLength = readVarInt(in) - 1;
+            if (stackTraceLength >= 0) {
+                event.thrownStackTrace = new String[stackTraceLength];
+                for (int j = 0; j < stackTraceLength; j++) {
+                    event.thrownStackTrace[j] = readRef(in, dictionary);
+                }
+            }
+            events.add(event);
+        }
+        return events;
+    }
+
+    private static void writeRef(DataOutputStream out, String value, Map<String, Integer> dictionary, List<String> entries) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        Integer index = dictionary.get(value);
+        if (index == null) {
+            index = entries.size();
+            dictionary.put(value, index);
+            entries.add(value);
+        }
+        writeVarInt(out, index + 1);
+    }
+
+    private static String readRef(DataInputStream in, String[] dictionary) throws IOException {
+        int ref = readVarInt(in);
+        if (ref == 0) {
+            return null;
+        }
+        if (ref > dictionary.length) {
+            throw new IOException("Dictionary reference " + ref + " is out of bounds for size " + dictionary.length);
+        }
+        return dictionary[ref - 1];
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, bytes.length + 1);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
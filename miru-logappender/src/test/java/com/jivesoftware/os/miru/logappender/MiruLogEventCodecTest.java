@@ -0,0 +1,55 @@
+package com.jivesoftware.os.miru.logappender;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class MiruLogEventCodecTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<MiruLogEvent> events = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            events.add(new MiruLogEvent("dc",
+                "cluster",
+                "host" + (i % 3),
+                "service",
+                "1",
+                "1.0",
+                i % 10 == 0 ? "ERROR" : "INFO",
+                "thread-" + (i % 8),
+                "com.jivesoftware.os.Logger" + (i % 5),
+                i % 2 == 0 ? "method" : null,
+                String.valueOf(i % 100),
+                "message " + i + " \u00e9\u4e2d",
+                String.valueOf(1_400_000_000_000L + i),
+                i % 10 == 0 ? "java.lang.IllegalStateException" : null,
+                i % 10 == 0 ? new String[] { "java.lang.IllegalStateException: boom", "at a.b.C.d(C.java:" + i + ")", "at a.b.C.e(C.java:7)" } : null));
+        }
+        events.add(new MiruLogEvent());
+
+        byte[] bytes = MiruLogEventCodec.encode(events);
+        List<MiruLogEvent> decoded = MiruLogEventCodec.decode(bytes);
+
+        assertEquals(mapper.writeValueAsString(decoded), mapper.writeValueAsString(events));
+        assertTrue(bytes.length < mapper.writeValueAsBytes(events).length / 4, "binary size: " + bytes.length);
+    }
+
+    @Test
+    public void testEmptyStackTrace() throws Exception {
+        MiruLogEvent event = new MiruLogEvent();
+        event.thrownStackTrace = new String[0];
+        List<MiruLogEvent> decoded = MiruLogEventCodec.decode(MiruLogEventCodec.encode(Collections.singletonList(event)));
+        assertEquals(decoded.get(0).thrownStackTrace.length, 0);
+    }
+}
@@ -249,7 +249,8 @@ public class MiruManageMain {
                     1000,
                     mapper,
                     walClientSickThreads,
-                    10_000);
+                    10_000,
+                    walConfig.getBinaryActivityWrites());
                 miruWALClient = amzaWALClient;
             } else {
                 throw new IllegalStateException("Invalid activity WAL type: " + walConfig.getActivityWALType());
@@ -62,7 +62,9 @@ import com.jivesoftware.os.miru.plugin.solution.MiruRemotePartition;
 import com.jivesoftware.os.miru.service.MiruService;
 import com.jivesoftware.os.miru.service.MiruServiceConfig;
 import com.jivesoftware.os.miru.service.MiruServiceInitializer;
+import com.jivesoftware.os.miru.service.index.lab.MiruHotTermBitmapCache;
 import com.jivesoftware.os.miru.service.locator.MiruTempDirectoryResourceLocator;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import com.jivesoftware.os.miru.service.partition.PartitionErrorTracker;
 import com.jivesoftware.os.miru.service.partition.RCVSSipTrackerFactory;
 import com.jivesoftware.os.miru.service.realtime.NoOpRealtimeDelivery;
@@ -292,8 +294,10 @@ public class MiruPluginTestBootstrap {
             BoundedExecutor.newBoundedExecutor(config.getMergeIndexThreads(), "transient-merge-index"),
             BoundedExecutor.newBoundedExecutor(config.getStreamFactoryExecutorCount(), "stream-factory"),
             miruStats,
+            new MiruMetricHandles(config.getMetricsPerFieldVerbose()),
             new LABStats(),
             new LABStats(),
+            new MiruHotTermBitmapCache(config.getHotTermCacheMaxSizeInBytes(), config.getHotTermCacheEvictionSampleSize()),
             scheduledBootstrapExecutor,
             scheduledRebuildExecutor,
             scheduledSipMigrateExecutor,
@@ -11,10 +11,12 @@ import com.jivesoftware.os.miru.plugin.index.MiruAuthzIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruFieldIndexProvider;
 import com.jivesoftware.os.miru.plugin.index.MiruInboxIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruRemovalIndex;
+import com.jivesoftware.os.miru.plugin.index.MiruRollupIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruSipIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
 import com.jivesoftware.os.miru.plugin.index.MiruTimeIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruUnreadTrackingIndex;
+import com.jivesoftware.os.miru.plugin.solution.MiruSharedFilters;
 
 /**
  *
@@ -86,6 +88,16 @@ public class TestContext<BM extends IBM, IBM> implements MiruRequestContext<BM,
         return null;
     }
 
+    @Override
+    public MiruRollupIndex getRollupIndex() {
+        return null;
+    }
+
+    @Override
+    public MiruSharedFilters<BM, IBM> getSharedFilters() {
+        return null;
+    }
+
     @Override
     public StripingLocksProvider<MiruStreamId> getStreamLocks() {
         return null;
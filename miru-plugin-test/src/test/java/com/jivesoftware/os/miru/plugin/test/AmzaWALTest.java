@@ -122,7 +122,7 @@ public class AmzaWALTest {
             10_000,
             3,
             10_000);
-        AmzaActivityWALWriter activityWALWriter = new AmzaActivityWALWriter(amzaWALUtil, 0, mapper);
+        AmzaActivityWALWriter activityWALWriter = new AmzaActivityWALWriter(amzaWALUtil, 0, mapper, false);
         AmzaActivityWALReader activityWALReader = new AmzaActivityWALReader(amzaWALUtil, mapper);
 
         HostPort[] routingGroup = activityWALReader.getRoutingGroup(tenantId, partitionId, true);
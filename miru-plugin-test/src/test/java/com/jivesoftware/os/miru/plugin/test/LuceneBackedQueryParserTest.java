@@ -7,7 +7,9 @@ import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition;
 import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
 import com.jivesoftware.os.miru.api.base.MiruTermId;
 import com.jivesoftware.os.miru.api.field.MiruFieldType;
+import com.jivesoftware.os.miru.api.query.filter.MiruFieldFilter;
 import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilterOperation;
 import com.jivesoftware.os.miru.bitmaps.roaring6.MiruBitmapsRoaring;
 import com.jivesoftware.os.miru.plugin.MiruInterner;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
@@ -24,6 +26,8 @@ import com.jivesoftware.os.miru.plugin.solution.MiruAggregateUtil;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.NavigableMap;
@@ -132,6 +136,60 @@ public class LuceneBackedQueryParserTest {
         assertTrue(storage.contains(8));
     }
 
+    @Test
+    public void testPlannedAndWithMasks() throws Exception {
+        StackBuffer stackBuffer = new StackBuffer();
+        fieldIndex.put(0, term("red"), RoaringBitmap.bitmapOf(0, 2, 4, 6, 8));
+        fieldIndex.put(0, term("green"), RoaringBitmap.bitmapOf(1, 3, 5, 7, 9));
+        fieldIndex.put(1, term("blue"), RoaringBitmap.bitmapOf(2, 3, 6, 7));
+
+        MiruFilter filter = new MiruFilter(MiruFilterOperation.and, false,
+            Arrays.asList(
+                MiruFieldFilter.ofTerms(MiruFieldType.primary, "a", "red", "green"),
+                MiruFieldFilter.ofTerms(MiruFieldType.primary, "b", "blue")),
+            null);
+        // (0..9) AND (2, 3, 6, 7) AND mask (0..5)
+        MiruSolutionLog solutionLog = new MiruSolutionLog(MiruSolutionLogLevel.NONE);
+        RoaringBitmap storage = aggregateUtil.filter("test", bitmaps, context, filter, solutionLog, null, 9, -1, -1,
+            Collections.singletonList(RoaringBitmap.bitmapOf(0, 1, 2, 3, 4, 5)), stackBuffer);
+        Assert.assertEquals(storage, RoaringBitmap.bitmapOf(2, 3));
+    }
+
+    @Test
+    public void testPlannedAndShortCircuits() throws Exception {
+        StackBuffer stackBuffer = new StackBuffer();
+        for (int i = 0; i < 20; i++) {
+            fieldIndex.put(0, term("term" + i), RoaringBitmap.bitmapOf(i, i + 20, i + 40));
+        }
+        fieldIndex.put(1, term("blue"), RoaringBitmap.bitmapOf(100));
+        fieldIndex.put(1, term("red"), RoaringBitmap.bitmapOf(200));
+
+        String[] manyTerms = new String[20];
+        for (int i = 0; i < manyTerms.length; i++) {
+            manyTerms[i] = "term" + i;
+        }
+        MiruFilter filter = new MiruFilter(MiruFilterOperation.and, false,
+            Arrays.asList(
+                MiruFieldFilter.ofTerms(MiruFieldType.primary, "a", manyTerms),
+                MiruFieldFilter.ofTerms(MiruFieldType.primary, "b", "blue"),
+                MiruFieldFilter.ofTerms(MiruFieldType.primary, "b", "red")),
+            null);
+        MiruSolutionLog solutionLog = new MiruSolutionLog(MiruSolutionLogLevel.NONE);
+        RoaringBitmap storage = aggregateUtil.filter("test", bitmaps, context, filter, solutionLog, null, 100, -1, -1, stackBuffer);
+        assertTrue(storage.isEmpty());
+        // the disjoint "b" branches were evaluated first, so the unsampled "a" terms were never fetched
+        Assert.assertEquals(fieldIndex.multiTxCalls, 0);
+        Assert.assertTrue(fieldIndex.multiGetTerms < manyTerms.length);
+
+        // an empty mask skips estimation and every branch
+        fieldIndex.multiGetTerms = 0;
+        storage = aggregateUtil.filter("test", bitmaps, context, filter, solutionLog, null, 100, -1, -1,
+            Collections.singletonList(new RoaringBitmap()), stackBuffer);
+        assertTrue(storage.isEmpty());
+        Assert.assertEquals(fieldIndex.multiGetTerms, 0);
+        Assert.assertEquals(fieldIndex.multiTxCalls, 0);
+    }
+
     private MiruTermId term(String term) {
         return new MiruTermId(term.getBytes(StandardCharsets.UTF_8));
     }
@@ -139,6 +197,8 @@ public class LuceneBackedQueryParserTest {
     private static class TestFieldIndex implements MiruFieldIndex<RoaringBitmap, RoaringBitmap> {
 
         private final NavigableMap<MiruTermId, RoaringBitmap>[] indexes;
+        private int multiGetTerms;
+        private int multiTxCalls;
         private final MiruBitmaps<RoaringBitmap, RoaringBitmap> bitmaps;
 
         public TestFieldIndex(int numFields, MiruBitmaps<RoaringBitmap, RoaringBitmap> bitmaps) {
@@ -189,7 +249,16 @@ public class LuceneBackedQueryParserTest {
             MiruTermId[] termIds,
             BitmapAndLastId<RoaringBitmap>[] results,
             StackBuffer stackBuffer) throws Exception {
-            throw new UnsupportedOperationException("Nope");
+            NavigableMap<MiruTermId, RoaringBitmap> terms = indexes[fieldId];
+            for (int i = 0; i < termIds.length; i++) {
+                RoaringBitmap bitmap = termIds[i] == null ? null : terms.get(termIds[i]);
+                if (bitmap != null) {
+                    multiGetTerms++;
+                    IntIterator reverse = bitmap.getReverseIntIterator();
+                    int lastId = reverse.hasNext() ? reverse.next() : -1;
+                    results[i] = new BitmapAndLastId<RoaringBitmap>().set(bitmap, lastId);
+                }
+            }
         }
 
         @Override
@@ -204,6 +273,7 @@ public class LuceneBackedQueryParserTest {
             int considerIfLastIdGreaterThanN,
             StackBuffer stackBuffer,
             MultiIndexTx<RoaringBitmap> indexTx) throws Exception {
+            multiTxCalls++;
             NavigableMap<MiruTermId, RoaringBitmap> terms = indexes[fieldId];
             for (int i = 0; i < termIds.length; i++) {
                 MiruTermId termId = termIds[i];
@@ -0,0 +1,401 @@
+package com.jivesoftware.os.miru.plugin.bitmap;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonGetter;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aggregates a bit-sliced value (one bitmap per value bit, bit i worth 2^i) over index aligned buckets in a single pass.
+ * Rather than counting each slice once per bucket, every slice is walked once in lockstep with the answer, one 2^16 id
+ * window (a roaring container) at a time, so the value for each id is reassembled exactly once. From that pass we get the
+ * per bucket count, sum, min, max, and optionally a log-linear histogram for approximate percentiles. Aggregates over the same
+ * buckets from different partitions can be merged without loss, so a bucket spanning partitions reduces the same as one that doesn't.
+ */
+public class MiruBitSlicedAggregator {
+
+    private static final int WINDOW_BITS = 16;
+    private static final int WINDOW_SIZE = 1 << WINDOW_BITS;
+    private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+
+    // magnitudes below 2^SUB_BITS get their own bin, larger magnitudes get 2^SUB_BITS bins per power of two (~6% error)
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HISTOGRAM_BINS = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+    /**
+     * @param bitmaps    the bitmaps
+     * @param answer     the ids to aggregate
+     * @param negative   ids whose value is negated, or null if all values are positive
+     * @param slices     the value bit slices, each a subset of the answer, null where a bit is never set
+     * @param indexes    index aligned boundaries, lower boundary is inclusive, upper boundary is exclusive
+     * @param numBits    the number of slices to consider
+     * @param histograms whether to gather histograms for {@link Aggregates#percentile(double)}
+     * @return the per bucket aggregates
+     */
+    public <BM extends IBM, IBM> Aggregates aggregate(MiruBitmaps<BM, IBM> bitmaps,
+        IBM answer,
+        IBM negative,
+        List<BM> slices,
+        int[] indexes,
+        int numBits,
+        boolean histograms) {
+
+        int numBuckets = indexes.length - 1;
+        Aggregates aggregates = new Aggregates(numBuckets, histograms);
+        if (numBuckets < 1) {
+            return aggregates;
+        }
+
+        SliceCursor[] cursors = new SliceCursor[numBits];
+        for (int i = 0; i < numBits; i++) {
+            BM slice = slices.get(i);
+            if (slice != null) {
+                cursors[i] = new SliceCursor(bitmaps.intIterator(slice));
+            }
+        }
+        SliceCursor negativeCursor = negative != null ? new SliceCursor(bitmaps.intIterator(negative)) : null;
+
+        long[] values = new long[WINDOW_SIZE];
+        long[] negatives = negativeCursor != null ? new long[WINDOW_SIZE >>> 6] : null;
+
+        int smallestId = indexes[0];
+        int largestIdExclusive = indexes[numBuckets];
+        int window = -1;
+        int bucket = 0;
+        MiruIntIterator answerIter = bitmaps.intIterator(answer);
+        while (answerIter.hasNext()) {
+            int id = answerIter.next();
+            int idWindow = id >>> WINDOW_BITS;
+            if (idWindow != window) {
+                window = idWindow;
+                int windowEnd = (window + 1) << WINDOW_BITS;
+                for (int i = 0; i < numBits; i++) {
+                    if (cursors[i] != null) {
+                        cursors[i].fill(values, 1L << i, window, windowEnd);
+                    }
+                }
+                if (negativeCursor != null) {
+                    Arrays.fill(negatives, 0L);
+                    negativeCursor.mark(negatives, window, windowEnd);
+                }
+            }
+
+            int low = id & WINDOW_MASK;
+            long value = values[low];
+            values[low] = 0L;
+
+            if (id < smallestId || id >= largestIdExclusive) {
+                continue;
+            }
+            while (id >= indexes[bucket + 1]) {
+                bucket++;
+            }
+            if (id < indexes[bucket]) {
+                // empty or out of order boundaries
+                continue;
+            }
+            if (negatives != null && (negatives[low >>> 6] & (1L << low)) != 0) {
+                value = -value;
+            }
+            aggregates.add(bucket, value);
+        }
+        return aggregates;
+    }
+
+    private static int bin(long magnitude) {
+        if (magnitude < SUB_COUNT) {
+            return (int) magnitude;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(magnitude);
+        int sub = (int) (magnitude >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return SUB_COUNT + (exponent - SUB_BITS) * SUB_COUNT + sub;
+    }
+
+    private static long midpoint(int bin) {
+        if (bin < SUB_COUNT) {
+            return bin;
+        }
+        int exponent = (bin - SUB_COUNT) / SUB_COUNT + SUB_BITS;
+        int sub = (bin - SUB_COUNT) % SUB_COUNT;
+        int shift = exponent - SUB_BITS;
+        long lower = (long) (SUB_COUNT + sub) << shift;
+        return lower + ((1L << shift) >>> 1);
+    }
+
+    private static class SliceCursor {
+
+        private final MiruIntIterator iter;
+        private int pending;
+
+        private SliceCursor(MiruIntIterator iter) {
+            this.iter = iter;
+            this.pending = iter.hasNext() ? iter.next() : -1;
+        }
+
+        private void fill(long[] values, long bit, int window, int windowEnd) {
+            while (pending != -1 && pending < windowEnd) {
+                if ((pending >>> WINDOW_BITS) == window) {
+                    values[pending & WINDOW_MASK] |= bit;
+                }
+                pending = iter.hasNext() ? iter.next() : -1;
+            }
+        }
+
+        private void mark(long[] words, int window, int windowEnd) {
+            while (pending != -1 && pending < windowEnd) {
+                if ((pending >>> WINDOW_BITS) == window) {
+                    int low = pending & WINDOW_MASK;
+                    words[low >>> 6] |= 1L << low;
+                }
+                pending = iter.hasNext() ? iter.next() : -1;
+            }
+        }
+    }
+
+    public static class Aggregates implements Serializable {
+
+        public final long[] count;
+        public final long[] sum;
+        public final long[] min;
+        public final long[] max;
+        public long overflows;
+
+        private final int[][] positiveHistograms;
+        private final int[][] negativeHistograms;
+
+        private Aggregates(int numBuckets, boolean histograms) {
+            this(new long[numBuckets], new long[numBuckets], new long[numBuckets], new long[numBuckets], 0,
+                histograms ? new int[numBuckets][] : null,
+                histograms ? new int[numBuckets][] : null);
+        }
+
+        private Aggregates(long[] count, long[] sum, long[] min, long[] max, long overflows, int[][] positiveHistograms, int[][] negativeHistograms) {
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+            this.overflows = overflows;
+            this.positiveHistograms = positiveHistograms;
+            this.negativeHistograms = negativeHistograms;
+        }
+
+        @JsonCreator
+        public static Aggregates fromJson(@JsonProperty("count") long[] count,
+            @JsonProperty("sum") long[] sum,
+            @JsonProperty("min") long[] min,
+            @JsonProperty("max") long[] max,
+            @JsonProperty("overflows") long overflows,
+            @JsonProperty("positiveHistograms") int[][] positiveHistograms,
+            @JsonProperty("negativeHistograms") int[][] negativeHistograms) {
+            return new Aggregates(count, sum, min, max, overflows, inflate(positiveHistograms), inflate(negativeHistograms));
+        }
+
+        @JsonGetter("positiveHistograms")
+        public int[][] getPositiveHistogramsAsPairs() {
+            return deflate(positiveHistograms);
+        }
+
+        @JsonGetter("negativeHistograms")
+        public int[][] getNegativeHistogramsAsPairs() {
+            return deflate(negativeHistograms);
+        }
+
+        private void add(int bucket, long value) {
+            if (count[bucket] == 0) {
+                min[bucket] = value;
+                max[bucket] = value;
+            } else if (value < min[bucket]) {
+                min[bucket] = value;
+            } else if (value > max[bucket]) {
+                max[bucket] = value;
+            }
+            count[bucket]++;
+            addSum(bucket, value);
+
+            if (positiveHistograms != null) {
+                int[][] histograms = value < 0 ? negativeHistograms : positiveHistograms;
+                if (histograms[bucket] == null) {
+                    histograms[bucket] = new int[HISTOGRAM_BINS];
+                }
+                histograms[bucket][bin(value < 0 ? (value == Long.MIN_VALUE ? Long.MAX_VALUE : -value) : value)]++;
+            }
+        }
+
+        private void addSum(int bucket, long value) {
+            long s = sum[bucket];
+            long r = s + value;
+            if (((s ^ r) & (value ^ r)) < 0) {
+                sum[bucket] = value < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+                overflows++;
+            } else {
+                sum[bucket] = r;
+            }
+        }
+
+        /**
+         * Merges aggregates over the same buckets, e.g. from two partitions whose time ranges share a bucket. Neither input is modified.
+         * Histograms are kept only if both sides have them.
+         *
+         * @param other the aggregates to merge with
+         * @return the merged aggregates
+         */
+        public Aggregates merge(Aggregates other) {
+            if (other.count.length != count.length) {
+                throw new IllegalArgumentException("Cannot merge " + other.count.length + " buckets into " + count.length + " buckets");
+            }
+            Aggregates merged = new Aggregates(count.length, positiveHistograms != null && other.positiveHistograms != null);
+            merged.overflows = overflows + other.overflows;
+            for (int i = 0; i < count.length; i++) {
+                merged.combine(i, this);
+                merged.combine(i, other);
+            }
+            return merged;
+        }
+
+        private void combine(int bucket, Aggregates from) {
+            if (from.count[bucket] == 0) {
+                return;
+            }
+            if (count[bucket] == 0) {
+                min[bucket] = from.min[bucket];
+                max[bucket] = from.max[bucket];
+            } else {
+                min[bucket] = Math.min(min[bucket], from.min[bucket]);
+                max[bucket] = Math.max(max[bucket], from.max[bucket]);
+            }
+            count[bucket] += from.count[bucket];
+            addSum(bucket, from.sum[bucket]);
+
+            if (positiveHistograms != null) {
+                combineBins(positiveHistograms, from.positiveHistograms, bucket);
+                combineBins(negativeHistograms, from.negativeHistograms, bucket);
+            }
+        }
+
+        private static void combineBins(int[][] into, int[][] from, int bucket) {
+            int[] fromBins = from[bucket];
+            if (fromBins == null) {
+                return;
+            }
+            if (into[bucket] == null) {
+                into[bucket] = new int[HISTOGRAM_BINS];
+            }
+            int[] intoBins = into[bucket];
+            for (int b = 0; b < HISTOGRAM_BINS; b++) {
+                intoBins[b] += fromBins[b];
+            }
+        }
+
+        // histograms are mostly empty, so on the wire each bucket is a flat list of (bin, count) pairs
+        private static int[][] deflate(int[][] histograms) {
+            if (histograms == null) {
+                return null;
+            }
+            int[][] pairs = new int[histograms.length][];
+            for (int i = 0; i < histograms.length; i++) {
+                int[] bins = histograms[i];
+                if (bins == null) {
+                    continue;
+                }
+                int used = 0;
+                for (int bin : bins) {
+                    if (bin != 0) {
+                        used++;
+                    }
+                }
+                int[] bucketPairs = new int[used * 2];
+                int p = 0;
+                for (int b = 0; b < bins.length; b++) {
+                    if (bins[b] != 0) {
+                        bucketPairs[p++] = b;
+                        bucketPairs[p++] = bins[b];
+                    }
+                }
+                pairs[i] = bucketPairs;
+            }
+            return pairs;
+        }
+
+        private static int[][] inflate(int[][] pairs) {
+            if (pairs == null) {
+                return null;
+            }
+            int[][] histograms = new int[pairs.length][];
+            for (int i = 0; i < pairs.length; i++) {
+                int[] bucketPairs = pairs[i];
+                if (bucketPairs == null) {
+                    continue;
+                }
+                int[] bins = new int[HISTOGRAM_BINS];
+                for (int p = 0; p < bucketPairs.length; p += 2) {
+                    bins[bucketPairs[p]] = bucketPairs[p + 1];
+                }
+                histograms[i] = bins;
+            }
+            return histograms;
+        }
+
+        /**
+         * @return the per bucket average, or 0 for empty buckets
+         */
+        public long[] avg() {
+            long[] avg = new long[count.length];
+            for (int i = 0; i < avg.length; i++) {
+                if (count[i] > 0) {
+                    avg[i] = sum[i] / count[i];
+                }
+            }
+            return avg;
+        }
+
+        /**
+         * @param percentile a percentile in the range (0, 100]
+         * @return the approximate per bucket percentile, clamped to the bucket's min and max, or 0 for empty buckets
+         */
+        public long[] percentile(double percentile) {
+            if (positiveHistograms == null) {
+                throw new IllegalStateException("Percentiles require histograms");
+            }
+            long[] result = new long[count.length];
+            for (int i = 0; i < result.length; i++) {
+                if (count[i] == 0) {
+                    continue;
+                }
+                long rank = Math.max(1, (long) Math.ceil(percentile / 100d * count[i]));
+                if (rank == 1 || rank >= count[i]) {
+                    // the extremes are known exactly
+                    result[i] = rank == 1 ? min[i] : max[i];
+                    continue;
+                }
+                long value = max[i];
+                long seen = 0;
+                int[] negativeBins = negativeHistograms[i];
+                int[] positiveBins = positiveHistograms[i];
+                boolean found = false;
+                if (negativeBins != null) {
+                    for (int b = HISTOGRAM_BINS - 1; b >= 0 && !found; b--) {
+                        seen += negativeBins[b];
+                        if (seen >= rank) {
+                            value = -midpoint(b);
+                            found = true;
+                        }
+                    }
+                }
+                if (positiveBins != null) {
+                    for (int b = 0; b < HISTOGRAM_BINS && !found; b++) {
+                        seen += positiveBins[b];
+                        if (seen >= rank) {
+                            value = midpoint(b);
+                            found = true;
+                        }
+                    }
+                }
+                result[i] = Math.max(min[i], Math.min(max[i], value));
+            }
+            return result;
+        }
+    }
+}
@@ -10,10 +10,12 @@ import com.jivesoftware.os.miru.plugin.index.MiruAuthzIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruFieldIndexProvider;
 import com.jivesoftware.os.miru.plugin.index.MiruInboxIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruRemovalIndex;
+import com.jivesoftware.os.miru.plugin.index.MiruRollupIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruSipIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
 import com.jivesoftware.os.miru.plugin.index.MiruTimeIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruUnreadTrackingIndex;
+import com.jivesoftware.os.miru.plugin.solution.MiruSharedFilters;
 
 /**
  * @author jonathan
@@ -42,6 +44,16 @@ public interface MiruRequestContext<BM extends IBM, IBM, S extends MiruSipCursor
 
     MiruInboxIndex<BM, IBM> getInboxIndex();
 
+    /**
+     * @return the partition's rollup index, or null if rollups are disabled
+     */
+    MiruRollupIndex getRollupIndex();
+
+    /**
+     * @return filter evaluations shared between concurrent requests, or null if sharing is disabled
+     */
+    MiruSharedFilters<BM, IBM> getSharedFilters();
+
     StripingLocksProvider<MiruStreamId> getStreamLocks();
 
     boolean isClosed();
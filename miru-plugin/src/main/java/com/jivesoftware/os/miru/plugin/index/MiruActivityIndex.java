@@ -95,6 +95,30 @@ public interface MiruActivityIndex {
         MiruFieldDefinition fieldDefinition,
         StackBuffer stackBuffer) throws Exception;
 
+    /**
+     * Get the term ordinals from the given field for each activity index. Ordinals can be decoded back to terms using
+     * {@link #getTermOrdinals()}.
+     *
+     * @param indexes the activity indexes
+     * @param offset the offset into indexes
+     * @param length the length of indexes
+     * @param fieldDefinition the field
+     * @return the term ordinals, or null if this index does not keep term ordinals
+     */
+    int[][] getAllOrdinals(String name,
+        int[] indexes,
+        int offset,
+        int length,
+        MiruFieldDefinition fieldDefinition,
+        StackBuffer stackBuffer) throws Exception;
+
+    /**
+     * Returns the dictionary for the ordinals returned by {@link #getAllOrdinals}.
+     *
+     * @return the term ordinals, or null if this index does not keep term ordinals
+     */
+    MiruTermOrdinals getTermOrdinals();
+
     /**
      * Returns the index of the last activity.
      *
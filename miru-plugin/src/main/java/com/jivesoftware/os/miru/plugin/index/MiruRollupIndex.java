@@ -0,0 +1,46 @@
+package com.jivesoftware.os.miru.plugin.index;
+
+import com.jivesoftware.os.miru.api.base.MiruTermId;
+
+/**
+ * Per-partition store of precomputed term counts bucketed by time. Rollups are built lazily by the first query that
+ * needs a term, extended to the current last id by subsequent queries, and invalidated by the indexer on removal and repair.
+ */
+public interface MiruRollupIndex {
+
+    /**
+     * @return the width of a single bucket
+     */
+    long getGranularityInMillis();
+
+    boolean isRolledUp(int fieldId);
+
+    /**
+     * @return a counter that advances with every invalidation. Read it before building the bitmaps used to extend a rollup,
+     * so that extensions and puts racing with an invalidation are refused.
+     */
+    long generation();
+
+    /**
+     * @return the rollup for the term, or null if the term has not been rolled up (or has been evicted)
+     */
+    MiruTermRollup get(int fieldId, MiruTermId termId);
+
+    /**
+     * @param expectedGeneration the generation read before the bitmaps used to build the rollup
+     * @return false without storing the rollup if anything was invalidated since the expected generation
+     */
+    boolean put(int fieldId, MiruTermId termId, MiruTermRollup rollup, long expectedGeneration);
+
+    /**
+     * Lets the index account for a stored rollup that {@link MiruTermRollup#extend} has since grown. Does nothing if the term
+     * now maps to a different rollup, or to none.
+     */
+    void resized(int fieldId, MiruTermId termId, MiruTermRollup rollup);
+
+    /**
+     * Invalidates the bucket containing the given timestamp for each term, e.g. when an activity is removed or a repair
+     * changes its terms. Invalidated buckets are recounted from bitmaps by the next query.
+     */
+    void invalidate(int fieldId, MiruTermId[] termIds, long timestamp);
+}
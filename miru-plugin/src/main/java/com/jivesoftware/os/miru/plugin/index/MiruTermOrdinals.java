@@ -0,0 +1,42 @@
+package com.jivesoftware.os.miru.plugin.index;
+
+import com.jivesoftware.os.filer.io.api.StackBuffer;
+import com.jivesoftware.os.miru.api.base.MiruTermId;
+
+/**
+ * A per-partition dictionary mapping each field's terms to dense int ordinals, assigned in the order terms are first
+ * indexed. Ordinals are only meaningful within a single field of a single partition.
+ */
+public interface MiruTermOrdinals {
+
+    /**
+     * Returns the ordinal for each term, assigning new ordinals to terms that have not been seen before.
+     * <p/>
+     * This method is thread safe.
+     *
+     * @param fieldId the field
+     * @param termIds the terms, which may contain duplicates
+     * @return the ordinal for each term
+     */
+    int[] getOrAssign(int fieldId, MiruTermId[] termIds, StackBuffer stackBuffer) throws Exception;
+
+    /**
+     * Returns the ordinal for each term, or -1 for terms that have not been seen.
+     *
+     * @param fieldId the field
+     * @param termIds the terms
+     * @return the ordinal for each term
+     */
+    int[] getOrdinals(int fieldId, MiruTermId[] termIds, StackBuffer stackBuffer) throws Exception;
+
+    /**
+     * Decodes ordinals back to their terms.
+     *
+     * @param fieldId the field
+     * @param ordinals the ordinals
+     * @param offset the offset into ordinals
+     * @param length the number of ordinals to decode
+     * @return the term for each ordinal, or null for ordinals that were never assigned
+     */
+    MiruTermId[] getTermIds(int fieldId, int[] ordinals, int offset, int length, StackBuffer stackBuffer) throws Exception;
+}
@@ -0,0 +1,117 @@
+package com.jivesoftware.os.miru.plugin.index;
+
+import java.util.BitSet;
+
+/**
+ * Bucketed counts for a single term covering every id up to and including {@link #getLastId()}. Bucket {@code b}
+ * holds the number of ids whose timestamp falls in {@code [b * granularity, (b + 1) * granularity)}.
+ * <p>
+ * Removals and repairs mark the buckets they touch as invalid. Invalid buckets are never summed, and are recounted from
+ * the term's bitmap by the next {@link #extend}.
+ */
+public class MiruTermRollup {
+
+    /**
+     * The most buckets a rollup will span. Partitions whose time range needs more are answered from bitmaps instead.
+     */
+    public static final int MAX_BUCKETS = 10_000;
+
+    private final long firstBucket;
+    private final BitSet invalid = new BitSet();
+    private long[] counts;
+    private int lastId;
+    private long invalidatedGeneration = -1;
+
+    public MiruTermRollup(long firstBucket) {
+        this.firstBucket = firstBucket;
+        this.counts = new long[0];
+        this.lastId = -1;
+    }
+
+    public long getFirstBucket() {
+        return firstBucket;
+    }
+
+    public synchronized int getLastId() {
+        return lastId;
+    }
+
+    /**
+     * @return true if any bucket must be recounted before the rollup can be summed
+     */
+    public synchronized boolean hasInvalidBuckets() {
+        return !invalid.isEmpty();
+    }
+
+    /**
+     * Marks the bucket as needing a recount.
+     *
+     * @param generation the rollup index generation assigned to this invalidation
+     */
+    public synchronized void invalidate(long bucket, long generation) {
+        int index = (int) (bucket - firstBucket);
+        if (index >= 0) {
+            invalid.set(index);
+        }
+        invalidatedGeneration = Math.max(invalidatedGeneration, generation);
+    }
+
+    /**
+     * Adds counts for the ids in {@code (expectedLastId, toLastId]}, and replaces the counts of any invalid buckets.
+     *
+     * @param expectedLastId     the last id the delta was computed from
+     * @param expectedGeneration the rollup index generation read before the bitmaps used for the delta and recounts
+     * @param delta              counts per bucket starting at {@link #getFirstBucket()}
+     * @param recounts           counts per bucket for every id up to {@code toLastId}, or null if there were no invalid buckets
+     * @param toLastId           the last id covered by the delta
+     * @return false if another caller already extended the rollup, or if a bucket was invalidated after the bitmaps were read,
+     * in which case nothing is applied
+     */
+    public synchronized boolean extend(int expectedLastId, long expectedGeneration, long[] delta, long[] recounts, int toLastId) {
+        if (lastId != expectedLastId || invalidatedGeneration > expectedGeneration || (recounts == null && !invalid.isEmpty())) {
+            return false;
+        }
+        if (delta.length > counts.length) {
+            long[] grown = new long[delta.length];
+            System.arraycopy(counts, 0, grown, 0, counts.length);
+            counts = grown;
+        }
+        for (int i = 0; i < delta.length; i++) {
+            counts[i] += delta[i];
+        }
+        if (recounts != null) {
+            for (int i = invalid.nextSetBit(0); i >= 0 && i < recounts.length && i < counts.length; i = invalid.nextSetBit(i + 1)) {
+                counts[i] = recounts[i];
+                invalid.clear(i);
+            }
+        }
+        lastId = toLastId;
+        return true;
+    }
+
+    /**
+     * Adds the total count for buckets in {@code [fromBuckets[i][j], toBuckets[i][j])} to {@code waveforms[i][j]}.
+     *
+     * @return false without touching the waveforms if the rollup no longer covers exactly {@code expectedLastId}, or if any
+     * bucket has been invalidated
+     */
+    public synchronized boolean sumInto(int expectedLastId, long[][] fromBuckets, long[][] toBuckets, long[][] waveforms) {
+        if (lastId != expectedLastId || !invalid.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < waveforms.length; i++) {
+            for (int j = 0; j < waveforms[i].length; j++) {
+                int from = (int) Math.max(fromBuckets[i][j] - firstBucket, 0);
+                int to = (int) Math.min(toBuckets[i][j] - firstBucket, counts.length);
+                for (int b = from; b < to; b++) {
+                    waveforms[i][j] += counts[b];
+                }
+            }
+        }
+        return true;
+    }
+
+    public synchronized long sizeInBytes() {
+        return 32 + 8L * counts.length + invalid.size() / 8;
+    }
+}
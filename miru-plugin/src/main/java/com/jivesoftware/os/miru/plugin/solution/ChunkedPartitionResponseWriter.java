@@ -0,0 +1,120 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+import com.google.common.collect.Lists;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.nustaq.serialization.FSTConfiguration;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Writes a {@link MiruPartitionResponse} as a stream of length-prefixed frames, one per partial answer, so the remote
+ * side can merge each chunk as it arrives instead of buffering the whole body. See {@link ChunkedRemotePartitionReader}.
+ * Questions that can produce partial answers while solving write them through a {@link Session} as they go, so neither
+ * side ever holds the whole answer.
+ * <p>
+ * Layout: a version byte and a flags byte, followed by frames of [type byte][int length][payload], terminated by an
+ * end frame which is a lone type byte. An error frame carries an unavailable flag byte and a message, and is always
+ * followed by the end frame.
+ */
+public class ChunkedPartitionResponseWriter {
+
+    static final FSTConfiguration CONF = FSTConfiguration.createDefaultConfiguration();
+
+    static final byte VERSION = 1;
+    static final byte FLAG_SNAPPY = 1;
+
+    static final byte FRAME_END = 0;
+    static final byte FRAME_ANSWER = 1;
+    static final byte FRAME_LOG = 2;
+    static final byte FRAME_ERROR = 3;
+
+    private final int maxItemsPerChunk;
+    private final boolean enableSnappyCompression;
+
+    public ChunkedPartitionResponseWriter(int maxItemsPerChunk, boolean enableSnappyCompression) {
+        this.maxItemsPerChunk = maxItemsPerChunk;
+        this.enableSnappyCompression = enableSnappyCompression;
+    }
+
+    public int getMaxItemsPerChunk() {
+        return maxItemsPerChunk;
+    }
+
+    public <A> void write(MiruPartitionResponse<A> response, MiruAnswerChunker<A> chunker, OutputStream outputStream) throws IOException {
+        this.<A>open(outputStream).finish(response, chunker);
+    }
+
+    /**
+     * Writes the header and returns a session which streams answer chunks as they are produced. The caller must end the
+     * session with either {@link Session#finish} or {@link Session#fail}.
+     */
+    public <A> Session<A> open(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, 8192));
+        out.writeByte(VERSION);
+        out.writeByte(enableSnappyCompression ? FLAG_SNAPPY : 0);
+        return new Session<>(out);
+    }
+
+    public class Session<A> implements MiruAnswerChunker.ChunkStream<A> {
+
+        private final DataOutputStream out;
+
+        private Session(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void stream(A chunk) throws IOException {
+            writeFrame(out, FRAME_ANSWER, chunk);
+            out.flush();
+        }
+
+        /**
+         * Writes the log and whatever is left of the answer, chunked, and ends the stream.
+         */
+        public void finish(MiruPartitionResponse<A> response, MiruAnswerChunker<A> chunker) throws IOException {
+            if (response != null) {
+                if (response.log != null && !response.log.isEmpty()) {
+                    writeFrame(out, FRAME_LOG, Lists.newArrayList(response.log));
+                }
+                if (response.answer != null) {
+                    try {
+                        chunker.chunk(response.answer, maxItemsPerChunk, this);
+                    } catch (IOException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IOException("Failed to chunk answer", e);
+                    }
+                }
+            }
+            out.writeByte(FRAME_END);
+            out.flush();
+        }
+
+        /**
+         * Ends the stream with an error, since the status code was already sent with the first byte.
+         */
+        public void fail(boolean unavailable, String message) throws IOException {
+            byte[] messageBytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(FRAME_ERROR);
+            out.writeInt(1 + messageBytes.length);
+            out.writeByte(unavailable ? 1 : 0);
+            out.write(messageBytes);
+            out.writeByte(FRAME_END);
+            out.flush();
+        }
+    }
+
+    private void writeFrame(DataOutputStream out, byte frameType, Object value) throws IOException {
+        byte[] payload = CONF.asByteArray(value);
+        if (enableSnappyCompression) {
+            payload = Snappy.compress(payload);
+        }
+        out.writeByte(frameType);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+}
@@ -0,0 +1,20 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+import org.merlin.config.Config;
+import org.merlin.config.defaults.BooleanDefault;
+import org.merlin.config.defaults.IntDefault;
+
+/**
+ *
+ */
+public interface ChunkedRemotePartitionConfig extends Config {
+
+    /**
+     * Only enable once every reader in the cluster serves the chunked endpoints.
+     */
+    @BooleanDefault(false)
+    boolean getChunkedRemotePartitionEnabled();
+
+    @IntDefault(64 * 1024 * 1024)
+    int getChunkedRemotePartitionMaxFrameSizeInBytes();
+}
@@ -0,0 +1,202 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.guava.GuavaModule;
+import com.google.common.base.Optional;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruHostSelectiveStrategy;
+import com.jivesoftware.os.miru.api.MiruQueryServiceException;
+import com.jivesoftware.os.miru.plugin.partition.MiruPartitionUnavailableException;
+import com.jivesoftware.os.mlogger.core.EndPointMetrics;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.routing.bird.http.client.HttpResponseMapper;
+import com.jivesoftware.os.routing.bird.http.client.HttpStreamResponse;
+import com.jivesoftware.os.routing.bird.http.client.NonSuccessStatusCodeException;
+import com.jivesoftware.os.routing.bird.http.client.TenantAwareHttpClient;
+import com.jivesoftware.os.routing.bird.shared.ClientCall;
+import com.jivesoftware.os.routing.bird.shared.HttpClientException;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.apache.http.HttpStatus;
+import org.xerial.snappy.Snappy;
+
+import static com.jivesoftware.os.miru.plugin.solution.ChunkedPartitionResponseWriter.CONF;
+import static com.jivesoftware.os.miru.plugin.solution.ChunkedPartitionResponseWriter.FLAG_SNAPPY;
+import static com.jivesoftware.os.miru.plugin.solution.ChunkedPartitionResponseWriter.FRAME_ANSWER;
+import static com.jivesoftware.os.miru.plugin.solution.ChunkedPartitionResponseWriter.FRAME_END;
+import static com.jivesoftware.os.miru.plugin.solution.ChunkedPartitionResponseWriter.FRAME_ERROR;
+import static com.jivesoftware.os.miru.plugin.solution.ChunkedPartitionResponseWriter.FRAME_LOG;
+import static com.jivesoftware.os.miru.plugin.solution.ChunkedPartitionResponseWriter.VERSION;
+
+/**
+ * Posts the request as json and streams back the frames written by {@link ChunkedPartitionResponseWriter}, merging each
+ * partial answer as it arrives. Peak memory is bounded by the merged answer plus a single frame.
+ */
+public class ChunkedRemotePartitionReader implements MiruRemotePartitionReader {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private static final ObjectMapper MAPPER;
+    private static final HttpResponseMapper RESPONSE_MAPPER;
+
+    static {
+        MAPPER = new ObjectMapper();
+        MAPPER.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        MAPPER.registerModule(new GuavaModule());
+
+        RESPONSE_MAPPER = new HttpResponseMapper(MAPPER);
+    }
+
+    private final TenantAwareHttpClient<String> readerHttpClient;
+    private final Map<MiruHost, MiruHostSelectiveStrategy> strategyPerHost;
+    private final int maxFrameSizeInBytes;
+
+    public ChunkedRemotePartitionReader(TenantAwareHttpClient<String> readerHttpClient,
+        Map<MiruHost, MiruHostSelectiveStrategy> strategyPerHost,
+        int maxFrameSizeInBytes) {
+        this.readerHttpClient = readerHttpClient;
+        this.strategyPerHost = strategyPerHost;
+        this.maxFrameSizeInBytes = maxFrameSizeInBytes;
+    }
+
+    @Override
+    public <Q, A, P> MiruPartitionResponse<A> read(String queryKey,
+        MiruHost host,
+        String endpoint,
+        MiruRequest<Q> request,
+        Class<A> answerClass,
+        Optional<P> report,
+        EndPointMetrics endPointMetrics,
+        A emptyResults)
+        throws MiruQueryServiceException, MiruPartitionUnavailableException {
+        return read(queryKey, host, endpoint, request, answerClass, report, endPointMetrics, emptyResults, null);
+    }
+
+    @Override
+    public <Q, A, P> MiruPartitionResponse<A> read(String queryKey,
+        MiruHost host,
+        String endpoint,
+        MiruRequest<Q> request,
+        Class<A> answerClass,
+        Optional<P> report,
+        EndPointMetrics endPointMetrics,
+        A emptyResults,
+        MiruAnswerMerger<A> chunkMerger)
+        throws MiruQueryServiceException, MiruPartitionUnavailableException {
+
+        endPointMetrics.start();
+        try {
+            MiruHostSelectiveStrategy strategy = strategyPerHost.computeIfAbsent(host,
+                miruHost -> new MiruHostSelectiveStrategy(new MiruHost[] { miruHost }));
+            MiruRequestAndReport<Q, P> params = new MiruRequestAndReport<>(request, report.orNull());
+            String jsonParams = MAPPER.writeValueAsString(params);
+            HttpStreamResponse streamResponse = readerHttpClient.call("", strategy,
+                queryKey + ":" + request.name + ":chunked",
+                httpClient1 -> {
+                    HttpStreamResponse httpResponse = httpClient1.streamingPost(endpoint, jsonParams, null);
+                    if (!RESPONSE_MAPPER.isSuccessStatusCode(httpResponse.getStatusCode())) {
+                        close(httpResponse);
+                        throw new NonSuccessStatusCodeException(httpResponse.getStatusCode(), "Non success status code: " + httpResponse.getStatusCode());
+                    }
+                    return new ClientCall.ClientResponse<>(httpResponse, true);
+                });
+            try {
+                return readFrames(streamResponse.getInputStream(), emptyResults, chunkMerger);
+            } finally {
+                close(streamResponse);
+            }
+        } catch (MiruPartitionUnavailableException e) {
+            throw e;
+        } catch (NonSuccessStatusCodeException e) {
+            if (e.getStatusCode() == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+                throw new MiruPartitionUnavailableException("Remote partition is unavailable for host: " + host + " endpoint: " + e.getMessage());
+            } else {
+                throw new MiruQueryServiceException("Failed remote read for host: " + host + " endpoint: " + endpoint, e);
+            }
+        } catch (HttpClientException e) {
+            throw new MiruQueryServiceException("Failed to query host: " + host + " endpoint: " + endpoint, e);
+        } catch (JsonProcessingException e) {
+            throw new MiruQueryServiceException("Failed to serialize params for host: " + host + " endpoint: " + endpoint, e);
+        } catch (Exception e) {
+            throw new MiruQueryServiceException("Failed remote read for host: " + host + " endpoint: " + endpoint, e);
+        } finally {
+            endPointMetrics.stop();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    <A> MiruPartitionResponse<A> readFrames(InputStream inputStream, A emptyResults, MiruAnswerMerger<A> chunkMerger) throws Exception {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream, 8192));
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported chunked response version: " + version);
+        }
+        boolean snappy = (in.readByte() & FLAG_SNAPPY) != 0;
+
+        MiruSolutionLog chunkLog = new MiruSolutionLog(MiruSolutionLogLevel.NONE);
+        A merged = null;
+        List<String> log = null;
+        int chunks = 0;
+        long bytes = 0;
+        while (true) {
+            byte frameType = in.readByte();
+            if (frameType == FRAME_END) {
+                break;
+            }
+            int length = in.readInt();
+            if (length < 0 || length > maxFrameSizeInBytes || frameType == FRAME_ERROR && length < 1) {
+                throw new IOException("Invalid frame of length " + length + " with max frame size " + maxFrameSizeInBytes);
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            bytes += length;
+            if (frameType == FRAME_ERROR) {
+                String message = new String(payload, 1, payload.length - 1, StandardCharsets.UTF_8);
+                if (payload[0] != 0) {
+                    throw new MiruPartitionUnavailableException(message);
+                }
+                throw new IOException("Remote solve failed: " + message);
+            }
+            if (snappy) {
+                payload = Snappy.uncompress(payload);
+            }
+
+            if (frameType == FRAME_LOG) {
+                log = (List<String>) CONF.asObject(payload);
+            } else if (frameType == FRAME_ANSWER) {
+                A chunk = (A) CONF.asObject(payload);
+                if (merged == null) {
+                    merged = chunk;
+                } else if (chunkMerger != null) {
+                    merged = chunkMerger.merge(Optional.of(merged), chunk, chunkLog);
+                } else {
+                    throw new IllegalStateException("Received multiple answer chunks without a merger");
+                }
+                chunks++;
+            } else {
+                throw new IOException("Unknown frame type: " + frameType);
+            }
+        }
+
+        LOG.inc("chunked>read>calls");
+        LOG.inc("chunked>read>chunks", chunks);
+        LOG.inc("chunked>read>bytes", bytes);
+        return new MiruPartitionResponse<>(merged != null ? merged : emptyResults, log);
+    }
+
+    private static void close(HttpStreamResponse response) {
+        try {
+            response.close();
+        } catch (Exception e) {
+            LOG.warn("Failed to close chunked response", e);
+        }
+    }
+}
@@ -29,17 +29,21 @@ import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruIntIterator;
 import com.jivesoftware.os.miru.plugin.cache.MiruPluginCacheProvider.TimestampedCacheKeyValues;
 import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
+import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
 import com.jivesoftware.os.miru.plugin.index.FieldMultiTermTxIndex;
 import com.jivesoftware.os.miru.plugin.index.IdAndTermIdStream;
 import com.jivesoftware.os.miru.plugin.index.MiruActivityIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruFieldIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruFieldIndexProvider;
 import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
+import com.jivesoftware.os.miru.plugin.index.MiruTermOrdinals;
 import com.jivesoftware.os.miru.plugin.index.MiruTxIndex;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import com.jivesoftware.os.rcvs.marshall.api.UtilLexMarshaller;
+import gnu.trove.iterator.TIntIntIterator;
 import gnu.trove.iterator.TObjectIntIterator;
+import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -59,6 +63,8 @@ public class MiruAggregateUtil {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
+    private static final int PLAN_SAMPLE_TERMS = 8;
+
     public interface StreamBitmaps<BM> {
 
         boolean stream(int streamIndex, int lastId, int fieldId, MiruTermId termId, int scoredToLastId, BM[] answers) throws Exception;
@@ -1028,6 +1034,10 @@ public class MiruAggregateUtil {
 
         FieldMultiTermTxIndex<BM, IBM> multiTermTxIndex = new FieldMultiTermTxIndex<>(name, primaryFieldIndex, pivotFieldId, -1);
         TObjectIntHashMap<MiruTermId> distincts = new TObjectIntHashMap<>(batchSize);
+        MiruFieldDefinition pivotFieldDefinition = schema.getFieldDefinition(pivotFieldId);
+        MiruTermOrdinals termOrdinals = activityIndex.getTermOrdinals();
+        TIntIntHashMap ordinalDistincts = termOrdinals != null ? new TIntIntHashMap(batchSize) : null;
+        boolean useOrdinals = termOrdinals != null;
 
         int[] ids = new int[batchSize];
         int gets = 0;
@@ -1051,29 +1061,66 @@ public class MiruAggregateUtil {
             gets++;
 
             long start = System.nanoTime();
-            MiruTermId[][] all = activityIndex.getAll(name, actualIds, schema.getFieldDefinition(pivotFieldId), stackBuffer);
-            getAllCost += (System.nanoTime() - start);
-            distincts.clear();
+            int[][] allOrdinals = useOrdinals
+                ? activityIndex.getAllOrdinals(name, actualIds, 0, actualIds.length, pivotFieldDefinition, stackBuffer)
+                : null;
+            MiruTermId[] termIds;
+            int[] foundIds;
+            if (allOrdinals != null) {
+                // dedupe on ints and only decode the distinct ordinals back to terms
+                ordinalDistincts.clear();
+                for (int i = 0; i < allOrdinals.length; i++) {
+                    int[] ordinals = allOrdinals[i];
+                    if (ordinals != null) {
+                        for (int ordinal : ordinals) {
+                            ordinalDistincts.putIfAbsent(ordinal, ids[i]);
+                        }
+                    }
+                }
 
-            for (int i = 0; i < all.length; i++) {
-                MiruTermId[] termIds = all[i];
-                if (termIds != null && termIds.length > 0) {
-                    for (MiruTermId termId : termIds) {
-                        distincts.putIfAbsent(termId, ids[i]);
+                int[] ordinals = new int[ordinalDistincts.size()];
+                foundIds = new int[ordinalDistincts.size()];
+                TIntIntIterator iter = ordinalDistincts.iterator();
+                for (int i = 0; iter.hasNext(); i++) {
+                    iter.advance();
+                    ordinals[i] = iter.key();
+                    foundIds[i] = iter.value();
+                }
+                termIds = termOrdinals.getTermIds(pivotFieldId, ordinals, 0, ordinals.length, stackBuffer);
+                getAllCost += (System.nanoTime() - start);
+
+                // the ordinal path reads every id's ordinals and then each distinct term, so it only beats a single getAll
+                // while the batch is dominated by repeated terms
+                if (ordinals.length * 2 > added) {
+                    useOrdinals = false;
+                    solutionLog.log(MiruSolutionLogLevel.DEBUG, "gather aggregate stopped using ordinals after {} distinct in {} ids",
+                        ordinals.length, added);
+                }
+            } else {
+                MiruTermId[][] all = activityIndex.getAll(name, actualIds, pivotFieldDefinition, stackBuffer);
+                getAllCost += (System.nanoTime() - start);
+                distincts.clear();
+
+                for (int i = 0; i < all.length; i++) {
+                    MiruTermId[] allTermIds = all[i];
+                    if (allTermIds != null && allTermIds.length > 0) {
+                        for (MiruTermId termId : allTermIds) {
+                            distincts.putIfAbsent(termId, ids[i]);
+                        }
                     }
                 }
-            }
 
-            MiruTermId[] termIds = new MiruTermId[distincts.size()];
-            int[] foundIds = new int[distincts.size()];
-            TObjectIntIterator<MiruTermId> iter = distincts.iterator();
-            for (int i = 0; iter.hasNext(); i++) {
-                iter.advance();
-                termIds[i] = iter.key();
-                foundIds[i] = iter.value();
+                termIds = new MiruTermId[distincts.size()];
+                foundIds = new int[distincts.size()];
+                TObjectIntIterator<MiruTermId> iter = distincts.iterator();
+                for (int i = 0; iter.hasNext(); i++) {
+                    iter.advance();
+                    termIds[i] = iter.key();
+                    foundIds[i] = iter.value();
+                }
             }
 
-            long[] counts = includeCounts ? new long[distincts.size()] : null;
+            long[] counts = includeCounts ? new long[termIds.length] : null;
 
             start = System.nanoTime();
             MiruTermId[] consumableTermIds = new MiruTermId[termIds.length];
@@ -1106,6 +1153,54 @@ public class MiruAggregateUtil {
         int maxWildcardExpansion,
         StackBuffer stackBuffer)
         throws Exception {
+        return filter(name,
+            bitmaps,
+            context,
+            filter,
+            solutionLog,
+            termCollector,
+            largestIndex,
+            considerIfIndexIdGreaterThanN,
+            maxWildcardExpansion,
+            null,
+            stackBuffer);
+    }
+
+    /**
+     * Same as {@link #filter(String, MiruBitmaps, MiruRequestContext, MiruFilter, MiruSolutionLog, Map, int, int, int, StackBuffer)},
+     * with the result additionally constrained to the given masks (e.g. time range and authz). Masks are pushed down into
+     * "and" filters so that they take part in short-circuiting before any term unions are materialized.
+     */
+    public <BM extends IBM, IBM> BM filter(String name,
+        MiruBitmaps<BM, IBM> bitmaps,
+        MiruRequestContext<BM, IBM, ?> context,
+        MiruFilter filter,
+        MiruSolutionLog solutionLog,
+        Map<FieldAndTermId, MutableInt> termCollector,
+        int largestIndex,
+        int considerIfIndexIdGreaterThanN,
+        int maxWildcardExpansion,
+        List<IBM> masks,
+        StackBuffer stackBuffer)
+        throws Exception {
+        MiruSharedFilters<BM, IBM> sharedFilters = context.getSharedFilters();
+        if (sharedFilters != null && termCollector == null && (masks == null || masks.isEmpty())) {
+            // term collection and per-request masks make a result specific to its caller, so only plain filters are shared
+            BM shared = sharedFilters.filter(filter, largestIndex, considerIfIndexIdGreaterThanN, maxWildcardExpansion,
+                () -> filterInOut(name,
+                    bitmaps,
+                    context,
+                    filter,
+                    solutionLog,
+                    null,
+                    true,
+                    largestIndex,
+                    considerIfIndexIdGreaterThanN,
+                    maxWildcardExpansion,
+                    null,
+                    stackBuffer));
+            return bitmaps.copy(shared);
+        }
         return filterInOut(name,
             bitmaps,
             context,
@@ -1116,6 +1211,7 @@ public class MiruAggregateUtil {
             largestIndex,
             considerIfIndexIdGreaterThanN,
             maxWildcardExpansion,
+            masks,
             stackBuffer);
     }
 
@@ -1129,54 +1225,31 @@ public class MiruAggregateUtil {
         int largestIndex,
         int considerIfLastIdGreaterThanN,
         int maxWildcardExpansion,
+        List<IBM> masks,
         StackBuffer stackBuffer)
         throws Exception {
 
+        if (filter.operation == MiruFilterOperation.and) {
+            return plannedAnd(name, bitmaps, context, filter, solutionLog, termCollector, termIn, largestIndex, considerIfLastIdGreaterThanN,
+                maxWildcardExpansion, masks, stackBuffer);
+        }
+
         MiruSchema schema = context.getSchema();
-        MiruTermComposer termComposer = context.getTermComposer();
         MiruFieldIndexProvider<BM, IBM> fieldIndexProvider = context.getFieldIndexProvider();
         List<MiruTxIndex<IBM>> filterBitmaps = new ArrayList<>();
         if (filter.inclusiveFilter) {
             filterBitmaps.add(new SimpleInvertedIndex<>(bitmaps.buildIndexMask(largestIndex, context.getRemovalIndex(), null, stackBuffer)));
         }
         if (filter.fieldFilters != null) {
-            boolean abortIfEmpty = filter.operation == MiruFilterOperation.and;
             for (MiruFieldFilter fieldFilter : filter.fieldFilters) {
                 int fieldId = schema.getFieldId(fieldFilter.fieldName);
                 if (fieldId >= 0) {
-                    MiruFieldDefinition fieldDefinition = schema.getFieldDefinition(fieldId);
-                    final List<MiruTermId> fieldTermIds = new ArrayList<>();
                     boolean fieldTermIn = filter.operation == MiruFilterOperation.pButNotQ && !filterBitmaps.isEmpty() ? !termIn : termIn;
-                    long start = System.currentTimeMillis();
-                    List<MiruValue> values = fieldFilter.values != null ? fieldFilter.values : Collections.emptyList();
                     MiruFieldIndex<BM, IBM> fieldIndex = fieldIndexProvider.getFieldIndex(fieldFilter.fieldType);
-                    for (MiruValue value : values) {
-                        if (fieldDefinition.prefix.type != MiruFieldDefinition.Prefix.Type.none && value.last().equals("*")) {
-                            String[] baseParts = value.slice(0, value.parts.length - 1);
-                            byte[] lowerInclusive = termComposer.prefixLowerInclusive(schema, fieldDefinition, stackBuffer, baseParts);
-                            byte[] upperExclusive = termComposer.prefixUpperExclusive(schema, fieldDefinition, stackBuffer, baseParts);
-                            int[] count = { 0 };
-                            fieldIndex.streamTermIdsForField(name, fieldId,
-                                Collections.singletonList(new KeyRange(lowerInclusive, upperExclusive)),
-                                termId -> {
-                                    if (termId != null) {
-                                        collectTerm(fieldId, termId, fieldTermIn, fieldTermIds, termCollector);
-                                        count[0]++;
-                                    }
-                                    return maxWildcardExpansion <= 0 || count[0] < maxWildcardExpansion;
-                                }, stackBuffer);
-                        } else {
-                            MiruTermId termId = termComposer.compose(schema, fieldDefinition, stackBuffer, value.parts);
-                            collectTerm(fieldId, termId, fieldTermIn, fieldTermIds, termCollector);
-                        }
-                    }
-                    solutionLog.log(MiruSolutionLogLevel.DEBUG, "filter: fieldId={} values={} lookup took {} millis.",
-                        fieldId, values.size(), System.currentTimeMillis() - start);
-                    if (abortIfEmpty && fieldTermIds.isEmpty()) {
-                        // implicitly empty results, "and" operation would also be empty
-                        return bitmaps.create();
-                    } else if (!fieldTermIds.isEmpty()) {
-                        start = System.currentTimeMillis();
+                    List<MiruTermId> fieldTermIds = collectFieldTermIds(name, context, fieldIndex, fieldId, fieldFilter, fieldTermIn, solutionLog,
+                        termCollector, maxWildcardExpansion, stackBuffer);
+                    if (!fieldTermIds.isEmpty()) {
+                        long start = System.currentTimeMillis();
                         MiruTermId[] termIds = fieldTermIds.toArray(new MiruTermId[fieldTermIds.size()]);
                         FieldMultiTermTxIndex<BM, IBM> multiTxIndex = new FieldMultiTermTxIndex<>(name, fieldIndex, fieldId, considerIfLastIdGreaterThanN);
                         multiTxIndex.setTermIds(termIds);
@@ -1194,11 +1267,228 @@ public class MiruAggregateUtil {
             for (MiruFilter subFilter : filter.subFilters) {
                 boolean subTermIn = (filter.operation == MiruFilterOperation.pButNotQ && !filterBitmaps.isEmpty()) ? !termIn : termIn;
                 BM subStorage = filterInOut(name, bitmaps, context, subFilter, solutionLog,
-                    termCollector, subTermIn, largestIndex, considerIfLastIdGreaterThanN, maxWildcardExpansion, stackBuffer);
+                    termCollector, subTermIn, largestIndex, considerIfLastIdGreaterThanN, maxWildcardExpansion, null, stackBuffer);
                 filterBitmaps.add(new SimpleInvertedIndex<>(subStorage));
             }
         }
-        return executeFilter(bitmaps, filter.operation, solutionLog, filterBitmaps, stackBuffer);
+        BM result = executeFilter(bitmaps, filter.operation, solutionLog, filterBitmaps, stackBuffer);
+        if (masks != null && !masks.isEmpty()) {
+            List<IBM> ands = new ArrayList<>(masks.size() + 1);
+            ands.add(result);
+            ands.addAll(masks);
+            result = bitmaps.and(ands);
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates an "and" filter as a plan rather than in declaration order. Masks are intersected first, then each branch is
+     * estimated (field branches by the exact cardinality of up to {@link #PLAN_SAMPLE_TERMS} of their terms, scaled up to the full
+     * term count) and evaluated smallest first. Sub-filters have no cheap estimate, so they go last and receive the running
+     * intersection as a mask. Planning itself fetches the sampled terms of every field branch, up to the first whose sample is
+     * complete and empty. Evaluation stops as soon as the intersection is empty, which skips the unsampled terms of the remaining
+     * field branches and every remaining sub-filter; their sampled bitmaps have already been read.
+     */
+    private <BM extends IBM, IBM> BM plannedAnd(String name,
+        MiruBitmaps<BM, IBM> bitmaps,
+        MiruRequestContext<BM, IBM, ?> context,
+        MiruFilter filter,
+        MiruSolutionLog solutionLog,
+        Map<FieldAndTermId, MutableInt> termCollector,
+        boolean termIn,
+        int largestIndex,
+        int considerIfLastIdGreaterThanN,
+        int maxWildcardExpansion,
+        List<IBM> masks,
+        StackBuffer stackBuffer)
+        throws Exception {
+
+        long start = System.currentTimeMillis();
+        MiruSchema schema = context.getSchema();
+        MiruFieldIndexProvider<BM, IBM> fieldIndexProvider = context.getFieldIndexProvider();
+
+        List<IBM> seed = new ArrayList<>();
+        if (masks != null) {
+            seed.addAll(masks);
+        }
+        if (filter.inclusiveFilter) {
+            seed.add(bitmaps.buildIndexMask(largestIndex, context.getRemovalIndex(), null, stackBuffer));
+        }
+        BM intermediate = seed.isEmpty() ? null : bitmaps.and(seed);
+        boolean shortCircuit = intermediate != null && bitmaps.isEmpty(intermediate);
+
+        List<PlanBranch<BM, IBM>> branches = new ArrayList<>();
+        if (filter.fieldFilters != null) {
+            for (MiruFieldFilter fieldFilter : filter.fieldFilters) {
+                int fieldId = schema.getFieldId(fieldFilter.fieldName);
+                if (fieldId >= 0) {
+                    MiruFieldIndex<BM, IBM> fieldIndex = fieldIndexProvider.getFieldIndex(fieldFilter.fieldType);
+                    List<MiruTermId> fieldTermIds = collectFieldTermIds(name, context, fieldIndex, fieldId, fieldFilter, termIn, solutionLog,
+                        termCollector, maxWildcardExpansion, stackBuffer);
+                    if (fieldTermIds.isEmpty()) {
+                        // implicitly empty results, "and" operation would also be empty
+                        solutionLog.log(MiruSolutionLogLevel.INFO, "filter plan: fieldId={} has no terms, and is empty.", fieldId);
+                        return bitmaps.create();
+                    }
+                    PlanBranch<BM, IBM> branch = new PlanBranch<>(fieldId, fieldIndex, fieldTermIds, null);
+                    if (!shortCircuit) {
+                        branch.estimate(name, bitmaps, considerIfLastIdGreaterThanN, stackBuffer);
+                        // every term was sampled and none matched, so there is nothing left to estimate or evaluate
+                        if (branch.estimate == 0 && branch.termIds.size() <= PLAN_SAMPLE_TERMS) {
+                            intermediate = bitmaps.create();
+                            shortCircuit = true;
+                        }
+                    }
+                    branches.add(branch);
+                } else {
+                    solutionLog.log(MiruSolutionLogLevel.INFO, "schema lacks field definition for fieldName:" + fieldFilter.fieldName);
+                }
+            }
+        }
+        if (filter.subFilters != null) {
+            for (MiruFilter subFilter : filter.subFilters) {
+                branches.add(new PlanBranch<>(-1, null, null, subFilter));
+            }
+        }
+        Collections.sort(branches);
+
+        int evaluated = 0;
+        if (!shortCircuit) {
+            for (PlanBranch<BM, IBM> branch : branches) {
+                evaluated++;
+                if (branch.subFilter != null) {
+                    intermediate = filterInOut(name, bitmaps, context, branch.subFilter, solutionLog, termCollector, termIn, largestIndex,
+                        considerIfLastIdGreaterThanN, maxWildcardExpansion, intermediate == null ? null : Collections.singletonList(intermediate),
+                        stackBuffer);
+                } else {
+                    BM r = branch.materialize(name, bitmaps, considerIfLastIdGreaterThanN, stackBuffer);
+                    intermediate = intermediate == null ? r : bitmaps.and(Arrays.<IBM>asList(intermediate, r));
+                }
+                if (bitmaps.isEmpty(intermediate)) {
+                    shortCircuit = evaluated < branches.size();
+                    break;
+                }
+            }
+        }
+
+        if (solutionLog.isLogLevelEnabled(MiruSolutionLogLevel.INFO)) {
+            solutionLog.log(MiruSolutionLogLevel.INFO, "filter plan: masks={} branches={} evaluated={} shortCircuit={} took {} millis.",
+                seed.size(), branches, evaluated, shortCircuit, System.currentTimeMillis() - start);
+        }
+        if (shortCircuit) {
+            LOG.inc("filter>plan>shortCircuit");
+            LOG.inc("filter>plan>skipped", branches.size() - evaluated);
+        }
+        return intermediate != null ? intermediate : bitmaps.create();
+    }
+
+    private <BM extends IBM, IBM> List<MiruTermId> collectFieldTermIds(String name,
+        MiruRequestContext<BM, IBM, ?> context,
+        MiruFieldIndex<BM, IBM> fieldIndex,
+        int fieldId,
+        MiruFieldFilter fieldFilter,
+        boolean fieldTermIn,
+        MiruSolutionLog solutionLog,
+        Map<FieldAndTermId, MutableInt> termCollector,
+        int maxWildcardExpansion,
+        StackBuffer stackBuffer) throws Exception {
+
+        MiruSchema schema = context.getSchema();
+        MiruTermComposer termComposer = context.getTermComposer();
+        MiruFieldDefinition fieldDefinition = schema.getFieldDefinition(fieldId);
+        final List<MiruTermId> fieldTermIds = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        List<MiruValue> values = fieldFilter.values != null ? fieldFilter.values : Collections.emptyList();
+        for (MiruValue value : values) {
+            if (fieldDefinition.prefix.type != MiruFieldDefinition.Prefix.Type.none && value.last().equals("*")) {
+                String[] baseParts = value.slice(0, value.parts.length - 1);
+                byte[] lowerInclusive = termComposer.prefixLowerInclusive(schema, fieldDefinition, stackBuffer, baseParts);
+                byte[] upperExclusive = termComposer.prefixUpperExclusive(schema, fieldDefinition, stackBuffer, baseParts);
+                int[] count = { 0 };
+                fieldIndex.streamTermIdsForField(name, fieldId,
+                    Collections.singletonList(new KeyRange(lowerInclusive, upperExclusive)),
+                    termId -> {
+                        if (termId != null) {
+                            collectTerm(fieldId, termId, fieldTermIn, fieldTermIds, termCollector);
+                            count[0]++;
+                        }
+                        return maxWildcardExpansion <= 0 || count[0] < maxWildcardExpansion;
+                    }, stackBuffer);
+            } else {
+                MiruTermId termId = termComposer.compose(schema, fieldDefinition, stackBuffer, value.parts);
+                collectTerm(fieldId, termId, fieldTermIn, fieldTermIds, termCollector);
+            }
+        }
+        solutionLog.log(MiruSolutionLogLevel.DEBUG, "filter: fieldId={} values={} lookup took {} millis.",
+            fieldId, values.size(), System.currentTimeMillis() - start);
+        return fieldTermIds;
+    }
+
+    private static class PlanBranch<BM extends IBM, IBM> implements Comparable<PlanBranch<BM, IBM>> {
+
+        private final int fieldId;
+        private final MiruFieldIndex<BM, IBM> fieldIndex;
+        private final List<MiruTermId> termIds;
+        private final MiruFilter subFilter;
+
+        private final List<IBM> sampled = new ArrayList<>();
+        private long estimate = Long.MAX_VALUE;
+
+        private PlanBranch(int fieldId, MiruFieldIndex<BM, IBM> fieldIndex, List<MiruTermId> termIds, MiruFilter subFilter) {
+            this.fieldId = fieldId;
+            this.fieldIndex = fieldIndex;
+            this.termIds = termIds;
+            this.subFilter = subFilter;
+        }
+
+        private void estimate(String name, MiruBitmaps<BM, IBM> bitmaps, int considerIfLastIdGreaterThanN, StackBuffer stackBuffer)
+            throws Exception {
+            int sampleSize = Math.min(PLAN_SAMPLE_TERMS, termIds.size());
+            MiruTermId[] sampleTermIds = termIds.subList(0, sampleSize).toArray(new MiruTermId[sampleSize]);
+            @SuppressWarnings("unchecked")
+            BitmapAndLastId<BM>[] results = new BitmapAndLastId[sampleSize];
+            fieldIndex.multiGet(name, fieldId, sampleTermIds, results, stackBuffer);
+            long sampledCardinality = 0;
+            for (BitmapAndLastId<BM> result : results) {
+                if (result != null && result.isSet() && (considerIfLastIdGreaterThanN < 0 || result.getLastId() > considerIfLastIdGreaterThanN)) {
+                    sampled.add(result.getBitmap());
+                    sampledCardinality += bitmaps.cardinality(result.getBitmap());
+                }
+            }
+            // a sum over a union overestimates, which is fine for ordering
+            estimate = sampleSize == termIds.size() ? sampledCardinality : sampledCardinality * termIds.size() / sampleSize;
+        }
+
+        private BM materialize(String name, MiruBitmaps<BM, IBM> bitmaps, int considerIfLastIdGreaterThanN, StackBuffer stackBuffer)
+            throws Exception {
+            int sampleSize = Math.min(PLAN_SAMPLE_TERMS, termIds.size());
+            if (sampleSize == termIds.size()) {
+                return bitmaps.or(sampled);
+            }
+            List<MiruTermId> remaining = termIds.subList(sampleSize, termIds.size());
+            FieldMultiTermTxIndex<BM, IBM> multiTxIndex = new FieldMultiTermTxIndex<>(name, fieldIndex, fieldId, considerIfLastIdGreaterThanN);
+            multiTxIndex.setTermIds(remaining.toArray(new MiruTermId[remaining.size()]));
+            BM r = bitmaps.orMultiTx(multiTxIndex, stackBuffer);
+            if (sampled.isEmpty()) {
+                return r;
+            }
+            List<IBM> ors = new ArrayList<>(sampled.size() + 1);
+            ors.add(r);
+            ors.addAll(sampled);
+            return bitmaps.or(ors);
+        }
+
+        @Override
+        public int compareTo(PlanBranch<BM, IBM> o) {
+            return Long.compare(estimate, o.estimate);
+        }
+
+        @Override
+        public String toString() {
+            return subFilter != null
+                ? "sub:" + subFilter.operation
+                : "field:" + fieldId + "(terms=" + termIds.size() + ",est=" + estimate + ")";
+        }
     }
 
     private void collectTerm(int fieldId,
@@ -0,0 +1,15 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+/**
+ * Splits an answer into partial answers which, when folded back together with the answer's {@link MiruAnswerMerger},
+ * reproduce the original answer.
+ */
+public interface MiruAnswerChunker<A> {
+
+    void chunk(A answer, int maxItemsPerChunk, ChunkStream<A> stream) throws Exception;
+
+    interface ChunkStream<A> {
+
+        void stream(A chunk) throws Exception;
+    }
+}
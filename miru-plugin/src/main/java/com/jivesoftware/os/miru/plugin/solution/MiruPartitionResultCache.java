@@ -0,0 +1,189 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.guava.GuavaModule;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.nustaq.serialization.FSTConfiguration;
+
+/**
+ * Byte-bounded cache of per-partition responses for partitions whose writers are closed. Entries are keyed by the
+ * partition coord, the context version, a per-coord generation that is bumped whenever the partition indexes anything,
+ * and a canonical fingerprint of the request and report. Responses are held serialized, so the bound is exact and a
+ * cached answer can never be mutated by a downstream merge.
+ */
+public class MiruPartitionResultCache {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private static final FSTConfiguration CONF = FSTConfiguration.createDefaultConfiguration();
+    private static final ObjectMapper CANONICAL_MAPPER;
+
+    static {
+        CANONICAL_MAPPER = new ObjectMapper();
+        CANONICAL_MAPPER.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        CANONICAL_MAPPER.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+        CANONICAL_MAPPER.configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+        CANONICAL_MAPPER.registerModule(new GuavaModule());
+    }
+
+    private static final int KEY_OVERHEAD_IN_BYTES = 64;
+
+    private final Cache<ResultKey, byte[]> cache;
+    private final ConcurrentMap<MiruPartitionCoord, AtomicLong> generations = Maps.newConcurrentMap();
+
+    public MiruPartitionResultCache(long maxSizeInBytes) {
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxSizeInBytes)
+            .weigher((Weigher<ResultKey, byte[]>) (key, value) -> KEY_OVERHEAD_IN_BYTES + key.fingerprint.length + value.length)
+            .build();
+    }
+
+    /**
+     * Scopes the cache to a single partition context. Called once per request handle, so the generation is captured at
+     * acquisition time.
+     */
+    public PartitionResults scope(MiruPartitionCoord coord, long contextVersion) {
+        return new PartitionResults(coord, contextVersion, generation(coord).get());
+    }
+
+    /**
+     * Orphans every cached response for the coord. Cheap enough to call on every indexed batch.
+     */
+    public void invalidate(MiruPartitionCoord coord) {
+        generation(coord).incrementAndGet();
+    }
+
+    /**
+     * Drops the coord's generation and every response cached for it. Called when the partition closes, so it walks the cache.
+     */
+    public void close(MiruPartitionCoord coord) {
+        generations.remove(coord);
+        cache.asMap().keySet().removeIf(key -> key.coord.equals(coord));
+    }
+
+    private AtomicLong generation(MiruPartitionCoord coord) {
+        AtomicLong generation = generations.get(coord);
+        if (generation == null) {
+            generations.putIfAbsent(coord, new AtomicLong());
+            generation = generations.get(coord);
+        }
+        return generation;
+    }
+
+    /**
+     * @return a 128-bit canonical hash of the query key, request and report, independent of map and property ordering
+     */
+    public static byte[] fingerprint(String queryKey, MiruRequest<?> request, Optional<?> report) throws Exception {
+        byte[] requestBytes = CANONICAL_MAPPER.writeValueAsBytes(request);
+        byte[] reportBytes = report.isPresent() ? CANONICAL_MAPPER.writeValueAsBytes(report.get()) : new byte[0];
+        return Hashing.murmur3_128().newHasher()
+            .putString(queryKey)
+            .putInt(requestBytes.length)
+            .putBytes(requestBytes)
+            .putInt(reportBytes.length)
+            .putBytes(reportBytes)
+            .hash()
+            .asBytes();
+    }
+
+    public class PartitionResults {
+
+        private final MiruPartitionCoord coord;
+        private final long contextVersion;
+        private final long generation;
+
+        private PartitionResults(MiruPartitionCoord coord, long contextVersion, long generation) {
+            this.coord = coord;
+            this.contextVersion = contextVersion;
+            this.generation = generation;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <A> MiruPartitionResponse<A> get(byte[] fingerprint) {
+            byte[] bytes = cache.getIfPresent(new ResultKey(coord, contextVersion, generation, fingerprint));
+            if (bytes == null) {
+                LOG.inc("partitionResultCache>miss");
+                return null;
+            }
+            LOG.inc("partitionResultCache>hit");
+            LOG.inc("partitionResultCache>hit>bytes", bytes.length);
+            return (MiruPartitionResponse<A>) CONF.asObject(bytes);
+        }
+
+        public <A> void put(byte[] fingerprint, MiruPartitionResponse<A> response) {
+            AtomicLong current = generations.get(coord);
+            if (current == null || current.get() != generation) {
+                // indexed or closed since the handle was acquired, the response may already be stale
+                LOG.inc("partitionResultCache>put>stale");
+                return;
+            }
+            byte[] bytes = CONF.asByteArray(response);
+            cache.put(new ResultKey(coord, contextVersion, generation, fingerprint), bytes);
+            LOG.inc("partitionResultCache>put");
+            LOG.inc("partitionResultCache>put>bytes", bytes.length);
+        }
+    }
+
+    private static class ResultKey {
+
+        private final MiruPartitionCoord coord;
+        private final long contextVersion;
+        private final long generation;
+        private final byte[] fingerprint;
+        private final int hashCode;
+
+        private ResultKey(MiruPartitionCoord coord, long contextVersion, long generation, byte[] fingerprint) {
+            this.coord = coord;
+            this.contextVersion = contextVersion;
+            this.generation = generation;
+            this.fingerprint = fingerprint;
+
+            int result = coord.hashCode();
+            result = 31 * result + (int) (contextVersion ^ (contextVersion >>> 32));
+            result = 31 * result + (int) (generation ^ (generation >>> 32));
+            result = 31 * result + Arrays.hashCode(fingerprint);
+            this.hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            ResultKey resultKey = (ResultKey) o;
+
+            if (contextVersion != resultKey.contextVersion) {
+                return false;
+            }
+            if (generation != resultKey.generation) {
+                return false;
+            }
+            if (!coord.equals(resultKey.coord)) {
+                return false;
+            }
+            return Arrays.equals(fingerprint, resultKey.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
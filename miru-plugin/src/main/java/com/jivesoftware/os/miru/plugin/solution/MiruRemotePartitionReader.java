@@ -21,4 +21,21 @@ public interface MiruRemotePartitionReader {
         EndPointMetrics endPointMetrics,
         A emptyResults)
         throws MiruQueryServiceException, MiruPartitionUnavailableException;
+
+    /**
+     * Reads a response that may arrive as several partial answers, folding each one into the result with the given merger
+     * as soon as it arrives. Readers that receive the whole response at once ignore the merger.
+     */
+    default <Q, A, P> MiruPartitionResponse<A> read(String queryKey,
+        MiruHost host,
+        String endpoint,
+        MiruRequest<Q> request,
+        Class<A> answerClass,
+        Optional<P> report,
+        EndPointMetrics endPointMetrics,
+        A emptyResults,
+        MiruAnswerMerger<A> chunkMerger)
+        throws MiruQueryServiceException, MiruPartitionUnavailableException {
+        return read(queryKey, host, endpoint, request, answerClass, report, endPointMetrics, emptyResults);
+    }
 }
@@ -30,6 +30,13 @@ public interface MiruRequestHandle<BM extends IBM, IBM, S extends MiruSipCursor<
 
     void compact() throws Exception;
 
+    /**
+     * @return results cached for this partition's current context, or null if the partition may still change
+     */
+    default MiruPartitionResultCache.PartitionResults getPartitionResults() {
+        return null;
+    }
+
     interface AsyncQuestion<BM extends IBM, IBM> {
 
         void ask(MiruRequestHandle<BM, IBM, ?> handle) throws Exception;
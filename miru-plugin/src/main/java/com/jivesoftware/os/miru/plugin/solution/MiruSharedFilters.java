@@ -0,0 +1,107 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shares filter evaluations between concurrent requests against the same partition context. The first request to evaluate
+ * a filter does the work, and any identical request that arrives while it is running, or within the window after it
+ * completes, is handed the same bitmap instead of re-reading the same inverted indexes. Shared bitmaps must be treated as
+ * immutable, so callers get a copy.
+ */
+public class MiruSharedFilters<BM extends IBM, IBM> {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final Cache<FilterKey, BM> shared;
+
+    /**
+     * @param windowMillis how long a completed evaluation is shared, or 0 to only share evaluations that are in flight
+     * @param maxEntries the most completed evaluations to hold at once
+     */
+    public MiruSharedFilters(long windowMillis, int maxEntries) {
+        this.shared = CacheBuilder.newBuilder()
+            .expireAfterWrite(Math.max(windowMillis, 0), TimeUnit.MILLISECONDS)
+            .maximumSize(maxEntries)
+            .build();
+    }
+
+    public BM filter(MiruFilter filter,
+        int largestIndex,
+        int considerIfIndexIdGreaterThanN,
+        int maxWildcardExpansion,
+        Callable<BM> evaluate) throws Exception {
+
+        AtomicBoolean evaluated = new AtomicBoolean(false);
+        BM bitmap;
+        try {
+            bitmap = shared.get(new FilterKey(filter, largestIndex, considerIfIndexIdGreaterThanN, maxWildcardExpansion), () -> {
+                evaluated.set(true);
+                return evaluate.call();
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+        LOG.inc(evaluated.get() ? "sharedFilters>evaluated" : "sharedFilters>shared");
+        return bitmap;
+    }
+
+    private static class FilterKey {
+
+        private final MiruFilter filter;
+        private final int largestIndex;
+        private final int considerIfIndexIdGreaterThanN;
+        private final int maxWildcardExpansion;
+
+        private FilterKey(MiruFilter filter, int largestIndex, int considerIfIndexIdGreaterThanN, int maxWildcardExpansion) {
+            this.filter = filter;
+            this.largestIndex = largestIndex;
+            this.considerIfIndexIdGreaterThanN = considerIfIndexIdGreaterThanN;
+            this.maxWildcardExpansion = maxWildcardExpansion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            FilterKey that = (FilterKey) o;
+
+            if (largestIndex != that.largestIndex) {
+                return false;
+            }
+            if (considerIfIndexIdGreaterThanN != that.considerIfIndexIdGreaterThanN) {
+                return false;
+            }
+            if (maxWildcardExpansion != that.maxWildcardExpansion) {
+                return false;
+            }
+            return filter.equals(that.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = filter.hashCode();
+            result = 31 * result + largestIndex;
+            result = 31 * result + considerIfIndexIdGreaterThanN;
+            result = 31 * result + maxWildcardExpansion;
+            return result;
+        }
+    }
+}
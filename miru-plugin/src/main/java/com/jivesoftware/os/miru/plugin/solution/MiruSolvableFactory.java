@@ -36,7 +36,7 @@ public class MiruSolvableFactory<Q, A, R> {
             try (MiruRequestHandle<BM, IBM, ?> handle = replica.acquireQueryHandle()) {
                 if (handle.isLocal()) {
                     long start = System.currentTimeMillis();
-                    MiruPartitionResponse<A> response = question.askLocal(handle, report);
+                    MiruPartitionResponse<A> response = askLocal(handle, report);
                     long latency = System.currentTimeMillis() - start;
                     miruStats.egressed(queryKey + ">local", 1, latency);
                     miruStats.egressed(queryKey + ">local>" + replica.getCoord().tenantId.toString() + ">" + replica.getCoord().partitionId.getId(), 1,
@@ -73,6 +73,24 @@ public class MiruSolvableFactory<Q, A, R> {
         return new MiruSolvable<>(replica.getCoord(), callable, replica.isLocal(), solutionLog);
     }
 
+    private <BM extends IBM, IBM> MiruPartitionResponse<A> askLocal(MiruRequestHandle<BM, IBM, ?> handle, Optional<R> report) throws Exception {
+        MiruPartitionResultCache.PartitionResults partitionResults = handle.getPartitionResults();
+        Optional<MiruRequest<Q>> cacheableRequest = question.getCacheableRequest();
+        if (partitionResults == null || !cacheableRequest.isPresent()) {
+            return question.askLocal(handle, report);
+        }
+
+        byte[] fingerprint = MiruPartitionResultCache.fingerprint(queryKey, cacheableRequest.get(), report);
+        MiruPartitionResponse<A> response = partitionResults.get(fingerprint);
+        if (response == null) {
+            response = question.askLocal(handle, report);
+            if (response != null) {
+                partitionResults.put(fingerprint, response);
+            }
+        }
+        return response;
+    }
+
     public Question<Q, A, R> getQuestion() {
         return question;
     }
@@ -0,0 +1,273 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.UnsignedBytes;
+import com.jivesoftware.os.miru.api.query.filter.MiruValue;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * A set for merging answers across partitions that holds at most a fixed budget of serialized values in heap. When the
+ * budget is exceeded the values in heap are written to a file in the spill directory as a sorted run, and
+ * {@link #stream(ValueStream)} k-way merges the runs with whatever is left in heap, dropping duplicates as it goes. Values
+ * are ordered by their serialized bytes. Not thread safe, and callers must {@link #close()} to remove any spilled runs,
+ * whether or not the values were ever streamed.
+ */
+public class MiruSpillingSet<T> implements AutoCloseable {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
+    private static final int ENTRY_OVERHEAD_IN_BYTES = 64;
+    private static final int RUN_BUFFER_SIZE_IN_BYTES = 64 * 1024;
+
+    public interface Codec<T> {
+
+        void write(T value, DataOutput out) throws IOException;
+
+        T read(DataInput in) throws IOException;
+    }
+
+    public interface ValueStream<T> {
+
+        boolean stream(T value) throws Exception;
+    }
+
+    public static final Codec<MiruValue> MIRU_VALUE_CODEC = new Codec<MiruValue>() {
+        @Override
+        public void write(MiruValue value, DataOutput out) throws IOException {
+            out.writeInt(value.parts.length);
+            for (String part : value.parts) {
+                byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        @Override
+        public MiruValue read(DataInput in) throws IOException {
+            String[] parts = new String[in.readInt()];
+            for (int i = 0; i < parts.length; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                parts[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return new MiruValue(parts);
+        }
+    };
+
+    private final String name;
+    private final Codec<T> codec;
+    private final long maxHeapBytes;
+    private final File spillDir;
+
+    private final TreeSet<byte[]> inHeap = new TreeSet<>(COMPARATOR);
+    private final List<File> runs = Lists.newArrayList();
+    private final ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+    private final DataOutputStream valueOut = new DataOutputStream(valueBytes);
+    private long heapBytes;
+    private long spilledCount;
+
+    public MiruSpillingSet(String name, Codec<T> codec, long maxHeapBytes, File spillDir) {
+        this.name = name;
+        this.codec = codec;
+        this.maxHeapBytes = maxHeapBytes;
+        this.spillDir = spillDir;
+    }
+
+    public void add(T value) throws IOException {
+        valueBytes.reset();
+        codec.write(value, valueOut);
+        valueOut.flush();
+        byte[] key = valueBytes.toByteArray();
+        if (inHeap.add(key)) {
+            heapBytes += ENTRY_OVERHEAD_IN_BYTES + key.length;
+            if (heapBytes > maxHeapBytes) {
+                spill();
+            }
+        }
+    }
+
+    public void addAll(Iterable<T> values) throws IOException {
+        for (T value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * @return the number of distinct values, which may overcount values that were spilled to more than one run
+     */
+    public long sizeUpperBound() {
+        return spilledCount + inHeap.size();
+    }
+
+    public long heapBytes() {
+        return heapBytes;
+    }
+
+    public int spilledRuns() {
+        return runs.size();
+    }
+
+    private void spill() throws IOException {
+        if (!spillDir.exists() && !spillDir.mkdirs() && !spillDir.isDirectory()) {
+            throw new IOException("Failed to create spill directory " + spillDir);
+        }
+        File file = File.createTempFile("miru-merge-" + name + "-", ".run", spillDir);
+        runs.add(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), RUN_BUFFER_SIZE_IN_BYTES))) {
+            for (byte[] key : inHeap) {
+                out.writeInt(key.length);
+                out.write(key);
+            }
+        }
+        spilledCount += inHeap.size();
+        LOG.inc("spillingSet>spill>runs");
+        LOG.inc("spillingSet>spill>values", inHeap.size());
+        LOG.inc("spillingSet>spill>bytes", file.length());
+        inHeap.clear();
+        heapBytes = 0;
+    }
+
+    /**
+     * Streams the distinct values in order.
+     *
+     * @return the number of values streamed
+     */
+    public long stream(ValueStream<T> stream) throws Exception {
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(runs.size() + 1, (o1, o2) -> COMPARATOR.compare(o1.current, o2.current));
+        List<Closeable> opened = Lists.newArrayListWithCapacity(runs.size());
+        try {
+            Cursor heapCursor = new Cursor(inHeap.iterator());
+            if (heapCursor.advance()) {
+                cursors.add(heapCursor);
+            }
+            for (File run : runs) {
+                RunIterator runIterator = new RunIterator(run);
+                opened.add(runIterator);
+                Cursor runCursor = new Cursor(runIterator);
+                if (runCursor.advance()) {
+                    cursors.add(runCursor);
+                }
+            }
+
+            long count = 0;
+            byte[] last = null;
+            while (!cursors.isEmpty()) {
+                Cursor cursor = cursors.poll();
+                byte[] key = cursor.current;
+                if (last == null || !Arrays.equals(last, key)) {
+                    count++;
+                    if (!stream.stream(codec.read(new DataInputStream(new ByteArrayInputStream(key))))) {
+                        break;
+                    }
+                    last = key;
+                }
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            }
+            return count;
+        } finally {
+            for (Closeable closeable : opened) {
+                closeable.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (File run : runs) {
+            if (!run.delete()) {
+                LOG.warn("Failed to delete spilled run {}", run);
+            }
+        }
+        runs.clear();
+        inHeap.clear();
+        heapBytes = 0;
+        spilledCount = 0;
+    }
+
+    private static class Cursor {
+
+        private final Iterator<byte[]> iterator;
+        private byte[] current;
+
+        private Cursor(Iterator<byte[]> iterator) {
+            this.iterator = iterator;
+        }
+
+        private boolean advance() {
+            if (iterator.hasNext()) {
+                current = iterator.next();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static class RunIterator implements Iterator<byte[]>, Closeable {
+
+        private final DataInputStream in;
+        private byte[] next;
+
+        private RunIterator(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), RUN_BUFFER_SIZE_IN_BYTES));
+            this.next = read();
+        }
+
+        private byte[] read() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            byte[] key = new byte[length];
+            in.readFully(key);
+            return key;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public byte[] next() {
+            byte[] got = next;
+            try {
+                next = read();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read spilled run", e);
+            }
+            return got;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -18,4 +18,11 @@ public interface Question<Q, A, P> {
     MiruPartitionResponse<A> askRemote(MiruHost host, MiruPartitionId partitionId, Optional<P> report) throws MiruQueryServiceException;
 
     Optional<P> createReport(Optional<A> answer);
+
+    /**
+     * @return the request to fingerprint when caching answers from closed partitions, or absent if answers must not be cached
+     */
+    default Optional<MiruRequest<Q>> getCacheableRequest() {
+        return Optional.absent();
+    }
 }
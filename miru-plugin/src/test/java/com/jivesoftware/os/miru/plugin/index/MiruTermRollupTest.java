@@ -0,0 +1,58 @@
+package com.jivesoftware.os.miru.plugin.index;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class MiruTermRollupTest {
+
+    @Test
+    public void testExtendAndSum() throws Exception {
+        MiruTermRollup rollup = new MiruTermRollup(10);
+        assertEquals(rollup.getLastId(), -1);
+
+        assertTrue(rollup.extend(-1, 0, new long[] { 1, 2, 3 }, null, 99));
+        assertTrue(rollup.extend(99, 0, new long[] { 0, 0, 1, 4 }, null, 199));
+        assertEquals(rollup.getLastId(), 199);
+
+        long[][] waveforms = new long[][] { new long[2] };
+        assertTrue(rollup.sumInto(199, new long[][] { { 9, 12 } }, new long[][] { { 12, 20 } }, waveforms));
+        assertEquals(waveforms[0][0], 1 + 2);
+        assertEquals(waveforms[0][1], 4 + 4);
+    }
+
+    @Test
+    public void testStaleExtendAndSumAreRejected() throws Exception {
+        MiruTermRollup rollup = new MiruTermRollup(0);
+        assertTrue(rollup.extend(-1, 0, new long[] { 5 }, null, 10));
+        assertFalse(rollup.extend(-1, 0, new long[] { 5 }, null, 20));
+
+        long[][] waveforms = new long[][] { new long[1] };
+        assertFalse(rollup.sumInto(20, new long[][] { { 0 } }, new long[][] { { 1 } }, waveforms));
+        assertEquals(waveforms[0][0], 0);
+    }
+
+    @Test
+    public void testInvalidBucketsAreRecounted() throws Exception {
+        MiruTermRollup rollup = new MiruTermRollup(0);
+        assertTrue(rollup.extend(-1, 0, new long[] { 3, 3 }, null, 10));
+
+        rollup.invalidate(1, 1);
+        assertTrue(rollup.hasInvalidBuckets());
+
+        long[][] waveforms = new long[][] { new long[2] };
+        assertFalse(rollup.sumInto(10, new long[][] { { 0, 1 } }, new long[][] { { 1, 2 } }, waveforms));
+
+        // recounts are required, and must not have been read before the invalidation
+        assertFalse(rollup.extend(10, 1, new long[] { 0, 1 }, null, 11));
+        assertFalse(rollup.extend(10, 0, new long[] { 0, 1 }, new long[] { 3, 2 }, 11));
+        assertTrue(rollup.extend(10, 1, new long[] { 0, 1 }, new long[] { 3, 2 }, 11));
+        assertFalse(rollup.hasInvalidBuckets());
+
+        assertTrue(rollup.sumInto(11, new long[][] { { 0, 1 } }, new long[][] { { 1, 2 } }, waveforms));
+        assertEquals(waveforms[0][0], 3);
+        assertEquals(waveforms[0][1], 2);
+    }
+}
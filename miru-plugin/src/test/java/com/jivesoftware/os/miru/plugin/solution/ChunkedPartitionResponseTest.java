@@ -0,0 +1,164 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.jivesoftware.os.miru.plugin.partition.MiruPartitionUnavailableException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ *
+ */
+public class ChunkedPartitionResponseTest {
+
+    private final MiruAnswerChunker<ArrayList<String>> chunker = (answer, maxItemsPerChunk, stream) -> {
+        if (answer.isEmpty()) {
+            stream.stream(answer);
+            return;
+        }
+        for (int i = 0; i < answer.size(); i += maxItemsPerChunk) {
+            stream.stream(Lists.newArrayList(answer.subList(i, Math.min(i + maxItemsPerChunk, answer.size()))));
+        }
+    };
+
+    private final MiruAnswerMerger<ArrayList<String>> merger = new MiruAnswerMerger<ArrayList<String>>() {
+        @Override
+        public ArrayList<String> merge(Optional<ArrayList<String>> last, ArrayList<String> current, MiruSolutionLog solutionLog) {
+            ArrayList<String> merged = Lists.newArrayList(last.or(Lists.newArrayList()));
+            merged.addAll(current);
+            return merged;
+        }
+
+        @Override
+        public ArrayList<String> done(Optional<ArrayList<String>> last, ArrayList<String> alternative, MiruSolutionLog solutionLog) {
+            return last.or(alternative);
+        }
+    };
+
+    private final ChunkedRemotePartitionReader reader = new ChunkedRemotePartitionReader(null, null, 1024 * 1024);
+
+    @DataProvider(name = "snappy")
+    public Object[][] snappy() {
+        return new Object[][] { { true }, { false } };
+    }
+
+    @Test(dataProvider = "snappy")
+    public void testRoundTrip(boolean snappy) throws Exception {
+        ArrayList<String> answer = items(0, 1_000);
+        List<String> log = Arrays.asList("a", "b");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ChunkedPartitionResponseWriter(7, snappy).write(new MiruPartitionResponse<>(answer, log), chunker, out);
+
+        MiruPartitionResponse<ArrayList<String>> read = reader.readFrames(new ByteArrayInputStream(out.toByteArray()), new ArrayList<>(), merger);
+        assertEquals(read.answer, answer);
+        assertEquals(read.log, log);
+    }
+
+    @Test
+    public void testEmptyAnswer() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ChunkedPartitionResponseWriter(10, true).write(new MiruPartitionResponse<>(new ArrayList<>(), null), chunker, out);
+
+        ArrayList<String> emptyResults = new ArrayList<>();
+        MiruPartitionResponse<ArrayList<String>> read = reader.readFrames(new ByteArrayInputStream(out.toByteArray()), emptyResults, merger);
+        assertTrue(read.answer.isEmpty());
+        assertNull(read.log);
+    }
+
+    @Test
+    public void testNullAnswerUsesEmptyResults() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ChunkedPartitionResponseWriter(10, true).write(new MiruPartitionResponse<>(null, null), chunker, out);
+
+        ArrayList<String> emptyResults = Lists.newArrayList("empty");
+        MiruPartitionResponse<ArrayList<String>> read = reader.readFrames(new ByteArrayInputStream(out.toByteArray()), emptyResults, merger);
+        assertEquals(read.answer, emptyResults);
+    }
+
+    @Test
+    public void testStreamedChunksMergeWithRemainder() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedPartitionResponseWriter writer = new ChunkedPartitionResponseWriter(10, true);
+        ChunkedPartitionResponseWriter.Session<ArrayList<String>> session = writer.open(out);
+        session.stream(items(0, 10));
+        session.stream(items(10, 20));
+        int streamedLength = out.size();
+        assertTrue(streamedLength > 2, "Streamed chunks should be flushed before finish");
+        session.finish(new MiruPartitionResponse<>(items(20, 25), Collections.singletonList("log")), chunker);
+
+        MiruPartitionResponse<ArrayList<String>> read = reader.readFrames(new ByteArrayInputStream(out.toByteArray()), new ArrayList<>(), merger);
+        assertEquals(read.answer, items(0, 25));
+        assertEquals(read.log, Collections.singletonList("log"));
+    }
+
+    @Test(dataProvider = "snappy")
+    public void testTruncatedStream(boolean snappy) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ChunkedPartitionResponseWriter(7, snappy).write(new MiruPartitionResponse<>(items(0, 100), null), chunker, out);
+        byte[] bytes = out.toByteArray();
+
+        // every cut short of the end frame must fail rather than return a partial answer
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                reader.readFrames(new ByteArrayInputStream(Arrays.copyOf(bytes, length)), new ArrayList<>(), merger);
+                fail("Expected truncated stream of length " + length + " to fail");
+            } catch (EOFException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testErrorFrame() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedPartitionResponseWriter.Session<ArrayList<String>> session = new ChunkedPartitionResponseWriter(10, true).open(out);
+        session.stream(items(0, 10));
+        session.fail(false, "boom");
+
+        try {
+            reader.readFrames(new ByteArrayInputStream(out.toByteArray()), new ArrayList<>(), merger);
+            fail("Expected error frame to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("boom"));
+        }
+    }
+
+    @Test(expectedExceptions = MiruPartitionUnavailableException.class)
+    public void testUnavailableErrorFrame() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedPartitionResponseWriter.Session<ArrayList<String>> session = new ChunkedPartitionResponseWriter(10, true).open(out);
+        session.fail(true, "Unavailable");
+
+        reader.readFrames(new ByteArrayInputStream(out.toByteArray()), new ArrayList<>(), merger);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testOversizeFrame() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ChunkedPartitionResponseWriter(10_000, false).write(new MiruPartitionResponse<>(items(0, 10_000), null), chunker, out);
+
+        new ChunkedRemotePartitionReader(null, null, 1024).readFrames(new ByteArrayInputStream(out.toByteArray()), new ArrayList<>(), merger);
+    }
+
+    private static ArrayList<String> items(int from, int to) {
+        ArrayList<String> items = Lists.newArrayList();
+        for (int i = from; i < to; i++) {
+            items.add("item-" + i);
+        }
+        return items;
+    }
+}
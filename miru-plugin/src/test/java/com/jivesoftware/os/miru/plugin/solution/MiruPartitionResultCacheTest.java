@@ -0,0 +1,97 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.miru.api.MiruActorId;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.query.filter.MiruAuthzExpression;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class MiruPartitionResultCacheTest {
+
+    private final MiruTenantId tenantId = new MiruTenantId("tenant".getBytes());
+    private final MiruPartitionCoord coord = new MiruPartitionCoord(tenantId, MiruPartitionId.of(1), new MiruHost("host"));
+
+    @Test
+    public void testFingerprintIsCanonical() throws Exception {
+        Map<String, Integer> query1 = Maps.newLinkedHashMap();
+        query1.put("a", 1);
+        query1.put("b", 2);
+        Map<String, Integer> query2 = Maps.newLinkedHashMap();
+        query2.put("b", 2);
+        query2.put("a", 1);
+        Map<String, Integer> query3 = Maps.newLinkedHashMap();
+        query3.put("a", 1);
+        query3.put("b", 3);
+
+        byte[] fingerprint1 = MiruPartitionResultCache.fingerprint("test", request(query1), Optional.absent());
+        byte[] fingerprint2 = MiruPartitionResultCache.fingerprint("test", request(query2), Optional.absent());
+        byte[] fingerprint3 = MiruPartitionResultCache.fingerprint("test", request(query3), Optional.absent());
+        byte[] fingerprint4 = MiruPartitionResultCache.fingerprint("test", request(query1), Optional.of("report"));
+
+        assertTrue(Arrays.equals(fingerprint1, fingerprint2));
+        assertFalse(Arrays.equals(fingerprint1, fingerprint3));
+        assertFalse(Arrays.equals(fingerprint1, fingerprint4));
+    }
+
+    @Test
+    public void testInvalidateOrphansResults() throws Exception {
+        MiruPartitionResultCache cache = new MiruPartitionResultCache(1024 * 1024);
+        byte[] fingerprint = MiruPartitionResultCache.fingerprint("test", request(Collections.singletonMap("a", 1)), Optional.absent());
+
+        MiruPartitionResultCache.PartitionResults results = cache.scope(coord, 1L);
+        assertNull(results.get(fingerprint));
+        results.put(fingerprint, new MiruPartitionResponse<>("answer", null));
+
+        MiruPartitionResponse<String> got = cache.scope(coord, 1L).get(fingerprint);
+        assertNotNull(got);
+        assertEquals(got.answer, "answer");
+        assertNull(cache.scope(coord, 2L).get(fingerprint));
+
+        cache.invalidate(coord);
+        assertNull(cache.scope(coord, 1L).get(fingerprint));
+
+        // a scope acquired before the invalidation must not repopulate the cache
+        results.put(fingerprint, new MiruPartitionResponse<>("stale", null));
+        assertNull(cache.scope(coord, 1L).get(fingerprint));
+    }
+
+    @Test
+    public void testCloseForgetsPartition() throws Exception {
+        MiruPartitionResultCache cache = new MiruPartitionResultCache(1024 * 1024);
+        byte[] fingerprint = MiruPartitionResultCache.fingerprint("test", request(Collections.singletonMap("a", 1)), Optional.absent());
+
+        MiruPartitionResultCache.PartitionResults results = cache.scope(coord, 1L);
+        results.put(fingerprint, new MiruPartitionResponse<>("answer", null));
+        assertNotNull(cache.scope(coord, 1L).get(fingerprint));
+
+        cache.close(coord);
+        assertNull(cache.scope(coord, 1L).get(fingerprint));
+
+        // a scope acquired before the close must not repopulate the cache
+        cache.close(coord);
+        results.put(fingerprint, new MiruPartitionResponse<>("stale", null));
+        assertNull(cache.scope(coord, 1L).get(fingerprint));
+    }
+
+    private MiruRequest<Map<String, Integer>> request(Map<String, Integer> query) {
+        return new MiruRequest<>("test",
+            tenantId,
+            MiruActorId.NOT_PROVIDED,
+            MiruAuthzExpression.NOT_PROVIDED,
+            query,
+            MiruSolutionLogLevel.NONE);
+    }
+}
@@ -0,0 +1,92 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+import com.jivesoftware.os.miru.api.field.MiruFieldType;
+import com.jivesoftware.os.miru.api.query.filter.MiruFieldFilter;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilterOperation;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.roaringbitmap.RoaringBitmap;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+public class MiruSharedFiltersTest {
+
+    private final MiruFilter filter = new MiruFilter(MiruFilterOperation.and, false,
+        Collections.singletonList(MiruFieldFilter.of(MiruFieldType.primary, "a", Collections.singletonList("b"))), null);
+
+    @Test
+    public void testInFlightEvaluationIsShared() throws Exception {
+        MiruSharedFilters<RoaringBitmap, RoaringBitmap> sharedFilters = new MiruSharedFilters<>(0, 100);
+        AtomicInteger evaluations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RoaringBitmap answer = RoaringBitmap.bitmapOf(1, 2, 3);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<RoaringBitmap> first = executor.submit(() -> sharedFilters.filter(filter, 10, -1, -1, () -> {
+                evaluations.incrementAndGet();
+                started.countDown();
+                release.await();
+                return answer;
+            }));
+            started.await();
+            Future<RoaringBitmap> second = executor.submit(() -> sharedFilters.filter(filter, 10, -1, -1, () -> {
+                evaluations.incrementAndGet();
+                return RoaringBitmap.bitmapOf(4);
+            }));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertSame(first.get(10, TimeUnit.SECONDS), answer);
+            assertSame(second.get(10, TimeUnit.SECONDS), answer);
+            assertEquals(evaluations.get(), 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWindowAndKeys() throws Exception {
+        MiruSharedFilters<RoaringBitmap, RoaringBitmap> sharedFilters = new MiruSharedFilters<>(60_000, 100);
+        AtomicInteger evaluations = new AtomicInteger();
+
+        sharedFilters.filter(filter, 10, -1, -1, () -> RoaringBitmap.bitmapOf(evaluations.incrementAndGet()));
+        sharedFilters.filter(filter, 10, -1, -1, () -> RoaringBitmap.bitmapOf(evaluations.incrementAndGet()));
+        assertEquals(evaluations.get(), 1);
+
+        // a partition that has grown is a different evaluation
+        sharedFilters.filter(filter, 11, -1, -1, () -> RoaringBitmap.bitmapOf(evaluations.incrementAndGet()));
+        assertEquals(evaluations.get(), 2);
+
+        // evaluations with no window are not retained
+        MiruSharedFilters<RoaringBitmap, RoaringBitmap> inFlightOnly = new MiruSharedFilters<>(0, 100);
+        inFlightOnly.filter(filter, 10, -1, -1, () -> RoaringBitmap.bitmapOf(evaluations.incrementAndGet()));
+        inFlightOnly.filter(filter, 10, -1, -1, () -> RoaringBitmap.bitmapOf(evaluations.incrementAndGet()));
+        assertEquals(evaluations.get(), 4);
+    }
+
+    @Test
+    public void testFailureIsNotShared() throws Exception {
+        MiruSharedFilters<RoaringBitmap, RoaringBitmap> sharedFilters = new MiruSharedFilters<>(60_000, 100);
+        try {
+            sharedFilters.filter(filter, 10, -1, -1, () -> {
+                throw new IllegalStateException("boom");
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(e.getMessage(), "boom");
+        }
+        RoaringBitmap bitmap = sharedFilters.filter(filter, 10, -1, -1, () -> RoaringBitmap.bitmapOf(1));
+        assertEquals(bitmap.getCardinality(), 1);
+    }
+}
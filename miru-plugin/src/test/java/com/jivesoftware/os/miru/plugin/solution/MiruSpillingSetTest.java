@@ -0,0 +1,79 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.jivesoftware.os.miru.api.query.filter.MiruValue;
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class MiruSpillingSetTest {
+
+    @Test
+    public void testSpilledRunsMergeDistinct() throws Exception {
+        Random random = new Random(1234);
+        Set<String> expected = new TreeSet<>();
+        File spillDir = Files.createTempDir();
+        try (MiruSpillingSet<MiruValue> set = new MiruSpillingSet<>("test", MiruSpillingSet.MIRU_VALUE_CODEC, 16 * 1024, spillDir)) {
+            for (int i = 0; i < 10_000; i++) {
+                String value = String.valueOf(random.nextInt(5_000));
+                expected.add(value);
+                set.add(new MiruValue("a", value));
+            }
+            assertTrue(set.spilledRuns() > 1);
+            assertTrue(set.heapBytes() <= 16 * 1024);
+            assertTrue(set.sizeUpperBound() >= expected.size());
+
+            List<MiruValue> streamed = Lists.newArrayList();
+            long count = set.stream(value -> streamed.add(value));
+            assertEquals(count, expected.size());
+            assertEquals(streamed.size(), expected.size());
+
+            Set<String> got = new TreeSet<>();
+            for (MiruValue value : streamed) {
+                assertEquals(value.parts.length, 2);
+                assertEquals(value.parts[0], "a");
+                got.add(value.last());
+            }
+            assertEquals(got, expected);
+            assertEquals(spillDir.list().length, set.spilledRuns());
+        }
+        assertEquals(spillDir.list().length, 0);
+    }
+
+    @Test
+    public void testCloseRemovesUnstreamedRuns() throws Exception {
+        File spillDir = Files.createTempDir();
+        MiruSpillingSet<MiruValue> set = new MiruSpillingSet<>("test", MiruSpillingSet.MIRU_VALUE_CODEC, 1024, spillDir);
+        for (int i = 0; i < 1_000; i++) {
+            set.add(new MiruValue(String.valueOf(i)));
+        }
+        assertTrue(set.spilledRuns() > 0);
+        assertEquals(spillDir.list().length, set.spilledRuns());
+
+        set.close();
+        assertEquals(set.spilledRuns(), 0);
+        assertEquals(spillDir.list().length, 0);
+    }
+
+    @Test
+    public void testInHeapOnly() throws Exception {
+        try (MiruSpillingSet<MiruValue> set = new MiruSpillingSet<>("test", MiruSpillingSet.MIRU_VALUE_CODEC, Long.MAX_VALUE, Files.createTempDir())) {
+            set.add(new MiruValue("b"));
+            set.add(new MiruValue("a"));
+            set.add(new MiruValue("b"));
+            assertEquals(set.spilledRuns(), 0);
+            assertEquals(set.sizeUpperBound(), 2);
+
+            List<MiruValue> streamed = Lists.newArrayList();
+            set.stream(value -> streamed.add(value));
+            assertEquals(streamed, Lists.newArrayList(new MiruValue("a"), new MiruValue("b")));
+        }
+    }
+}
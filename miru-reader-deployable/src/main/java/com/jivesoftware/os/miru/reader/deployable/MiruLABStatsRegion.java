@@ -5,6 +5,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.jivesoftware.os.lab.LABStats;
 import com.jivesoftware.os.lab.guts.LABSparseCircularMetricBuffer;
+import com.jivesoftware.os.miru.service.index.lab.MiruHotTermBitmapCache;
 import com.jivesoftware.os.miru.ui.MiruPageRegion;
 import com.jivesoftware.os.miru.ui.MiruSoyRenderer;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
@@ -31,17 +32,32 @@ public class MiruLABStatsRegion implements MiruPageRegion<Void> {
     private final MiruSoyRenderer renderer;
     private final LABStats rebuild;
     private final LABStats global;
+    private final MiruHotTermBitmapCache hotTermBitmapCache;
 
-    public MiruLABStatsRegion(String template, MiruSoyRenderer renderer, LABStats rebuild, LABStats global) {
+    private final SampledWaveform hotTermHits = new SampledWaveform(true);
+    private final SampledWaveform hotTermMisses = new SampledWaveform(true);
+    private final SampledWaveform hotTermRejections = new SampledWaveform(true);
+    private final SampledWaveform hotTermEvictions = new SampledWaveform(true);
+    private final SampledWaveform hotTermInvalidations = new SampledWaveform(true);
+    private final SampledWaveform hotTermBytes = new SampledWaveform(false);
+
+    public MiruLABStatsRegion(String template, MiruSoyRenderer renderer, LABStats rebuild, LABStats global, MiruHotTermBitmapCache hotTermBitmapCache) {
         this.template = template;
         this.renderer = renderer;
         this.rebuild = rebuild;
         this.global = global;
+        this.hotTermBitmapCache = hotTermBitmapCache;
 
         Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(() -> {
             try {
                 rebuild.refresh();
                 global.refresh();
+                hotTermHits.sample(hotTermBitmapCache.hits());
+                hotTermMisses.sample(hotTermBitmapCache.misses());
+                hotTermRejections.sample(hotTermBitmapCache.rejections());
+                hotTermEvictions.sample(hotTermBitmapCache.evictions());
+                hotTermInvalidations.sample(hotTermBitmapCache.invalidations());
+                hotTermBytes.sample(hotTermBitmapCache.sizeInBytes());
             } catch (Exception x) {
                 LOG.warn("Refresh labstats failed", x);
             }
@@ -72,6 +88,9 @@ public class MiruLABStatsRegion implements MiruPageRegion<Void> {
                     if (group.equals("rebuild")) {
                         data.put("stats", packStats("", rebuild, group, f));
                     }
+                    if (group.equals("hotTerm")) {
+                        data.put("stats", packHotTermStats(group, f));
+                    }
 
                 } catch (Exception e) {
                     LOG.error("Failed to render partitions region", e);
@@ -142,6 +161,24 @@ public class MiruLABStatsRegion implements MiruPageRegion<Void> {
         return list;
     }
 
+    private List<Map<String, Object>> packHotTermStats(String group, String filter) {
+        List<Map<String, Object>> list = Lists.newArrayList();
+
+        SampledWaveform[] requests = { hotTermHits, hotTermMisses, hotTermRejections, hotTermEvictions, hotTermInvalidations };
+        double[][] metrics = new double[requests.length][];
+        double[] totals = new double[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            metrics[i] = requests[i].metric();
+            totals[i] = requests[i].total();
+        }
+        list.addAll(waveformGroup(group, filter, "hotTerm-requests", defaultColors, new String[]{"hits", "misses", "rejections", "evictions", "invalidations"},
+            metrics, totals, new boolean[]{false, false, false, false, false}));
+
+        list.addAll(waveformGroup(group, filter, "hotTerm-memory", defaultColors, new String[]{"bytes"},
+            new double[][]{hotTermBytes.metric()}, new double[]{hotTermBytes.total()}, new boolean[]{false}));
+        return list;
+    }
+
     private Color[] histoColors = new Color[]{
         gray(255),
         gray(250),
@@ -196,6 +233,19 @@ public class MiruLABStatsRegion implements MiruPageRegion<Void> {
     private List<Map<String, Object>> waveformGroup(String group, String filter, String title, Color[] colors, String[] waveName,
         LABSparseCircularMetricBuffer[] waveforms,
         boolean[] fill) {
+        double[][] metrics = new double[waveforms.length][];
+        double[] totals = new double[waveforms.length];
+        for (int i = 0; i < waveforms.length; i++) {
+            metrics[i] = waveforms[i].metric();
+            totals[i] = waveforms[i].total();
+        }
+        return waveformGroup(group, filter, title, colors, waveName, metrics, totals, fill);
+    }
+
+    private List<Map<String, Object>> waveformGroup(String group, String filter, String title, Color[] colors, String[] waveName,
+        double[][] metrics,
+        double[] totals,
+        boolean[] fill) {
         if (filter != null && filter.length() > 0 && !title.contains(filter)) {
             return Collections.emptyList();
         }
@@ -204,14 +254,14 @@ public class MiruLABStatsRegion implements MiruPageRegion<Void> {
         List<String> ls = new ArrayList<>();
         List<Map<String, Object>> ws = new ArrayList<>();
         int s = 1;
-        for (double m : waveforms[0].metric()) {
+        for (double m : metrics[0]) {
             ls.add("\"" + s + "\"");
             s++;
         }
 
         for (int i = 0; i < waveName.length; i++) {
             List<String> values = Lists.newArrayList();
-            double[] metric = waveforms[i].metric();
+            double[] metric = metrics[i];
             for (double m : metric) {
                 values.add("\"" + String.valueOf(m) + "\"");
             }
@@ -225,7 +275,7 @@ public class MiruLABStatsRegion implements MiruPageRegion<Void> {
             int b = c.getBlue();
             String colorDiv = "<div style=\"display:inline-block; width:10px; height:10px; background:rgb(" + r + "," + g + "," + b + ");\"></div>";
 
-            total += colorDiv + waveName[i] + "=" + numberFormat.format(waveforms[i].total());
+            total += colorDiv + waveName[i] + "=" + numberFormat.format(totals[i]);
         }
 
         List<Map<String, Object>> listOfwaveformGroups = Lists.newArrayList();
@@ -233,9 +283,9 @@ public class MiruLABStatsRegion implements MiruPageRegion<Void> {
         List<Map<String, Object>> ows = new ArrayList<>();
         List<String> ols = new ArrayList<>();
         List<String> ovalues = Lists.newArrayList();
-        Color[] ocolors = new Color[waveforms.length];
-        for (int i = 0; i < waveforms.length; i++) {
-            ovalues.add("\"" + String.valueOf(waveforms[i].total()) + "\"");
+        Color[] ocolors = new Color[metrics.length];
+        for (int i = 0; i < metrics.length; i++) {
+            ovalues.add("\"" + String.valueOf(totals[i]) + "\"");
             ols.add("\"" + waveName[i] + "\"");
             ocolors[i] = colors[i];
         }
@@ -344,4 +394,48 @@ public class MiruLABStatsRegion implements MiruPageRegion<Void> {
     public String getTitle() {
         return "LAB Stats";
     }
+
+    /**
+     * One sample per refresh for the last few minutes, either of a gauge or of the change in a running counter.
+     */
+    private static class SampledWaveform {
+
+        private static final int NUM_SAMPLES = 180;
+
+        private final boolean counter;
+        private final double[] samples = new double[NUM_SAMPLES];
+        private int cursor;
+        private long last = -1;
+        private double total;
+
+        private SampledWaveform(boolean counter) {
+            this.counter = counter;
+        }
+
+        private synchronized void sample(long value) {
+            double sample;
+            if (counter) {
+                sample = last < 0 ? 0 : value - last;
+                last = value;
+                total += sample;
+            } else {
+                sample = value;
+                total = value;
+            }
+            samples[cursor] = sample;
+            cursor = (cursor + 1) % NUM_SAMPLES;
+        }
+
+        private synchronized double[] metric() {
+            double[] metric = new double[NUM_SAMPLES];
+            for (int i = 0; i < NUM_SAMPLES; i++) {
+                metric[i] = samples[(cursor + i) % NUM_SAMPLES];
+            }
+            return metric;
+        }
+
+        private synchronized double total() {
+            return total;
+        }
+    }
 }
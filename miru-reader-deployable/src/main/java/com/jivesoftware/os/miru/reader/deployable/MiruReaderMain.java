@@ -82,11 +82,14 @@ import com.jivesoftware.os.miru.service.MiruServiceInitializer;
 import com.jivesoftware.os.miru.service.NamedThreadFactory;
 import com.jivesoftware.os.miru.service.endpoint.MiruReaderEndpoints;
 import com.jivesoftware.os.miru.service.endpoint.MiruWriterEndpoints;
+import com.jivesoftware.os.miru.service.index.lab.MiruHotTermBitmapCache;
 import com.jivesoftware.os.miru.service.locator.MiruResourceLocator;
 import com.jivesoftware.os.miru.service.locator.MiruResourceLocatorInitializer;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import com.jivesoftware.os.miru.service.partition.AmzaSipTrackerFactory;
 import com.jivesoftware.os.miru.service.partition.PartitionErrorTracker;
 import com.jivesoftware.os.miru.service.partition.RCVSSipTrackerFactory;
+import com.jivesoftware.os.miru.service.realtime.CoalescingRealtimeDelivery;
 import com.jivesoftware.os.miru.service.realtime.NoOpRealtimeDelivery;
 import com.jivesoftware.os.miru.service.realtime.RoutingBirdRealtimeDelivery;
 import com.jivesoftware.os.miru.service.stream.MiruIndexCallbacks;
@@ -315,6 +318,7 @@ public class MiruReaderMain {
 
             // TODO add fall back to config
             final MiruStats miruStats = new MiruStats();
+            final MiruMetricHandles metricHandles = new MiruMetricHandles(miruServiceConfig.getMetricsPerFieldVerbose());
 
             ExecutorService tasExecutors = deployable.newBoundedExecutor(1024, "manage-tas");
 
@@ -340,17 +344,37 @@ public class MiruReaderMain {
 
                 deployable.addHealthCheck(new TenantAwareHttpClientHealthCheck("realtime", realtimeDeliveryHttpClient));
 
-                realtimeDelivery = new RoutingBirdRealtimeDelivery(miruHost,
-                    realtimeDeliveryHttpClient,
-                    realtimeDeliveryEndpoint,
-                    mapper,
-                    miruStats,
-                    timestampedOrderIdProvider,
-                    miruServiceConfig.getDropRealtimeDeliveryOlderThanNMillis(),
-                    tasExecutors,
-                    100,
-                    95,
-                    1000);
+                String realtimeDeliveryBatchEndpoint = miruServiceConfig.getRealtimeDeliveryBatchEndpoint().trim();
+                if (realtimeDeliveryBatchEndpoint.isEmpty()) {
+                    realtimeDelivery = new RoutingBirdRealtimeDelivery(miruHost,
+                        realtimeDeliveryHttpClient,
+                        realtimeDeliveryEndpoint,
+                        mapper,
+                        miruStats,
+                        timestampedOrderIdProvider,
+                        miruServiceConfig.getDropRealtimeDeliveryOlderThanNMillis(),
+                        tasExecutors,
+                        100,
+                        95,
+                        1000);
+                } else {
+                    CoalescingRealtimeDelivery coalescingRealtimeDelivery = new CoalescingRealtimeDelivery(miruHost,
+                        realtimeDeliveryHttpClient,
+                        realtimeDeliveryBatchEndpoint,
+                        mapper,
+                        miruStats,
+                        timestampedOrderIdProvider,
+                        miruServiceConfig.getDropRealtimeDeliveryOlderThanNMillis(),
+                        miruServiceConfig.getRealtimeDeliveryMaxPendingPerTenant(),
+                        tasExecutors,
+                        100,
+                        95,
+                        1000);
+                    coalescingRealtimeDelivery.start(Executors.newSingleThreadScheduledExecutor(
+                        new NamedThreadFactory(Thread.currentThread().getThreadGroup(), "realtime_coalesce")),
+                        miruServiceConfig.getRealtimeDeliveryCoalesceWindowMillis());
+                    realtimeDelivery = coalescingRealtimeDelivery;
+                }
             }
 
             PartitionErrorTracker.PartitionErrorTrackerConfig partitionErrorTrackerConfig = deployable
@@ -377,6 +401,8 @@ public class MiruReaderMain {
             MiruInboxReadTracker inboxReadTracker;
             LABStats rebuildLABStats = new LABStats();
             LABStats globalLABStats = new LABStats();
+            MiruHotTermBitmapCache hotTermBitmapCache = new MiruHotTermBitmapCache(miruServiceConfig.getHotTermCacheMaxSizeInBytes(),
+                miruServiceConfig.getHotTermCacheEvictionSampleSize());
             MiruIndexCallbacks indexCallbacks = new MiruIndexCallbacks();
 
             MiruLifecyle<MiruService> miruServiceLifecyle;
@@ -400,8 +426,10 @@ public class MiruReaderMain {
                     deployable.newBoundedExecutor(miruServiceConfig.getMergeIndexThreads(), "transient-merge-index"),
                     deployable.newBoundedExecutor(miruServiceConfig.getStreamFactoryExecutorCount(), "stream-factory"),
                     miruStats,
+                    metricHandles,
                     rebuildLABStats,
                     globalLABStats,
+                    hotTermBitmapCache,
                     scheduledBootstrapExecutor,
                     scheduledRebuildExecutor,
                     scheduledSipMigrateExecutor,
@@ -438,7 +466,8 @@ public class MiruReaderMain {
                     1000,
                     mapper,
                     walClientSickThreads,
-                    10_000);
+                    10_000,
+                    walConfig.getBinaryActivityWrites());
 
                 inboxReadTracker = new AmzaInboxReadTracker(amzaWALClient);
                 miruServiceLifecyle = new MiruServiceInitializer().initialize(miruServiceConfig,
@@ -450,8 +479,10 @@ public class MiruReaderMain {
                     deployable.newBoundedExecutor(miruServiceConfig.getMergeIndexThreads(), "transient-merge-index"),
                     deployable.newBoundedExecutor(miruServiceConfig.getStreamFactoryExecutorCount(), "stream-factory"),
                     miruStats,
+                    metricHandles,
                     rebuildLABStats,
                     globalLABStats,
+                    hotTermBitmapCache,
                     scheduledBootstrapExecutor,
                     scheduledRebuildExecutor,
                     scheduledSipMigrateExecutor,
@@ -516,7 +547,8 @@ public class MiruReaderMain {
                 partitionErrorTracker,
                 tenantRoutingProvider,
                 rebuildLABStats,
-                globalLABStats);
+                globalLABStats,
+                hotTermBitmapCache);
 
             if (instanceConfig.getMainServiceAuthEnabled()) {
                 deployable.addRouteOAuth("/miru/*", "/plugin/*");
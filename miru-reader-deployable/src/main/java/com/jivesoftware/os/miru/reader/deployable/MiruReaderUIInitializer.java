@@ -3,6 +3,7 @@ package com.jivesoftware.os.miru.reader.deployable;
 import com.jivesoftware.os.lab.LABStats;
 import com.jivesoftware.os.miru.api.MiruStats;
 import com.jivesoftware.os.miru.service.MiruService;
+import com.jivesoftware.os.miru.service.index.lab.MiruHotTermBitmapCache;
 import com.jivesoftware.os.miru.service.partition.PartitionErrorTracker;
 import com.jivesoftware.os.miru.ui.MiruAdminRegion;
 import com.jivesoftware.os.miru.ui.MiruSoyRenderer;
@@ -18,7 +19,8 @@ public class MiruReaderUIInitializer {
         PartitionErrorTracker partitionErrorTracker,
         TenantRoutingProvider tenantRoutingProvider,
         LABStats rebuild,
-        LABStats global) throws Exception {
+        LABStats global,
+        MiruHotTermBitmapCache hotTermBitmapCache) throws Exception {
 
         return new MiruReaderUIService(
             renderer,
@@ -26,6 +28,6 @@ public class MiruReaderUIInitializer {
             new MiruAdminRegion("soy.miru.page.adminRegion", renderer, miruStats),
             new MiruPartitionsRegion("soy.miru.page.partitionsRegion", renderer, service),
             new MiruErrorsRegion("soy.miru.page.errorsRegion", renderer, service, partitionErrorTracker),
-            new MiruLABStatsRegion("soy.miru.page.labStatsRegion", renderer, rebuild, global));
+            new MiruLABStatsRegion("soy.miru.page.labStatsRegion", renderer, rebuild, global, hotTermBitmapCache));
     }
 }
@@ -0,0 +1,79 @@
+package com.jivesoftware.os.miru.reco.plugins;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.jivesoftware.os.miru.api.query.filter.MiruValue;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import com.jivesoftware.os.miru.reco.plugins.distincts.DistinctsAnswer;
+import com.jivesoftware.os.miru.reco.plugins.distincts.DistinctsAnswerMerger;
+import java.io.File;
+import java.util.List;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class DistinctsAnswerMergerTest {
+
+    private final MiruSolutionLog solutionLog = new MiruSolutionLog(MiruSolutionLogLevel.NONE);
+
+    @Test
+    public void testInHeapMergeWithoutBudget() throws Exception {
+        DistinctsAnswerMerger merger = new DistinctsAnswerMerger();
+        DistinctsAnswer merged = merger.merge(Optional.of(answer(0, 100)), answer(50, 150), solutionLog);
+        assertEquals(merged.results.size(), 150);
+        assertEquals(merged.collectedDistincts, 150);
+
+        DistinctsAnswer done = merger.done(Optional.of(merged), DistinctsAnswer.EMPTY_RESULTS, solutionLog);
+        assertEquals(done.results, merged.results);
+    }
+
+    @Test
+    public void testSpilledMergeMatchesInHeapMerge() throws Exception {
+        File spillDir = Files.createTempDir();
+        List<MiruValue> expected;
+        List<MiruValue> got;
+        DistinctsAnswerMerger inHeap = new DistinctsAnswerMerger();
+        try (DistinctsAnswerMerger spilling = new DistinctsAnswerMerger(1024, spillDir)) {
+            Optional<DistinctsAnswer> lastInHeap = Optional.absent();
+            Optional<DistinctsAnswer> lastSpilling = Optional.absent();
+            for (int i = 0; i < 10; i++) {
+                DistinctsAnswer answer = answer(i * 50, i * 50 + 100);
+                lastInHeap = Optional.of(inHeap.merge(lastInHeap, answer, solutionLog));
+                lastSpilling = Optional.of(spilling.merge(lastSpilling, answer, solutionLog));
+            }
+            assertTrue(spillDir.list().length > 0);
+
+            expected = inHeap.done(lastInHeap, DistinctsAnswer.EMPTY_RESULTS, solutionLog).results;
+            got = spilling.done(lastSpilling, DistinctsAnswer.EMPTY_RESULTS, solutionLog).results;
+            assertEquals(spillDir.list().length, 0);
+        }
+        assertEquals(Sets.newHashSet(got), Sets.newHashSet(expected));
+        assertEquals(got.size(), expected.size());
+    }
+
+    @Test
+    public void testCloseRemovesRunsWithoutDone() throws Exception {
+        File spillDir = Files.createTempDir();
+        DistinctsAnswerMerger merger = new DistinctsAnswerMerger(1024, spillDir);
+        merger.merge(Optional.of(answer(0, 500)), answer(500, 1_000), solutionLog);
+        assertTrue(spillDir.list().length > 0);
+
+        merger.close();
+        assertEquals(spillDir.list().length, 0);
+    }
+
+    private static DistinctsAnswer answer(int from, int to) {
+        List<MiruValue> results = Lists.newArrayList();
+        for (int i = from; i < to; i++) {
+            results.add(new MiruValue(String.valueOf(i)));
+        }
+        return new DistinctsAnswer(results, results.size(), false);
+    }
+}
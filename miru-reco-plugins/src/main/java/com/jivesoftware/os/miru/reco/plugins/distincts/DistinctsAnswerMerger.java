@@ -7,12 +7,36 @@ import com.jivesoftware.os.miru.api.query.filter.MiruValue;
 import com.jivesoftware.os.miru.plugin.solution.MiruAnswerMerger;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import com.jivesoftware.os.miru.plugin.solution.MiruSpillingSet;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 /**
- *
+ * Merges distinct values in heap, unless a spill budget is given. With a budget, values from every partition accumulate in
+ * a {@link MiruSpillingSet}, so the merger must only be used for a single request and must be closed when the request
+ * finishes. Intermediate answers then only carry the collected count, which is all the report and evaluator need, and the
+ * values are streamed out of the set in sorted order when the merge is done.
  */
-public class DistinctsAnswerMerger implements MiruAnswerMerger<DistinctsAnswer> {
+public class DistinctsAnswerMerger implements MiruAnswerMerger<DistinctsAnswer>, AutoCloseable {
+
+    private final long maxHeapBytes;
+    private final File spillDir;
+    private MiruSpillingSet<MiruValue> merged;
+
+    public DistinctsAnswerMerger() {
+        this(-1, null);
+    }
+
+    /**
+     * @param maxHeapBytes the heap budget before merged values are spilled, or non-positive to always merge in heap
+     * @param spillDir     where spilled runs are written
+     */
+    public DistinctsAnswerMerger(long maxHeapBytes, File spillDir) {
+        this.maxHeapBytes = maxHeapBytes;
+        this.spillDir = spillDir;
+    }
 
     /**
      * Merges the last and current results, returning the merged result.
@@ -28,10 +52,34 @@ public class DistinctsAnswerMerger implements MiruAnswerMerger<DistinctsAnswer>
         }
 
         DistinctsAnswer lastAnswer = last.get();
-        Set<MiruValue> terms = Sets.newHashSet(lastAnswer.results);
-        terms.addAll(currentAnswer.results);
+        if (maxHeapBytes <= 0) {
+            Set<MiruValue> terms = Sets.newHashSet(lastAnswer.results);
+            terms.addAll(currentAnswer.results);
+
+            DistinctsAnswer mergedAnswer = new DistinctsAnswer(Lists.newArrayList(terms), terms.size(), currentAnswer.resultsExhausted);
+
+            logMergeResult(currentAnswer, lastAnswer, mergedAnswer, solutionLog);
+
+            return mergedAnswer;
+        }
+
+        try {
+            if (merged == null) {
+                merged = new MiruSpillingSet<>("distincts", MiruSpillingSet.MIRU_VALUE_CODEC, maxHeapBytes, spillDir);
+                merged.addAll(lastAnswer.results);
+            }
+            int spilledRuns = merged.spilledRuns();
+            merged.addAll(currentAnswer.results);
+            if (merged.spilledRuns() > spilledRuns) {
+                solutionLog.log(MiruSolutionLogLevel.INFO, "Spilled distincts to disk, runs={}", merged.spilledRuns());
+            }
+        } catch (Exception e) {
+            close();
+            throw new RuntimeException("Failed to merge distincts", e);
+        }
 
-        DistinctsAnswer mergedAnswer = new DistinctsAnswer(Lists.newArrayList(terms), terms.size(), currentAnswer.resultsExhausted);
+        int collected = (int) Math.min(merged.sizeUpperBound(), Integer.MAX_VALUE);
+        DistinctsAnswer mergedAnswer = new DistinctsAnswer(Collections.emptyList(), collected, currentAnswer.resultsExhausted);
 
         logMergeResult(currentAnswer, lastAnswer, mergedAnswer, solutionLog);
 
@@ -40,7 +88,29 @@ public class DistinctsAnswerMerger implements MiruAnswerMerger<DistinctsAnswer>
 
     @Override
     public DistinctsAnswer done(Optional<DistinctsAnswer> last, DistinctsAnswer alternative, final MiruSolutionLog solutionLog) {
-        return last.or(alternative);
+        if (merged == null || !last.isPresent()) {
+            close();
+            return last.or(alternative);
+        }
+
+        try {
+            List<MiruValue> results = Lists.newArrayListWithCapacity((int) Math.min(merged.sizeUpperBound(), Integer.MAX_VALUE));
+            merged.stream(value -> results.add(value));
+            solutionLog.log(MiruSolutionLogLevel.INFO, "Merged distincts results={} spilledRuns={}", results.size(), merged.spilledRuns());
+            return new DistinctsAnswer(results, results.size(), last.get().resultsExhausted);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to stream merged distincts", e);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (merged != null) {
+            merged.close();
+            merged = null;
+        }
     }
 
     private void logMergeResult(DistinctsAnswer currentAnswer, DistinctsAnswer lastAnswer, DistinctsAnswer mergedAnswer, MiruSolutionLog solutionLog) {
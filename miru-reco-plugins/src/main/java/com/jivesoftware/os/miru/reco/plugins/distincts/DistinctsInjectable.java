@@ -15,6 +15,7 @@ import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolvableFactory;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.File;
 
 /**
  *
@@ -25,14 +26,21 @@ public class DistinctsInjectable {
 
     private final MiruProvider<? extends Miru> provider;
     private final Distincts distincts;
+    private final long mergeMaxHeapBytes;
+    private final File mergeSpillDir;
 
     public DistinctsInjectable(MiruProvider<? extends Miru> provider,
         Distincts distincts) {
         this.provider = provider;
         this.distincts = distincts;
+
+        DistinctsPluginConfig config = provider.getConfig(DistinctsPluginConfig.class);
+        this.mergeMaxHeapBytes = config.getMergeMaxHeapBytesPerRequest();
+        this.mergeSpillDir = new File(config.getMergeSpillDirectory());
     }
 
     public MiruResponse<DistinctsAnswer> gatherDistincts(MiruRequest<DistinctsQuery> request) throws MiruQueryServiceException, InterruptedException {
+        DistinctsAnswerMerger merger = new DistinctsAnswerMerger(mergeMaxHeapBytes, mergeSpillDir);
         try {
             LOG.debug("gatherDistincts: request={}", request);
 
@@ -49,7 +57,7 @@ public class DistinctsInjectable {
                         request,
                         provider.getRemotePartition(DistinctsRemotePartition.class))),
                 new DistinctsAnswerEvaluator(),
-                new DistinctsAnswerMerger(),
+                merger,
                 DistinctsAnswer.EMPTY_RESULTS,
                 miru.getDefaultExecutor(),
                 request.logLevel);
@@ -58,6 +66,9 @@ public class DistinctsInjectable {
         } catch (Exception e) {
             //TODO throw http error codes
             throw new MiruQueryServiceException("Failed to gather distincts", e);
+        } finally {
+            // removes any spilled runs if the request failed before the merge was done
+            merger.close();
         }
     }
 
@@ -0,0 +1,20 @@
+package com.jivesoftware.os.miru.reco.plugins.distincts;
+
+import org.merlin.config.Config;
+import org.merlin.config.defaults.LongDefault;
+import org.merlin.config.defaults.StringDefault;
+
+/**
+ *
+ */
+public interface DistinctsPluginConfig extends Config {
+
+    /**
+     * Non-positive merges every request in heap.
+     */
+    @LongDefault(64L * 1024 * 1024)
+    long getMergeMaxHeapBytesPerRequest();
+
+    @StringDefault("var/lib/miru/spill")
+    String getMergeSpillDirectory();
+}
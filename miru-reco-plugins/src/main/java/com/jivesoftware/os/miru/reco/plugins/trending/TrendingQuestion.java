@@ -13,12 +13,10 @@ import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition;
 import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
 import com.jivesoftware.os.miru.api.base.MiruTermId;
-import com.jivesoftware.os.miru.api.field.MiruFieldType;
 import com.jivesoftware.os.miru.api.query.filter.MiruValue;
 import com.jivesoftware.os.miru.api.wal.MiruSipCursor;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
-import com.jivesoftware.os.miru.plugin.index.MiruFieldIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
 import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResponse;
 import com.jivesoftware.os.miru.plugin.solution.MiruRemotePartition;
@@ -73,7 +71,6 @@ public class TrendingQuestion implements Question<TrendingQuery, AnalyticsAnswer
         MiruSchema schema = context.getSchema();
         int fieldId = schema.getFieldId(request.query.aggregateCountAroundField);
         MiruFieldDefinition fieldDefinition = schema.getFieldDefinition(fieldId);
-        MiruFieldIndex<BM, IBM> primaryFieldIndex = context.getFieldIndexProvider().getFieldIndex(MiruFieldType.primary);
         StackBuffer stackBuffer = new StackBuffer();
 
         MiruTermComposer termComposer = context.getTermComposer();
@@ -145,7 +142,7 @@ public class TrendingQuestion implements Question<TrendingQuery, AnalyticsAnswer
         }
 
         int[] count = new int[1];
-        boolean resultsExhausted = analytics.analyze("trending",
+        boolean resultsExhausted = analytics.analyzeTerms("trending",
             solutionLog,
             handle,
             context,
@@ -154,13 +151,8 @@ public class TrendingQuestion implements Question<TrendingQuery, AnalyticsAnswer
             request.query.constraintsFilter,
             scoreables,
             stackBuffer,
-            (Analytics.ToAnalyze<MiruTermId, BM> toAnalyze) -> {
-                bitmaps.multiTx(
-                    (tx, stackBuffer1) -> primaryFieldIndex.multiTxIndex("trending", fieldId, termIds, -1, stackBuffer1, tx),
-                    (index, lastId, bitmap) -> toAnalyze.analyze(termIds[index], bitmap),
-                    stackBuffer);
-                return true;
-            },
+            fieldId,
+            termIds,
             (int index, MiruTermId termId, long[] waveformBuffer) -> {
                 if (waveformBuffer != null) {
                     Waveform waveform = Waveform.compressed(new MiruValue(termComposer.decompose(schema, fieldDefinition, stackBuffer, termId)),
@@ -196,4 +188,9 @@ public class TrendingQuestion implements Question<TrendingQuery, AnalyticsAnswer
         return report;
     }
 
+    @Override
+    public Optional<MiruRequest<TrendingQuery>> getCacheableRequest() {
+        return Optional.of(request);
+    }
+
 }
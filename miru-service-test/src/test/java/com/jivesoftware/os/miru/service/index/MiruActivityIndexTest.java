@@ -2,7 +2,11 @@ package com.jivesoftware.os.miru.service.index;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
+import com.jivesoftware.os.filer.io.FilerIO;
 import com.jivesoftware.os.filer.io.api.StackBuffer;
+import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
+import com.jivesoftware.os.lab.api.ValueIndex;
 import com.jivesoftware.os.miru.api.MiruHost;
 import com.jivesoftware.os.miru.api.MiruPartitionCoord;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
@@ -18,10 +22,19 @@ import com.jivesoftware.os.miru.plugin.index.MiruActivityAndId;
 import com.jivesoftware.os.miru.plugin.index.MiruActivityIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruInternalActivity;
 import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
+import com.jivesoftware.os.miru.plugin.index.MiruTermOrdinals;
 import com.jivesoftware.os.miru.plugin.index.TimeVersionRealtime;
+import com.jivesoftware.os.miru.service.index.lab.LabActivityIndex;
+import com.jivesoftware.os.miru.service.index.lab.LabTermOrdinals;
+import com.jivesoftware.os.miru.service.stream.IntTermIdsKeyValueMarshaller;
 import com.jivesoftware.os.miru.service.stream.MiruContext;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.lang.RandomStringUtils;
 import org.roaringbitmap.RoaringBitmap;
 import org.testng.annotations.DataProvider;
@@ -29,8 +42,10 @@ import org.testng.annotations.Test;
 
 import static com.jivesoftware.os.miru.service.IndexTestUtil.buildInMemoryContext;
 import static com.jivesoftware.os.miru.service.IndexTestUtil.buildOnDiskContext;
+import static com.jivesoftware.os.miru.service.IndexTestUtil.buildValueIndex;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -79,6 +94,257 @@ public class MiruActivityIndexTest {
         }
     }
 
+    @Test
+    public void testColumnarTermLookup() throws Exception {
+        int numberOfFields = 3;
+        int numberOfActivities = 1_000;
+
+        StackBuffer stackBuffer = new StackBuffer();
+        MiruTenantId tenantId = new MiruTenantId(RandomStringUtils.randomAlphabetic(10).getBytes());
+        MiruActivityIndex rowIndex = buildLabActivityIndex(false);
+        MiruActivityIndex columnarIndex = buildLabActivityIndex(true);
+
+        // uneven batches so blocks are written partially and then merged, followed by a repair of earlier ids
+        List<MiruActivityAndId<MiruInternalActivity>> activityAndIds = Lists.newArrayList();
+        for (int i = 0; i < numberOfActivities; i++) {
+            if (i % 7 != 3) {
+                activityAndIds.add(new MiruActivityAndId<>(buildLookupActivity(tenantId, i, new String[0], numberOfFields), i, i));
+            }
+        }
+        for (MiruActivityIndex activityIndex : Arrays.asList(rowIndex, columnarIndex)) {
+            activityIndex.setAndReady(schema, activityAndIds.subList(0, 300), stackBuffer);
+            activityIndex.setAndReady(schema, activityAndIds.subList(300, activityAndIds.size()), stackBuffer);
+            activityIndex.set(schema, Arrays.asList(
+                new MiruActivityAndId<>(buildLookupActivity(tenantId, 10_000, new String[0], numberOfFields), 11, 10_000),
+                new MiruActivityAndId<>(buildLookupActivity(tenantId, 20_000, new String[0], numberOfFields), 600, 20_000)), stackBuffer);
+        }
+
+        List<Integer> shuffled = Lists.newArrayList();
+        for (int i = 0; i < numberOfActivities; i++) {
+            shuffled.add(i);
+        }
+        Collections.shuffle(shuffled, new Random(1234));
+        int[] ids = new int[shuffled.size() + 1];
+        for (int i = 0; i < shuffled.size(); i++) {
+            ids[i] = shuffled.get(i);
+        }
+        ids[ids.length - 1] = -1;
+
+        for (int j = 0; j < numberOfFields; j++) {
+            MiruFieldDefinition fieldDefinition = schema.getFieldDefinition(j);
+            MiruTermId[][] expected = rowIndex.getAll("test", ids, fieldDefinition, stackBuffer);
+            MiruTermId[][] actual = columnarIndex.getAll("test", ids, fieldDefinition, stackBuffer);
+            assertEquals(actual.length, expected.length);
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == -1 || ids[i] % 7 == 3) {
+                    assertNull(actual[i]);
+                } else {
+                    assertNotNull(actual[i]);
+                }
+                assertEquals(actual[i], expected[i]);
+            }
+            assertEquals(columnarIndex.get("test", 11, fieldDefinition, stackBuffer)[0],
+                termComposer.compose(schema, fieldDefinition, stackBuffer, "10000-" + j));
+            assertEquals(columnarIndex.get("test", 600, fieldDefinition, stackBuffer)[0],
+                termComposer.compose(schema, fieldDefinition, stackBuffer, "20000-" + j));
+        }
+    }
+
+    @Test
+    public void testColumnarConcurrentAndOutOfOrderWrites() throws Exception {
+        int numberOfFields = 2;
+        int numberOfActivities = 3 * 256;
+        int numberOfThreads = 4;
+
+        StackBuffer stackBuffer = new StackBuffer();
+        MiruTenantId tenantId = new MiruTenantId(RandomStringUtils.randomAlphabetic(10).getBytes());
+        MiruActivityIndex rowIndex = buildLabActivityIndex(false);
+        MiruActivityIndex columnarIndex = buildLabActivityIndex(true);
+
+        List<MiruActivityAndId<MiruInternalActivity>> activityAndIds = Lists.newArrayList();
+        for (int i = 0; i < numberOfActivities; i++) {
+            activityAndIds.add(new MiruActivityAndId<>(buildLookupActivity(tenantId, i, new String[0], numberOfFields), i, i));
+        }
+        rowIndex.setAndReady(schema, activityAndIds, stackBuffer);
+
+        // every thread writes its own ids one at a time from the end of the partition, so the last slot of each block is
+        // usually written, and the block sealed, while other threads are still appending earlier slots of the same block
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            List<Future<?>> futures = Lists.newArrayList();
+            for (int t = 0; t < numberOfThreads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    StackBuffer threadStackBuffer = new StackBuffer();
+                    for (int i = numberOfActivities - 1 - thread; i >= 0; i -= numberOfThreads) {
+                        columnarIndex.set(schema, Collections.singletonList(activityAndIds.get(i)), threadStackBuffer);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        columnarIndex.ready(numberOfActivities - 1, stackBuffer);
+
+        // repair ids in a block that was sealed, and reseal a block by rewriting its last slot
+        for (MiruActivityIndex activityIndex : Arrays.asList(rowIndex, columnarIndex)) {
+            activityIndex.set(schema, Arrays.asList(
+                new MiruActivityAndId<>(buildLookupActivity(tenantId, 10_000, new String[0], numberOfFields), 3, 10_000),
+                new MiruActivityAndId<>(buildLookupActivity(tenantId, 20_000, new String[0], numberOfFields), 300, 20_000)), stackBuffer);
+            activityIndex.set(schema, Collections.singletonList(
+                new MiruActivityAndId<>(buildLookupActivity(tenantId, 30_000, new String[0], numberOfFields), 511, 30_000)), stackBuffer);
+        }
+
+        int[] ids = new int[numberOfActivities];
+        for (int i = 0; i < numberOfActivities; i++) {
+            ids[i] = i;
+        }
+        for (int j = 0; j < numberOfFields; j++) {
+            MiruFieldDefinition fieldDefinition = schema.getFieldDefinition(j);
+            MiruTermId[][] expected = rowIndex.getAll("test", ids, fieldDefinition, stackBuffer);
+            MiruTermId[][] actual = columnarIndex.getAll("test", ids, fieldDefinition, stackBuffer);
+            for (int i = 0; i < numberOfActivities; i++) {
+                assertNotNull(actual[i], "Missing id " + i);
+                assertEquals(actual[i], expected[i], "Mismatch for id " + i);
+                assertEquals(columnarIndex.get("test", i, fieldDefinition, stackBuffer), expected[i], "Mismatch for id " + i);
+            }
+            assertEquals(actual[300][0], termComposer.compose(schema, fieldDefinition, stackBuffer, "20000-" + j));
+            assertEquals(actual[511][0], termComposer.compose(schema, fieldDefinition, stackBuffer, "30000-" + j));
+        }
+    }
+
+    @Test
+    public void testColumnarSparseFieldSealsFullBlock() throws Exception {
+        int numberOfFields = 2;
+        int numberOfActivities = 256;
+
+        StackBuffer stackBuffer = new StackBuffer();
+        MiruTenantId tenantId = new MiruTenantId(RandomStringUtils.randomAlphabetic(10).getBytes());
+        MiruActivityIndex rowIndex = buildLabActivityIndex(false);
+        ValueIndex<byte[]> termStorage = buildValueIndex("termStorage");
+        MiruActivityIndex columnarIndex = new LabActivityIndex(new OrderIdProviderImpl(new ConstantWriterIdProvider(0)),
+            true,
+            false,
+            true,
+            buildValueIndex("timeAndVersion"),
+            new IntTermIdsKeyValueMarshaller(),
+            buildValueIndex("meta"),
+            "lastId".getBytes(),
+            new ValueIndex[] { termStorage },
+            null,
+            null);
+
+        // field 1 only appears on every 10th activity, so the block's last activity (id 255) doesn't have it
+        List<MiruActivityAndId<MiruInternalActivity>> activityAndIds = Lists.newArrayList();
+        for (int i = 0; i < numberOfActivities; i++) {
+            MiruInternalActivity.Builder builder = new MiruInternalActivity.Builder(schema, tenantId, i, 0, false, new String[0]);
+            MiruTermId[][] terms = new MiruTermId[numberOfFields][];
+            terms[0] = new MiruTermId[] { termComposer.compose(schema, schema.getFieldDefinition(0), stackBuffer, i + "-0") };
+            if (i % 10 == 0) {
+                terms[1] = new MiruTermId[] { termComposer.compose(schema, schema.getFieldDefinition(1), stackBuffer, i + "-1") };
+            }
+            builder.putFieldsValues(terms);
+            activityAndIds.add(new MiruActivityAndId<>(builder.build(), i, i));
+        }
+        rowIndex.setAndReady(schema, activityAndIds, stackBuffer);
+        for (int i = 0; i < numberOfActivities; i += 16) {
+            columnarIndex.setAndReady(schema, activityAndIds.subList(i, i + 16), stackBuffer);
+        }
+
+        int[] sealed = new int[1];
+        int[] tails = new int[1];
+        termStorage.rangeScan(FilerIO.intBytes(0), FilerIO.intBytes(numberOfFields), (index, key, timestamp, tombstoned, version, payload) -> {
+            if (payload != null && !tombstoned) {
+                if (key.copy().length == 8) {
+                    sealed[0]++;
+                } else {
+                    tails[0]++;
+                }
+            }
+            return true;
+        }, true);
+        assertEquals(sealed[0], numberOfFields);
+        assertEquals(tails[0], 0);
+
+        int[] ids = new int[numberOfActivities];
+        for (int i = 0; i < numberOfActivities; i++) {
+            ids[i] = i;
+        }
+        for (int j = 0; j < numberOfFields; j++) {
+            MiruFieldDefinition fieldDefinition = schema.getFieldDefinition(j);
+            MiruTermId[][] expected = rowIndex.getAll("test", ids, fieldDefinition, stackBuffer);
+            MiruTermId[][] actual = columnarIndex.getAll("test", ids, fieldDefinition, stackBuffer);
+            for (int i = 0; i < numberOfActivities; i++) {
+                assertEquals(actual[i], expected[i], "Mismatch for field " + j + " id " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testTermOrdinals() throws Exception {
+        int numberOfFields = 3;
+        int numberOfActivities = 1_000;
+
+        StackBuffer stackBuffer = new StackBuffer();
+        MiruTenantId tenantId = new MiruTenantId(RandomStringUtils.randomAlphabetic(10).getBytes());
+        MiruActivityIndex activityIndex = buildLabActivityIndex(false, true);
+
+        // times repeat every 100 activities, so each field has 100 distinct terms
+        List<MiruActivityAndId<MiruInternalActivity>> activityAndIds = Lists.newArrayList();
+        for (int i = 0; i < numberOfActivities; i++) {
+            activityAndIds.add(new MiruActivityAndId<>(buildLookupActivity(tenantId, i % 100, new String[0], numberOfFields), i, i));
+        }
+        activityIndex.setAndReady(schema, activityAndIds.subList(0, 250), stackBuffer);
+        activityIndex.setAndReady(schema, activityAndIds.subList(250, numberOfActivities), stackBuffer);
+
+        int[] ids = new int[numberOfActivities + 1];
+        for (int i = 0; i < numberOfActivities; i++) {
+            ids[i] = i;
+        }
+        ids[numberOfActivities] = -1;
+
+        MiruTermOrdinals termOrdinals = activityIndex.getTermOrdinals();
+        assertNotNull(termOrdinals);
+        for (int j = 0; j < numberOfFields; j++) {
+            MiruFieldDefinition fieldDefinition = schema.getFieldDefinition(j);
+            MiruTermId[][] expected = activityIndex.getAll("test", ids, fieldDefinition, stackBuffer);
+            int[][] ordinals = activityIndex.getAllOrdinals("test", ids, 0, ids.length, fieldDefinition, stackBuffer);
+            assertNull(ordinals[numberOfActivities]);
+            for (int i = 0; i < numberOfActivities; i++) {
+                assertEquals(ordinals[i].length, 1);
+                assertEquals(ordinals[i][0], i % 100, "ordinals are dense and assigned in first seen order");
+                MiruTermId[] decoded = termOrdinals.getTermIds(j, ordinals[i], 0, 1, stackBuffer);
+                assertEquals(decoded, expected[i]);
+            }
+            MiruTermId unseen = termComposer.compose(schema, fieldDefinition, stackBuffer, "unseen");
+            assertEquals(termOrdinals.getOrdinals(j, new MiruTermId[] { expected[7][0], unseen }, stackBuffer), new int[] { 7, -1 });
+        }
+        assertNull(buildLabActivityIndex(false).getTermOrdinals());
+    }
+
+    private MiruActivityIndex buildLabActivityIndex(boolean columnar) throws Exception {
+        return buildLabActivityIndex(columnar, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private MiruActivityIndex buildLabActivityIndex(boolean columnar, boolean termOrdinals) throws Exception {
+        return new LabActivityIndex(new OrderIdProviderImpl(new ConstantWriterIdProvider(0)),
+            true,
+            false,
+            columnar,
+            buildValueIndex("timeAndVersion"),
+            new IntTermIdsKeyValueMarshaller(),
+            buildValueIndex("meta"),
+            "lastId".getBytes(),
+            new ValueIndex[] { buildValueIndex("termStorage") },
+            termOrdinals ? new LabTermOrdinals(new OrderIdProviderImpl(new ConstantWriterIdProvider(0)), buildValueIndex("termOrdinals"), 4) : null,
+            termOrdinals ? buildValueIndex("ordinalStorage") : null);
+    }
+
     private MiruInternalActivity buildLookupActivity(MiruTenantId tenantId, long time, String[] authz, int numberOfFields) throws Exception {
         assertTrue(numberOfFields <= schema.fieldCount());
         MiruInternalActivity.Builder builder = new MiruInternalActivity.Builder(schema, tenantId, time, 0, false, authz);
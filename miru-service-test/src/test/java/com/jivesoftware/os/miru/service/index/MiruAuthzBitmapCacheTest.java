@@ -0,0 +1,116 @@
+package com.jivesoftware.os.miru.service.index;
+
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.bitmaps.roaring6.MiruBitmapsRoaring;
+import com.jivesoftware.os.miru.service.index.auth.MiruAuthzBitmapCache;
+import com.jivesoftware.os.miru.service.index.auth.VersionedAuthz;
+import com.jivesoftware.os.miru.service.index.auth.VersionedAuthzExpression;
+import org.roaringbitmap.RoaringBitmap;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class MiruAuthzBitmapCacheTest {
+
+    private final MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+    private final MiruTenantId tenantId1 = new MiruTenantId("tenant1".getBytes());
+    private final MiruTenantId tenantId2 = new MiruTenantId("tenant2".getBytes());
+
+    @Test
+    public void testRoundTripAndOccupancy() throws Exception {
+        MiruAuthzBitmapCache cache = new MiruAuthzBitmapCache(1024 * 1024, 16);
+        MiruAuthzBitmapCache.PartitionAuthzBitmaps partition1 = cache.partition(tenantId1);
+        MiruAuthzBitmapCache.PartitionAuthzBitmaps partition2 = cache.partition(tenantId2);
+
+        VersionedAuthzExpression expression = expression("a", "b");
+        RoaringBitmap bitmap = RoaringBitmap.bitmapOf(1, 3, 5, 100_000);
+        partition1.put(bitmaps, expression, bitmap, 1_000L);
+
+        assertEquals(partition1.get(bitmaps, expression), bitmap);
+        assertNotSame(partition1.get(bitmaps, expression), bitmap);
+        assertNull(partition2.get(bitmaps, expression));
+        assertEquals(partition1.sizeInBytes(), bitmap.serializedSizeInBytes() + expression.sizeInBytes());
+        assertTrue(cache.getTenantOccupancy().get(tenantId1) > 0);
+        assertNull(cache.getTenantOccupancy().get(tenantId2));
+        assertEquals(cache.sizeInBytes(), partition1.sizeInBytes());
+
+        partition1.clear();
+        assertNull(partition1.get(bitmaps, expression));
+        assertEquals(cache.sizeInBytes(), 0);
+    }
+
+    @Test
+    public void testWriteInvalidates() throws Exception {
+        MiruAuthzBitmapCache cache = new MiruAuthzBitmapCache(1024 * 1024, 16);
+        MiruAuthzBitmapCache.PartitionAuthzBitmaps partition = cache.partition(tenantId1);
+
+        VersionedAuthzExpression ab = expression("a", "b");
+        VersionedAuthzExpression c = expression("c");
+        partition.put(bitmaps, ab, RoaringBitmap.bitmapOf(1), 1_000L);
+        partition.put(bitmaps, c, RoaringBitmap.bitmapOf(2), 1_000L);
+
+        partition.invalidate("b");
+        assertNull(partition.get(bitmaps, ab));
+        assertEquals(partition.get(bitmaps, c), RoaringBitmap.bitmapOf(2));
+    }
+
+    @Test
+    public void testEvictsCheapestWithinBudget() throws Exception {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int i = 0; i < 10_000; i += 3) {
+            bitmap.add(i);
+        }
+        long entrySize = bitmap.serializedSizeInBytes();
+        MiruAuthzBitmapCache cache = new MiruAuthzBitmapCache(entrySize * 3, 16);
+        MiruAuthzBitmapCache.PartitionAuthzBitmaps partition = cache.partition(tenantId1);
+
+        VersionedAuthzExpression expensive = expression("expensive");
+        partition.put(bitmaps, expensive, bitmap, 1_000_000_000L);
+        for (int i = 0; i < 10; i++) {
+            partition.put(bitmaps, expression("cheap" + i), bitmap, 1L);
+            assertTrue(cache.sizeInBytes() <= entrySize * 3);
+        }
+        assertEquals(partition.get(bitmaps, expensive), bitmap);
+    }
+
+    @Test
+    public void testCloseFreesPartitionAndTenant() throws Exception {
+        MiruAuthzBitmapCache cache = new MiruAuthzBitmapCache(1024 * 1024, 16);
+        MiruAuthzBitmapCache.PartitionAuthzBitmaps partition1 = cache.partition(tenantId1);
+        MiruAuthzBitmapCache.PartitionAuthzBitmaps partition2 = cache.partition(tenantId1);
+
+        VersionedAuthzExpression expression = expression("a");
+        partition1.put(bitmaps, expression, RoaringBitmap.bitmapOf(1), 1_000L);
+        partition1.put(bitmaps, expression, RoaringBitmap.bitmapOf(2), 1_000L);
+        partition2.put(bitmaps, expression, RoaringBitmap.bitmapOf(3), 1_000L);
+        assertEquals(partition1.get(bitmaps, expression), RoaringBitmap.bitmapOf(2));
+        assertEquals(cache.getTenantOccupancy().get(tenantId1).longValue(), partition1.sizeInBytes() + partition2.sizeInBytes());
+
+        // replacing an entry keeps it registered, so a write still invalidates it
+        partition1.invalidate("a");
+        assertNull(partition1.get(bitmaps, expression));
+        assertEquals(partition2.get(bitmaps, expression), RoaringBitmap.bitmapOf(3));
+
+        partition1.close();
+        assertEquals(cache.getTenantOccupancy().get(tenantId1).longValue(), partition2.sizeInBytes());
+        partition2.close();
+        assertNull(cache.getTenantOccupancy().get(tenantId1));
+        assertNull(partition2.get(bitmaps, expression));
+        assertEquals(cache.sizeInBytes(), 0);
+    }
+
+    private VersionedAuthzExpression expression(String... authzs) {
+        VersionedAuthz[] versions = new VersionedAuthz[authzs.length];
+        for (int i = 0; i < authzs.length; i++) {
+            versions[i] = new VersionedAuthz(authzs[i], 0);
+        }
+        return new VersionedAuthzExpression(Sets.newHashSet(versions));
+    }
+}
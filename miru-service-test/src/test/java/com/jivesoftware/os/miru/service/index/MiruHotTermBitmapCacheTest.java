@@ -0,0 +1,97 @@
+package com.jivesoftware.os.miru.service.index;
+
+import com.jivesoftware.os.miru.bitmaps.roaring6.MiruBitmapsRoaring;
+import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
+import com.jivesoftware.os.miru.service.index.lab.MiruHotTermBitmapCache;
+import org.roaringbitmap.RoaringBitmap;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class MiruHotTermBitmapCacheTest {
+
+    private final MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+
+    @Test
+    public void testRoundTripIsolationAndCopy() throws Exception {
+        MiruHotTermBitmapCache cache = new MiruHotTermBitmapCache(1024 * 1024, 16);
+        MiruHotTermBitmapCache.PartitionHotTermBitmaps partition1 = cache.partition();
+        MiruHotTermBitmapCache.PartitionHotTermBitmaps partition2 = cache.partition();
+
+        byte[] key = "term".getBytes();
+        RoaringBitmap bitmap = RoaringBitmap.bitmapOf(1, 3, 5, 100_000);
+        partition1.put(bitmaps, key, partition1.stamp(key), new BitmapAndLastId<RoaringBitmap>().set(bitmap, 100_000));
+
+        BitmapAndLastId<RoaringBitmap> container = new BitmapAndLastId<>();
+        assertTrue(partition1.get(bitmaps, key, container));
+        assertEquals(container.getBitmap(), bitmap);
+        assertEquals(container.getLastId(), 100_000);
+        assertFalse(partition2.get(bitmaps, key, new BitmapAndLastId<>()));
+        assertEquals(cache.sizeInBytes(), partition1.sizeInBytes());
+        assertEquals(cache.hits(), 1);
+        assertEquals(cache.misses(), 1);
+
+        // callers own what they get back
+        container.getBitmap().add(7);
+        BitmapAndLastId<RoaringBitmap> again = new BitmapAndLastId<>();
+        assertTrue(partition1.get(bitmaps, key, again));
+        assertEquals(again.getBitmap(), bitmap);
+
+        partition1.clear();
+        assertFalse(partition1.get(bitmaps, key, new BitmapAndLastId<>()));
+        assertEquals(cache.sizeInBytes(), 0);
+    }
+
+    @Test
+    public void testWriteInvalidatesAndRacingReadIsNotAdmitted() throws Exception {
+        MiruHotTermBitmapCache cache = new MiruHotTermBitmapCache(1024 * 1024, 16);
+        MiruHotTermBitmapCache.PartitionHotTermBitmaps partition = cache.partition();
+
+        byte[] key = "term".getBytes();
+        partition.put(bitmaps, key, partition.stamp(key), new BitmapAndLastId<RoaringBitmap>().set(RoaringBitmap.bitmapOf(1), 1));
+        partition.invalidate(key);
+        assertFalse(partition.get(bitmaps, key, new BitmapAndLastId<>()));
+        assertEquals(cache.invalidations(), 1);
+
+        long stamp = partition.stamp(key);
+        partition.invalidate(key);
+        partition.put(bitmaps, key, stamp, new BitmapAndLastId<RoaringBitmap>().set(RoaringBitmap.bitmapOf(1), 1));
+        assertFalse(partition.get(bitmaps, key, new BitmapAndLastId<>()));
+        assertEquals(cache.sizeInBytes(), 0);
+    }
+
+    @Test
+    public void testFrequentTermsWinAdmission() throws Exception {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int i = 0; i < 10_000; i += 3) {
+            bitmap.add(i);
+        }
+        long budget = (bitmaps.sizeInBytes(bitmap) + 128) * 3;
+        MiruHotTermBitmapCache cache = new MiruHotTermBitmapCache(budget, 16);
+        MiruHotTermBitmapCache.PartitionHotTermBitmaps partition = cache.partition();
+
+        byte[][] hot = { "hot0".getBytes(), "hot1".getBytes(), "hot2".getBytes() };
+        for (byte[] key : hot) {
+            for (int i = 0; i < 5; i++) {
+                partition.get(bitmaps, key, new BitmapAndLastId<>());
+            }
+            partition.put(bitmaps, key, partition.stamp(key), new BitmapAndLastId<RoaringBitmap>().set(bitmap, 9_999));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            byte[] cold = ("cold" + i).getBytes();
+            assertFalse(partition.get(bitmaps, cold, new BitmapAndLastId<>()));
+            partition.put(bitmaps, cold, partition.stamp(cold), new BitmapAndLastId<RoaringBitmap>().set(bitmap, 9_999));
+            assertTrue(cache.sizeInBytes() <= budget);
+        }
+        assertTrue(cache.rejections() > 0);
+        for (byte[] key : hot) {
+            assertTrue(partition.get(bitmaps, key, new BitmapAndLastId<>()));
+        }
+    }
+}
@@ -12,6 +12,7 @@ import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndex;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
 import com.jivesoftware.os.miru.service.IndexTestUtil;
 import com.jivesoftware.os.miru.service.index.lab.LabInvertedIndex;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -328,6 +329,7 @@ public class MiruInvertedIndexTest {
                 public void reset() {
                 }
             },
+            new MiruMetricHandles(true),
             "test",
             0,
             atomized,
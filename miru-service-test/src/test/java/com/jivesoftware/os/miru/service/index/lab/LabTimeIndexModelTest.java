@@ -0,0 +1,101 @@
+package com.jivesoftware.os.miru.service.index.lab;
+
+import java.util.Random;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class LabTimeIndexModelTest {
+
+    @Test
+    public void testLinearRunsResolveWithoutProbe() throws Exception {
+        LabTimeIndexModel model = new LabTimeIndexModel();
+        long[] timestamps = new long[1_000];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = 1_000L + i * 10L;
+            model.add(timestamps[i], i);
+        }
+
+        long[] probe = new long[2];
+        for (long t = 900L; t < timestamps[timestamps.length - 1]; t++) {
+            int id = model.smallestExclusiveId(t, probe);
+            assertEquals(id, expectedSmallestExclusive(timestamps, t), "Mismatch at " + t);
+        }
+        assertEquals(model.smallestExclusiveId(timestamps[timestamps.length - 1], probe), -2);
+        assertEquals(model.segmentCount(), 1);
+    }
+
+    @Test
+    public void testMixedRunsAgreeWithScan() throws Exception {
+        Random random = new Random(1234);
+        LabTimeIndexModel model = new LabTimeIndexModel();
+        long[] timestamps = new long[10_000];
+        long t = 0;
+        int i = 0;
+        while (i < timestamps.length) {
+            boolean linear = random.nextBoolean();
+            int runLength = Math.min(1 + random.nextInt(100), timestamps.length - i);
+            long step = random.nextInt(3);
+            for (int j = 0; j < runLength; j++, i++) {
+                t += linear ? step : random.nextInt(5);
+                timestamps[i] = t;
+                model.add(t, i);
+            }
+        }
+        assertTrue(model.segmentCount() < timestamps.length / LabTimeIndexModel.MIN_LINEAR_IDS);
+
+        long[] probe = new long[2];
+        for (long at = -1; at < timestamps[timestamps.length - 1]; at++) {
+            int expected = expectedSmallestExclusive(timestamps, at);
+            int id = model.smallestExclusiveId(at, probe);
+            if (id == -1) {
+                assertTrue(probe[0] > at);
+                assertTrue(expected <= probe[1], "Probe at " + at + " ends before " + expected);
+                assertTrue(timestamps[(int) probe[1]] == probe[0]);
+            } else {
+                assertEquals(id, expected, "Mismatch at " + at);
+            }
+        }
+    }
+
+    @Test
+    public void testOutOfOrderBreaksModel() throws Exception {
+        LabTimeIndexModel model = new LabTimeIndexModel();
+        model.add(10L, 0);
+        model.add(20L, 1);
+        model.add(15L, 2);
+        assertTrue(model.isBroken());
+    }
+
+    @Test
+    public void testExistingIdsAreIgnored() throws Exception {
+        LabTimeIndexModel model = new LabTimeIndexModel();
+        for (int i = 0; i < 100; i++) {
+            model.add(i * 10L, i);
+        }
+        int segments = model.segmentCount();
+
+        model.add(50L, 5);
+        model.add(990L, 99);
+        model.add(0L, 0);
+        assertFalse(model.isBroken());
+        assertEquals(model.segmentCount(), segments);
+
+        long[] probe = new long[2];
+        assertEquals(model.smallestExclusiveId(55L, probe), 6);
+    }
+
+    private static int expectedSmallestExclusive(long[] timestamps, long timestamp) {
+        for (int i = 0; i < timestamps.length; i++) {
+            if (timestamps[i] > timestamp) {
+                return i;
+            }
+        }
+        return timestamps.length;
+    }
+}
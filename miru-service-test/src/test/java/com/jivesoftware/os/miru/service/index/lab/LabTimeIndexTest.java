@@ -0,0 +1,83 @@
+package com.jivesoftware.os.miru.service.index.lab;
+
+import com.jivesoftware.os.filer.io.api.StackBuffer;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.wal.RCVSSipCursor;
+import com.jivesoftware.os.miru.bitmaps.roaring6.MiruBitmapsRoaring;
+import com.jivesoftware.os.miru.service.IndexTestUtil;
+import com.jivesoftware.os.miru.service.stream.MiruContext;
+import java.util.Arrays;
+import org.roaringbitmap.RoaringBitmap;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
+
+/**
+ *
+ */
+public class LabTimeIndexTest {
+
+    private final MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+    private final MiruPartitionCoord coord = new MiruPartitionCoord(new MiruTenantId(new byte[] { 1 }), MiruPartitionId.of(0), new MiruHost("logicalName"));
+
+    @Test
+    public void testRepairAndRemoveKeepModel() throws Exception {
+        MiruContext<RoaringBitmap, RoaringBitmap, RCVSSipCursor> context = IndexTestUtil.buildInMemoryContext(4, true, true, bitmaps, coord);
+        LabTimeIndex timeIndex = (LabTimeIndex) context.timeIndex;
+        StackBuffer stackBuffer = new StackBuffer();
+
+        long[] timestamps = new long[100];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = i * 10L;
+        }
+        allocateAndIndex(context, timestamps, stackBuffer);
+
+        assertEquals(timeIndex.smallestExclusiveTimestampIndex(455L, stackBuffer), 46);
+        LabTimeIndexModel model = timeIndex.currentModel();
+        assertNotNull(model);
+
+        // repairs and removes pass existing hits back through nextId, in whatever order they arrived
+        long[] hitTimestamps = { 500L, 100L, 990L };
+        int[] hitIds = new int[hitTimestamps.length];
+        long[] hitMonotonics = new long[hitTimestamps.length];
+        Arrays.fill(hitIds, -1);
+        Arrays.fill(hitMonotonics, -1);
+        context.timeIdIndex.lookup(context.version, hitTimestamps, hitIds, hitMonotonics);
+        assertEquals(hitIds, new int[] { 50, 10, 99 });
+        timeIndex.nextId(stackBuffer, hitTimestamps, hitIds, hitMonotonics);
+
+        assertSame(timeIndex.currentModel(), model);
+        assertFalse(model.isBroken());
+        assertEquals(timeIndex.smallestExclusiveTimestampIndex(455L, stackBuffer), 46);
+
+        long[] moreTimestamps = new long[50];
+        for (int i = 0; i < moreTimestamps.length; i++) {
+            moreTimestamps[i] = (timestamps.length + i) * 10L;
+        }
+        allocateAndIndex(context, moreTimestamps, stackBuffer);
+
+        assertSame(timeIndex.currentModel(), model);
+        assertFalse(model.isBroken());
+        for (long t = 0; t < 1_490L; t++) {
+            assertEquals(timeIndex.smallestExclusiveTimestampIndex(t, stackBuffer), (int) (t / 10) + 1, "Mismatch at " + t);
+        }
+    }
+
+    private void allocateAndIndex(MiruContext<RoaringBitmap, RoaringBitmap, RCVSSipCursor> context,
+        long[] timestamps,
+        StackBuffer stackBuffer) throws Exception {
+        int[] ids = new int[timestamps.length];
+        long[] monotonics = new long[timestamps.length];
+        Arrays.fill(ids, -1);
+        Arrays.fill(monotonics, -1);
+        context.timeIdIndex.allocate(null, context.version, timestamps, ids, monotonics,
+            context.timeIndex.lastId(), context.timeIndex.getLargestTimestamp());
+        context.timeIndex.nextId(stackBuffer, timestamps, ids, monotonics);
+    }
+}
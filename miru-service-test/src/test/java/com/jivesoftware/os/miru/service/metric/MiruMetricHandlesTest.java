@@ -0,0 +1,71 @@
+package com.jivesoftware.os.miru.service.metric;
+
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles.IngressMetrics;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class MiruMetricHandlesTest {
+
+    private final MiruTenantId tenantId = new MiruTenantId("tenant".getBytes());
+    private final MiruHost host = new MiruHost("logicalName");
+
+    @Test
+    public void testIngressHandlesAreReusedUntilRemoved() throws Exception {
+        MiruMetricHandles handles = new MiruMetricHandles(true);
+        MiruPartitionCoord coord0 = coord(0);
+        MiruPartitionCoord coord1 = coord(1);
+
+        IngressMetrics sip0 = handles.ingress("sip", coord0);
+        IngressMetrics rebuild0 = handles.ingress("rebuild", coord0);
+        IngressMetrics sip1 = handles.ingress("sip", coord1);
+        assertSame(handles.ingress("sip", coord0), sip0);
+        assertSame(handles.ingress("sip", coord(0)), sip0);
+        assertNotSame(rebuild0, sip0);
+        assertEquals(sip0.index, "sip>" + tenantId + ">0>index");
+        assertEquals(handles.ingressCount(), 2);
+
+        handles.removeIngress(coord0);
+        assertEquals(handles.ingressCount(), 1);
+        assertSame(handles.ingress("sip", coord1), sip1);
+
+        IngressMetrics reopened = handles.ingress("sip", coord0);
+        assertNotSame(reopened, sip0);
+        assertEquals(reopened.index, sip0.index);
+        assertEquals(handles.ingressCount(), 2);
+
+        handles.removeIngress(coord0);
+        handles.removeIngress(coord1);
+        handles.removeIngress(coord1);
+        assertEquals(handles.ingressCount(), 0);
+    }
+
+    @Test
+    public void testInstancesAreIsolated() throws Exception {
+        MiruMetricHandles verbose = new MiruMetricHandles(true);
+        MiruMetricHandles quiet = new MiruMetricHandles(false);
+        assertTrue(verbose.isPerFieldVerbose());
+        assertFalse(quiet.isPerFieldVerbose());
+
+        assertNotSame(verbose.index("field", 1), quiet.index("field", 1));
+        assertSame(verbose.index("field", 1), verbose.index("field", 1));
+        assertSame(verbose.solve("request", "query"), verbose.solve("request", "query"));
+        assertSame(verbose.merge("persistent"), verbose.merge("persistent"));
+
+        verbose.ingress("sip", coord(0));
+        assertEquals(verbose.ingressCount(), 1);
+        assertEquals(quiet.ingressCount(), 0);
+    }
+
+    private MiruPartitionCoord coord(int partitionId) {
+        return new MiruPartitionCoord(tenantId, MiruPartitionId.of(partitionId), host);
+    }
+}
@@ -71,6 +71,35 @@ public class MiruHostedPartitionComparisonTest {
         assertEquals(ordered.get(1).host, p2.host);
     }
 
+    @Test
+    public void testSlowReplicasRankedLast() throws Exception {
+        MiruReplicaLatencies replicaLatencies = new MiruReplicaLatencies(windowSize, percentile, 4d);
+        partitionComparison = new MiruHostedPartitionComparison(windowSize, percentile, replicaLatencies, timestamper);
+
+        MiruRoutablePartition p1 = create(49_601);
+        MiruRoutablePartition p2 = create(49_602);
+        MiruRoutablePartition p3 = new MiruRoutablePartition(new MiruHost("logicalName_49603"), partitionId, true, MiruPartitionState.upgrading,
+            MiruBackingStorage.disk, Long.MAX_VALUE);
+        List<MiruRoutablePartition> partitions = Lists.newArrayList(p1, p2, p3);
+
+        // rebuilding replica goes last even before any latencies are known
+        List<MiruRoutablePartition> ordered = partitionComparison.orderPartitions(tenantId, partitionId, requestName, queryKey, partitions);
+        assertEquals(ordered.get(0).host, p1.host);
+        assertEquals(ordered.get(1).host, p2.host);
+        assertEquals(ordered.get(2).host, p3.host);
+
+        for (int i = 0; i < 100; i++) {
+            replicaLatencies.record(new MiruPartitionCoord(tenantId, partitionId, p1.host), 500);
+            replicaLatencies.record(new MiruPartitionCoord(tenantId, partitionId, p2.host), 10);
+        }
+
+        // p1 is more than 4x slower than p2
+        ordered = partitionComparison.orderPartitions(tenantId, partitionId, requestName, queryKey, partitions);
+        assertEquals(ordered.get(0).host, p2.host);
+        assertEquals(ordered.get(1).host, p1.host);
+        assertEquals(ordered.get(2).host, p3.host);
+    }
+
     @Test
     public void testSuggestedTimeout() throws Exception {
         List<MiruSolution> solutions = Lists.newArrayList();
@@ -48,6 +48,7 @@ import com.jivesoftware.os.miru.api.base.MiruIBA;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.api.base.MiruTermId;
 import com.jivesoftware.os.miru.api.marshall.JacksonJsonObjectTypeMarshaller;
+import com.jivesoftware.os.miru.api.realtime.MiruRealtimeDelivery;
 import com.jivesoftware.os.miru.api.topology.MiruClusterClient;
 import com.jivesoftware.os.miru.api.topology.MiruIngressUpdate;
 import com.jivesoftware.os.miru.api.topology.RangeMinMax;
@@ -66,13 +67,19 @@ import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
 import com.jivesoftware.os.miru.plugin.marshaller.RCVSSipIndexMarshaller;
 import com.jivesoftware.os.miru.plugin.partition.MiruPartitionUnavailableException;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResultCache;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequestHandle;
 import com.jivesoftware.os.miru.service.MiruServiceConfig;
+import com.jivesoftware.os.miru.service.index.auth.MiruAuthzBitmapCache;
 import com.jivesoftware.os.miru.service.index.lab.LabTimeIdIndex;
 import com.jivesoftware.os.miru.service.index.lab.LabTimeIdIndexInitializer;
+import com.jivesoftware.os.miru.service.index.lab.MiruHotTermBitmapCache;
 import com.jivesoftware.os.miru.service.locator.MiruTempDirectoryResourceLocator;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles.IngressMetrics;
 import com.jivesoftware.os.miru.service.partition.PartitionErrorTracker.PartitionErrorTrackerConfig;
 import com.jivesoftware.os.miru.service.realtime.NoOpRealtimeDelivery;
+import com.jivesoftware.os.miru.service.stream.MiruContext;
 import com.jivesoftware.os.miru.service.stream.MiruContextFactory;
 import com.jivesoftware.os.miru.service.stream.MiruIndexAuthz;
 import com.jivesoftware.os.miru.service.stream.MiruIndexBloom;
@@ -127,6 +134,8 @@ import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 public class MiruLocalHostedPartitionTest {
@@ -164,6 +173,7 @@ public class MiruLocalHostedPartitionTest {
     private MiruHost host;
     private MiruBitmapsRoaring bitmaps;
     private TrackError trackError;
+    private MiruMetricHandles metricHandles;
     private MiruIndexer<RoaringBitmap, RoaringBitmap> indexer;
     private MiruLocalHostedPartition.Timings timings;
     private long topologyIsStaleAfterMillis = TimeUnit.HOURS.toMillis(1);
@@ -202,13 +212,16 @@ public class MiruLocalHostedPartitionTest {
 
         PartitionErrorTracker partitionErrorTracker = new PartitionErrorTracker(BindInterfaceToConfiguration.bindDefault(PartitionErrorTrackerConfig.class));
         trackError = partitionErrorTracker.track(coord);
+        metricHandles = new MiruMetricHandles(true);
 
         indexer = new MiruIndexer<>(new MiruIndexAuthz<>(),
             new MiruIndexPrimaryFields<>(),
             new MiruIndexValueBits<>(),
             new MiruIndexBloom<>(new BloomIndex<>(bitmaps, Hashing.murmur3_128(), 100_000, 0.01f)),
             new MiruIndexLatest<>(),
-            new MiruIndexPairedLatest<>());
+            new MiruIndexPairedLatest<>(),
+            2,
+            10_000);
         timings = new MiruLocalHostedPartition.Timings(5_000, 5_000, 5_000, 30_000, 3_000, 30_000, 300_000, 60_000);
 
         MiruInterner<MiruIBA> ibaInterner = new MiruInterner<MiruIBA>(true) {
@@ -314,11 +327,13 @@ public class MiruLocalHostedPartitionTest {
                 .build(),
             new RCVSSipIndexMarshaller(),
             resourceLocator,
-            config.getPartitionAuthzCacheSize(),
+            new MiruAuthzBitmapCache(config.getAuthzCacheMaxSizeInBytes(), config.getAuthzCacheEvictionSampleSize()),
+            new MiruHotTermBitmapCache(config.getHotTermCacheMaxSizeInBytes(), config.getHotTermCacheEvictionSampleSize()),
             new StripingLocksProvider<>(8),
             new StripingLocksProvider<>(8),
             new StripingLocksProvider<>(8),
             partitionErrorTracker,
+            metricHandles,
             termInterner,
             mapper,
             1024 * 1024 * 10,
@@ -328,7 +343,12 @@ public class MiruLocalHostedPartitionTest {
             true,
             true,
             false,
-            false);
+            false,
+            0,
+            new String[0],
+            0,
+            -1,
+            0);
         sipTrackerFactory = new RCVSSipTrackerFactory();
 
         InMemoryRowColumnValueStoreInitializer inMemoryRowColumnValueStoreInitializer = new InMemoryRowColumnValueStoreInitializer();
@@ -599,10 +619,15 @@ public class MiruLocalHostedPartitionTest {
         waitForRef(rebuildIndexRunnable).run(); // enters rebuilding
         waitForRef(sipMigrateIndexRunnable).run(); // enters online memory
 
+        IngressMetrics ingressMetrics = metricHandles.ingress(MiruPartitionAccessor.IndexStrategy.sip.name(), coord);
+        assertSame(metricHandles.ingress(MiruPartitionAccessor.IndexStrategy.sip.name(), coord), ingressMetrics);
+
         localHostedPartition.remove();
 
         assertEquals(localHostedPartition.getState(), MiruPartitionState.offline);
         assertEquals(localHostedPartition.getStorage(), MiruBackingStorage.disk);
+        assertNotSame(metricHandles.ingress(MiruPartitionAccessor.IndexStrategy.sip.name(), coord), ingressMetrics,
+            "Ingress metrics should be dropped when the partition closes");
     }
 
     @Test(dataProvider = "useLabIndexes")
@@ -698,14 +723,92 @@ public class MiruLocalHostedPartitionTest {
         }
     }
 
+    @Test(dataProvider = "useLabIndexes")
+    public void testRealtimeDeliveryScansUntrackedAndReadsTracked(boolean useLabIndexes) throws Exception {
+        init(useLabIndexes);
+
+        List<Long> delivered = Collections.synchronizedList(Lists.newArrayList());
+        MiruLocalHostedPartition<RoaringBitmap, RoaringBitmap, RCVSCursor, RCVSSipCursor> localHostedPartition =
+            getRoaringLocalHostedPartition((deliveredCoord, activityTimes) -> {
+                delivered.addAll(activityTimes);
+                return activityTimes.size();
+            });
+
+        // rebuilt into memory, so the disk context it migrates to has not tracked any of these and must scan them
+        List<MiruPartitionedActivity> rebuilt = Lists.newArrayList(factory.begin(1, partitionId, tenantId, 0));
+        for (int i = 0; i < 20; i++) {
+            rebuilt.add(realtimeActivity(i, 0L, i % 2 == 0));
+        }
+        walClient.writeActivity(tenantId, partitionId, rebuilt);
+
+        setActive(true);
+        waitForRef(bootstrapRunnable).run();
+        waitForRef(rebuildIndexRunnable).run();
+        waitForRef(sipMigrateIndexRunnable).run();
+        waitForRef(sipMigrateIndexRunnable).run();
+        assertEquals(localHostedPartition.getStorage(), MiruBackingStorage.disk);
+
+        List<Long> expected = Lists.newArrayList();
+        for (int i = 0; i < 20; i += 2) {
+            expected.add(1_000L + i);
+        }
+        assertEquals(sorted(delivered), expected);
+
+        List<MiruPartitionedActivity> indexed = Lists.newArrayList();
+        for (int i = 20; i < 40; i++) {
+            indexed.add(realtimeActivity(i, 0L, i % 2 == 0));
+        }
+        localHostedPartition.index(indexed.iterator());
+        // a repair that drops the realtime flag must clear the tracked id
+        localHostedPartition.index(Collections.singletonList(realtimeActivity(20, 1L, false)).iterator());
+
+        try (MiruRequestHandle<RoaringBitmap, RoaringBitmap, RCVSSipCursor> handle = localHostedPartition.acquireQueryHandle()) {
+            MiruContext<RoaringBitmap, RoaringBitmap, RCVSSipCursor> context = (MiruContext<RoaringBitmap, RoaringBitmap, RCVSSipCursor>) handle
+                .getRequestContext();
+            assertEquals(context.realtimeIds.trackedAfterId(), 19);
+            assertEquals(context.realtimeIds.ids(bitmaps, 19, 39), new int[] { 22, 24, 26, 28, 30, 32, 34, 36, 38 });
+        }
+
+        waitForRef(sipMigrateIndexRunnable).run();
+        for (int i = 22; i < 40; i += 2) {
+            expected.add(1_000L + i);
+        }
+        assertEquals(sorted(delivered), expected);
+    }
+
+    private MiruPartitionedActivity realtimeActivity(int index, long version, boolean realtimeDelivery) {
+        return factory.activity(1,
+            partitionId,
+            index,
+            new MiruActivity(tenantId,
+                1_000L + index,
+                version,
+                realtimeDelivery,
+                new String[0],
+                Collections.emptyMap(),
+                Collections.emptyMap()));
+    }
+
+    private static List<Long> sorted(List<Long> values) {
+        List<Long> sorted = Lists.newArrayList(values);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
     private MiruLocalHostedPartition<RoaringBitmap, RoaringBitmap, RCVSCursor, RCVSSipCursor> getRoaringLocalHostedPartition()
         throws Exception {
+        return getRoaringLocalHostedPartition(new NoOpRealtimeDelivery(new MiruStats()));
+    }
+
+    private MiruLocalHostedPartition<RoaringBitmap, RoaringBitmap, RCVSCursor, RCVSSipCursor> getRoaringLocalHostedPartition(
+        MiruRealtimeDelivery realtimeDelivery) throws Exception {
         AtomicLong numberOfChitsRemaining = new AtomicLong(100_000);
         MiruMergeChits persistentMergeChits = new LargestFirstMergeChits("persistent", numberOfChitsRemaining);
         MiruMergeChits transientMergeChits = new FreeMergeChits("transient");
         MiruStats miruStats = new MiruStats();
 
         return new MiruLocalHostedPartition<>(miruStats,
+            metricHandles,
             bitmaps,
             trackError,
             coord,
@@ -713,7 +816,7 @@ public class MiruLocalHostedPartitionTest {
             contextFactory,
             sipTrackerFactory,
             walClient,
-            new NoOpRealtimeDelivery(miruStats),
+            realtimeDelivery,
             partitionEventHandler,
             rebuildDirector,
             scheduledBootstrapService,
@@ -731,8 +834,10 @@ public class MiruLocalHostedPartitionTest {
             true,
             100,
             100,
+            1024 * 1024,
             persistentMergeChits,
             transientMergeChits,
+            new MiruPartitionResultCache(1024 * 1024),
             timings);
     }
 
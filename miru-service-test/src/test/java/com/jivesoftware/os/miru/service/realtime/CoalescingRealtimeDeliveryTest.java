@@ -0,0 +1,186 @@
+package com.jivesoftware.os.miru.service.realtime;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.jive.utils.ordered.id.TimestampedOrderIdProvider;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.miru.api.MiruStats;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.realtime.RealtimeUpdate;
+import com.jivesoftware.os.miru.api.realtime.RealtimeUpdates;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.xerial.snappy.Snappy;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class CoalescingRealtimeDeliveryTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final MiruHost host = new MiruHost("logicalName");
+    private final MiruTenantId tenant1 = new MiruTenantId("tenant1".getBytes());
+    private final MiruTenantId tenant2 = new MiruTenantId("tenant2".getBytes());
+
+    private final AtomicLong cutoffOrderId = new AtomicLong();
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private final List<RealtimeUpdates> posted = Collections.synchronizedList(Lists.newArrayList());
+    private TimestampedOrderIdProvider orderIdProvider;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        cutoffOrderId.set(0);
+        failing.set(false);
+        posted.clear();
+        orderIdProvider = mock(TimestampedOrderIdProvider.class);
+        when(orderIdProvider.getApproximateId(anyLong())).thenAnswer(invocation -> cutoffOrderId.get());
+    }
+
+    @Test
+    public void testCoalescesAcrossCoords() throws Exception {
+        CoalescingRealtimeDelivery delivery = delivery(0, 1_000);
+        delivery.deliver(coord(tenant1, 0), Arrays.asList(1L, 2L));
+        delivery.deliver(coord(tenant1, 1), Arrays.asList(3L));
+        delivery.deliver(coord(tenant1, 0), Arrays.asList(4L));
+        delivery.deliver(coord(tenant2, 0), Arrays.asList(5L));
+        assertTrue(posted.isEmpty());
+
+        delivery.flush();
+
+        assertEquals(posted.size(), 2);
+        Map<MiruPartitionCoord, List<Long>> tenant1Times = times(tenant1);
+        assertEquals(tenant1Times.size(), 2);
+        assertEquals(tenant1Times.get(coord(tenant1, 0)), Arrays.asList(1L, 2L, 4L));
+        assertEquals(tenant1Times.get(coord(tenant1, 1)), Arrays.asList(3L));
+        assertEquals(times(tenant2).get(coord(tenant2, 0)), Arrays.asList(5L));
+        assertEquals(delivery.pendingCount(tenant1), 0);
+
+        posted.clear();
+        delivery.flush();
+        assertTrue(posted.isEmpty());
+    }
+
+    @Test
+    public void testRequeuesFailedDelivery() throws Exception {
+        CoalescingRealtimeDelivery delivery = delivery(0, 1_000);
+        delivery.deliver(coord(tenant1, 0), Arrays.asList(1L, 2L));
+
+        failing.set(true);
+        delivery.flush();
+        assertEquals(delivery.pendingCount(tenant1), 2);
+
+        delivery.deliver(coord(tenant1, 0), Arrays.asList(3L));
+        delivery.deliver(coord(tenant1, 1), Arrays.asList(4L));
+
+        failing.set(false);
+        delivery.flush();
+
+        Map<MiruPartitionCoord, List<Long>> tenant1Times = times(tenant1);
+        assertEquals(tenant1Times.get(coord(tenant1, 0)), Arrays.asList(1L, 2L, 3L));
+        assertEquals(tenant1Times.get(coord(tenant1, 1)), Arrays.asList(4L));
+        assertEquals(delivery.pendingCount(tenant1), 0);
+    }
+
+    @Test
+    public void testDropsUpdatesOlderThanThreshold() throws Exception {
+        CoalescingRealtimeDelivery delivery = delivery(60_000, 1_000);
+        cutoffOrderId.set(10);
+        assertEquals(delivery.deliver(coord(tenant1, 0), Arrays.asList(5L, 10L, 11L, 20L)), 2);
+        assertEquals(delivery.pendingCount(tenant1), 2);
+
+        failing.set(true);
+        delivery.flush();
+        assertEquals(delivery.pendingCount(tenant1), 2);
+
+        // updates age past the threshold while they wait to be retried
+        cutoffOrderId.set(15);
+        delivery.flush();
+        assertEquals(delivery.pendingCount(tenant1), 1);
+
+        cutoffOrderId.set(20);
+        delivery.flush();
+        assertEquals(delivery.pendingCount(tenant1), 0);
+
+        failing.set(false);
+        delivery.flush();
+        assertTrue(posted.isEmpty());
+    }
+
+    @Test
+    public void testCapsPendingPerTenantDroppingOldest() throws Exception {
+        CoalescingRealtimeDelivery delivery = delivery(0, 5);
+        delivery.deliver(coord(tenant1, 0), Arrays.asList(1L, 2L, 3L));
+        delivery.deliver(coord(tenant1, 1), Arrays.asList(4L, 5L, 6L));
+        delivery.deliver(coord(tenant2, 0), Arrays.asList(7L));
+        assertEquals(delivery.pendingCount(tenant1), 5);
+        assertEquals(delivery.pendingCount(tenant2), 1);
+
+        // without a drop threshold a failing receiver must not grow the buffer past the cap
+        failing.set(true);
+        for (int i = 0; i < 10; i++) {
+            delivery.deliver(coord(tenant1, 1), Arrays.asList(100L + i));
+            delivery.flush();
+            assertEquals(delivery.pendingCount(tenant1), 5);
+        }
+
+        failing.set(false);
+        delivery.flush();
+        Map<MiruPartitionCoord, List<Long>> tenant1Times = times(tenant1);
+        assertEquals(tenant1Times.size(), 1);
+        assertEquals(tenant1Times.get(coord(tenant1, 1)), Arrays.asList(105L, 106L, 107L, 108L, 109L));
+    }
+
+    private CoalescingRealtimeDelivery delivery(long dropOlderThanNMillis, int maxPendingPerTenant) {
+        return new CoalescingRealtimeDelivery(host,
+            null,
+            "/batch",
+            mapper,
+            new MiruStats(),
+            orderIdProvider,
+            dropOlderThanNMillis,
+            maxPendingPerTenant,
+            null,
+            100,
+            95,
+            1000) {
+            @Override
+            void post(MiruTenantId tenantId, byte[] bytes) throws Exception {
+                if (failing.get()) {
+                    throw new MiruRealtimeDeliveryException("Failing for test");
+                }
+                posted.add(mapper.readValue(Snappy.uncompress(bytes), RealtimeUpdates.class));
+            }
+        };
+    }
+
+    private MiruPartitionCoord coord(MiruTenantId tenantId, int partitionId) {
+        return new MiruPartitionCoord(tenantId, MiruPartitionId.of(partitionId), host);
+    }
+
+    private Map<MiruPartitionCoord, List<Long>> times(MiruTenantId tenantId) {
+        Map<MiruPartitionCoord, List<Long>> times = Maps.newHashMap();
+        for (RealtimeUpdates updates : posted) {
+            if (updates.tenantId.equals(tenantId)) {
+                for (RealtimeUpdate update : updates.updates) {
+                    assertEquals(times.put(update.coord, update.activityTimes), null, "Coord posted twice " + update.coord);
+                }
+            }
+        }
+        return times;
+    }
+}
@@ -17,6 +17,7 @@ import com.jivesoftware.os.miru.bitmaps.roaring6.MiruBitmapsRoaring;
 import com.jivesoftware.os.miru.plugin.cache.MiruPluginCacheProvider.LastIdCacheKeyValues;
 import com.jivesoftware.os.miru.plugin.context.LastIdKeyValueRawhide;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import com.jivesoftware.os.miru.service.stream.cache.LabPluginCacheProvider;
 import com.jivesoftware.os.miru.service.stream.cache.LabPluginCacheProvider.LabPluginCacheProviderLock;
 import java.io.File;
@@ -92,6 +93,7 @@ public class LabPluginCacheProviderNGTest {
                 public void reset() {
                 }
             },
+            new MiruMetricHandles(true),
             true,
             true);
         LastIdCacheKeyValues lastIdCache = provider.getLastIdKeyValues("testLastId", -1, false, 1024 * 1024 * 10L, "cuckoo", 2d);
@@ -63,6 +63,7 @@ public class MiruIndexerTest {
                     DefaultMiruSchemaDefinition.FIELDS[1].name, "1")),
                 3,
                 4L))),
+            false,
             MoreExecutors.sameThreadExecutor());
         verifyFieldValues(tenantId, context, 3, 0, stackBuffer);
         verifyFieldValues(tenantId, context, 3, 1, stackBuffer);
@@ -77,6 +78,7 @@ public class MiruIndexerTest {
                     DefaultMiruSchemaDefinition.FIELDS[2].name, "2")),
                 4,
                 5L))),
+            false,
             MoreExecutors.sameThreadExecutor());
         verifyFieldValues(tenantId, context, 4, 0, stackBuffer);
         verifyFieldValues(tenantId, context, 4, 2, stackBuffer);
@@ -126,7 +128,7 @@ public class MiruIndexerTest {
             nextId + 1));
 
         // Repair data
-        miruIndexer.index(context, coord, activityAndIds, MoreExecutors.sameThreadExecutor());
+        miruIndexer.index(context, coord, activityAndIds, false, MoreExecutors.sameThreadExecutor());
 
         // First check existing data
         for (MiruActivityAndId<MiruActivity> activityAndId : activityList) {
@@ -142,6 +144,57 @@ public class MiruIndexerTest {
         verifyAuthzValues(context.getAuthzIndex(), context.getActivityIndex().getAuthz("test", nextId, stackBuffer), nextId, stackBuffer);
     }
 
+    @Test(dataProvider = "miruIndexContextDataProvider")
+    public void testBulkIndexData(MiruPartitionCoord coord,
+        MiruContext<RoaringBitmap, RoaringBitmap, ?> context,
+        MiruIndexer<RoaringBitmap, RoaringBitmap> miruIndexer,
+        List<MiruActivityAndId<MiruActivity>> activityList)
+        throws Exception {
+
+        StackBuffer stackBuffer = new StackBuffer();
+        MiruTenantId tenantId = coord.tenantId;
+
+        int nextId = activityList.size();
+        List<MiruActivityAndId<MiruActivity>> activityAndIds = Lists.newArrayList();
+        for (int i = 0; i < 3; i++) {
+            activityAndIds.add(new MiruActivityAndId<>(
+                buildMiruActivity(tenantId,
+                    nextId + i + 1,
+                    new String[] { "pqrst" },
+                    ImmutableMap.of(
+                        DefaultMiruSchemaDefinition.FIELDS[0].name, "0",
+                        DefaultMiruSchemaDefinition.FIELDS[1].name, "1")),
+                nextId + i,
+                nextId + i + 1));
+        }
+        // repair an earlier id out of order, which the runs must sort and dedupe
+        MiruActivityAndId<MiruActivity> existing = activityList.get(0);
+        List<MiruActivityAndId<MiruActivity>> repairAndIds = Lists.newArrayList();
+        repairAndIds.add(new MiruActivityAndId<>(
+            buildMiruActivity(tenantId,
+                existing.activity.time,
+                existing.activity.authz,
+                ImmutableMap.of(
+                    DefaultMiruSchemaDefinition.FIELDS[0].name, "0",
+                    DefaultMiruSchemaDefinition.FIELDS[1].name, "1")),
+            existing.id,
+            existing.activity.time));
+
+        miruIndexer.index(context, coord, activityAndIds, true, MoreExecutors.sameThreadExecutor());
+        miruIndexer.index(context, coord, repairAndIds, true, MoreExecutors.sameThreadExecutor());
+        assertTrue(context.primaryFieldRuns.numIds() > 0);
+
+        miruIndexer.flush(context, coord, MoreExecutors.sameThreadExecutor());
+        assertTrue(context.primaryFieldRuns.isEmpty());
+
+        for (int i = 0; i < 3; i++) {
+            verifyFieldValues(tenantId, context, nextId + i, 0, stackBuffer);
+            verifyFieldValues(tenantId, context, nextId + i, 1, stackBuffer);
+        }
+        verifyFieldValues(tenantId, context, existing.id, 0, stackBuffer);
+        verifyFieldValues(tenantId, context, existing.id, 1, stackBuffer);
+    }
+
     private void verifyFieldValues(MiruTenantId tenantId,
         MiruContext<RoaringBitmap, RoaringBitmap, ?> context,
         int activityId,
@@ -189,7 +242,9 @@ public class MiruIndexerTest {
             new MiruIndexValueBits<>(),
             new MiruIndexBloom<>(new BloomIndex<>(bitmaps, Hashing.murmur3_128(), 100_000, 0.01f)),
             new MiruIndexLatest<>(),
-            new MiruIndexPairedLatest<>());
+            new MiruIndexPairedLatest<>(),
+            2,
+            10_000);
 
         return ArrayUtils.addAll(buildIndexContextDataProvider(tenantId, coord, bitmaps, miruIndexer, false),
             buildIndexContextDataProvider(tenantId, coord, bitmaps, miruIndexer, true));
@@ -221,11 +276,13 @@ public class MiruIndexerTest {
         miruIndexer.index(inMemoryContext,
             coord,
             Lists.newArrayList(immutableActivityList),
+            false,
             MoreExecutors.sameThreadExecutor());
 
         miruIndexer.index(onDiskContext,
             coord,
             Lists.newArrayList(immutableActivityList),
+            false,
             MoreExecutors.sameThreadExecutor());
 
         return new Object[][] {
@@ -0,0 +1,39 @@
+package com.jivesoftware.os.miru.service.stream;
+
+import com.jivesoftware.os.miru.bitmaps.roaring6.MiruBitmapsRoaring;
+import gnu.trove.list.array.TIntArrayList;
+import org.roaringbitmap.RoaringBitmap;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class MiruRealtimeIdsTest {
+
+    private final MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+
+    @Test
+    public void testTrackAndDeliver() throws Exception {
+        MiruRealtimeIds<RoaringBitmap, RoaringBitmap> realtimeIds = new MiruRealtimeIds<>();
+        assertEquals(realtimeIds.trackedAfterId(), Integer.MAX_VALUE);
+
+        realtimeIds.indexed(bitmaps, 99, TIntArrayList.wrap(new int[] { 101, 103, 105 }), new TIntArrayList());
+        realtimeIds.indexed(bitmaps, 105, TIntArrayList.wrap(new int[] { 107 }), new TIntArrayList());
+        assertEquals(realtimeIds.trackedAfterId(), 99);
+
+        assertEquals(realtimeIds.ids(bitmaps, 99, 106), new int[] { 101, 103, 105 });
+        assertEquals(realtimeIds.ids(bitmaps, 101, 107), new int[] { 103, 105, 107 });
+
+        realtimeIds.delivered(bitmaps, 105);
+        assertEquals(realtimeIds.ids(bitmaps, 99, 200), new int[] { 107 });
+    }
+
+    @Test
+    public void testRepairClearsIds() throws Exception {
+        MiruRealtimeIds<RoaringBitmap, RoaringBitmap> realtimeIds = new MiruRealtimeIds<>();
+        realtimeIds.indexed(bitmaps, -1, TIntArrayList.wrap(new int[] { 0, 1, 2 }), new TIntArrayList());
+        realtimeIds.indexed(bitmaps, 2, new TIntArrayList(), TIntArrayList.wrap(new int[] { 1 }));
+
+        assertEquals(realtimeIds.trackedAfterId(), -1);
+        assertEquals(realtimeIds.ids(bitmaps, -1, 2), new int[] { 0, 2 });
+    }
+}
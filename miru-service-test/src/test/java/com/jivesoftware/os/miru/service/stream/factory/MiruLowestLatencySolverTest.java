@@ -14,6 +14,8 @@ import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResponse;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolvable;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
+import com.jivesoftware.os.miru.service.partition.MiruReplicaLatencies;
 import com.jivesoftware.os.miru.service.solver.MiruLowestLatencySolver;
 import com.jivesoftware.os.miru.service.solver.MiruSolved;
 import java.util.Collections;
@@ -25,6 +27,7 @@ import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
 
 /**
  *
@@ -40,7 +43,7 @@ public class MiruLowestLatencySolverTest {
         long failAfterNMillis = 3_000;
 
         MiruLowestLatencySolver solver = new MiruLowestLatencySolver(initialSolvers, maxNumberOfSolvers,
-            addAnotherSolverAfterNMillis, failAfterNMillis);
+            addAnotherSolverAfterNMillis, failAfterNMillis, 0, new MiruReplicaLatencies(100, 95, 4d), new MiruMetricHandles(true));
 
         MiruTenantId tenantId = new MiruTenantId("test".getBytes());
         MiruPartitionId partitionId = MiruPartitionId.of(1);
@@ -72,4 +75,123 @@ public class MiruLowestLatencySolverTest {
         assertNotNull(solved.solution, "The solution was null");
         assertEquals(solved.solution.usedPartition.host.getLogicalName(), "logicalName_" + 10_000);
     }
+
+    @Test
+    public void testHedgeAtReplicaPercentile() throws Exception {
+        Executor executor = Executors.newFixedThreadPool(2);
+        MiruReplicaLatencies replicaLatencies = new MiruReplicaLatencies(100, 95, 4d);
+
+        // default hedge delay exceeds the failure deadline, so only the replica percentile can trigger a hedge
+        MiruLowestLatencySolver solver = new MiruLowestLatencySolver(1, 2, 10_000, 3_000, 10, replicaLatencies, new MiruMetricHandles(true));
+
+        MiruTenantId tenantId = new MiruTenantId("test".getBytes());
+        MiruPartitionId partitionId = MiruPartitionId.of(1);
+        MiruPartitionCoord slowCoord = new MiruPartitionCoord(tenantId, partitionId, new MiruHost("logicalName_10000"));
+        MiruPartitionCoord fastCoord = new MiruPartitionCoord(tenantId, partitionId, new MiruHost("logicalName_10001"));
+        for (int i = 0; i < 100; i++) {
+            replicaLatencies.record(slowCoord, 50);
+        }
+
+        List<MiruSolvable<Integer>> solvables = Lists.newArrayList();
+        solvables.add(new MiruSolvable<>(slowCoord,
+            () -> {
+                Thread.sleep(2_000);
+                return new MiruPartitionResponse<>(0, null);
+            },
+            true,
+            null));
+        solvables.add(new MiruSolvable<>(fastCoord, () -> new MiruPartitionResponse<>(1, null), true, null));
+
+        MiruSolutionLog solutionLog = new MiruSolutionLog(MiruSolutionLogLevel.ERROR);
+        MiruSolved<Integer> solved = solver.solve("a", "b", tenantId, partitionId, solvables.iterator(), Optional.<Long>absent(), executor, solutionLog);
+        assertNotNull(solved, "The solver timed out instead of hedging at the replica percentile.");
+        assertEquals((int) solved.answer, 1);
+        assertEquals(solved.solution.usedPartition, fastCoord);
+        assertEquals(replicaLatencies.latencyPercentile(new MiruPartitionCoord(tenantId, MiruPartitionId.of(2), fastCoord.host)),
+            replicaLatencies.latencyPercentile(fastCoord));
+    }
+
+    @Test
+    public void testRecordsLatencyForEveryReplica() throws Exception {
+        Executor executor = Executors.newFixedThreadPool(3);
+        MiruReplicaLatencies replicaLatencies = new MiruReplicaLatencies(100, 95, 4d);
+        MiruLowestLatencySolver solver = new MiruLowestLatencySolver(2, 3, 10_000, 3_000, 10, replicaLatencies, new MiruMetricHandles(true));
+
+        MiruTenantId tenantId = new MiruTenantId("test".getBytes());
+        MiruPartitionId partitionId = MiruPartitionId.of(1);
+        MiruPartitionCoord failedCoord = new MiruPartitionCoord(tenantId, partitionId, new MiruHost("logicalName_10000"));
+        MiruPartitionCoord winningCoord = new MiruPartitionCoord(tenantId, partitionId, new MiruHost("logicalName_10001"));
+        MiruPartitionCoord cancelledCoord = new MiruPartitionCoord(tenantId, partitionId, new MiruHost("logicalName_10002"));
+
+        // the failed response adds the third replica, which is still running when the second one wins
+        List<MiruSolvable<Integer>> solvables = Lists.newArrayList();
+        solvables.add(new MiruSolvable<>(failedCoord,
+            () -> {
+                Thread.sleep(50);
+                return null;
+            },
+            true,
+            null));
+        solvables.add(new MiruSolvable<>(winningCoord,
+            () -> {
+                Thread.sleep(300);
+                return new MiruPartitionResponse<>(1, null);
+            },
+            true,
+            null));
+        solvables.add(new MiruSolvable<>(cancelledCoord,
+            () -> {
+                Thread.sleep(2_000);
+                return new MiruPartitionResponse<>(2, null);
+            },
+            true,
+            null));
+
+        MiruSolutionLog solutionLog = new MiruSolutionLog(MiruSolutionLogLevel.ERROR);
+        MiruSolved<Integer> solved = solver.solve("a", "b", tenantId, partitionId, solvables.iterator(), Optional.<Long>absent(), executor, solutionLog);
+        assertNotNull(solved);
+        assertEquals((int) solved.answer, 1);
+
+        long failedLatency = replicaLatencies.latencyPercentile(failedCoord);
+        long winningLatency = replicaLatencies.latencyPercentile(winningCoord);
+        long cancelledLatency = replicaLatencies.latencyPercentile(cancelledCoord);
+        assertTrue(failedLatency >= 50 && failedLatency < 300, "Failed replica latency " + failedLatency);
+        assertTrue(winningLatency >= 300 && winningLatency < 2_000, "Winning replica latency " + winningLatency);
+        // submitted when the first replica failed, so it had been running for at least the remaining wait for the winner
+        assertTrue(cancelledLatency >= 200 && cancelledLatency < 2_000, "Cancelled replica latency " + cancelledLatency);
+    }
+
+    @Test
+    public void testCensoredLatencyNeverLowersPercentile() throws Exception {
+        MiruReplicaLatencies replicaLatencies = new MiruReplicaLatencies(100, 95, 4d);
+        MiruPartitionCoord coord = new MiruPartitionCoord(new MiruTenantId("test".getBytes()), MiruPartitionId.of(1), new MiruHost("logicalName"));
+
+        replicaLatencies.recordCensored(coord, 40);
+        assertEquals(replicaLatencies.latencyPercentile(coord), 40);
+
+        for (int i = 0; i < 100; i++) {
+            replicaLatencies.record(coord, 100);
+        }
+        for (int i = 0; i < 100; i++) {
+            replicaLatencies.recordCensored(coord, 10);
+        }
+        assertEquals(replicaLatencies.latencyPercentile(coord), 100);
+
+        for (int i = 0; i < 100; i++) {
+            replicaLatencies.recordCensored(coord, 500);
+        }
+        assertEquals(replicaLatencies.latencyPercentile(coord), 500);
+    }
+
+    @Test
+    public void testUnqueriedReplicasExpire() throws Exception {
+        MiruReplicaLatencies replicaLatencies = new MiruReplicaLatencies(100, 95, 4d, 10);
+        MiruPartitionCoord coord = new MiruPartitionCoord(new MiruTenantId("test".getBytes()), MiruPartitionId.of(1), new MiruHost("logicalName"));
+
+        replicaLatencies.record(coord, 40);
+        assertEquals(replicaLatencies.latencyPercentile(coord), 40);
+
+        Thread.sleep(100);
+        assertEquals(replicaLatencies.latencyPercentile(coord), -1);
+    }
 }
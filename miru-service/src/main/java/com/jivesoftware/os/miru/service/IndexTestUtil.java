@@ -50,10 +50,13 @@ import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
 import com.jivesoftware.os.miru.plugin.marshaller.RCVSSipIndexMarshaller;
 import com.jivesoftware.os.miru.plugin.schema.SingleSchemaProvider;
+import com.jivesoftware.os.miru.service.index.auth.MiruAuthzBitmapCache;
 import com.jivesoftware.os.miru.service.index.lab.LabTimeIdIndex;
 import com.jivesoftware.os.miru.service.index.lab.LabTimeIdIndexInitializer;
+import com.jivesoftware.os.miru.service.index.lab.MiruHotTermBitmapCache;
 import com.jivesoftware.os.miru.service.locator.MiruResourceLocator;
 import com.jivesoftware.os.miru.service.locator.MiruTempDirectoryResourceLocator;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import com.jivesoftware.os.miru.service.partition.PartitionErrorTracker;
 import com.jivesoftware.os.miru.service.stream.cache.LabPluginCacheProvider;
 import com.jivesoftware.os.miru.service.stream.MiruContext;
@@ -83,7 +86,11 @@ public class IndexTestUtil {
         .setFieldDefinitions(DefaultMiruSchemaDefinition.FIELDS)
         .build();
 
-    private static MiruContextFactory<RCVSSipCursor> factory(int numberOfChunkStores, boolean useLabIndexes, boolean hasRealtime) throws Exception {
+    private static MiruContextFactory<RCVSSipCursor> factory(int numberOfChunkStores,
+        boolean useLabIndexes,
+        boolean hasRealtime,
+        long rollupGranularityInMillis,
+        String[] rollupFieldNames) throws Exception {
 
         StripingLocksProvider<MiruTermId> fieldIndexStripingLocksProvider = new StripingLocksProvider<>(1024);
         StripingLocksProvider<MiruStreamId> streamStripingLocksProvider = new StripingLocksProvider<>(1024);
@@ -197,11 +204,13 @@ public class IndexTestUtil {
                 .build(),
             new RCVSSipIndexMarshaller(),
             new MiruTempDirectoryResourceLocator(),
-            1024,
+            new MiruAuthzBitmapCache(1024 * 1024, 16),
+            new MiruHotTermBitmapCache(1024 * 1024, 16),
             fieldIndexStripingLocksProvider,
             streamStripingLocksProvider,
             authzStripingLocksProvider,
             new PartitionErrorTracker(BindInterfaceToConfiguration.bindDefault(PartitionErrorTracker.PartitionErrorTrackerConfig.class)),
+            new MiruMetricHandles(true),
             termInterner,
             new ObjectMapper(),
             1024 * 1024 * 10,
@@ -211,7 +220,12 @@ public class IndexTestUtil {
             useLabIndexes,
             hasRealtime,
             false,
-            false);
+            false,
+            rollupGranularityInMillis,
+            rollupFieldNames,
+            rollupFieldNames.length > 0 ? 1024 * 1024 * 10 : 0,
+            -1,
+            0);
     }
 
     public static <BM extends IBM, IBM> MiruContext<BM, IBM, RCVSSipCursor> buildInMemoryContext(int numberOfChunkStores,
@@ -219,8 +233,18 @@ public class IndexTestUtil {
         boolean hasRealtime,
         MiruBitmaps<BM, IBM> bitmaps,
         MiruPartitionCoord coord) throws Exception {
-        return factory(numberOfChunkStores, useLabIndexes, hasRealtime).allocate(bitmaps, schema, coord, MiruBackingStorage.memory, null);
+        return buildInMemoryContext(numberOfChunkStores, useLabIndexes, hasRealtime, bitmaps, coord, 0, new String[0]);
+    }
 
+    public static <BM extends IBM, IBM> MiruContext<BM, IBM, RCVSSipCursor> buildInMemoryContext(int numberOfChunkStores,
+        boolean useLabIndexes,
+        boolean hasRealtime,
+        MiruBitmaps<BM, IBM> bitmaps,
+        MiruPartitionCoord coord,
+        long rollupGranularityInMillis,
+        String[] rollupFieldNames) throws Exception {
+        return factory(numberOfChunkStores, useLabIndexes, hasRealtime, rollupGranularityInMillis, rollupFieldNames)
+            .allocate(bitmaps, schema, coord, MiruBackingStorage.memory, null);
     }
 
     public static <BM extends IBM, IBM> MiruContext<BM, IBM, RCVSSipCursor> buildOnDiskContext(int numberOfChunkStores,
@@ -228,7 +252,7 @@ public class IndexTestUtil {
         boolean hasRealtime,
         MiruBitmaps<BM, IBM> bitmaps,
         MiruPartitionCoord coord) throws Exception {
-        return factory(numberOfChunkStores, useLabIndexes, hasRealtime).allocate(bitmaps, schema, coord, MiruBackingStorage.disk, null);
+        return factory(numberOfChunkStores, useLabIndexes, hasRealtime, 0, new String[0]).allocate(bitmaps, schema, coord, MiruBackingStorage.disk, null);
 
     }
 
@@ -55,9 +55,18 @@ public interface MiruServiceConfig extends Config {
     @IntDefault(10_000)
     int getPartitionRebuildBatchSize();
 
+    @IntDefault(1_000)
+    int getPartitionIndexPipelineBatchSize();
+
+    @LongDefault(10_000_000L)
+    long getPartitionRebuildBulkMaxIds();
+
     @IntDefault(10_000)
     int getPartitionSipBatchSize();
 
+    @LongDefault(64 * 1024 * 1024)
+    long getPartitionRebuildPrefetchMaxBytes();
+
     @LongDefault(1_000_000)
     long getPersistentMergeChitCount();
 
@@ -80,6 +89,15 @@ public interface MiruServiceConfig extends Config {
     @LongDefault(5_000)
     long getPartitionSipMigrateIntervalInMillis();
 
+    @BooleanDefault(false)
+    boolean getPartitionSipNotificationsEnabled();
+
+    @LongDefault(60_000)
+    long getPartitionSipNotifiedMigrateIntervalInMillis();
+
+    @LongDefault(5_000)
+    long getPartitionSipNotificationsTimeoutInMillis();
+
     @LongDefault(30_000)
     long getPartitionBanUnregisteredSchemaMillis();
 
@@ -95,8 +113,17 @@ public interface MiruServiceConfig extends Config {
     @IntDefault(3)
     int getPartitionNumberOfChunkStores();
 
-    @IntDefault(10_000)
-    int getPartitionAuthzCacheSize();
+    @LongDefault(256L * 1024 * 1024)
+    long getAuthzCacheMaxSizeInBytes();
+
+    @IntDefault(16)
+    int getAuthzCacheEvictionSampleSize();
+
+    @LongDefault(256L * 1024 * 1024)
+    long getHotTermCacheMaxSizeInBytes();
+
+    @IntDefault(16)
+    int getHotTermCacheEvictionSampleSize();
 
     @BooleanDefault(true)
     boolean getPartitionDeleteChunkStoreOnClose();
@@ -125,6 +152,27 @@ public interface MiruServiceConfig extends Config {
     @IntDefault(95)
     int getLongTailSolverPercentile();
 
+    @IntDefault(100)
+    int getHedgeSolverWindowSize();
+
+    @IntDefault(95)
+    int getHedgeSolverPercentile();
+
+    @DoubleDefault(4d)
+    double getHedgeSlowReplicaFactor();
+
+    @LongDefault(10)
+    long getHedgeMinAddAnotherSolverAfterNMillis();
+
+    @LongDefault(60 * 60 * 1_000L)
+    long getHedgeReplicaLatencyExpireAfterMillis();
+
+    @BooleanDefault(true)
+    boolean getMetricsPerFieldVerbose();
+
+    @LongDefault(128L * 1024 * 1024)
+    long getPartitionResultCacheMaxSizeInBytes();
+
     @StringDefault("")
     String getReadStreamIdsPropName();
 
@@ -272,6 +320,18 @@ public interface MiruServiceConfig extends Config {
     @StringDefault("")
     String getRealtimeDeliveryEndpoint();
 
+    /**
+     * When set, updates are coalesced across partitions and posted here once per tenant per window as snappy compressed json.
+     */
+    @StringDefault("")
+    String getRealtimeDeliveryBatchEndpoint();
+
+    @LongDefault(100)
+    long getRealtimeDeliveryCoalesceWindowMillis();
+
+    @IntDefault(100_000)
+    int getRealtimeDeliveryMaxPendingPerTenant();
+
     @BooleanDefault(true)
     boolean getRealtimeDelivery();
 
@@ -280,4 +340,19 @@ public interface MiruServiceConfig extends Config {
 
     @StringDefault("")
     String getBackfillVerboseStreamIds();
+
+    @StringDefault("")
+    String getRollupFieldNames();
+
+    @LongDefault(60 * 60 * 1_000L)
+    long getRollupGranularityInMillis();
+
+    @LongDefault(16L * 1024 * 1024)
+    long getRollupMaxSizeInBytesPerPartition();
+
+    @LongDefault(0)
+    long getSharedFilterWindowMillis();
+
+    @IntDefault(1_000)
+    int getSharedFilterMaxEntriesPerPartition();
 }
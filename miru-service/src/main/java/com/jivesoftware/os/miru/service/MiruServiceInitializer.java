@@ -45,9 +45,13 @@ import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmapsProvider;
 import com.jivesoftware.os.miru.plugin.index.MiruActivityInternExtern;
 import com.jivesoftware.os.miru.plugin.index.MiruSipIndexMarshaller;
 import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
+import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResultCache;
 import com.jivesoftware.os.miru.service.index.TimeIdIndex;
+import com.jivesoftware.os.miru.service.index.auth.MiruAuthzBitmapCache;
 import com.jivesoftware.os.miru.service.index.lab.LabTimeIdIndexInitializer;
+import com.jivesoftware.os.miru.service.index.lab.MiruHotTermBitmapCache;
 import com.jivesoftware.os.miru.service.locator.MiruResourceLocator;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import com.jivesoftware.os.miru.service.partition.FreeMergeChits;
 import com.jivesoftware.os.miru.service.partition.LargestFirstMergeChits;
 import com.jivesoftware.os.miru.service.partition.MiruClusterPartitionDirector;
@@ -59,6 +63,8 @@ import com.jivesoftware.os.miru.service.partition.MiruMergeChits;
 import com.jivesoftware.os.miru.service.partition.MiruPartitionAccessor.IndexStrategy;
 import com.jivesoftware.os.miru.service.partition.MiruPartitionHeartbeatHandler;
 import com.jivesoftware.os.miru.service.partition.MiruRemoteQueryablePartitionFactory;
+import com.jivesoftware.os.miru.service.partition.MiruReplicaLatencies;
+import com.jivesoftware.os.miru.service.partition.MiruSipNotificationListener;
 import com.jivesoftware.os.miru.service.partition.MiruSipTrackerFactory;
 import com.jivesoftware.os.miru.service.partition.MiruTenantTopologyFactory;
 import com.jivesoftware.os.miru.service.partition.PartitionErrorTracker;
@@ -99,8 +105,10 @@ public class MiruServiceInitializer {
         ExecutorService transientMergeExecutor,
         ExecutorService streamFactoryExecutor,
         MiruStats miruStats,
+        MiruMetricHandles metricHandles,
         LABStats rebuildLABStats,
         LABStats globalLABStats,
+        MiruHotTermBitmapCache hotTermBitmapCache,
         ScheduledExecutorService scheduledBootstrapExecutor,
         ScheduledExecutorService scheduledRebuildExecutor,
         ScheduledExecutorService scheduledSipMigrateExecutor,
@@ -136,9 +144,20 @@ public class MiruServiceInitializer {
         final ScheduledExecutorService serviceScheduledExecutor = Executors.newScheduledThreadPool(2,
             new NamedThreadFactory(threadGroup, "service"));
 
+        // long-polls the WAL for partitions to sip
+        final ExecutorService sipNotificationsExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory(threadGroup, "sip_notifications"));
+
+        MiruReplicaLatencies replicaLatencies = new MiruReplicaLatencies(
+            config.getHedgeSolverWindowSize(),
+            config.getHedgeSolverPercentile(),
+            config.getHedgeSlowReplicaFactor(),
+            config.getHedgeReplicaLatencyExpireAfterMillis());
+
         MiruHostedPartitionComparison partitionComparison = new MiruHostedPartitionComparison(
             config.getLongTailSolverWindowSize(),
-            config.getLongTailSolverPercentile());
+            config.getLongTailSolverPercentile(),
+            replicaLatencies,
+            System::currentTimeMillis);
 
         ByteBufferFactory byteBufferFactory;
         if (config.getUseOffHeapBuffers()) {
@@ -291,11 +310,13 @@ public class MiruServiceInitializer {
                 .build(),
             sipIndexMarshaller,
             resourceLocator,
-            config.getPartitionAuthzCacheSize(),
+            new MiruAuthzBitmapCache(config.getAuthzCacheMaxSizeInBytes(), config.getAuthzCacheEvictionSampleSize()),
+            hotTermBitmapCache,
             fieldIndexStripingLocksProvider,
             streamStripingLocksProvider,
             authzStripingLocksProvider,
             partitionErrorTracker,
+            metricHandles,
             termInterner,
             objectMapper,
             config.getLabMaxHeapPressureInBytes(),
@@ -305,7 +326,12 @@ public class MiruServiceInitializer {
             config.getUseLabIndexes(),
             config.getRealtimeDelivery(),
             config.getFsyncOnCommit(),
-            config.getTimeIndexVerboseLogging());
+            config.getTimeIndexVerboseLogging(),
+            config.getRollupGranularityInMillis(),
+            config.getRollupFieldNames().isEmpty() ? new String[0] : config.getRollupFieldNames().split(","),
+            config.getRollupMaxSizeInBytesPerPartition(),
+            config.getSharedFilterWindowMillis(),
+            config.getSharedFilterMaxEntriesPerPartition());
 
         MiruPartitionHeartbeatHandler heartbeatHandler = new MiruPartitionHeartbeatHandler(clusterClient, atleastOneThumpThump);
         MiruRebuildDirector rebuildDirector = new MiruRebuildDirector(config.getMaxRebuildActivityCount());
@@ -331,7 +357,12 @@ public class MiruServiceInitializer {
 
         MiruMergeChits persistentMergeChits = new LargestFirstMergeChits("persistent", new AtomicLong(config.getPersistentMergeChitCount()));
         MiruMergeChits transientMergeChits = new FreeMergeChits("transient");
+        long partitionResultCacheMaxSizeInBytes = config.getPartitionResultCacheMaxSizeInBytes();
+        MiruPartitionResultCache resultCache = partitionResultCacheMaxSizeInBytes > 0
+            ? new MiruPartitionResultCache(partitionResultCacheMaxSizeInBytes)
+            : null;
         MiruLocalPartitionFactory<C, S> localPartitionFactory = new MiruLocalPartitionFactory<>(miruStats,
+            metricHandles,
             config,
             contextFactory,
             sipTrackerFactory,
@@ -351,7 +382,8 @@ public class MiruServiceInitializer {
             indexRepairs,
             persistentMergeChits,
             transientMergeChits,
-            partitionErrorTracker);
+            partitionErrorTracker,
+            resultCache);
 
         MiruRemoteQueryablePartitionFactory remotePartitionFactory = new MiruRemoteQueryablePartitionFactory();
 
@@ -370,10 +402,19 @@ public class MiruServiceInitializer {
 
         final MiruClusterPartitionDirector partitionDirector = new MiruClusterPartitionDirector(miruHost, expectedTenants);
 
+        MiruSipNotificationListener sipNotificationListener = new MiruSipNotificationListener(miruHost,
+            walClient,
+            expectedTenants,
+            config.getPartitionSipNotificationsTimeoutInMillis(),
+            config.getPartitionSipMigrateIntervalInMillis());
+
         MiruSolver solver = new MiruLowestLatencySolver(config.getDefaultInitialSolvers(),
             config.getDefaultMaxNumberOfSolvers(),
             config.getDefaultAddAnotherSolverAfterNMillis(),
-            config.getDefaultFailAfterNMillis());
+            config.getDefaultFailAfterNMillis(),
+            config.getHedgeMinAddAnotherSolverAfterNMillis(),
+            replicaLatencies,
+            metricHandles);
 
         final MiruService miruService = new MiruService(
             miruHost,
@@ -395,6 +436,9 @@ public class MiruServiceInitializer {
             public void start() throws Exception {
                 long heartbeatInterval = config.getHeartbeatIntervalInMillis();
                 serviceScheduledExecutor.scheduleWithFixedDelay(partitionDirector::heartbeat, 0, heartbeatInterval, TimeUnit.MILLISECONDS);
+                if (config.getPartitionSipNotificationsEnabled()) {
+                    sipNotificationsExecutor.submit(sipNotificationListener);
+                }
                 leapCache.start("contextCache", config.getLabLeapCacheCleanupIntervalMillis(), throwable -> {
                     LOG.error("Failure in LAB leap cache cleaner", throwable);
                     return false;
@@ -404,6 +448,7 @@ public class MiruServiceInitializer {
             @Override
             public void stop() throws Exception {
                 serviceScheduledExecutor.shutdownNow();
+                sipNotificationsExecutor.shutdownNow();
                 scheduledBootstrapExecutor.shutdownNow();
                 scheduledRebuildExecutor.shutdownNow();
                 scheduledSipMigrateExecutor.shutdownNow();
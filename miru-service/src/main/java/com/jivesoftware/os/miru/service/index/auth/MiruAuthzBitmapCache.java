@@ -0,0 +1,389 @@
+package com.jivesoftware.os.miru.service.index.auth;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+import com.jivesoftware.os.miru.service.index.lab.ReusableByteBufferDataInput;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Composite authz bitmaps for every hosted partition, serialized into direct buffers under a single memory budget. When the
+ * budget is exceeded, the entry that is cheapest to lose among a small sample is evicted, where the value of an entry is its
+ * compose time multiplied by its hit rate, per byte held. A buffer is freed as soon as it leaves the cache and no reader is
+ * still deserializing from it, rather than waiting for the garbage collector to notice it.
+ */
+public class MiruAuthzBitmapCache {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private static final Method CLEANER = cleanerMethod();
+
+    private final long maxSizeInBytes;
+    private final int evictionSampleSize;
+
+    private final ConcurrentMap<Key, Entry> entries = Maps.newConcurrentMap();
+    private final ConcurrentMap<MiruTenantId, TenantSize> tenantSizeInBytes = Maps.newConcurrentMap();
+    private final AtomicLong sizeInBytes = new AtomicLong();
+    private final AtomicLong nextPartitionId = new AtomicLong();
+
+    private final Object evictionLock = new Object();
+    private Iterator<Map.Entry<Key, Entry>> evictionCursor;
+
+    public MiruAuthzBitmapCache(long maxSizeInBytes, int evictionSampleSize) {
+        this.maxSizeInBytes = maxSizeInBytes;
+        this.evictionSampleSize = evictionSampleSize;
+    }
+
+    public PartitionAuthzBitmaps partition(MiruTenantId tenantId) {
+        return new PartitionAuthzBitmaps(tenantId, openTenant(tenantId), nextPartitionId.incrementAndGet());
+    }
+
+    public long sizeInBytes() {
+        return sizeInBytes.get();
+    }
+
+    /**
+     * @return the bytes currently held for each tenant
+     */
+    public Map<MiruTenantId, Long> getTenantOccupancy() {
+        Map<MiruTenantId, Long> occupancy = Maps.newHashMap();
+        for (Map.Entry<MiruTenantId, TenantSize> entry : tenantSizeInBytes.entrySet()) {
+            long size = entry.getValue().sizeInBytes.get();
+            if (size > 0) {
+                occupancy.put(entry.getKey(), size);
+            }
+        }
+        return occupancy;
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            release(removed);
+        }
+    }
+
+    private void release(Entry entry) {
+        dispose(entry);
+        entry.owner.forget(entry);
+    }
+
+    private void dispose(Entry entry) {
+        sizeInBytes.addAndGet(-entry.sizeInBytes);
+        entry.owner.partitionSizeInBytes.addAndGet(-entry.sizeInBytes);
+        entry.owner.tenantSize.add(-entry.sizeInBytes);
+        entry.unref();
+    }
+
+    private TenantSize openTenant(MiruTenantId tenantId) {
+        return tenantSizeInBytes.compute(tenantId, (key, size) -> {
+            if (size == null) {
+                size = new TenantSize(tenantId);
+            }
+            size.partitions++;
+            return size;
+        });
+    }
+
+    private void closeTenant(MiruTenantId tenantId) {
+        tenantSizeInBytes.computeIfPresent(tenantId, (key, size) -> --size.partitions == 0 ? null : size);
+    }
+
+    private static Method cleanerMethod() {
+        try {
+            Method cleaner = ByteBuffer.allocateDirect(1).getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            return cleaner;
+        } catch (Exception e) {
+            LOG.warn("Direct buffers cannot be freed explicitly and will be left to the garbage collector", e);
+            return null;
+        }
+    }
+
+    private static void free(ByteBuffer buffer) {
+        if (CLEANER == null) {
+            return;
+        }
+        try {
+            Object cleaner = CLEANER.invoke(buffer);
+            if (cleaner != null) {
+                Method clean = cleaner.getClass().getMethod("clean");
+                clean.setAccessible(true);
+                clean.invoke(cleaner);
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to free direct buffer", e);
+        }
+    }
+
+    private void evictIfNecessary() {
+        if (sizeInBytes.get() <= maxSizeInBytes) {
+            return;
+        }
+        synchronized (evictionLock) {
+            long now = System.currentTimeMillis();
+            while (sizeInBytes.get() > maxSizeInBytes && !entries.isEmpty()) {
+                Map.Entry<Key, Entry> victim = null;
+                double victimValue = Double.MAX_VALUE;
+                for (int i = 0; i < evictionSampleSize; i++) {
+                    if (evictionCursor == null || !evictionCursor.hasNext()) {
+                        evictionCursor = entries.entrySet().iterator();
+                        if (!evictionCursor.hasNext()) {
+                            break;
+                        }
+                    }
+                    Map.Entry<Key, Entry> candidate = evictionCursor.next();
+                    double value = candidate.getValue().value(now);
+                    if (value < victimValue) {
+                        victim = candidate;
+                        victimValue = value;
+                    }
+                }
+                if (victim == null) {
+                    break;
+                }
+                if (entries.remove(victim.getKey(), victim.getValue())) {
+                    release(victim.getValue());
+                    LOG.inc("authzCache>evict");
+                }
+            }
+            LOG.set(ValueType.COUNT, "authzCache>bytes", sizeInBytes.get());
+        }
+    }
+
+    /**
+     * A single partition's view of the cache. Entries are dropped as soon as any authz they were composed from is written.
+     */
+    public class PartitionAuthzBitmaps {
+
+        private final MiruTenantId tenantId;
+        private final TenantSize tenantSize;
+        private final long partitionId;
+        private final ConcurrentMap<String, Set<VersionedAuthzExpression>> expressionsByAuthz = Maps.newConcurrentMap();
+        private final AtomicLong partitionSizeInBytes = new AtomicLong();
+
+        private PartitionAuthzBitmaps(MiruTenantId tenantId, TenantSize tenantSize, long partitionId) {
+            this.tenantId = tenantId;
+            this.tenantSize = tenantSize;
+            this.partitionId = partitionId;
+        }
+
+        public long sizeInBytes() {
+            return partitionSizeInBytes.get();
+        }
+
+        public <BM extends IBM, IBM> BM get(MiruBitmaps<BM, IBM> bitmaps, VersionedAuthzExpression expression) throws Exception {
+            Entry entry = entries.get(new Key(partitionId, expression));
+            if (entry == null || !entry.retain()) {
+                LOG.inc("authzCache>miss");
+                return null;
+            }
+            try {
+                entry.hits.incrementAndGet();
+                LOG.inc("authzCache>hit");
+                ReusableByteBufferDataInput in = new ReusableByteBufferDataInput();
+                in.setBuffer(entry.buffer.duplicate());
+                return bitmaps.deserialize(in);
+            } finally {
+                entry.unref();
+            }
+        }
+
+        public <BM extends IBM, IBM> void put(MiruBitmaps<BM, IBM> bitmaps,
+            VersionedAuthzExpression expression,
+            IBM bitmap,
+            long composeNanos) throws Exception {
+
+            ByteArrayDataOutput out = ByteStreams.newDataOutput((int) bitmaps.serializedSizeInBytes(bitmap));
+            bitmaps.serialize(bitmap, out);
+            byte[] bytes = out.toByteArray();
+            long entrySizeInBytes = bytes.length + expression.sizeInBytes();
+            if (entrySizeInBytes > maxSizeInBytes) {
+                LOG.inc("authzCache>tooLarge");
+                return;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes);
+            buffer.flip();
+
+            // register before publishing, so an invalidation either sees the entry or leaves it unregistered for us to catch below
+            for (VersionedAuthz version : expression.getVersions()) {
+                Set<VersionedAuthzExpression> expressions = expressionsByAuthz.get(version.authz);
+                if (expressions == null) {
+                    expressionsByAuthz.putIfAbsent(version.authz, Collections.newSetFromMap(Maps.newConcurrentMap()));
+                    expressions = expressionsByAuthz.get(version.authz);
+                }
+                expressions.add(expression);
+            }
+
+            Key key = new Key(partitionId, expression);
+            Entry entry = new Entry(this, key, buffer, entrySizeInBytes, composeNanos, System.currentTimeMillis());
+            sizeInBytes.addAndGet(entrySizeInBytes);
+            partitionSizeInBytes.addAndGet(entrySizeInBytes);
+            tenantSize.add(entrySizeInBytes);
+            Entry existing = entries.put(key, entry);
+            if (existing != null) {
+                // same expression, so its registration is ours now
+                dispose(existing);
+            }
+
+            if (!isRegistered(expression) && entries.remove(key, entry)) {
+                dispose(entry);
+                LOG.inc("authzCache>invalidatedDuringPut");
+            }
+            evictIfNecessary();
+        }
+
+        private boolean isRegistered(VersionedAuthzExpression expression) {
+            for (VersionedAuthz version : expression.getVersions()) {
+                Set<VersionedAuthzExpression> expressions = expressionsByAuthz.get(version.authz);
+                if (expressions == null || !expressions.contains(expression)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public void invalidate(String authz) {
+            Set<VersionedAuthzExpression> expressions = expressionsByAuthz.remove(authz);
+            if (expressions != null) {
+                for (VersionedAuthzExpression expression : expressions) {
+                    remove(new Key(partitionId, expression));
+                }
+            }
+        }
+
+        public void clear() {
+            for (Set<VersionedAuthzExpression> expressions : expressionsByAuthz.values()) {
+                for (VersionedAuthzExpression expression : expressions) {
+                    remove(new Key(partitionId, expression));
+                }
+            }
+            expressionsByAuthz.clear();
+        }
+
+        /**
+         * Frees everything held for the partition, and the tenant's occupancy once its last partition closes.
+         */
+        public void close() {
+            clear();
+            closeTenant(tenantId);
+        }
+
+        private void forget(Entry entry) {
+            for (VersionedAuthz version : entry.key.expression.getVersions()) {
+                Set<VersionedAuthzExpression> expressions = expressionsByAuthz.get(version.authz);
+                if (expressions != null) {
+                    expressions.remove(entry.key.expression);
+                }
+            }
+        }
+    }
+
+    private static class TenantSize {
+
+        private final String metricName;
+        private final AtomicLong sizeInBytes = new AtomicLong();
+        private int partitions; // guarded by tenantSizeInBytes compute
+
+        private TenantSize(MiruTenantId tenantId) {
+            this.metricName = "authzCache>tenant>" + tenantId + ">bytes";
+        }
+
+        private void add(long delta) {
+            LOG.set(ValueType.COUNT, metricName, sizeInBytes.addAndGet(delta));
+        }
+    }
+
+    private static class Key {
+
+        private final long partitionId;
+        private final VersionedAuthzExpression expression;
+
+        private Key(long partitionId, VersionedAuthzExpression expression) {
+            this.partitionId = partitionId;
+            this.expression = expression;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return partitionId == key.partitionId && expression.equals(key.expression);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (partitionId ^ (partitionId >>> 32)) + expression.hashCode();
+        }
+    }
+
+    private static class Entry {
+
+        private final PartitionAuthzBitmaps owner;
+        private final Key key;
+        private final ByteBuffer buffer;
+        private final long sizeInBytes;
+        private final long composeNanos;
+        private final long createTimestamp;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicInteger refs = new AtomicInteger(1); // the cache's own reference
+
+        private Entry(PartitionAuthzBitmaps owner, Key key, ByteBuffer buffer, long sizeInBytes, long composeNanos, long createTimestamp) {
+            this.owner = owner;
+            this.key = key;
+            this.buffer = buffer;
+            this.sizeInBytes = sizeInBytes;
+            this.composeNanos = composeNanos;
+            this.createTimestamp = createTimestamp;
+        }
+
+        /**
+         * @return false if the buffer has already been freed
+         */
+        private boolean retain() {
+            while (true) {
+                int count = refs.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (refs.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void unref() {
+            if (refs.decrementAndGet() == 0) {
+                free(buffer);
+            }
+        }
+
+        /**
+         * @return compose time times hits per second, per byte
+         */
+        private double value(long now) {
+            double hitsPerSecond = (hits.get() + 1) * 1_000d / Math.max(now - createTimestamp, 1_000L);
+            return composeNanos * hitsPerSecond / sizeInBytes;
+        }
+    }
+}
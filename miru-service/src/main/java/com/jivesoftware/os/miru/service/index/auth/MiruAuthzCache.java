@@ -1,29 +1,28 @@
 package com.jivesoftware.os.miru.service.index.auth;
 
-import com.google.common.cache.Cache;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.jivesoftware.os.miru.api.query.filter.MiruAuthzExpression;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.index.MiruActivityInternExtern;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * Versions each authz so that composite bitmaps are cached against the exact versions they were composed from. The bitmaps
+ * themselves live in the shared {@link MiruAuthzBitmapCache}.
  */
 public class MiruAuthzCache<BM extends IBM, IBM> {
 
     private final MiruBitmaps<BM, IBM> bitmaps;
-    private final Cache<VersionedAuthzExpression, BM> cache;
+    private final MiruAuthzBitmapCache.PartitionAuthzBitmaps cache;
     private final ConcurrentMap<String, VersionableAuthz> versionables = Maps.newConcurrentMap();
     private final MiruActivityInternExtern interner;
     private final MiruAuthzUtils<BM, IBM> utils;
 
     public MiruAuthzCache(MiruBitmaps<BM, IBM> bitmaps,
-        Cache<VersionedAuthzExpression, BM> cache,
+        MiruAuthzBitmapCache.PartitionAuthzBitmaps cache,
         MiruActivityInternExtern interner,
         MiruAuthzUtils<BM, IBM> utils) {
         this.bitmaps = bitmaps;
@@ -33,10 +32,7 @@ public class MiruAuthzCache<BM extends IBM, IBM> {
     }
 
     public long sizeInBytes() {
-        long sizeInBytes = 0;
-        for (Map.Entry<VersionedAuthzExpression, BM> entry : cache.asMap().entrySet()) {
-            sizeInBytes += entry.getKey().sizeInBytes() + bitmaps.sizeInBytes(entry.getValue());
-        }
+        long sizeInBytes = cache.sizeInBytes();
         for (String key : versionables.keySet()) {
             sizeInBytes += key.length() * 2;
         }
@@ -46,20 +42,22 @@ public class MiruAuthzCache<BM extends IBM, IBM> {
 
     public void increment(String authz) {
         currentVersion(authz).increment();
+        cache.invalidate(authz);
     }
 
     public BM getOrCompose(MiruAuthzExpression authzExpression, MiruAuthzUtils.IndexRetriever<IBM> indexRetriever) throws Exception {
         VersionedAuthzExpression key = new VersionedAuthzExpression(currentVersions(authzExpression));
-        BM got = cache.getIfPresent(key);
+        BM got = cache.get(bitmaps, key);
         if (got == null) {
+            long start = System.nanoTime();
             got = utils.getCompositeAuthz(authzExpression, indexRetriever);
-            cache.put(key, got);
+            cache.put(bitmaps, key, got, System.nanoTime() - start);
         }
         return got;
     }
 
-    public void clear() {
-        cache.invalidateAll();
+    public void close() {
+        cache.close();
         versionables.clear();
     }
 
@@ -13,6 +13,10 @@ public class VersionedAuthzExpression {
         this.versions = versions;
     }
 
+    public Set<VersionedAuthz> getVersions() {
+        return versions;
+    }
+
     public long sizeInBytes() {
         long size = 0;
         for (VersionedAuthz version : versions) {
@@ -12,6 +12,7 @@ import com.jivesoftware.os.miru.api.base.MiruTermId;
 import com.jivesoftware.os.miru.plugin.index.MiruActivityAndId;
 import com.jivesoftware.os.miru.plugin.index.MiruActivityIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruInternalActivity;
+import com.jivesoftware.os.miru.plugin.index.MiruTermOrdinals;
 import com.jivesoftware.os.miru.plugin.index.TimeVersionRealtime;
 import com.jivesoftware.os.miru.service.index.MiruFilerProvider;
 import com.jivesoftware.os.miru.service.stream.IntTermIdsKeyValueMarshaller;
@@ -242,6 +243,21 @@ public class MiruFilerActivityIndex implements MiruActivityIndex {
         return null;
     }
 
+    @Override
+    public int[][] getAllOrdinals(String name,
+        int[] indexes,
+        int offset,
+        int length,
+        MiruFieldDefinition fieldDefinition,
+        StackBuffer stackBuffer) throws Exception {
+        return null;
+    }
+
+    @Override
+    public MiruTermOrdinals getTermOrdinals() {
+        return null;
+    }
+
     @Override
     public int lastId(StackBuffer stackBuffer) {
         return capacity(stackBuffer) - 1;
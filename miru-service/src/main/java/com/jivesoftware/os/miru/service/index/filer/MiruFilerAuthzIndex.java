@@ -11,18 +11,21 @@ import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndex;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
 import com.jivesoftware.os.miru.service.index.auth.MiruAuthzCache;
 import com.jivesoftware.os.miru.service.index.auth.MiruAuthzUtils;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 
 /** @author jonathan */
 public class MiruFilerAuthzIndex<BM extends IBM, IBM> implements MiruAuthzIndex<BM, IBM> {
 
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
+    private final MiruMetricHandles metricHandles;
     private final KeyedFilerStore<Long, Void> keyedStore;
     private final MiruAuthzCache<BM, IBM> cache;
     private final StripingLocksProvider<String> stripingLocksProvider;
 
     public MiruFilerAuthzIndex(MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
+        MiruMetricHandles metricHandles,
         KeyedFilerStore<Long, Void> keyedStore,
         MiruAuthzCache<BM, IBM> cache,
         StripingLocksProvider<String> stripingLocksProvider)
@@ -30,6 +33,7 @@ public class MiruFilerAuthzIndex<BM extends IBM, IBM> implements MiruAuthzIndex<
 
         this.bitmaps = bitmaps;
         this.trackError = trackError;
+        this.metricHandles = metricHandles;
         this.keyedStore = keyedStore;
         this.cache = cache;
         this.stripingLocksProvider = stripingLocksProvider;
@@ -38,7 +42,7 @@ public class MiruFilerAuthzIndex<BM extends IBM, IBM> implements MiruAuthzIndex<
 
     @Override
     public MiruInvertedIndex<BM, IBM> getAuthz(String authz) throws Exception {
-        return new MiruFilerInvertedIndex<>(bitmaps, trackError, "authz", -3, MiruAuthzUtils.key(authz), keyedStore, stripingLocksProvider.lock(authz, 0));
+        return new MiruFilerInvertedIndex<>(bitmaps, trackError, metricHandles, "authz", -3, MiruAuthzUtils.key(authz), keyedStore, stripingLocksProvider.lock(authz, 0));
     }
 
     @Override
@@ -65,7 +69,7 @@ public class MiruFilerAuthzIndex<BM extends IBM, IBM> implements MiruAuthzIndex<
     @Override
     public void close() {
         keyedStore.close();
-        cache.clear();
+        cache.close();
     }
 
 }
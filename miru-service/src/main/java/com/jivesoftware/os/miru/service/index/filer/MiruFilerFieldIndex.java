@@ -17,6 +17,7 @@ import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndex;
 import com.jivesoftware.os.miru.plugin.index.MultiIndexTx;
 import com.jivesoftware.os.miru.plugin.index.TermIdStream;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.io.IOException;
@@ -33,6 +34,7 @@ public class MiruFilerFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<
 
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
+    private final MiruMetricHandles metricHandles;
     private final KeyedFilerStore<Long, Void>[] indexes;
     private final KeyedFilerStore<Integer, MapContext>[] cardinalities;
     // We could lock on both field + termId for improved hash/striping, but we favor just termId to reduce object creation
@@ -41,12 +43,14 @@ public class MiruFilerFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<
 
     public MiruFilerFieldIndex(MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
+        MiruMetricHandles metricHandles,
         KeyedFilerStore<Long, Void>[] indexes,
         KeyedFilerStore<Integer, MapContext>[] cardinalities,
         StripingLocksProvider<MiruTermId> stripingLocksProvider,
         MiruInterner<MiruTermId> termInterner) throws Exception {
         this.bitmaps = bitmaps;
         this.trackError = trackError;
+        this.metricHandles = metricHandles;
         this.indexes = indexes;
         this.cardinalities = cardinalities;
         this.stripingLocksProvider = stripingLocksProvider;
@@ -106,7 +110,7 @@ public class MiruFilerFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<
     }
 
     private MiruInvertedIndex<BM, IBM> getIndex(String name, int fieldId, MiruTermId termId) throws Exception {
-        return new MiruFilerInvertedIndex<>(bitmaps, trackError, name, fieldId, termId.getBytes(), indexes[fieldId], stripingLocksProvider.lock(termId, 0));
+        return new MiruFilerInvertedIndex<>(bitmaps, trackError, metricHandles, name, fieldId, termId.getBytes(), indexes[fieldId], stripingLocksProvider.lock(termId, 0));
     }
 
     @Override
@@ -9,22 +9,26 @@ import com.jivesoftware.os.miru.plugin.index.MiruInboxIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndexAppender;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 
 /** @author jonathan */
 public class MiruFilerInboxIndex<BM extends IBM, IBM> implements MiruInboxIndex<BM, IBM> {
 
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
+    private final MiruMetricHandles metricHandles;
     private final KeyedFilerStore<Long, Void> store;
     private final StripingLocksProvider<MiruStreamId> stripingLocksProvider;
 
     public MiruFilerInboxIndex(MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
+        MiruMetricHandles metricHandles,
         KeyedFilerStore<Long, Void> store,
         StripingLocksProvider<MiruStreamId> stripingLocksProvider)
         throws Exception {
         this.bitmaps = bitmaps;
         this.trackError = trackError;
+        this.metricHandles = metricHandles;
         this.store = store;
         this.stripingLocksProvider = stripingLocksProvider;
     }
@@ -38,6 +42,7 @@ public class MiruFilerInboxIndex<BM extends IBM, IBM> implements MiruInboxIndex<
     public MiruInvertedIndex<BM, IBM> getInbox(MiruStreamId streamId) {
         return new MiruFilerInvertedIndex<>(bitmaps,
             trackError,
+            metricHandles,
             "inbox",
             -2,
             streamId.getBytes(),
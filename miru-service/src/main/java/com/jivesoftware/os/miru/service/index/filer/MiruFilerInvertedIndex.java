@@ -15,6 +15,8 @@ import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
 import com.jivesoftware.os.miru.plugin.index.IndexTx;
 import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndex;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles.IndexMetrics;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.io.DataInput;
@@ -34,8 +36,7 @@ public class MiruFilerInvertedIndex<BM extends IBM, IBM> implements MiruInverted
 
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
-    private final String name;
-    private final int fieldId;
+    private final IndexMetrics metrics;
     private final byte[] indexKeyBytes;
     private final KeyedFilerStore<Long, Void> keyedFilerStore;
     private final Object mutationLock;
@@ -43,6 +44,7 @@ public class MiruFilerInvertedIndex<BM extends IBM, IBM> implements MiruInverted
 
     public MiruFilerInvertedIndex(MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
+        MiruMetricHandles metricHandles,
         String name,
         int fieldId,
         byte[] indexKeyBytes,
@@ -50,8 +52,7 @@ public class MiruFilerInvertedIndex<BM extends IBM, IBM> implements MiruInverted
         Object mutationLock) {
         this.bitmaps = bitmaps;
         this.trackError = trackError;
-        this.name = name;
-        this.fieldId = fieldId;
+        this.metrics = metricHandles.index(name, fieldId);
         this.indexKeyBytes = Preconditions.checkNotNull(indexKeyBytes);
         this.keyedFilerStore = Preconditions.checkNotNull(keyedFilerStore);
         this.mutationLock = mutationLock;
@@ -86,12 +87,7 @@ public class MiruFilerInvertedIndex<BM extends IBM, IBM> implements MiruInverted
             lastId = -1;
         }
 
-        LOG.inc("count>getIndex>total");
-        LOG.inc("count>getIndex>" + name + ">total");
-        LOG.inc("count>getIndex>" + name + ">" + fieldId);
-        LOG.inc("bytes>getIndex>total", bytes.longValue());
-        LOG.inc("bytes>getIndex>" + name + ">total", bytes.longValue());
-        LOG.inc("bytes>getIndex>" + name + ">" + fieldId, bytes.longValue());
+        metrics.getIndex.record(LOG, bytes.longValue());
     }
 
     @Override
@@ -115,12 +111,7 @@ public class MiruFilerInvertedIndex<BM extends IBM, IBM> implements MiruInverted
                 throw new IOException(e);
             }
         }, stackBuffer);
-        LOG.inc("count>txIndex>total");
-        LOG.inc("count>txIndex>" + name + ">total");
-        LOG.inc("count>txIndex>" + name + ">" + fieldId);
-        LOG.inc("bytes>txIndex>total", bytes.longValue());
-        LOG.inc("bytes>txIndex>" + name + ">total", bytes.longValue());
-        LOG.inc("bytes>txIndex>" + name + ">" + fieldId, bytes.longValue());
+        metrics.txIndex.record(LOG, bytes.longValue());
         return result;
     }
 
@@ -184,12 +175,7 @@ public class MiruFilerInvertedIndex<BM extends IBM, IBM> implements MiruInverted
     private void setIndex(IBM index, int setLastId, StackBuffer stackBuffer) throws Exception {
         SizeAndBytes sizeAndBytes = getSizeAndBytes(bitmaps, index, setLastId);
         keyedFilerStore.writeNewReplace(indexKeyBytes, sizeAndBytes.filerSizeInBytes, new SetTransaction(sizeAndBytes.bytes), stackBuffer);
-        LOG.inc("count>set>total");
-        LOG.inc("count>set>" + name + ">total");
-        LOG.inc("count>set>" + name + ">" + fieldId);
-        LOG.inc("bytes>set>total", sizeAndBytes.bytes.length);
-        LOG.inc("bytes>set>" + name + ">total", sizeAndBytes.bytes.length);
-        LOG.inc("bytes>set>" + name + ">" + fieldId, sizeAndBytes.bytes.length);
+        metrics.set.record(LOG, sizeAndBytes.bytes.length);
     }
 
     @Override
@@ -246,12 +232,7 @@ public class MiruFilerInvertedIndex<BM extends IBM, IBM> implements MiruInverted
                     }
                 }, stackBuffer);
             }
-            LOG.inc("count>lastId>total");
-            LOG.inc("count>lastId>" + name + ">total");
-            LOG.inc("count>lastId>" + name + ">" + fieldId);
-            LOG.inc("bytes>lastId>total", bytes.longValue());
-            LOG.inc("bytes>lastId>" + name + ">total", bytes.longValue());
-            LOG.inc("bytes>lastId>" + name + ">" + fieldId, bytes.longValue());
+            metrics.lastId.record(LOG, bytes.longValue());
         }
         return lastId;
     }
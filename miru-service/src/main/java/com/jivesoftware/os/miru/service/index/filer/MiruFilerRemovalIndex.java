@@ -4,15 +4,17 @@ import com.jivesoftware.os.filer.io.api.KeyedFilerStore;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.index.MiruRemovalIndex;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 
 public class MiruFilerRemovalIndex<BM extends IBM, IBM> extends MiruFilerInvertedIndex<BM, IBM> implements MiruRemovalIndex<BM, IBM> {
 
     public MiruFilerRemovalIndex(MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
+        MiruMetricHandles metricHandles,
         KeyedFilerStore<Long, Void> keyedFilerStore,
         byte[] keyBytes,
         Object mutationLock) {
 
-        super(bitmaps, trackError, "removal", -4, keyBytes, keyedFilerStore, mutationLock);
+        super(bitmaps, trackError, metricHandles, "removal", -4, keyBytes, keyedFilerStore, mutationLock);
     }
 }
@@ -0,0 +1,108 @@
+package com.jivesoftware.os.miru.service.index.lab;
+
+import com.jivesoftware.os.miru.api.base.MiruTermId;
+import java.io.IOException;
+import org.xerial.snappy.Snappy;
+
+/**
+ * A sealed block of consecutive activity ids for a single stored field. Each slot holds the same bytes as the row layout
+ * (an unsigned short term count followed by length prefixed terms), and a count of zero marks an absent value.
+ * The concatenated slots are snappy compressed as a unit. Slot offsets are only walked as far as the highest slot read.
+ */
+class LabActivityColumnBlock {
+
+    static final int BLOCK_BITS = 8;
+    static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    private static final byte[] ABSENT = new byte[2];
+
+    private final byte[] bytes;
+    private final int[] offsets = new int[BLOCK_SIZE + 1];
+    private int walked;
+
+    private LabActivityColumnBlock(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    static int blockIndex(int id) {
+        return id >>> BLOCK_BITS;
+    }
+
+    static int slot(int id) {
+        return id & BLOCK_MASK;
+    }
+
+    static byte[] encode(byte[][] slots) throws IOException {
+        int size = 0;
+        for (byte[] slot : slots) {
+            size += (slot != null) ? slot.length : ABSENT.length;
+        }
+        byte[] raw = new byte[size];
+        int o = 0;
+        for (byte[] slot : slots) {
+            byte[] value = (slot != null) ? slot : ABSENT;
+            System.arraycopy(value, 0, raw, o, value.length);
+            o += value.length;
+        }
+        return Snappy.compress(raw);
+    }
+
+    static LabActivityColumnBlock decode(byte[] compressed) throws IOException {
+        return new LabActivityColumnBlock(Snappy.uncompress(compressed));
+    }
+
+    private int offset(int slot) {
+        while (walked < slot) {
+            int o = offsets[walked];
+            int count = readUnsignedShort(bytes, o);
+            o += 2;
+            for (int j = 0; j < count; j++) {
+                o += 2 + readUnsignedShort(bytes, o);
+            }
+            walked++;
+            offsets[walked] = o;
+        }
+        return offsets[slot];
+    }
+
+    /**
+     * @return the term ids in the slot, or null if the slot is absent
+     */
+    MiruTermId[] get(int slot) {
+        int o = offset(slot);
+        int count = readUnsignedShort(bytes, o);
+        if (count == 0) {
+            return null;
+        }
+        o += 2;
+        MiruTermId[] termIds = new MiruTermId[count];
+        for (int i = 0; i < count; i++) {
+            int length = readUnsignedShort(bytes, o);
+            o += 2;
+            byte[] termId = new byte[length];
+            System.arraycopy(bytes, o, termId, 0, length);
+            o += length;
+            termIds[i] = new MiruTermId(termId);
+        }
+        return termIds;
+    }
+
+    /**
+     * @return the raw bytes for the slot, or null if the slot is absent
+     */
+    byte[] getRaw(int slot) {
+        int o = offset(slot);
+        if (readUnsignedShort(bytes, o) == 0) {
+            return null;
+        }
+        int length = offset(slot + 1) - o;
+        byte[] raw = new byte[length];
+        System.arraycopy(bytes, o, raw, 0, length);
+        return raw;
+    }
+
+    private static int readUnsignedShort(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+}
@@ -1,7 +1,9 @@
 package com.jivesoftware.os.miru.service.index.lab;
 
+import com.google.common.collect.Lists;
 import com.google.common.primitives.Bytes;
 import com.jivesoftware.os.filer.io.FilerIO;
+import com.jivesoftware.os.filer.io.StripingLocksProvider;
 import com.jivesoftware.os.filer.io.api.StackBuffer;
 import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
 import com.jivesoftware.os.lab.api.ValueIndex;
@@ -15,11 +17,16 @@ import com.jivesoftware.os.miru.api.base.MiruTermId;
 import com.jivesoftware.os.miru.plugin.index.MiruActivityAndId;
 import com.jivesoftware.os.miru.plugin.index.MiruActivityIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruInternalActivity;
+import com.jivesoftware.os.miru.plugin.index.MiruTermOrdinals;
 import com.jivesoftware.os.miru.plugin.index.TimeVersionRealtime;
 import com.jivesoftware.os.miru.service.stream.IntTermIdsKeyValueMarshaller;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.lang.mutable.MutableLong;
 
@@ -32,29 +39,61 @@ public class LabActivityIndex implements MiruActivityIndex {
     private final OrderIdProvider idProvider;
     private final boolean monotime;
     private final boolean realtime;
+    private final boolean columnar;
     private final ValueIndex<byte[]> timeAndVersionIndex;
     private final AtomicInteger indexSize = new AtomicInteger(Integer.MIN_VALUE);
     private final IntTermIdsKeyValueMarshaller intTermIdsKeyValueMarshaller;
     private final ValueIndex<byte[]> metaIndex;
     private final byte[] metaKey;
     private final ValueIndex<byte[]>[] termStorage;
+    private final LabTermOrdinals termOrdinals;
+    private final ValueIndex<byte[]> ordinalStorage;
+    private final StripingLocksProvider<Long> columnLocks = new StripingLocksProvider<>(64);
 
     public LabActivityIndex(OrderIdProvider idProvider,
         boolean monotime,
         boolean realtime,
+        boolean columnar,
         ValueIndex<byte[]> timeAndVersionIndex,
         IntTermIdsKeyValueMarshaller intTermIdsKeyValueMarshaller,
         ValueIndex<byte[]> metaIndex,
         byte[] metaKey,
         ValueIndex<byte[]>[] termStorage) {
+        this(idProvider,
+            monotime,
+            realtime,
+            columnar,
+            timeAndVersionIndex,
+            intTermIdsKeyValueMarshaller,
+            metaIndex,
+            metaKey,
+            termStorage,
+            null,
+            null);
+    }
+
+    public LabActivityIndex(OrderIdProvider idProvider,
+        boolean monotime,
+        boolean realtime,
+        boolean columnar,
+        ValueIndex<byte[]> timeAndVersionIndex,
+        IntTermIdsKeyValueMarshaller intTermIdsKeyValueMarshaller,
+        ValueIndex<byte[]> metaIndex,
+        byte[] metaKey,
+        ValueIndex<byte[]>[] termStorage,
+        LabTermOrdinals termOrdinals,
+        ValueIndex<byte[]> ordinalStorage) {
         this.idProvider = idProvider;
         this.monotime = monotime;
         this.realtime = realtime;
+        this.columnar = columnar;
         this.timeAndVersionIndex = timeAndVersionIndex;
         this.intTermIdsKeyValueMarshaller = intTermIdsKeyValueMarshaller;
         this.metaIndex = metaIndex;
         this.metaKey = metaKey;
         this.termStorage = termStorage;
+        this.termOrdinals = termOrdinals;
+        this.ordinalStorage = ordinalStorage;
     }
 
     private ValueIndex<byte[]> getTermIndex(int fieldId) {
@@ -164,6 +203,13 @@ public class LabActivityIndex implements MiruActivityIndex {
             return null;
         }
 
+        if (columnar) {
+            MiruTermId[] termIds = getColumnar(fieldDefinition.fieldId, index);
+            LOG.inc("count>getTerms>total");
+            LOG.inc("count>getTerms>" + name);
+            return termIds;
+        }
+
         int fieldId = fieldDefinition.fieldId;
         MiruTermId[][] termIds = { null };
         byte[] concatKey = Bytes.concat(FilerIO.intBytes(fieldId), FilerIO.intBytes(index));
@@ -196,6 +242,9 @@ public class LabActivityIndex implements MiruActivityIndex {
         if (!fieldDefinition.type.hasFeature(Feature.stored)) {
             return null;
         }
+        if (columnar) {
+            return getAllColumnar(name, indexes, offset, length, fieldDefinition);
+        }
 
         int fieldId = fieldDefinition.fieldId;
         MiruTermId[][] termIds = new MiruTermId[length][];
@@ -229,6 +278,188 @@ public class LabActivityIndex implements MiruActivityIndex {
         return termIds;
     }
 
+    /*
+     * Columnar layout: the ids of a block that is still filling are appended as tail rows keyed by block and slot, so a write
+     * never reads back or rewrites what is already stored. The write that covers a block's last slot seals it into a single
+     * compressed row keyed by block, and tombstones the tail rows. Tail rows written after the seal (late chunks or repairs)
+     * carry a newer version and override the sealed slot. A block's tail rows sort directly after its sealed row, so one range
+     * scan per block finds both.
+     */
+
+    private static byte[] columnBlockKey(byte[] fieldBytes, int block) {
+        return Bytes.concat(fieldBytes, FilerIO.intBytes(block));
+    }
+
+    private static byte[] columnTailKey(byte[] blockKey, int slot) {
+        byte[] key = Arrays.copyOf(blockKey, blockKey.length + 1);
+        key[blockKey.length] = (byte) slot;
+        return key;
+    }
+
+    private Object columnLock(int fieldId, int block) {
+        return columnLocks.lock(((long) fieldId << 32) | block, 0);
+    }
+
+    private MiruTermId[] getColumnar(int fieldId, int index) throws Exception {
+        int slot = LabActivityColumnBlock.slot(index);
+        byte[] blockKey = columnBlockKey(FilerIO.intBytes(fieldId), LabActivityColumnBlock.blockIndex(index));
+        byte[] tailKey = columnTailKey(blockKey, slot);
+        byte[][] payloads = new byte[2][];
+        long[] versions = new long[2];
+        getTermIndex(fieldId).get(
+            keyStream -> keyStream.key(0, blockKey, 0, blockKey.length) && keyStream.key(1, tailKey, 0, tailKey.length),
+            (ki, key, timestamp, tombstoned, version, payload) -> {
+                if (payload != null && !tombstoned) {
+                    payloads[ki] = payload.copy();
+                    versions[ki] = version;
+                }
+                return true;
+            }, true);
+        if (payloads[1] != null && (payloads[0] == null || versions[1] > versions[0])) {
+            return intTermIdsKeyValueMarshaller.bytesValue(null, payloads[1], 0);
+        } else if (payloads[0] != null) {
+            return LabActivityColumnBlock.decode(payloads[0]).get(slot);
+        }
+        return null;
+    }
+
+    private MiruTermId[][] getAllColumnar(String name,
+        int[] indexes,
+        int offset,
+        int length,
+        MiruFieldDefinition fieldDefinition) throws Exception {
+
+        int fieldId = fieldDefinition.fieldId;
+        MiruTermId[][] termIds = new MiruTermId[length][];
+
+        // sort by id so each block is scanned and decoded once, remembering the position each id was asked for
+        long[] idAndPositions = new long[length];
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            int index = indexes[offset + i];
+            if (index >= 0) {
+                idAndPositions[count] = ((long) index << 32) | i;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return termIds;
+        }
+        Arrays.sort(idAndPositions, 0, count);
+
+        ValueIndex<byte[]> termIndex = getTermIndex(fieldId);
+        byte[] fieldBytes = FilerIO.intBytes(fieldId);
+        boolean[] requested = new boolean[LabActivityColumnBlock.BLOCK_SIZE];
+        byte[][] tails = new byte[LabActivityColumnBlock.BLOCK_SIZE][];
+        long[] tailVersions = new long[LabActivityColumnBlock.BLOCK_SIZE];
+        byte[][] sealed = new byte[1][];
+        long[] sealedVersion = new long[1];
+        int numBlocks = 0;
+        int from = 0;
+        while (from < count) {
+            int block = LabActivityColumnBlock.blockIndex((int) (idAndPositions[from] >>> 32));
+            int to = from;
+            while (to < count && LabActivityColumnBlock.blockIndex((int) (idAndPositions[to] >>> 32)) == block) {
+                requested[LabActivityColumnBlock.slot((int) (idAndPositions[to] >>> 32))] = true;
+                to++;
+            }
+
+            byte[] blockKey = columnBlockKey(fieldBytes, block);
+            sealed[0] = null;
+            Arrays.fill(tails, null);
+            termIndex.rangeScan(blockKey, columnBlockKey(fieldBytes, block + 1),
+                (index, key, timestamp, tombstoned, version, payload) -> {
+                    if (payload != null && !tombstoned) {
+                        byte[] keyBytes = key.copy();
+                        if (keyBytes.length == blockKey.length) {
+                            sealed[0] = payload.copy();
+                            sealedVersion[0] = version;
+                        } else {
+                            int slot = keyBytes[blockKey.length] & 0xFF;
+                            if (requested[slot]) {
+                                tails[slot] = payload.copy();
+                                tailVersions[slot] = version;
+                            }
+                        }
+                    }
+                    return true;
+                }, true);
+
+            LabActivityColumnBlock sealedBlock = null;
+            for (int i = from; i < to; i++) {
+                int slot = LabActivityColumnBlock.slot((int) (idAndPositions[i] >>> 32));
+                int position = (int) idAndPositions[i];
+                if (tails[slot] != null && (sealed[0] == null || tailVersions[slot] > sealedVersion[0])) {
+                    termIds[position] = intTermIdsKeyValueMarshaller.bytesValue(null, tails[slot], 0);
+                } else if (sealed[0] != null) {
+                    if (sealedBlock == null) {
+                        sealedBlock = LabActivityColumnBlock.decode(sealed[0]);
+                    }
+                    termIds[position] = sealedBlock.get(slot);
+                }
+                requested[slot] = false;
+            }
+            numBlocks++;
+            from = to;
+        }
+
+        LOG.inc("count>getAllTerms>total");
+        LOG.inc("count>getAllTerms>count", count);
+        LOG.inc("count>getAllTerms>blocks", numBlocks);
+        LOG.inc("count>getAllTerms>" + name);
+        return termIds;
+    }
+
+    @Override
+    public int[][] getAllOrdinals(String name,
+        int[] indexes,
+        int offset,
+        int length,
+        MiruFieldDefinition fieldDefinition,
+        StackBuffer stackBuffer) throws Exception {
+
+        if (termOrdinals == null || !fieldDefinition.type.hasFeature(Feature.stored)) {
+            return null;
+        }
+
+        int fieldId = fieldDefinition.fieldId;
+        int[][] ordinals = new int[length][];
+        byte[] fieldBytes = FilerIO.intBytes(fieldId);
+        ordinalStorage.get(
+            keyStream -> {
+                for (int i = 0; i < length; i++) {
+                    int index = indexes[offset + i];
+                    if (index >= 0) {
+                        byte[] key = Bytes.concat(fieldBytes, FilerIO.intBytes(index));
+                        if (!keyStream.key(i, key, 0, key.length)) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            },
+            (ki, key, timestamp, tombstoned, version, payload) -> {
+                if (payload != null && !tombstoned) {
+                    int[] got = new int[payload.length / 4];
+                    for (int i = 0; i < got.length; i++) {
+                        got[i] = payload.getInt(i * 4);
+                    }
+                    ordinals[ki] = got;
+                }
+                return true;
+            }, true);
+
+        LOG.inc("count>getAllOrdinals>total");
+        LOG.inc("count>getAllOrdinals>count", length);
+        LOG.inc("count>getAllOrdinals>" + name);
+        return ordinals;
+    }
+
+    @Override
+    public MiruTermOrdinals getTermOrdinals() {
+        return termOrdinals;
+    }
+
     @Override
     public MiruIBA[] getProp(String name, int index, int propId, StackBuffer stackBuffer) {
         throw new UnsupportedOperationException("not yet");
@@ -247,7 +478,7 @@ public class LabActivityIndex implements MiruActivityIndex {
     @Override
     public void setAndReady(MiruSchema schema, Collection<MiruActivityAndId<MiruInternalActivity>> activityAndIds, StackBuffer stackBuffer) throws Exception {
         if (!activityAndIds.isEmpty()) {
-            int lastIndex = setInternal(schema, "setAndReady", activityAndIds);
+            int lastIndex = setInternal(schema, "setAndReady", activityAndIds, stackBuffer);
             ready(lastIndex, stackBuffer);
         }
     }
@@ -257,13 +488,14 @@ public class LabActivityIndex implements MiruActivityIndex {
         Collection<MiruActivityAndId<MiruInternalActivity>> activityAndIds,
         StackBuffer stackBuffer) throws Exception {
         if (!activityAndIds.isEmpty()) {
-            setInternal(schema, "set", activityAndIds);
+            setInternal(schema, "set", activityAndIds, stackBuffer);
         }
     }
 
     private int setInternal(MiruSchema schema,
         String name,
-        Collection<MiruActivityAndId<MiruInternalActivity>> activityAndIds) throws Exception {
+        Collection<MiruActivityAndId<MiruInternalActivity>> activityAndIds,
+        StackBuffer stackBuffer) throws Exception {
 
         int lastIndex = -1;
         @SuppressWarnings("unchecked")
@@ -307,7 +539,9 @@ public class LabActivityIndex implements MiruActivityIndex {
         for (int i = 0; i < schema.fieldCount(); i++) {
             int fieldId = i;
             MiruFieldDefinition fieldDefinition = schema.getFieldDefinition(fieldId);
-            if (fieldDefinition.type.hasFeature(Feature.stored)) {
+            if (fieldDefinition.type.hasFeature(Feature.stored) && columnar) {
+                setColumnar(fieldId, activityAndIdsArray, entryBuffer, keyBuffer, bytesWrite);
+            } else if (fieldDefinition.type.hasFeature(Feature.stored)) {
                 getTermIndex(fieldId).append(stream -> {
                     byte[] fieldBytes = FilerIO.intBytes(fieldId);
                     for (int j = 0; j < activityAndIdsArray.length; j++) {
@@ -323,6 +557,9 @@ public class LabActivityIndex implements MiruActivityIndex {
                     return true;
                 }, true, entryBuffer, keyBuffer);
             }
+            if (fieldDefinition.type.hasFeature(Feature.stored) && termOrdinals != null) {
+                setOrdinals(fieldId, activityAndIdsArray, timestamp, version, entryBuffer, keyBuffer, bytesWrite, stackBuffer);
+            }
         }
         LOG.inc("count>set>total");
         LOG.inc("count>set>" + name);
@@ -331,6 +568,187 @@ public class LabActivityIndex implements MiruActivityIndex {
         return lastIndex;
     }
 
+    private void setOrdinals(int fieldId,
+        MiruActivityAndId<MiruInternalActivity>[] activityAndIdsArray,
+        long timestamp,
+        long version,
+        BolBuffer entryBuffer,
+        BolBuffer keyBuffer,
+        MutableLong bytesWrite,
+        StackBuffer stackBuffer) throws Exception {
+
+        int count = 0;
+        for (MiruActivityAndId<MiruInternalActivity> activityAndId : activityAndIdsArray) {
+            MiruTermId[] termIds = activityAndId.activity.fieldsValues[fieldId];
+            if (termIds != null) {
+                count += termIds.length;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+
+        MiruTermId[] allTermIds = new MiruTermId[count];
+        int o = 0;
+        for (MiruActivityAndId<MiruInternalActivity> activityAndId : activityAndIdsArray) {
+            MiruTermId[] termIds = activityAndId.activity.fieldsValues[fieldId];
+            if (termIds != null) {
+                System.arraycopy(termIds, 0, allTermIds, o, termIds.length);
+                o += termIds.length;
+            }
+        }
+        int[] allOrdinals = termOrdinals.getOrAssign(fieldId, allTermIds, stackBuffer);
+
+        byte[] fieldBytes = FilerIO.intBytes(fieldId);
+        ordinalStorage.append(stream -> {
+            int offset = 0;
+            for (MiruActivityAndId<MiruInternalActivity> activityAndId : activityAndIdsArray) {
+                MiruTermId[] termIds = activityAndId.activity.fieldsValues[fieldId];
+                if (termIds != null && termIds.length > 0) {
+                    byte[] key = Bytes.concat(fieldBytes, FilerIO.intBytes(activityAndId.id));
+                    byte[] payload = new byte[termIds.length * 4];
+                    for (int i = 0; i < termIds.length; i++) {
+                        UIO.intBytes(allOrdinals[offset + i], payload, i * 4);
+                    }
+                    offset += termIds.length;
+                    stream.stream(-1, key, timestamp, false, version, payload);
+                    bytesWrite.add(key.length + payload.length);
+                }
+            }
+            return true;
+        }, true, entryBuffer, keyBuffer);
+    }
+
+    private void setColumnar(int fieldId,
+        MiruActivityAndId<MiruInternalActivity>[] activityAndIdsArray,
+        BolBuffer entryBuffer,
+        BolBuffer keyBuffer,
+        MutableLong bytesWrite) throws Exception {
+
+        Map<Integer, byte[][]> blockSlots = new TreeMap<>();
+        int maxId = -1;
+        for (MiruActivityAndId<MiruInternalActivity> activityAndId : activityAndIdsArray) {
+            int block = LabActivityColumnBlock.blockIndex(activityAndId.id);
+            int slot = LabActivityColumnBlock.slot(activityAndId.id);
+            maxId = Math.max(maxId, activityAndId.id);
+            MiruTermId[] termIds = activityAndId.activity.fieldsValues[fieldId];
+            if (termIds != null && termIds.length > 0) {
+                byte[][] slots = blockSlots.computeIfAbsent(block, key -> new byte[LabActivityColumnBlock.BLOCK_SIZE][]);
+                slots[slot] = intTermIdsKeyValueMarshaller.valueBytes(termIds);
+            } else if (slot == LabActivityColumnBlock.BLOCK_MASK) {
+                // a sparse field still has to fold its earlier tail rows once the block is full
+                blockSlots.computeIfAbsent(block, key -> new byte[LabActivityColumnBlock.BLOCK_SIZE][]);
+            }
+        }
+        if (blockSlots.isEmpty()) {
+            return;
+        }
+
+        ValueIndex<byte[]> termIndex = getTermIndex(fieldId);
+        byte[] fieldBytes = FilerIO.intBytes(fieldId);
+        int numSealed = 0;
+        for (Map.Entry<Integer, byte[][]> entry : blockSlots.entrySet()) {
+            int block = entry.getKey();
+            byte[][] slots = entry.getValue();
+            byte[] blockKey = columnBlockKey(fieldBytes, block);
+            synchronized (columnLock(fieldId, block)) {
+                // versions are taken under the block lock so a tail row always outranks a seal that could not have seen it
+                long timestamp = System.currentTimeMillis();
+                long version = idProvider.nextId();
+                if (maxId >= ((block + 1) << LabActivityColumnBlock.BLOCK_BITS) - 1) {
+                    // the batch reached the block's last activity id, whether or not that activity has the field
+                    if (sealColumnBlock(termIndex, fieldBytes, block, blockKey, slots, timestamp, version, entryBuffer, keyBuffer, bytesWrite)) {
+                        numSealed++;
+                    }
+                } else {
+                    termIndex.append(stream -> {
+                        for (int slot = 0; slot < slots.length; slot++) {
+                            if (slots[slot] != null) {
+                                byte[] key = columnTailKey(blockKey, slot);
+                                stream.stream(-1, key, timestamp, false, version, slots[slot]);
+                                bytesWrite.add(key.length + slots[slot].length);
+                            }
+                        }
+                        return true;
+                    }, true, entryBuffer, keyBuffer);
+                }
+            }
+        }
+        LOG.inc("count>set>columnar>blocks", blockSlots.size());
+        LOG.inc("count>set>columnar>sealed", numSealed);
+    }
+
+    private boolean sealColumnBlock(ValueIndex<byte[]> termIndex,
+        byte[] fieldBytes,
+        int block,
+        byte[] blockKey,
+        byte[][] slots,
+        long timestamp,
+        long version,
+        BolBuffer entryBuffer,
+        BolBuffer keyBuffer,
+        MutableLong bytesWrite) throws Exception {
+
+        byte[][] sealed = new byte[1][];
+        long[] sealedVersion = new long[1];
+        byte[][] tails = new byte[LabActivityColumnBlock.BLOCK_SIZE][];
+        long[] tailVersions = new long[LabActivityColumnBlock.BLOCK_SIZE];
+        List<byte[]> tailKeys = Lists.newArrayList();
+        termIndex.rangeScan(blockKey, columnBlockKey(fieldBytes, block + 1),
+            (index, key, ts, tombstoned, v, payload) -> {
+                if (payload != null && !tombstoned) {
+                    byte[] keyBytes = key.copy();
+                    if (keyBytes.length == blockKey.length) {
+                        sealed[0] = payload.copy();
+                        sealedVersion[0] = v;
+                    } else {
+                        int slot = keyBytes[blockKey.length] & 0xFF;
+                        tails[slot] = payload.copy();
+                        tailVersions[slot] = v;
+                        tailKeys.add(keyBytes);
+                    }
+                }
+                return true;
+            }, true);
+
+        if (tailKeys.isEmpty()) {
+            boolean written = false;
+            for (byte[] slot : slots) {
+                if (slot != null) {
+                    written = true;
+                    break;
+                }
+            }
+            if (!written) {
+                return false;
+            }
+        }
+
+        LabActivityColumnBlock existing = (sealed[0] != null) ? LabActivityColumnBlock.decode(sealed[0]) : null;
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] == null) {
+                if (tails[slot] != null && (existing == null || tailVersions[slot] > sealedVersion[0])) {
+                    slots[slot] = tails[slot];
+                } else if (existing != null) {
+                    slots[slot] = existing.getRaw(slot);
+                }
+            }
+        }
+
+        termIndex.append(stream -> {
+            byte[] payload = LabActivityColumnBlock.encode(slots);
+            stream.stream(-1, blockKey, timestamp, false, version, payload);
+            bytesWrite.add(blockKey.length + payload.length);
+            for (byte[] tailKey : tailKeys) {
+                stream.stream(-1, tailKey, timestamp, true, version, null);
+                bytesWrite.add(tailKey.length);
+            }
+            return true;
+        }, true, entryBuffer, keyBuffer);
+        LOG.inc("count>set>columnar>tombstoned", tailKeys.size());
+        return true;
+    }
+
     @Override
     public void ready(int index, StackBuffer stackBuffer) throws Exception {
         LOG.trace("Check if index {} should extend capacity {}", index, indexSize);
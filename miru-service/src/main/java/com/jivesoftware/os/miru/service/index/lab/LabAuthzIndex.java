@@ -14,6 +14,7 @@ import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndex;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
 import com.jivesoftware.os.miru.service.index.auth.MiruAuthzCache;
 import com.jivesoftware.os.miru.service.index.auth.MiruAuthzUtils;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 
 /** @author jonathan */
 public class LabAuthzIndex<BM extends IBM, IBM> implements MiruAuthzIndex<BM, IBM> {
@@ -21,6 +22,7 @@ public class LabAuthzIndex<BM extends IBM, IBM> implements MiruAuthzIndex<BM, IB
     private final OrderIdProvider idProvider;
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
+    private final MiruMetricHandles metricHandles;
     private final byte[] prefix;
     private final boolean atomized;
     private final ValueIndex<byte[]>[] keyedStores;
@@ -30,6 +32,7 @@ public class LabAuthzIndex<BM extends IBM, IBM> implements MiruAuthzIndex<BM, IB
     public LabAuthzIndex(OrderIdProvider idProvider,
         MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
+        MiruMetricHandles metricHandles,
         byte[] prefix,
         boolean atomized,
         ValueIndex<byte[]>[] keyedStores,
@@ -40,6 +43,7 @@ public class LabAuthzIndex<BM extends IBM, IBM> implements MiruAuthzIndex<BM, IB
         this.idProvider = idProvider;
         this.bitmaps = bitmaps;
         this.trackError = trackError;
+        this.metricHandles = metricHandles;
         this.prefix = prefix;
         this.atomized = atomized;
         this.keyedStores = keyedStores;
@@ -56,6 +60,7 @@ public class LabAuthzIndex<BM extends IBM, IBM> implements MiruAuthzIndex<BM, IB
         return new LabInvertedIndex<>(idProvider,
             bitmaps,
             trackError,
+            metricHandles,
             "authz",
             -3,
             atomized,
@@ -99,7 +104,7 @@ public class LabAuthzIndex<BM extends IBM, IBM> implements MiruAuthzIndex<BM, IB
 
     @Override
     public void close() throws Exception {
-        cache.clear();
+        cache.close();
     }
 
 }
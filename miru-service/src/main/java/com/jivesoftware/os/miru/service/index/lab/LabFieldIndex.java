@@ -23,6 +23,7 @@ import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
 import com.jivesoftware.os.miru.plugin.index.MultiIndexTx;
 import com.jivesoftware.os.miru.plugin.index.TermIdStream;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.util.Arrays;
@@ -39,6 +40,7 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
     private final OrderIdProvider idProvider;
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
+    private final MiruMetricHandles metricHandles;
     private final boolean atomized;
     private final byte[] bitmapPrefix;
     private final ValueIndex<byte[]>[] bitmapIndexes;
@@ -50,10 +52,12 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
     // We could lock on both field + termId for improved hash/striping, but we favor just termId to reduce object creation
     private final StripingLocksProvider<MiruTermId> stripingLocksProvider;
     private final MiruInterner<MiruTermId> termInterner;
+    private final MiruHotTermBitmapCache.PartitionHotTermBitmaps hotTermBitmaps;
 
     public LabFieldIndex(OrderIdProvider idProvider,
         MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
+        MiruMetricHandles metricHandles,
         boolean atomized,
         byte[] bitmapPrefix,
         ValueIndex<byte[]>[] bitmapIndexes,
@@ -62,11 +66,13 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
         byte[] cardinalityPrefix,
         ValueIndex<byte[]>[] cardinalities,
         StripingLocksProvider<MiruTermId> stripingLocksProvider,
-        MiruInterner<MiruTermId> termInterner) throws Exception {
+        MiruInterner<MiruTermId> termInterner,
+        MiruHotTermBitmapCache.PartitionHotTermBitmaps hotTermBitmaps) throws Exception {
 
         this.idProvider = idProvider;
         this.bitmaps = bitmaps;
         this.trackError = trackError;
+        this.metricHandles = metricHandles;
         this.atomized = atomized;
         this.bitmapPrefix = bitmapPrefix;
         this.bitmapIndexes = bitmapIndexes;
@@ -77,6 +83,7 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
         this.cardinalities = cardinalities;
         this.stripingLocksProvider = stripingLocksProvider;
         this.termInterner = termInterner;
+        this.hotTermBitmaps = atomized ? hotTermBitmaps : null;
     }
 
     private ValueIndex<byte[]> getBitmapIndex(int fieldId) {
@@ -194,6 +201,7 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
         return new LabInvertedIndex<>(idProvider,
             bitmaps,
             trackError,
+            metricHandles,
             name,
             fieldId,
             atomized,
@@ -201,7 +209,8 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
             getBitmapIndex(fieldId),
             termIndexKey(fieldIdBytes, termId.getBytes()),
             getTermIndex(fieldId),
-            stripingLocksProvider.lock(termId, 0));
+            stripingLocksProvider.lock(termId, 0),
+            hotTermBitmaps);
     }
 
     @Override
@@ -213,12 +222,16 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
         if (atomized) {
             for (int i = 0; i < termIds.length; i++) {
                 if (termIds[i] != null) {
-                    byte[] termBytes = termIds[i].getBytes();
+                    byte[] from = bitmapIndexKey(fieldIdBytes, termIds[i].getBytes());
                     BitmapAndLastId<BM> bitmapAndLastId = new BitmapAndLastId<>();
+                    if (hotTermBitmaps != null && hotTermBitmaps.get(bitmaps, from, bitmapAndLastId)) {
+                        results[i] = bitmapAndLastId;
+                        continue;
+                    }
+                    long stamp = hotTermBitmaps != null ? hotTermBitmaps.stamp(from) : -1;
                     bitmaps.deserializeAtomized(
                         bitmapAndLastId,
                         atomStream -> {
-                            byte[] from = bitmapIndexKey(fieldIdBytes, termBytes);
                             byte[] to = LABUtils.prefixUpperExclusive(from);
                             return bitmapIndex.rangeScan(from, to,
                                 (index1, key, timestamp, tombstoned, version, payload) -> {
@@ -232,6 +245,9 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
                                 },
                                 true);
                         });
+                    if (hotTermBitmaps != null) {
+                        hotTermBitmaps.put(bitmaps, from, stamp, bitmapAndLastId);
+                    }
                     results[i] = bitmapAndLastId.isSet() ? bitmapAndLastId : null;
                 }
             }
@@ -356,6 +372,13 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
                     lastId[0] = -1;
                     byte[] termBytes = termIds[i].getBytes();
                     byte[] from = bitmapIndexKey(fieldIdBytes, termBytes);
+                    if (hotTermBitmaps != null && hotTermBitmaps.get(bitmaps, from, container)) {
+                        if (considerIfLastIdGreaterThanN < 0 || container.getLastId() > considerIfLastIdGreaterThanN) {
+                            indexTx.tx(i, container.getLastId(), container.getBitmap(), null, -1, stackBuffer);
+                        }
+                        continue;
+                    }
+                    long stamp = hotTermBitmaps != null ? hotTermBitmaps.stamp(from) : -1;
                     byte[] to = LABUtils.prefixUpperExclusive(from);
 
                     bitmaps.deserializeAtomized(
@@ -381,6 +404,10 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
                         });
 
                     if (container.isSet() && (considerIfLastIdGreaterThanN < 0 || lastId[0] > considerIfLastIdGreaterThanN)) {
+                        if (hotTermBitmaps != null) {
+                            // only a complete scan is cached, and a scan that passed the last id check was never halted
+                            hotTermBitmaps.put(bitmaps, from, stamp, container);
+                        }
                         indexTx.tx(i, container.getLastId(), container.getBitmap(), null, -1, stackBuffer);
                     }
                 }
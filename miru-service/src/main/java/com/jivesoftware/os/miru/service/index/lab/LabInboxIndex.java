@@ -12,6 +12,7 @@ import com.jivesoftware.os.miru.plugin.index.MiruInboxIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndexAppender;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 
 /** @author jonathan */
 public class LabInboxIndex<BM extends IBM, IBM> implements MiruInboxIndex<BM, IBM> {
@@ -19,6 +20,7 @@ public class LabInboxIndex<BM extends IBM, IBM> implements MiruInboxIndex<BM, IB
     private final OrderIdProvider idProvider;
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
+    private final MiruMetricHandles metricHandles;
     private final byte[] prefix;
     private final boolean atomized;
     private final ValueIndex<byte[]>[] stores;
@@ -27,6 +29,7 @@ public class LabInboxIndex<BM extends IBM, IBM> implements MiruInboxIndex<BM, IB
     public LabInboxIndex(OrderIdProvider idProvider,
         MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
+        MiruMetricHandles metricHandles,
         byte[] prefix,
         boolean atomized,
         ValueIndex<byte[]>[] stores,
@@ -36,6 +39,7 @@ public class LabInboxIndex<BM extends IBM, IBM> implements MiruInboxIndex<BM, IB
         this.idProvider = idProvider;
         this.bitmaps = bitmaps;
         this.trackError = trackError;
+        this.metricHandles = metricHandles;
         this.prefix = prefix;
         this.atomized = atomized;
         this.stores = stores;
@@ -56,6 +60,7 @@ public class LabInboxIndex<BM extends IBM, IBM> implements MiruInboxIndex<BM, IB
         return new LabInvertedIndex<>(idProvider,
             bitmaps,
             trackError,
+            metricHandles,
             "inbox",
             -2,
             atomized,
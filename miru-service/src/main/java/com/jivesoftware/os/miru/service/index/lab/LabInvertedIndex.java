@@ -15,6 +15,8 @@ import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
 import com.jivesoftware.os.miru.plugin.index.IndexTx;
 import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndex;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles.IndexMetrics;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import gnu.trove.set.TIntSet;
@@ -37,19 +39,20 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
     private final OrderIdProvider idProvider;
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
-    private final String name;
-    private final int fieldId;
+    private final IndexMetrics metrics;
     private final boolean atomized;
     private final byte[] bitmapKeyBytes;
     private final ValueIndex<byte[]> bitmapIndex;
     private final byte[] termKeyBytes;
     private final ValueIndex<byte[]> termIndex;
     private final Object mutationLock;
+    private final MiruHotTermBitmapCache.PartitionHotTermBitmaps hotTermBitmaps;
     private volatile int lastId = Integer.MIN_VALUE;
 
     public LabInvertedIndex(OrderIdProvider idProvider,
         MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
+        MiruMetricHandles metricHandles,
         String name,
         int fieldId,
         boolean atomized,
@@ -58,30 +61,58 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
         byte[] termKeyBytes,
         ValueIndex<byte[]> termIndex,
         Object mutationLock) {
+        this(idProvider, bitmaps, trackError, metricHandles, name, fieldId, atomized, bitmapKeyBytes, bitmapIndex, termKeyBytes, termIndex, mutationLock, null);
+    }
+
+    /**
+     * @param hotTermBitmaps the partition's hot term cache, consulted for whole bitmap reads of an atomized index, or null
+     */
+    public LabInvertedIndex(OrderIdProvider idProvider,
+        MiruBitmaps<BM, IBM> bitmaps,
+        TrackError trackError,
+        MiruMetricHandles metricHandles,
+        String name,
+        int fieldId,
+        boolean atomized,
+        byte[] bitmapKeyBytes,
+        ValueIndex<byte[]> bitmapIndex,
+        byte[] termKeyBytes,
+        ValueIndex<byte[]> termIndex,
+        Object mutationLock,
+        MiruHotTermBitmapCache.PartitionHotTermBitmaps hotTermBitmaps) {
 
         this.idProvider = idProvider;
         this.bitmaps = bitmaps;
         this.trackError = trackError;
-        this.name = name;
-        this.fieldId = fieldId;
+        this.metrics = metricHandles.index(name, fieldId);
         this.atomized = atomized;
         this.bitmapKeyBytes = Preconditions.checkNotNull(bitmapKeyBytes);
         this.bitmapIndex = Preconditions.checkNotNull(bitmapIndex);
         this.termKeyBytes = termKeyBytes;
         this.termIndex = termIndex;
         this.mutationLock = mutationLock;
+        this.hotTermBitmaps = atomized ? hotTermBitmaps : null;
     }
 
     @Override
     public void getIndex(BitmapAndLastId<BM> container, StackBuffer stackBuffer) throws Exception {
-        MutableLong bytes = new MutableLong();
-        getIndexInternal(null, container, bytes);
-        LOG.inc("count>getIndex>total");
-        LOG.inc("count>getIndex>" + name + ">total");
-        LOG.inc("count>getIndex>" + name + ">" + fieldId);
-        LOG.inc("bytes>getIndex>total", bytes.longValue());
-        LOG.inc("bytes>getIndex>" + name + ">total", bytes.longValue());
-        LOG.inc("bytes>getIndex>" + name + ">" + fieldId, bytes.longValue());
+        if (hotTermBitmaps != null) {
+            if (hotTermBitmaps.get(bitmaps, bitmapKeyBytes, container)) {
+                if (lastId == Integer.MIN_VALUE) {
+                    lastId = container.getLastId();
+                }
+                return;
+            }
+            long stamp = hotTermBitmaps.stamp(bitmapKeyBytes);
+            MutableLong bytes = new MutableLong();
+            getIndexInternal(null, container, bytes);
+            metrics.getIndex.record(LOG, bytes.longValue());
+            hotTermBitmaps.put(bitmaps, bitmapKeyBytes, stamp, container);
+        } else {
+            MutableLong bytes = new MutableLong();
+            getIndexInternal(null, container, bytes);
+            metrics.getIndex.record(LOG, bytes.longValue());
+        }
     }
 
     private void getIndexInternal(int[] keys, BitmapAndLastId<BM> container, MutableLong bytes) throws Exception {
@@ -164,7 +195,15 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
     public <R> R txIndex(IndexTx<R, IBM> tx, StackBuffer stackBuffer) throws Exception {
         MutableLong bytes = new MutableLong();
         R result;
-        if (atomized) {
+        if (hotTermBitmaps != null) {
+            BitmapAndLastId<BM> container = new BitmapAndLastId<>();
+            if (!hotTermBitmaps.get(bitmaps, bitmapKeyBytes, container)) {
+                long stamp = hotTermBitmaps.stamp(bitmapKeyBytes);
+                getIndexInternal(null, container, bytes);
+                hotTermBitmaps.put(bitmaps, bitmapKeyBytes, stamp, container);
+            }
+            result = tx.tx(container.getBitmap(), null, -1, stackBuffer);
+        } else if (atomized) {
             BitmapAndLastId<BM> container = new BitmapAndLastId<>();
             ReusableByteBufferDataInput in = new ReusableByteBufferDataInput();
             bitmaps.deserializeAtomized(
@@ -218,12 +257,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
             result = resultHolder[0];
         }
 
-        LOG.inc("count>txIndex>total");
-        LOG.inc("count>txIndex>" + name + ">total");
-        LOG.inc("count>txIndex>" + name + ">" + fieldId);
-        LOG.inc("bytes>txIndex>total", bytes.longValue());
-        LOG.inc("bytes>txIndex>" + name + ">total", bytes.longValue());
-        LOG.inc("bytes>txIndex>" + name + ">" + fieldId, bytes.longValue());
+        metrics.txIndex.record(LOG, bytes.longValue());
         return result;
     }
 
@@ -296,12 +330,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
         BitmapAndLastId<BM> index = new BitmapAndLastId<>();
         getIndexInternal(keys, index, bytes);
         BM bitmap = index.isSet() ? index.getBitmap() : bitmaps.create();
-        LOG.inc("count>getOrCreateIndex>total");
-        LOG.inc("count>getOrCreateIndex>" + name + ">total");
-        LOG.inc("count>getOrCreateIndex>" + name + ">" + fieldId);
-        LOG.inc("bytes>getOrCreateIndex>total", bytes.longValue());
-        LOG.inc("bytes>getOrCreateIndex>" + name + ">total", bytes.longValue());
-        LOG.inc("bytes>getOrCreateIndex>" + name + ">" + fieldId, bytes.longValue());
+        metrics.getOrCreateIndex.record(LOG, bytes.longValue());
         return bitmap;
     }
 
@@ -378,6 +407,9 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
             new BolBuffer(),
             new BolBuffer());
 
+        if (hotTermBitmaps != null) {
+            hotTermBitmaps.invalidate(bitmapKeyBytes);
+        }
         lastId = bitmaps.lastSetBit(index);
 
         int bytesWritten = 0;
@@ -386,12 +418,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
                 bytesWritten += bytes[i].length;
             }
         }
-        LOG.inc("count>set>total");
-        LOG.inc("count>set>" + name + ">total");
-        LOG.inc("count>set>" + name + ">" + fieldId);
-        LOG.inc("bytes>set>total", bytesWritten);
-        LOG.inc("bytes>set>" + name + ">total", bytesWritten);
-        LOG.inc("bytes>set>" + name + ">" + fieldId, bytesWritten);
+        metrics.set.record(LOG, bytesWritten);
         if (atomized) {
             LOG.inc("atomized>set>calls");
             LOG.inc("atomized>set>atoms", keys == null ? 0 : keys.length);
@@ -487,12 +514,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
                 }
                 lastId = id[0];
             }
-            LOG.inc("count>lastId>total");
-            LOG.inc("count>lastId>" + name + ">total");
-            LOG.inc("count>lastId>" + name + ">" + fieldId);
-            LOG.inc("bytes>lastId>total", bytes.longValue());
-            LOG.inc("bytes>lastId>" + name + ">total", bytes.longValue());
-            LOG.inc("bytes>lastId>" + name + ">" + fieldId, bytes.longValue());
+            metrics.lastId.record(LOG, bytes.longValue());
         }
         return lastId;
     }
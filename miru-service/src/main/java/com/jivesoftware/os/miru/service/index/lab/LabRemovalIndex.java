@@ -5,12 +5,14 @@ import com.jivesoftware.os.lab.api.ValueIndex;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.index.MiruRemovalIndex;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 
 public class LabRemovalIndex<BM extends IBM, IBM> extends LabInvertedIndex<BM, IBM> implements MiruRemovalIndex<BM, IBM> {
 
     public LabRemovalIndex(OrderIdProvider idProvider,
         MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
+        MiruMetricHandles metricHandles,
         boolean atomized,
         ValueIndex<byte[]> valueIndex,
         byte[] keyBytes,
@@ -19,6 +21,7 @@ public class LabRemovalIndex<BM extends IBM, IBM> extends LabInvertedIndex<BM, I
         super(idProvider,
             bitmaps,
             trackError,
+            metricHandles,
             "removal",
             -4,
             atomized,
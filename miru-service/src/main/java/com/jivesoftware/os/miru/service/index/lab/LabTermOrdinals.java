@@ -0,0 +1,201 @@
+package com.jivesoftware.os.miru.service.index.lab;
+
+import com.jivesoftware.os.filer.io.FilerIO;
+import com.jivesoftware.os.filer.io.api.StackBuffer;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
+import com.jivesoftware.os.lab.api.ValueIndex;
+import com.jivesoftware.os.lab.io.BolBuffer;
+import com.jivesoftware.os.lab.io.api.UIO;
+import com.jivesoftware.os.miru.api.base.MiruTermId;
+import com.jivesoftware.os.miru.plugin.index.MiruTermOrdinals;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps three key spaces in a single value index: term to ordinal and ordinal to term for each field, plus the next
+ * ordinal to assign for each field. Known terms are looked up without locking; assignment of new terms is serialized per field
+ * stripe so that a term is only ever given one ordinal.
+ */
+public class LabTermOrdinals implements MiruTermOrdinals {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private static final byte TERM_TO_ORDINAL = 0;
+    private static final byte ORDINAL_TO_TERM = 1;
+    private static final byte NEXT_ORDINAL = 2;
+
+    private final OrderIdProvider idProvider;
+    private final ValueIndex<byte[]> ordinalIndex;
+    private final Object[] locks;
+    private final Map<Integer, int[]> nextOrdinals = new ConcurrentHashMap<>();
+
+    public LabTermOrdinals(OrderIdProvider idProvider, ValueIndex<byte[]> ordinalIndex, int numLocks) {
+        this.idProvider = idProvider;
+        this.ordinalIndex = ordinalIndex;
+        this.locks = new Object[numLocks];
+        for (int i = 0; i < numLocks; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private static byte[] termKey(int fieldId, byte[] termBytes) {
+        byte[] key = new byte[1 + 4 + termBytes.length];
+        key[0] = TERM_TO_ORDINAL;
+        UIO.intBytes(fieldId, key, 1);
+        System.arraycopy(termBytes, 0, key, 5, termBytes.length);
+        return key;
+    }
+
+    private static byte[] ordinalKey(int fieldId, int ordinal) {
+        byte[] key = new byte[1 + 4 + 4];
+        key[0] = ORDINAL_TO_TERM;
+        UIO.intBytes(fieldId, key, 1);
+        UIO.intBytes(ordinal, key, 5);
+        return key;
+    }
+
+    private static byte[] nextOrdinalKey(int fieldId) {
+        byte[] key = new byte[1 + 4];
+        key[0] = NEXT_ORDINAL;
+        UIO.intBytes(fieldId, key, 1);
+        return key;
+    }
+
+    @Override
+    public int[] getOrAssign(int fieldId, MiruTermId[] termIds, StackBuffer stackBuffer) throws Exception {
+        // once a field's vocabulary settles nearly every term is already known, so look up without the lock first
+        int[] ordinals = getOrdinals(fieldId, termIds, stackBuffer);
+        int missing = 0;
+        for (int ordinal : ordinals) {
+            if (ordinal == -1) {
+                missing++;
+            }
+        }
+        if (missing == 0) {
+            return ordinals;
+        }
+
+        synchronized (locks[Math.abs(fieldId % locks.length)]) {
+            // another writer may have assigned some of the missing terms while we were unlocked
+            int[] missingIndexes = new int[missing];
+            MiruTermId[] missingTermIds = new MiruTermId[missing];
+            for (int i = 0, m = 0; i < ordinals.length; i++) {
+                if (ordinals[i] == -1) {
+                    missingIndexes[m] = i;
+                    missingTermIds[m] = termIds[i];
+                    m++;
+                }
+            }
+            int[] missingOrdinals = getOrdinals(fieldId, missingTermIds, stackBuffer);
+
+            Map<MiruTermId, Integer> assigned = null;
+            for (int m = 0; m < missing; m++) {
+                int i = missingIndexes[m];
+                if (missingOrdinals[m] != -1) {
+                    ordinals[i] = missingOrdinals[m];
+                } else {
+                    if (assigned == null) {
+                        assigned = new HashMap<>();
+                    }
+                    Integer ordinal = assigned.get(termIds[i]);
+                    if (ordinal == null) {
+                        ordinal = nextOrdinal(fieldId) + assigned.size();
+                        assigned.put(termIds[i], ordinal);
+                    }
+                    ordinals[i] = ordinal;
+                }
+            }
+
+            if (assigned != null) {
+                Map<MiruTermId, Integer> append = assigned;
+                int next = nextOrdinal(fieldId) + assigned.size();
+                long timestamp = System.currentTimeMillis();
+                long version = idProvider.nextId();
+                ordinalIndex.append(stream -> {
+                    for (Map.Entry<MiruTermId, Integer> entry : append.entrySet()) {
+                        byte[] termBytes = entry.getKey().getBytes();
+                        stream.stream(-1, termKey(fieldId, termBytes), timestamp, false, version, FilerIO.intBytes(entry.getValue()));
+                        stream.stream(-1, ordinalKey(fieldId, entry.getValue()), timestamp, false, version, termBytes);
+                    }
+                    stream.stream(-1, nextOrdinalKey(fieldId), timestamp, false, version, FilerIO.intBytes(next));
+                    return true;
+                }, true, new BolBuffer(), new BolBuffer());
+                nextOrdinals.get(fieldId)[0] = next;
+                LOG.inc("termOrdinals>assigned", assigned.size());
+            }
+            return ordinals;
+        }
+    }
+
+    private int nextOrdinal(int fieldId) throws Exception {
+        int[] next = nextOrdinals.get(fieldId);
+        if (next == null) {
+            next = new int[1];
+            byte[] key = nextOrdinalKey(fieldId);
+            int[] got = next;
+            ordinalIndex.get(keyStream -> keyStream.key(0, key, 0, key.length),
+                (index, key1, timestamp, tombstoned, version, payload) -> {
+                    if (payload != null && !tombstoned) {
+                        got[0] = payload.getInt(0);
+                    }
+                    return false;
+                }, true);
+            nextOrdinals.put(fieldId, next);
+        }
+        return next[0];
+    }
+
+    @Override
+    public int[] getOrdinals(int fieldId, MiruTermId[] termIds, StackBuffer stackBuffer) throws Exception {
+        int[] ordinals = new int[termIds.length];
+        Arrays.fill(ordinals, -1);
+        ordinalIndex.get(
+            keyStream -> {
+                for (int i = 0; i < termIds.length; i++) {
+                    byte[] key = termKey(fieldId, termIds[i].getBytes());
+                    if (!keyStream.key(i, key, 0, key.length)) {
+                        return false;
+                    }
+                }
+                return true;
+            },
+            (index, key, timestamp, tombstoned, version, payload) -> {
+                if (payload != null && !tombstoned) {
+                    ordinals[index] = payload.getInt(0);
+                }
+                return true;
+            }, true);
+        LOG.inc("termOrdinals>getOrdinals", termIds.length);
+        return ordinals;
+    }
+
+    @Override
+    public MiruTermId[] getTermIds(int fieldId, int[] ordinals, int offset, int length, StackBuffer stackBuffer) throws Exception {
+        MiruTermId[] termIds = new MiruTermId[length];
+        ordinalIndex.get(
+            keyStream -> {
+                for (int i = 0; i < length; i++) {
+                    int ordinal = ordinals[offset + i];
+                    if (ordinal >= 0) {
+                        byte[] key = ordinalKey(fieldId, ordinal);
+                        if (!keyStream.key(i, key, 0, key.length)) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            },
+            (index, key, timestamp, tombstoned, version, payload) -> {
+                if (payload != null && !tombstoned) {
+                    termIds[index] = new MiruTermId(payload.copy());
+                }
+                return true;
+            }, true);
+        LOG.inc("termOrdinals>getTermIds", length);
+        return termIds;
+    }
+}
@@ -17,6 +17,8 @@ import com.jivesoftware.os.miru.plugin.index.MiruTimeIndex;
 import com.jivesoftware.os.miru.plugin.solution.MiruTimeRange;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -41,6 +43,9 @@ public class LabTimeIndex implements MiruTimeIndex {
     private final ValueIndex<byte[]> rawTimestampToIndex;
     private final boolean verboseLogging;
 
+    private final Object modelLock = new Object();
+    private volatile LabTimeIndexModel model;
+
     public LabTimeIndex(MiruPartitionCoord coord,
         OrderIdProvider idProvider,
         ValueIndex<byte[]> metaIndex,
@@ -160,16 +165,38 @@ public class LabTimeIndex implements MiruTimeIndex {
         BolBuffer keyBuffer = new BolBuffer();
         long currentTime = System.currentTimeMillis();
         long version = idProvider.nextId();
-        monotonicTimestampIndex.append(stream -> {
-            for (int i = 0; i < ids.length; i++) {
-                if (ids[i] != -1 && monotonics[i] != -1) {
-                    if (!stream.stream(-1, Bytes.concat(UIO.longBytes(monotonics[i]), FilerIO.intBytes(ids[i])), currentTime, false, version, null)) {
-                        return false;
+        synchronized (modelLock) {
+            // appending under the model lock means a model build sees each id exactly once
+            monotonicTimestampIndex.append(stream -> {
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i] != -1 && monotonics[i] != -1) {
+                        if (!stream.stream(-1, Bytes.concat(UIO.longBytes(monotonics[i]), FilerIO.intBytes(ids[i])), currentTime, false, version, null)) {
+                            return false;
+                        }
                     }
                 }
+                return true;
+            }, true, entryBuffer, keyBuffer);
+
+            if (model != null) {
+                Integer[] order = new Integer[ids.length];
+                int count = 0;
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i] != -1 && monotonics[i] != -1) {
+                        order[count++] = i;
+                    }
+                }
+                Arrays.sort(order, 0, count, Comparator.comparingInt(i -> ids[i]));
+                for (int i = 0; i < count; i++) {
+                    model.add(monotonics[order[i]], ids[order[i]]);
+                }
+                if (model.isBroken()) {
+                    // rebuild lazily from storage rather than giving up on the model for the life of the index
+                    model = null;
+                    LOG.inc("model>discarded");
+                }
             }
-            return true;
-        }, true, entryBuffer, keyBuffer);
+        }
 
         rawTimestampToIndex.append(stream -> {
             for (int i = 0; i < ids.length; i++) {
@@ -197,6 +224,11 @@ public class LabTimeIndex implements MiruTimeIndex {
             return lastId() + 1;
         }
 
+        int modeled = modeledSmallestExclusiveId(timestamp - 1);
+        if (modeled >= 0) {
+            return modeled;
+        }
+
         int[] id = { 0 };
         monotonicTimestampIndex.rangeScan(UIO.longBytes(timestamp), null, (index, key, payloadTimestamp, tombstoned, version, payload) -> {
             if (key != null) {
@@ -270,6 +302,11 @@ public class LabTimeIndex implements MiruTimeIndex {
             return lastId + 1;
         }
 
+        int modeled = modeledSmallestExclusiveId(timestamp);
+        if (modeled >= 0) {
+            return Math.min(modeled, lastId + 1);
+        }
+
         int[] id = { 0 };
         monotonicTimestampIndex.rangeScan(
             UIO.longBytes(timestamp),
@@ -304,6 +341,11 @@ public class LabTimeIndex implements MiruTimeIndex {
             return lastId;
         }
 
+        int modeled = modeledSmallestExclusiveId(timestamp);
+        if (modeled >= 0) {
+            return Math.min(modeled - 1, lastId);
+        }
+
         int[] id = { -1 };
         monotonicTimestampIndex.rangeScan(
             UIO.longBytes(timestamp),
@@ -327,6 +369,77 @@ public class LabTimeIndex implements MiruTimeIndex {
         return id[0];
     }
 
+    /**
+     * Resolves the first id whose monotonic timestamp is greater than the given timestamp using the in-memory model, which
+     * answers linear runs without touching storage and bounds every other lookup to a single short range scan.
+     *
+     * @return the id, or -1 if the model can't be used and the caller should scan storage
+     */
+    private int modeledSmallestExclusiveId(long timestamp) throws Exception {
+        LabTimeIndexModel got = model();
+        if (got == null) {
+            return -1;
+        }
+
+        long[] probe = new long[2];
+        int modeled;
+        synchronized (modelLock) {
+            modeled = got.smallestExclusiveId(timestamp, probe);
+        }
+        if (modeled >= 0) {
+            LOG.inc("model>resolved");
+            return modeled;
+        } else if (modeled == -2) {
+            LOG.inc("model>beyond");
+            return -1;
+        }
+
+        int[] id = { (int) probe[1] + 1 };
+        monotonicTimestampIndex.rangeScan(
+            UIO.longBytes(timestamp),
+            Bytes.concat(UIO.longBytes(probe[0]), FilerIO.intBytes((int) probe[1] + 1)),
+            (index, key, payloadTimestamp, tombstoned, version, payload) -> {
+                if (key != null && key.getLong(0) > timestamp) {
+                    id[0] = key.getInt(8);
+                    return false;
+                }
+                return true;
+            },
+            true
+        );
+        LOG.inc("model>probed");
+        return id[0];
+    }
+
+    LabTimeIndexModel currentModel() {
+        return model;
+    }
+
+    private LabTimeIndexModel model() throws Exception {
+        LabTimeIndexModel got = model;
+        if (got == null) {
+            synchronized (modelLock) {
+                got = model;
+                if (got == null) {
+                    LabTimeIndexModel built = new LabTimeIndexModel();
+                    monotonicTimestampIndex.rowScan((index, key, timestamp, tombstoned, version, payload) -> {
+                        if (key != null && !tombstoned) {
+                            built.add(key.getLong(0), key.getInt(8));
+                        }
+                        return !built.isBroken();
+                    }, true);
+                    model = built;
+                    got = built;
+
+                    if (verboseLogging) {
+                        LOG.info("Built time index model for coord:{} segments:{} broken:{}", coord, built.segmentCount(), built.isBroken());
+                    }
+                }
+            }
+        }
+        return got.isBroken() ? null : got;
+    }
+
     @Override
     public void close() {
     }
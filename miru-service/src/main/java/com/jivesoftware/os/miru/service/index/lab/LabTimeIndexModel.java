@@ -0,0 +1,193 @@
+package com.jivesoftware.os.miru.service.index.lab;
+
+import java.util.Arrays;
+
+/**
+ * A sparse piecewise-linear model of the monotonic timestamp sequence, where ids increase with timestamps. Runs of at least
+ * {@link #MIN_LINEAR_IDS} consecutive ids whose timestamps advance by a constant step become linear segments, which resolve a
+ * timestamp to an id without touching storage. Everything else is folded into opaque segments of at most
+ * {@link #MAX_OPAQUE_IDS} ids, which bound the storage probe to a single short range.
+ * <p>
+ * Points must be added in ascending id order. Points at or below the last modeled id are ignored, since repairing or removing
+ * an existing id doesn't move it on the curve. A new id that goes back in time marks the model as broken, and callers fall
+ * back to storage.
+ * This class is not thread safe.
+ */
+class LabTimeIndexModel {
+
+    static final int MIN_LINEAR_IDS = 16;
+    static final int MAX_OPAQUE_IDS = 1024;
+
+    private static final long OPAQUE = -1L;
+
+    private long[] startTimestamps = new long[16];
+    private long[] endTimestamps = new long[16];
+    private long[] steps = new long[16];
+    private int[] startIds = new int[16];
+    private int[] endIds = new int[16];
+    private int count;
+
+    private boolean hasRun;
+    private long runStartTimestamp;
+    private long runEndTimestamp;
+    private long runStep;
+    private int runStartId;
+    private int runEndId;
+
+    private boolean hasOpaque;
+    private long opaqueStartTimestamp;
+    private long opaqueEndTimestamp;
+    private int opaqueStartId;
+    private int opaqueEndId;
+
+    private int lastId = -1;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private boolean broken;
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    int segmentCount() {
+        return count + (hasOpaque ? 1 : 0) + (hasRun ? 1 : 0);
+    }
+
+    void add(long timestamp, int id) {
+        if (broken) {
+            return;
+        }
+        if (id <= lastId) {
+            return;
+        }
+        if (timestamp < lastTimestamp) {
+            broken = true;
+            return;
+        }
+        lastId = id;
+        lastTimestamp = timestamp;
+
+        if (!hasRun) {
+            startRun(timestamp, id);
+        } else if (id == runEndId + 1 && (runStartId == runEndId || timestamp - runEndTimestamp == runStep)) {
+            runStep = timestamp - runEndTimestamp;
+            runEndTimestamp = timestamp;
+            runEndId = id;
+        } else {
+            closeRun();
+            startRun(timestamp, id);
+        }
+    }
+
+    private void startRun(long timestamp, int id) {
+        hasRun = true;
+        runStartTimestamp = timestamp;
+        runEndTimestamp = timestamp;
+        runStep = 0;
+        runStartId = id;
+        runEndId = id;
+    }
+
+    private void closeRun() {
+        if (runEndId - runStartId + 1 >= MIN_LINEAR_IDS) {
+            flushOpaque();
+            emit(runStartTimestamp, runEndTimestamp, runStep, runStartId, runEndId);
+        } else {
+            if (hasOpaque && runEndId - opaqueStartId + 1 > MAX_OPAQUE_IDS) {
+                flushOpaque();
+            }
+            if (!hasOpaque) {
+                hasOpaque = true;
+                opaqueStartTimestamp = runStartTimestamp;
+                opaqueStartId = runStartId;
+            }
+            opaqueEndTimestamp = runEndTimestamp;
+            opaqueEndId = runEndId;
+        }
+        hasRun = false;
+    }
+
+    private void flushOpaque() {
+        if (hasOpaque) {
+            emit(opaqueStartTimestamp, opaqueEndTimestamp, OPAQUE, opaqueStartId, opaqueEndId);
+            hasOpaque = false;
+        }
+    }
+
+    private void emit(long startTimestamp, long endTimestamp, long step, int startId, int endId) {
+        if (count == startIds.length) {
+            int length = count * 2;
+            startTimestamps = Arrays.copyOf(startTimestamps, length);
+            endTimestamps = Arrays.copyOf(endTimestamps, length);
+            steps = Arrays.copyOf(steps, length);
+            startIds = Arrays.copyOf(startIds, length);
+            endIds = Arrays.copyOf(endIds, length);
+        }
+        startTimestamps[count] = startTimestamp;
+        endTimestamps[count] = endTimestamp;
+        steps[count] = step;
+        startIds[count] = startId;
+        endIds[count] = endId;
+        count++;
+    }
+
+    /**
+     * Resolves the first id whose timestamp is greater than the given timestamp.
+     *
+     * @param probe when the id can't be resolved in memory, populated with the inclusive upper bound timestamp and id to scan
+     * @return the id, -1 if the range described by probe needs to be scanned, or -2 if the timestamp is beyond the model
+     */
+    int smallestExclusiveId(long timestamp, long[] probe) {
+        int segment = firstSegmentEndingAfter(timestamp);
+        long startTimestamp;
+        long endTimestamp;
+        long step;
+        int startId;
+        int endId;
+        if (segment < count) {
+            startTimestamp = startTimestamps[segment];
+            endTimestamp = endTimestamps[segment];
+            step = steps[segment];
+            startId = startIds[segment];
+            endId = endIds[segment];
+        } else if (hasOpaque && opaqueEndTimestamp > timestamp) {
+            startTimestamp = opaqueStartTimestamp;
+            endTimestamp = opaqueEndTimestamp;
+            step = OPAQUE;
+            startId = opaqueStartId;
+            endId = opaqueEndId;
+        } else if (hasRun && runEndTimestamp > timestamp) {
+            startTimestamp = runStartTimestamp;
+            endTimestamp = runEndTimestamp;
+            step = runStartId == runEndId ? 0 : runStep;
+            startId = runStartId;
+            endId = runEndId;
+        } else {
+            return -2;
+        }
+
+        if (timestamp < startTimestamp) {
+            return startId;
+        } else if (step != OPAQUE) {
+            // step is positive, otherwise the whole segment would share its start timestamp
+            return startId + (int) ((timestamp - startTimestamp) / step) + 1;
+        } else {
+            probe[0] = endTimestamp;
+            probe[1] = endId;
+            return -1;
+        }
+    }
+
+    private int firstSegmentEndingAfter(long timestamp) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (endTimestamps[mid] > timestamp) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
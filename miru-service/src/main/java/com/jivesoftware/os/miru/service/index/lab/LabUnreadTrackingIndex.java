@@ -16,6 +16,7 @@ import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndexAppender;
 import com.jivesoftware.os.miru.plugin.index.MiruUnreadTrackingIndex;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
 import com.jivesoftware.os.miru.service.index.NamedCursorList;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import java.util.Collections;
 import java.util.List;
 
@@ -25,6 +26,7 @@ public class LabUnreadTrackingIndex<BM extends IBM, IBM> implements MiruUnreadTr
     private final OrderIdProvider idProvider;
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
+    private final MiruMetricHandles metricHandles;
     private final byte[] bitmapPrefix;
     private final byte[] lastActivityIndexPrefix;
     private final byte[] cursorsPrefix;
@@ -36,6 +38,7 @@ public class LabUnreadTrackingIndex<BM extends IBM, IBM> implements MiruUnreadTr
     public LabUnreadTrackingIndex(OrderIdProvider idProvider,
         MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
+        MiruMetricHandles metricHandles,
         byte[] bitmapPrefix,
         byte[] lastActivityIndexPrefix,
         byte[] cursorsPrefix,
@@ -48,6 +51,7 @@ public class LabUnreadTrackingIndex<BM extends IBM, IBM> implements MiruUnreadTr
         this.idProvider = idProvider;
         this.bitmaps = bitmaps;
         this.trackError = trackError;
+        this.metricHandles = metricHandles;
         this.bitmapPrefix = bitmapPrefix;
         this.lastActivityIndexPrefix = lastActivityIndexPrefix;
         this.cursorsPrefix = cursorsPrefix;
@@ -71,6 +75,7 @@ public class LabUnreadTrackingIndex<BM extends IBM, IBM> implements MiruUnreadTr
         return new LabInvertedIndex<>(idProvider,
             bitmaps,
             trackError,
+            metricHandles,
             "unread",
             -1,
             atomized,
@@ -0,0 +1,339 @@
+package com.jivesoftware.os.miru.service.index.lab;
+
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decoded field bitmaps for the most frequently read terms of every hosted partition, held on heap under a single memory
+ * budget so that repeated reads of a hot term skip the atom range scan and deserialization. Admission is TinyLFU style: every
+ * lookup is counted in a small frequency sketch, and when the budget is full a new bitmap is only admitted if it is read more
+ * often than the least frequently read entry among a small sample, which is then evicted.
+ * <p>
+ * Entries are invalidated whenever their term is written. A read that raced with a write is detected by a striped write stamp
+ * and never admitted.
+ */
+public class MiruHotTermBitmapCache {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private static final int ENTRY_OVERHEAD_IN_BYTES = 64;
+    private static final int NUM_STAMP_STRIPES = 4096;
+
+    private final long maxSizeInBytes;
+    private final int evictionSampleSize;
+    private final FrequencySketch sketch;
+
+    private final ConcurrentMap<Key, Entry> entries = Maps.newConcurrentMap();
+    private final AtomicLongArray stamps = new AtomicLongArray(NUM_STAMP_STRIPES);
+    private final AtomicLong sizeInBytes = new AtomicLong();
+    private final AtomicLong nextPartitionId = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private final Object evictionLock = new Object();
+    private Iterator<Map.Entry<Key, Entry>> evictionCursor;
+
+    public MiruHotTermBitmapCache(long maxSizeInBytes, int evictionSampleSize) {
+        this.maxSizeInBytes = maxSizeInBytes;
+        this.evictionSampleSize = evictionSampleSize;
+        // roughly one counter per 4 KB of budget, which comfortably covers the number of entries we can hold
+        this.sketch = new FrequencySketch(Integer.highestOneBit((int) Math.max(1024, Math.min(1 << 22, maxSizeInBytes / 4096))));
+    }
+
+    public boolean isEnabled() {
+        return maxSizeInBytes > 0;
+    }
+
+    public PartitionHotTermBitmaps partition() {
+        return new PartitionHotTermBitmaps(nextPartitionId.incrementAndGet());
+    }
+
+    public long sizeInBytes() {
+        return sizeInBytes.get();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long rejections() {
+        return rejections.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public long invalidations() {
+        return invalidations.sum();
+    }
+
+    private int stripe(Key key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % NUM_STAMP_STRIPES;
+    }
+
+    private boolean remove(Key key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            sizeInBytes.addAndGet(-entry.sizeInBytes);
+            entry.owner.partitionSizeInBytes.addAndGet(-entry.sizeInBytes);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if there is room for the candidate, evicting sampled entries that are read less often than the candidate
+     */
+    private boolean admit(Key candidate, long candidateSizeInBytes) {
+        if (sizeInBytes.get() + candidateSizeInBytes <= maxSizeInBytes) {
+            return true;
+        }
+        synchronized (evictionLock) {
+            int candidateFrequency = sketch.frequency(candidate.hashCode());
+            while (sizeInBytes.get() + candidateSizeInBytes > maxSizeInBytes) {
+                Map.Entry<Key, Entry> victim = null;
+                int victimFrequency = Integer.MAX_VALUE;
+                for (int i = 0; i < evictionSampleSize; i++) {
+                    if (evictionCursor == null || !evictionCursor.hasNext()) {
+                        evictionCursor = entries.entrySet().iterator();
+                        if (!evictionCursor.hasNext()) {
+                            break;
+                        }
+                    }
+                    Map.Entry<Key, Entry> sample = evictionCursor.next();
+                    int frequency = sketch.frequency(sample.getKey().hashCode());
+                    if (frequency < victimFrequency) {
+                        victim = sample;
+                        victimFrequency = frequency;
+                    }
+                }
+                if (victim == null || candidateFrequency <= victimFrequency) {
+                    return false;
+                }
+                if (remove(victim.getKey(), victim.getValue())) {
+                    evictions.increment();
+                    LOG.inc("hotTermCache>evict");
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A single partition's view of the cache, keyed by the term's bitmap key.
+     */
+    public class PartitionHotTermBitmaps {
+
+        private final long partitionId;
+        private final AtomicLong partitionSizeInBytes = new AtomicLong();
+
+        private PartitionHotTermBitmaps(long partitionId) {
+            this.partitionId = partitionId;
+        }
+
+        public long sizeInBytes() {
+            return partitionSizeInBytes.get();
+        }
+
+        /**
+         * @return true if the container was populated with a copy of the cached bitmap
+         */
+        public <BM extends IBM, IBM> boolean get(MiruBitmaps<BM, IBM> bitmaps, byte[] bitmapKeyBytes, BitmapAndLastId<BM> container) {
+            Key key = new Key(partitionId, bitmapKeyBytes);
+            sketch.increment(key.hashCode());
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                misses.increment();
+                LOG.inc("hotTermCache>miss");
+                return false;
+            }
+            hits.increment();
+            LOG.inc("hotTermCache>hit");
+            @SuppressWarnings("unchecked")
+            BM bitmap = (BM) entry.bitmap;
+            container.set(bitmaps.copy(bitmap), entry.lastId);
+            return true;
+        }
+
+        /**
+         * @return the write stamp to pass to {@link #put} for a bitmap that is about to be read from the index
+         */
+        public long stamp(byte[] bitmapKeyBytes) {
+            return stamps.get(stripe(new Key(partitionId, bitmapKeyBytes)));
+        }
+
+        public <BM extends IBM, IBM> void put(MiruBitmaps<BM, IBM> bitmaps, byte[] bitmapKeyBytes, long stamp, BitmapAndLastId<BM> container) {
+            if (!container.isSet()) {
+                return;
+            }
+            Key key = new Key(partitionId, bitmapKeyBytes);
+            int stripe = stripe(key);
+            if (stamps.get(stripe) != stamp) {
+                return;
+            }
+
+            long entrySizeInBytes = bitmaps.sizeInBytes(container.getBitmap()) + bitmapKeyBytes.length + ENTRY_OVERHEAD_IN_BYTES;
+            if (entrySizeInBytes > maxSizeInBytes) {
+                LOG.inc("hotTermCache>tooLarge");
+                return;
+            }
+            if (entries.containsKey(key)) {
+                return;
+            }
+            if (!admit(key, entrySizeInBytes)) {
+                rejections.increment();
+                LOG.inc("hotTermCache>reject");
+                return;
+            }
+
+            Entry entry = new Entry(this, bitmaps.copy(container.getBitmap()), container.getLastId(), entrySizeInBytes);
+            if (entries.putIfAbsent(key, entry) == null) {
+                sizeInBytes.addAndGet(entrySizeInBytes);
+                partitionSizeInBytes.addAndGet(entrySizeInBytes);
+                if (stamps.get(stripe) != stamp) {
+                    // a write landed while we were admitting
+                    remove(key, entry);
+                }
+                LOG.set(ValueType.COUNT, "hotTermCache>bytes", sizeInBytes.get());
+            }
+        }
+
+        public void invalidate(byte[] bitmapKeyBytes) {
+            Key key = new Key(partitionId, bitmapKeyBytes);
+            stamps.incrementAndGet(stripe(key));
+            Entry entry = entries.get(key);
+            if (entry != null && remove(key, entry)) {
+                invalidations.increment();
+                LOG.inc("hotTermCache>invalidate");
+            }
+        }
+
+        public void clear() {
+            for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+                if (entry.getKey().partitionId == partitionId) {
+                    remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private static class Key {
+
+        private final long partitionId;
+        private final byte[] bitmapKeyBytes;
+        private final int hashCode;
+
+        private Key(long partitionId, byte[] bitmapKeyBytes) {
+            this.partitionId = partitionId;
+            this.bitmapKeyBytes = bitmapKeyBytes;
+            this.hashCode = 31 * (int) (partitionId ^ (partitionId >>> 32)) + Arrays.hashCode(bitmapKeyBytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return partitionId == key.partitionId && Arrays.equals(bitmapKeyBytes, key.bitmapKeyBytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static class Entry {
+
+        private final PartitionHotTermBitmaps owner;
+        private final Object bitmap;
+        private final int lastId;
+        private final long sizeInBytes;
+
+        private Entry(PartitionHotTermBitmaps owner, Object bitmap, int lastId, long sizeInBytes) {
+            this.owner = owner;
+            this.bitmap = bitmap;
+            this.lastId = lastId;
+            this.sizeInBytes = sizeInBytes;
+        }
+    }
+
+    /**
+     * A count-min sketch of 4 bit counters with periodic halving, so that frequencies reflect recent reads. Updates are
+     * deliberately unsynchronized; a lost increment only skews an estimate.
+     */
+    private static class FrequencySketch {
+
+        private static final int[] SEEDS = { 0x97cb3127, 0xb4b1f4f1, 0x3d4d7a0b, 0x6a7d3c55 };
+        private static final int MAX_COUNT = 15;
+
+        private final byte[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int width) {
+            this.table = new byte[width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return h & mask;
+        }
+
+        private int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < SEEDS.length; row++) {
+                frequency = Math.min(frequency, table[index(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private void increment(int hash) {
+            boolean added = false;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int i = index(hash, row);
+                if (table[i] < MAX_COUNT) {
+                    table[i]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (byte) (table[i] >>> 1);
+            }
+            additions /= 2;
+        }
+    }
+}
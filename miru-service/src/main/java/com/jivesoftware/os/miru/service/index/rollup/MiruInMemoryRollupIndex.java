@@ -0,0 +1,122 @@
+package com.jivesoftware.os.miru.service.index.rollup;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.jivesoftware.os.miru.api.base.MiruTermId;
+import com.jivesoftware.os.miru.plugin.index.MiruRollupIndex;
+import com.jivesoftware.os.miru.plugin.index.MiruTermRollup;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap-bounded rollup store for a single partition. Evicted terms are simply rebuilt from their bitmaps by the next query.
+ */
+public class MiruInMemoryRollupIndex implements MiruRollupIndex {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final long granularityInMillis;
+    private final boolean[] rolledUpFieldIds;
+    private final Cache<RollupKey, MiruTermRollup> cache;
+    private final AtomicLong generation = new AtomicLong();
+    private final Object invalidateLock = new Object();
+
+    public MiruInMemoryRollupIndex(long granularityInMillis, boolean[] rolledUpFieldIds, long maxSizeInBytes) {
+        this.granularityInMillis = granularityInMillis;
+        this.rolledUpFieldIds = rolledUpFieldIds;
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxSizeInBytes)
+            .weigher((RollupKey key, MiruTermRollup value) -> (int) Math.min(key.sizeInBytes() + value.sizeInBytes(), Integer.MAX_VALUE))
+            .build();
+    }
+
+    @Override
+    public long getGranularityInMillis() {
+        return granularityInMillis;
+    }
+
+    @Override
+    public boolean isRolledUp(int fieldId) {
+        return fieldId >= 0 && fieldId < rolledUpFieldIds.length && rolledUpFieldIds[fieldId];
+    }
+
+    @Override
+    public long generation() {
+        return generation.get();
+    }
+
+    @Override
+    public MiruTermRollup get(int fieldId, MiruTermId termId) {
+        MiruTermRollup rollup = cache.getIfPresent(new RollupKey(fieldId, termId));
+        LOG.inc(rollup != null ? "rollup>hit" : "rollup>miss");
+        return rollup;
+    }
+
+    @Override
+    public boolean put(int fieldId, MiruTermId termId, MiruTermRollup rollup, long expectedGeneration) {
+        synchronized (invalidateLock) {
+            if (generation.get() != expectedGeneration) {
+                LOG.inc("rollup>put>stale");
+                return false;
+            }
+            cache.put(new RollupKey(fieldId, termId), rollup);
+            return true;
+        }
+    }
+
+    @Override
+    public void resized(int fieldId, MiruTermId termId, MiruTermRollup rollup) {
+        // the cache only weighs entries when they are written, so rewrite the same value to have it weighed again
+        if (cache.asMap().replace(new RollupKey(fieldId, termId), rollup, rollup)) {
+            LOG.inc("rollup>resized");
+        }
+    }
+
+    @Override
+    public void invalidate(int fieldId, MiruTermId[] termIds, long timestamp) {
+        long bucket = Math.floorDiv(timestamp, granularityInMillis);
+        synchronized (invalidateLock) {
+            long invalidatedGeneration = generation.incrementAndGet();
+            for (MiruTermId termId : termIds) {
+                MiruTermRollup rollup = cache.getIfPresent(new RollupKey(fieldId, termId));
+                if (rollup != null) {
+                    rollup.invalidate(bucket, invalidatedGeneration);
+                    LOG.inc("rollup>invalidate");
+                }
+            }
+        }
+    }
+
+    private static class RollupKey {
+
+        private final int fieldId;
+        private final MiruTermId termId;
+
+        private RollupKey(int fieldId, MiruTermId termId) {
+            this.fieldId = fieldId;
+            this.termId = termId;
+        }
+
+        private long sizeInBytes() {
+            return 32 + termId.length();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            RollupKey rollupKey = (RollupKey) o;
+            return fieldId == rollupKey.fieldId && termId.equals(rollupKey.termId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fieldId + termId.hashCode();
+        }
+    }
+}
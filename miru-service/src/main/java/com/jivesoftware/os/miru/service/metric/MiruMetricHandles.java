@@ -0,0 +1,220 @@
+package com.jivesoftware.os.miru.service.metric;
+
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of pre-resolved metric keys for the index and solver hot paths. Keys are concatenated once per index name and
+ * field, per request and query key, or per partition coord, so every subsequent increment reuses the same string (and its
+ * cached hash) instead of allocating a new key.
+ */
+public class MiruMetricHandles {
+
+    private final ConcurrentMap<String, ConcurrentMap<Integer, IndexMetrics>> indexMetrics = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, ConcurrentMap<String, SolveMetrics>> solveMetrics = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, MergeMetrics> mergeMetrics = Maps.newConcurrentMap();
+    private final ConcurrentMap<MiruPartitionCoord, ConcurrentMap<String, IngressMetrics>> ingressMetrics = Maps.newConcurrentMap();
+
+    private final boolean perFieldVerbose;
+
+    /**
+     * @param perFieldVerbose whether index metrics are also broken down per field, in addition to the per name totals
+     */
+    public MiruMetricHandles(boolean perFieldVerbose) {
+        this.perFieldVerbose = perFieldVerbose;
+    }
+
+    public boolean isPerFieldVerbose() {
+        return perFieldVerbose;
+    }
+
+    public IndexMetrics index(String name, int fieldId) {
+        ConcurrentMap<Integer, IndexMetrics> fields = indexMetrics.get(name);
+        if (fields == null) {
+            indexMetrics.putIfAbsent(name, Maps.<Integer, IndexMetrics>newConcurrentMap());
+            fields = indexMetrics.get(name);
+        }
+        IndexMetrics metrics = fields.get(fieldId);
+        if (metrics == null) {
+            fields.putIfAbsent(fieldId, new IndexMetrics(this, name, fieldId));
+            metrics = fields.get(fieldId);
+        }
+        return metrics;
+    }
+
+    public SolveMetrics solve(String requestName, String queryKey) {
+        ConcurrentMap<String, SolveMetrics> queryKeys = solveMetrics.get(requestName);
+        if (queryKeys == null) {
+            solveMetrics.putIfAbsent(requestName, Maps.<String, SolveMetrics>newConcurrentMap());
+            queryKeys = solveMetrics.get(requestName);
+        }
+        SolveMetrics metrics = queryKeys.get(queryKey);
+        if (metrics == null) {
+            queryKeys.putIfAbsent(queryKey, new SolveMetrics(requestName, queryKey));
+            metrics = queryKeys.get(queryKey);
+        }
+        return metrics;
+    }
+
+    public MergeMetrics merge(String name) {
+        MergeMetrics metrics = mergeMetrics.get(name);
+        if (metrics == null) {
+            mergeMetrics.putIfAbsent(name, new MergeMetrics(name));
+            metrics = mergeMetrics.get(name);
+        }
+        return metrics;
+    }
+
+    public IngressMetrics ingress(String strategy, MiruPartitionCoord coord) {
+        ConcurrentMap<String, IngressMetrics> strategies = ingressMetrics.get(coord);
+        if (strategies == null) {
+            ingressMetrics.putIfAbsent(coord, Maps.<String, IngressMetrics>newConcurrentMap());
+            strategies = ingressMetrics.get(coord);
+        }
+        IngressMetrics metrics = strategies.get(strategy);
+        if (metrics == null) {
+            strategies.putIfAbsent(strategy, new IngressMetrics(strategy, coord));
+            metrics = strategies.get(strategy);
+        }
+        return metrics;
+    }
+
+    /**
+     * Drops the ingress handles for a partition that is no longer hosted, so closed coords do not accumulate.
+     */
+    public void removeIngress(MiruPartitionCoord coord) {
+        ingressMetrics.remove(coord);
+    }
+
+    int ingressCount() {
+        return ingressMetrics.size();
+    }
+
+    public static class IndexMetrics {
+
+        public final IndexOpMetrics getIndex;
+        public final IndexOpMetrics txIndex;
+        public final IndexOpMetrics getOrCreateIndex;
+        public final IndexOpMetrics set;
+        public final IndexOpMetrics lastId;
+
+        private IndexMetrics(MiruMetricHandles handles, String name, int fieldId) {
+            this.getIndex = new IndexOpMetrics(handles, "getIndex", name, fieldId);
+            this.txIndex = new IndexOpMetrics(handles, "txIndex", name, fieldId);
+            this.getOrCreateIndex = new IndexOpMetrics(handles, "getOrCreateIndex", name, fieldId);
+            this.set = new IndexOpMetrics(handles, "set", name, fieldId);
+            this.lastId = new IndexOpMetrics(handles, "lastId", name, fieldId);
+        }
+    }
+
+    public static class IndexOpMetrics {
+
+        private final MiruMetricHandles handles;
+        private final String countTotal;
+        private final String countName;
+        private final String countField;
+        private final String bytesTotal;
+        private final String bytesName;
+        private final String bytesField;
+
+        private IndexOpMetrics(MiruMetricHandles handles, String op, String name, int fieldId) {
+            this.handles = handles;
+            this.countTotal = "count>" + op + ">total";
+            this.countName = "count>" + op + ">" + name + ">total";
+            this.countField = "count>" + op + ">" + name + ">" + fieldId;
+            this.bytesTotal = "bytes>" + op + ">total";
+            this.bytesName = "bytes>" + op + ">" + name + ">total";
+            this.bytesField = "bytes>" + op + ">" + name + ">" + fieldId;
+        }
+
+        public void record(MetricLogger log, long bytes) {
+            log.inc(countTotal);
+            log.inc(countName);
+            log.inc(bytesTotal, bytes);
+            log.inc(bytesName, bytes);
+            if (handles.perFieldVerbose) {
+                log.inc(countField);
+                log.inc(bytesField, bytes);
+            }
+        }
+    }
+
+    public static class SolveMetrics {
+
+        public static final String THROUGHPUT_SUCCESS_LOCAL = "solve>throughput>success>local";
+        public static final String THROUGHPUT_SUCCESS_REMOTE = "solve>throughput>success>remote";
+
+        public final String timeout;
+        public final String calls;
+        public final String empty;
+        public final String initial;
+        public final String outOfTime;
+        public final String success;
+        public final String solvableFailed;
+        public final String solvableInterrupted;
+        public final String solvableError;
+        public final String moreSolvers;
+        public final String added;
+        public final String allFailed;
+        public final String throughputSuccessLocal;
+        public final String throughputSuccessRemote;
+        public final String throughputFailure;
+        public final String throughputAbandoned;
+
+        private SolveMetrics(String requestName, String queryKey) {
+            String request = "solve>request>" + requestName + ">" + queryKey;
+            this.timeout = request + ">timeout";
+            this.calls = request + ">calls";
+            this.empty = request + ">empty";
+            this.initial = request + ">initial";
+            this.outOfTime = request + ">outOfTime";
+            this.success = request + ">success";
+            this.solvableFailed = request + ">solvableFailed";
+            this.solvableInterrupted = request + ">solvableInterrupted";
+            this.solvableError = request + ">solvableError>";
+            this.moreSolvers = request + ">moreSolvers";
+            this.added = request + ">added";
+            this.allFailed = request + ">allFailed";
+            this.throughputSuccessLocal = "solve>throughput>success>local>" + requestName + ">" + queryKey;
+            this.throughputSuccessRemote = "solve>throughput>success>remote>" + requestName + ">" + queryKey;
+            this.throughputFailure = "solve>throughput>failure>" + requestName + ">" + queryKey;
+            this.throughputAbandoned = "solve>throughput>abandoned>" + requestName + ">" + queryKey;
+        }
+    }
+
+    public static class MergeMetrics {
+
+        private static final int MAX_POWER = 64;
+
+        public final String skipCount;
+        private final String[] timePow;
+
+        private MergeMetrics(String name) {
+            this.skipCount = "merge>" + name + ">skip>count";
+            this.timePow = new String[MAX_POWER];
+            for (int i = 0; i < MAX_POWER; i++) {
+                timePow[i] = "merge>" + name + ">time>pow>" + i;
+            }
+        }
+
+        public String timePow(int power) {
+            return timePow[Math.max(0, Math.min(power, MAX_POWER - 1))];
+        }
+    }
+
+    public static class IngressMetrics {
+
+        public final String index;
+        public final String total;
+        public final String calls;
+
+        private IngressMetrics(String strategy, MiruPartitionCoord coord) {
+            String prefix = strategy + ">" + coord.tenantId.toString() + ">" + coord.partitionId.getId();
+            this.index = prefix + ">index";
+            this.total = prefix + ">total";
+            this.calls = prefix + ">calls";
+        }
+    }
+}
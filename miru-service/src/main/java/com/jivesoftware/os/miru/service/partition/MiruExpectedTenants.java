@@ -24,6 +24,10 @@ public interface MiruExpectedTenants {
 
     boolean compact(MiruPartitionCoord coord) throws Exception;
 
+    boolean notifyActivity(MiruPartitionCoord coord) throws Exception;
+
+    void notifyAllActivity() throws Exception;
+
     boolean rebuildTimeRange(MiruTimeRange miruTimeRange, boolean hotDeploy, boolean chunkStores, boolean labIndex) throws Exception;
 
     void thumpthump() throws Exception;
@@ -33,6 +33,7 @@ public class MiruHostedPartitionComparison {
 
     private final int windowSize;
     private final int percentile;
+    private final MiruReplicaLatencies replicaLatencies;
     private final Timestamper timestamper;
 
     private final Comparator<PartitionAndTime> partitionAndTimeComparator = (pat1, pat2) -> {
@@ -43,23 +44,30 @@ public class MiruHostedPartitionComparison {
         return ComparisonChain
             .start()
             .compare(p2.partitionId, p1.partitionId) // flipped p1 and p2 so that we get descending order.
+            .compareFalseFirst(pat1.slow, pat2.slow) // known slow replicas go last
             .compare(t2, t1) // descending order
             .compare(p1.host, p2.host)
             .result();
     };
 
-    public MiruHostedPartitionComparison(int windowSize, int percentile, Timestamper timestamper) {
+    public MiruHostedPartitionComparison(int windowSize, int percentile, MiruReplicaLatencies replicaLatencies, Timestamper timestamper) {
         this.windowSize = windowSize;
         this.percentile = percentile;
+        this.replicaLatencies = replicaLatencies;
         this.timestamper = timestamper;
     }
 
+    public MiruHostedPartitionComparison(int windowSize, int percentile, Timestamper timestamper) {
+        this(windowSize, percentile, new MiruReplicaLatencies(windowSize, percentile, Double.MAX_VALUE), timestamper);
+    }
+
     public MiruHostedPartitionComparison(int percentile, int windowSize) {
         this(percentile, windowSize, System::currentTimeMillis);
     }
 
     /**
-     * Orders partitions for a replica set based on query metrics.
+     * Orders partitions for a replica set based on query metrics. Replicas that are rebuilding or whose latency percentile
+     * is well above their fastest sibling are ranked after the rest.
      *
      * @param tenantId    the tenant
      * @param partitionId the partition
@@ -80,8 +88,21 @@ public class MiruHostedPartitionComparison {
 
         List<PartitionAndTime> partitionAndTimes = Lists.newArrayListWithCapacity(partitions.size());
 
+        long[] latencies = new long[partitions.size()];
+        long fastestLatency = -1;
+        int index = 0;
+        for (MiruRoutablePartition partition : partitions) {
+            long latency = replicaLatencies.latencyPercentile(new MiruPartitionCoord(tenantId, partition.partitionId, partition.host));
+            latencies[index++] = latency;
+            if (latency >= 0 && (fastestLatency < 0 || latency < fastestLatency)) {
+                fastestLatency = latency;
+            }
+        }
+
         boolean allDestroyed = true;
+        index = -1;
         for (MiruRoutablePartition partition : partitions) {
+            index++;
             if (partition.destroyAfterTimestamp > 0 && System.currentTimeMillis() > partition.destroyAfterTimestamp) {
                 continue;
             }
@@ -95,7 +116,8 @@ public class MiruHostedPartitionComparison {
             if (skipEntry != null && skipEntry.getKey().compareTo(partitionAndHost) == 0) {
                 time = skipEntry.getValue();
             }
-            partitionAndTimes.add(new PartitionAndTime(partition, time));
+            boolean slow = partition.state.isRebuilding() || replicaLatencies.isSlow(latencies[index], fastestLatency);
+            partitionAndTimes.add(new PartitionAndTime(partition, time, slow));
         }
 
         if (allDestroyed) {
@@ -205,10 +227,12 @@ public class MiruHostedPartitionComparison {
 
         public final MiruRoutablePartition partition;
         public final long time;
+        public final boolean slow;
 
-        private PartitionAndTime(MiruRoutablePartition partition, long time) {
+        private PartitionAndTime(MiruRoutablePartition partition, long time, boolean slow) {
             this.partition = partition;
             this.time = time;
+            this.slow = slow;
         }
     }
 
@@ -31,12 +31,15 @@ import com.jivesoftware.os.miru.plugin.partition.MiruHostedPartition;
 import com.jivesoftware.os.miru.plugin.partition.MiruPartitionUnavailableException;
 import com.jivesoftware.os.miru.plugin.partition.MiruQueryablePartition;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResultCache;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequestHandle;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import com.jivesoftware.os.miru.service.partition.MiruPartitionAccessor.CheckPersistent;
 import com.jivesoftware.os.miru.service.stream.MiruContext;
 import com.jivesoftware.os.miru.service.stream.MiruContextFactory;
 import com.jivesoftware.os.miru.service.stream.MiruIndexCallbacks;
 import com.jivesoftware.os.miru.service.stream.MiruIndexer;
+import com.jivesoftware.os.miru.service.stream.MiruRealtimeIds;
 import com.jivesoftware.os.miru.service.stream.MiruRebuildDirector;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
@@ -46,17 +49,20 @@ import com.jivesoftware.os.routing.bird.health.api.MinMaxHealthCheckConfig;
 import com.jivesoftware.os.routing.bird.health.api.MinMaxHealthChecker;
 import com.jivesoftware.os.routing.bird.shared.BoundedExecutor;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.lang.mutable.MutableLong;
 import org.merlin.config.defaults.LongDefault;
 import org.merlin.config.defaults.StringDefault;
 
@@ -67,8 +73,10 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
     implements MiruHostedPartition, MiruQueryablePartition<BM, IBM> {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final long ESTIMATED_WAL_ENTRY_BYTES = 1_024;
 
     private final MiruStats miruStats;
+    private final MiruMetricHandles metricHandles;
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
     private final MiruPartitionCoord coord;
@@ -82,6 +90,8 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
     private final AtomicBoolean removed = new AtomicBoolean(false);
 
     private final Collection<ScheduledFuture<?>> futures;
+    private final AtomicReference<SipMigrateIndexRunnable> sipMigrateIndexRunnable = new AtomicReference<>();
+    private final AtomicBoolean sipNotified = new AtomicBoolean(false);
     private final ScheduledExecutorService scheduledRebuildExecutor;
     private final ScheduledExecutorService scheduledSipExecutor;
     private final ExecutorService rebuildWALExecutors;
@@ -96,8 +106,10 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
     private final boolean partitionCompactOnClosedWriters;
     private final int partitionRebuildBatchSize;
     private final int partitionSipBatchSize;
+    private final long partitionRebuildPrefetchMaxBytes;
     private final MiruMergeChits persistentMergeChits;
     private final MiruMergeChits transientMergeChits;
+    private final MiruPartitionResultCache resultCache;
     private final Timings timings;
 
     private final AtomicReference<MiruPartitionAccessor<BM, IBM, C, S>> accessorRef = new AtomicReference<>();
@@ -128,6 +140,7 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
 
     public MiruLocalHostedPartition(
         MiruStats miruStats,
+        MiruMetricHandles metricHandles,
         MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
         MiruPartitionCoord coord,
@@ -153,12 +166,15 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
         boolean partitionCompactOnClosedWriters,
         int partitionRebuildBatchSize,
         int partitionSipBatchSize,
+        long partitionRebuildPrefetchMaxBytes,
         MiruMergeChits persistentMergeChits,
         MiruMergeChits transientMergeChits,
+        MiruPartitionResultCache resultCache,
         Timings timings)
         throws Exception {
 
         this.miruStats = miruStats;
+        this.metricHandles = metricHandles;
         this.bitmaps = bitmaps;
         this.trackError = trackError;
         this.coord = coord;
@@ -183,8 +199,10 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
         this.partitionCompactOnClosedWriters = partitionCompactOnClosedWriters;
         this.partitionRebuildBatchSize = partitionRebuildBatchSize;
         this.partitionSipBatchSize = partitionSipBatchSize;
+        this.partitionRebuildPrefetchMaxBytes = partitionRebuildPrefetchMaxBytes;
         this.persistentMergeChits = persistentMergeChits;
         this.transientMergeChits = transientMergeChits;
+        this.resultCache = resultCache;
         this.timings = timings;
         this.futures = Lists.newCopyOnWriteArrayList(); // rebuild, sip-migrate
         this.checkPersistent = () -> {
@@ -198,6 +216,7 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
         MiruPartitionState initialState = MiruPartitionState.offline;
         MiruBackingStorage initialStorage = contextFactory.findBackingStorage(coord);
         MiruPartitionAccessor<BM, IBM, C, S> accessor = MiruPartitionAccessor.initialize(miruStats,
+            metricHandles,
             bitmaps,
             coord,
             initialState,
@@ -280,6 +299,7 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
             }
 
             MiruPartitionAccessor<BM, IBM, C, S> opened = MiruPartitionAccessor.initialize(miruStats,
+                metricHandles,
                 bitmaps,
                 coord,
                 state,
@@ -303,7 +323,9 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                     clearFutures();
                     futures.add(scheduledRebuildExecutor.scheduleWithFixedDelay(new RebuildIndexRunnable(),
                         0, timings.partitionRebuildIntervalInMillis, TimeUnit.MILLISECONDS));
-                    futures.add(scheduledSipExecutor.scheduleWithFixedDelay(new SipMigrateIndexRunnable(),
+                    SipMigrateIndexRunnable sipMigrate = new SipMigrateIndexRunnable();
+                    sipMigrateIndexRunnable.set(sipMigrate);
+                    futures.add(scheduledSipExecutor.scheduleWithFixedDelay(sipMigrate,
                         0, timings.partitionSipMigrateIntervalInMillis, TimeUnit.MILLISECONDS));
                 }
                 if (state == MiruPartitionState.online) {
@@ -359,6 +381,12 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
         }
     }
 
+    private void invalidateResults() {
+        if (resultCache != null) {
+            resultCache.invalidate(coord);
+        }
+    }
+
     @Override
     public MiruRequestHandle<BM, IBM, S> acquireQueryHandle() throws Exception {
         heartbeatHandler.updateQueryTimestamp(coord, System.currentTimeMillis());
@@ -381,7 +409,7 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
         if (!accessor.getSipEndOfWAL()) {
             throw new MiruPartitionUnavailableException("Partition needs to catch up");
         }
-        return accessor.getRequestHandle(trackError, persistentMergeChits, persistentMergeExecutor);
+        return accessor.getRequestHandle(trackError, persistentMergeChits, persistentMergeExecutor, resultCache);
     }
 
     @Override
@@ -400,7 +428,7 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
             }
         }
 
-        return accessor.getRequestHandle(trackError, persistentMergeChits, persistentMergeExecutor);
+        return accessor.getRequestHandle(trackError, persistentMergeChits, persistentMergeExecutor, null);
     }
 
     @Override
@@ -426,6 +454,7 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
             }
             synchronized (factoryLock) {
                 MiruPartitionAccessor<BM, IBM, C, S> closed = MiruPartitionAccessor.initialize(miruStats,
+                    metricHandles,
                     bitmaps,
                     coord,
                     MiruPartitionState.offline,
@@ -445,6 +474,10 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                     existing.refundChits(transientMergeChits);
                     clearFutures();
                     indexCallbacks.close(coord);
+                    metricHandles.removeIngress(coord);
+                    if (resultCache != null) {
+                        resultCache.close(coord);
+                    }
                     return true;
                 } else {
                     return false;
@@ -456,12 +489,24 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
     }
 
     private void clearFutures() {
+        sipMigrateIndexRunnable.set(null);
         for (ScheduledFuture<?> future : futures) {
             future.cancel(true);
         }
         futures.clear();
     }
 
+    /**
+     * Sips now instead of at the next scheduled interval, because the WAL says this partition has new activity.
+     */
+    public void notifyActivity() {
+        sipNotified.set(true);
+        SipMigrateIndexRunnable sipMigrate = sipMigrateIndexRunnable.get();
+        if (sipMigrate != null) {
+            scheduledSipExecutor.submit(sipMigrate);
+        }
+    }
+
     @Override
     public boolean isLocal() {
         return true;
@@ -537,6 +582,7 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
             }
             if (count > 0) {
                 LOG.inc("indexIngress>written", count);
+                invalidateResults();
             }
         } else {
             int count = 0;
@@ -703,6 +749,7 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                                 MiruPartitionAccessor<BM, IBM, C, S> existing = accessorRef.get();
 
                                 MiruPartitionAccessor<BM, IBM, C, S> cleaned = MiruPartitionAccessor.initialize(miruStats,
+                                    metricHandles,
                                     bitmaps,
                                     coord,
                                     MiruPartitionState.offline,
@@ -757,7 +804,7 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                 } else if (accessor.persistentContext.isPresent()) {
                     int deliveryId = -1;
                     int lastId = -1;
-                    try (MiruRequestHandle<BM, IBM, S> handle = accessor.getRequestHandle(trackError, persistentMergeChits, persistentMergeExecutor)) {
+                    try (MiruRequestHandle<BM, IBM, S> handle = accessor.getRequestHandle(trackError, persistentMergeChits, persistentMergeExecutor, null)) {
                         StackBuffer stackBuffer = new StackBuffer();
                         deliveryId = handle.getRequestContext().getSipIndex().getRealtimeDeliveryId(stackBuffer);
                         lastId = handle.getRequestContext().getActivityIndex().lastId(stackBuffer);
@@ -875,30 +922,41 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
         }
 
         private boolean rebuild(final MiruPartitionAccessor<BM, IBM, C, S> accessor, StackBuffer stackBuffer) throws Exception {
-            final ArrayBlockingQueue<MiruWALClient.StreamBatch<MiruWALEntry, C>> queue = new ArrayBlockingQueue<>(1);
+            final LinkedBlockingQueue<PrefetchedBatch<C>> queue = new LinkedBlockingQueue<>();
             final AtomicReference<C> cursor = new AtomicReference<>(accessor.getRebuildCursor());
             final AtomicBoolean rebuilding = new AtomicBoolean(true);
             final AtomicBoolean endOfWAL = new AtomicBoolean(false);
 
+            // the fetcher runs ahead of the indexer until the batches it has queued reach the prefetch budget
+            final int maxPrefetchKilobytes = (int) Math.max(1, Math.min(Integer.MAX_VALUE, partitionRebuildPrefetchMaxBytes / 1024));
+            final Semaphore prefetchKilobytes = new Semaphore(maxPrefetchKilobytes);
+
             LOG.debug("Starting rebuild at {} for {}", cursor.get(), coord);
 
             rebuildWALExecutors.submit(() -> {
                 try {
 
+                    MutableLong bytesCount = new MutableLong();
                     MiruWALClient.StreamBatch<MiruWALEntry, C> streamBatch = walClient.getActivity(coord.tenantId,
                         coord.partitionId,
                         cursor.get(),
                         partitionRebuildBatchSize,
                         -1L,
-                        null);
+                        bytesCount);
 
                     while (rebuilding.get() && accessorRef.get() == accessor && streamBatch != null) {
-                        tryQueuePut(rebuilding, queue, streamBatch);
+                        int kilobytes = prefetchKilobytes(streamBatch, bytesCount.longValue(), maxPrefetchKilobytes);
+                        if (!tryAcquirePrefetch(rebuilding, prefetchKilobytes, kilobytes)) {
+                            break;
+                        }
+                        queue.add(new PrefetchedBatch<>(streamBatch, kilobytes));
+                        LOG.inc("rebuild>prefetch>kilobytes", kilobytes);
                         if (streamBatch.activities.isEmpty()) {
                             break;
                         }
+                        bytesCount.setValue(0);
                         streamBatch = (streamBatch.cursor != null)
-                            ? walClient.getActivity(coord.tenantId, coord.partitionId, streamBatch.cursor, partitionRebuildBatchSize, -1L, null)
+                            ? walClient.getActivity(coord.tenantId, coord.partitionId, streamBatch.cursor, partitionRebuildBatchSize, -1L, bytesCount)
                             : null;
                     }
 
@@ -919,11 +977,17 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
             try {
                 int totalIndexed = 0;
                 while (true) {
-                    MiruWALClient.StreamBatch<MiruWALEntry, C> streamBatch = null;
+                    PrefetchedBatch<C> prefetchedBatch = null;
                     List<MiruPartitionedActivity> partitionedActivities = null;
                     C nextCursor = null;
-                    while ((rebuilding.get() || !queue.isEmpty()) && streamBatch == null) {
-                        streamBatch = queue.poll(1, TimeUnit.SECONDS);
+                    while ((rebuilding.get() || !queue.isEmpty()) && prefetchedBatch == null) {
+                        prefetchedBatch = queue.poll(1, TimeUnit.SECONDS);
+                    }
+
+                    MiruWALClient.StreamBatch<MiruWALEntry, C> streamBatch = null;
+                    if (prefetchedBatch != null) {
+                        prefetchKilobytes.release(prefetchedBatch.kilobytes);
+                        streamBatch = prefetchedBatch.streamBatch;
                     }
 
                     if (streamBatch != null && streamBatch.cursor != null) {
@@ -967,6 +1031,12 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                     LOG.inc("rebuild", count, coord.tenantId.toString());
                     LOG.inc("rebuild>partition>" + coord.partitionId, count, coord.tenantId.toString());
                 }
+
+                if (endOfWAL.get() && accessor.transientContext.isPresent()) {
+                    LOG.startTimer("rebuild>flush");
+                    accessor.flushBulk(accessor.transientContext.get(), rebuildIndexExecutor);
+                    LOG.stopTimer("rebuild>flush");
+                }
             } catch (Exception e) {
                 LOG.error("Failure during rebuild index for {}", new Object[] { coord }, e);
                 failure = e;
@@ -998,25 +1068,56 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
             return endOfWAL.get() && accessorRef.get() == accessor;
         }
 
-        private boolean tryQueuePut(AtomicBoolean rebuilding,
-            ArrayBlockingQueue<MiruWALClient.StreamBatch<MiruWALEntry, C>> queue,
-            MiruWALClient.StreamBatch<MiruWALEntry, C> batch)
-            throws InterruptedException {
+        private int prefetchKilobytes(MiruWALClient.StreamBatch<MiruWALEntry, C> streamBatch, long bytesCount, int maxPrefetchKilobytes) {
+            // in-process WAL clients don't count bytes, so fall back to a per activity estimate
+            long bytes = bytesCount > 0 ? bytesCount : (long) streamBatch.activities.size() * ESTIMATED_WAL_ENTRY_BYTES;
+            return (int) Math.max(1, Math.min(maxPrefetchKilobytes, bytes / 1024));
+        }
+
+        private boolean tryAcquirePrefetch(AtomicBoolean rebuilding, Semaphore prefetchKilobytes, int kilobytes) throws InterruptedException {
             boolean success = false;
             while (rebuilding.get() && !success) {
-                success = queue.offer(batch, 1, TimeUnit.SECONDS);
+                success = prefetchKilobytes.tryAcquire(kilobytes, 1, TimeUnit.SECONDS);
             }
             return success;
         }
     }
 
+    private static class PrefetchedBatch<C> {
+
+        private final MiruWALClient.StreamBatch<MiruWALEntry, C> streamBatch;
+        private final int kilobytes;
+
+        private PrefetchedBatch(MiruWALClient.StreamBatch<MiruWALEntry, C> streamBatch, int kilobytes) {
+            this.streamBatch = streamBatch;
+            this.kilobytes = kilobytes;
+        }
+    }
+
     protected class SipMigrateIndexRunnable implements Runnable {
 
         private final AtomicBoolean checkedObsolete = new AtomicBoolean(false);
         private final AtomicLong updatedLastTimestamp = new AtomicLong(-1);
+        private final AtomicBoolean running = new AtomicBoolean(false);
 
         @Override
         public void run() {
+            // scheduled and notified runs must not overlap, and a notification that lands mid-run gets its own run
+            if (!running.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                sipMigrate();
+            } finally {
+                running.set(false);
+            }
+            if (sipNotified.get() && sipMigrateIndexRunnable.get() == this) {
+                scheduledSipExecutor.submit(this);
+            }
+        }
+
+        private void sipMigrate() {
+            boolean notified = sipNotified.getAndSet(false);
             StackBuffer stackBuffer = new StackBuffer();
             try {
                 MiruPartitionAccessor<BM, IBM, C, S> accessor = accessorRef.get();
@@ -1057,7 +1158,7 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                             long sipClockTimestamp = System.currentTimeMillis();
                             boolean sipIngress = sipIngressTimestamp == -1 || partitionActive.lastIngressTimestamp != sipIngressTimestamp;
                             boolean sipCya = sipClockTimestamp > cyaSipAfterTimestamp;
-                            if (sipIngress || sipCya) {
+                            if (sipIngress || sipCya || notified) {
                                 if (!partitionAllowNonLatestSchemaInteractions && accessor.persistentContext.isPresent()) {
                                     MiruSchema latestSchema = contextFactory.lookupLatestSchema(coord.tenantId);
                                     if (!MiruSchema.checkEquals(accessor.persistentContext.get().getSchema(), latestSchema)) {
@@ -1074,6 +1175,9 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                                 if (sipCya) {
                                     LOG.inc("sip>trigger>cya");
                                 }
+                                if (notified) {
+                                    LOG.inc("sip>trigger>notified");
+                                }
                                 accessor.setSipIngressTimestamp(sipIngressTimestamp);
                                 accessor.setSipClockTimestamp(sipClockTimestamp);
 
@@ -1270,6 +1374,9 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                     trackError,
                     stackBuffer);
                 indexCallbacks.commit(coord);
+                if (count > 0) {
+                    invalidateResults();
+                }
                 long lastTimestamp = accessor.persistentContext.get().timeIndex.getLargestTimestamp();
                 if (lastTimestamp != updatedLastTimestamp.get()) {
                     heartbeatHandler.updateLastTimestamp(coord, lastTimestamp);
@@ -1307,9 +1414,11 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
         if (!accessor.persistentContext.isPresent()) {
             return;
         }
+        MiruRealtimeIds<BM, IBM> realtimeIds = accessor.persistentContext.get().realtimeIds;
         int delivered = 0;
         int gathered = 0;
-        try (MiruRequestHandle<BM, IBM, S> handle = accessor.getRequestHandle(trackError, persistentMergeChits, persistentMergeExecutor)) {
+        int scanned = 0;
+        try (MiruRequestHandle<BM, IBM, S> handle = accessor.getRequestHandle(trackError, persistentMergeChits, persistentMergeExecutor, null)) {
             MiruSipIndex<S> sipIndex = handle.getRequestContext().getSipIndex();
             MiruActivityIndex activityIndex = handle.getRequestContext().getActivityIndex();
             int deliveryId = sipIndex.getRealtimeDeliveryId(stackBuffer);
@@ -1318,50 +1427,77 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                 List<Long> activityTimes = Lists.newArrayList();
                 int missing = 0;
                 int realtimeSent = 0;
-                for (int id = deliveryId + 1; id <= lastId; id += partitionSipBatchSize) {
-                    int batchSize = Math.min(partitionSipBatchSize, lastId - id + 1);
+
+                // ids indexed before this context began tracking (e.g. before a restart) can only be found by scanning
+                int scanThroughId = Math.min(lastId, realtimeIds.trackedAfterId());
+                for (int id = deliveryId + 1; id <= scanThroughId; id += partitionSipBatchSize) {
+                    int batchSize = Math.min(partitionSipBatchSize, scanThroughId - id + 1);
                     int[] indexes = new int[batchSize];
                     for (int i = 0; i < batchSize; i++) {
                         indexes[i] = id + i;
                     }
-                    TimeVersionRealtime[] timeVersionRealtimes = activityIndex.getAllTimeVersionRealtime("sipRealtime", indexes, stackBuffer);
-                    for (int i = 0; i < timeVersionRealtimes.length; i++) {
-                        TimeVersionRealtime tvr = timeVersionRealtimes[i];
-                        if (tvr == null) {
-                            LOG.debug("Missing realtime info at index:{} batch:{} offset:{} deliveryId:{} lastId:{} gathered:{} sent:{}",
-                                indexes[i], batchSize, i, deliveryId, lastId, gathered, activityTimes.size());
-                            missing++;
-                            continue;
-                        }
-                        gathered++;
-                        if (tvr.realtimeDelivery) {
-                            activityTimes.add(tvr.timestamp);
-                            delivered++;
-                        }
+                    missing += gatherRealtime(indexes, activityIndex, activityTimes, deliveryId, lastId, stackBuffer);
+                    scanned += batchSize;
+                    if (activityTimes.size() >= partitionSipBatchSize) {
+                        delivered += activityTimes.size();
+                        realtimeSent += realtimeDelivery.deliver(coord, activityTimes);
+                        activityTimes.clear();
+                        sipIndex.setRealtimeDeliveryId(lastId, stackBuffer);
                     }
+                }
+
+                int[] trackedIds = realtimeIds.ids(accessor.bitmaps, Math.max(deliveryId, scanThroughId), lastId);
+                for (int offset = 0; offset < trackedIds.length; offset += partitionSipBatchSize) {
+                    int[] indexes = Arrays.copyOfRange(trackedIds, offset, Math.min(trackedIds.length, offset + partitionSipBatchSize));
+                    missing += gatherRealtime(indexes, activityIndex, activityTimes, deliveryId, lastId, stackBuffer);
                     if (activityTimes.size() >= partitionSipBatchSize) {
+                        delivered += activityTimes.size();
                         realtimeSent += realtimeDelivery.deliver(coord, activityTimes);
                         activityTimes.clear();
                         sipIndex.setRealtimeDeliveryId(lastId, stackBuffer);
                     }
                 }
+                gathered = scanned + trackedIds.length - missing;
 
+                int offered = activityTimes.size();
                 if (!activityTimes.isEmpty()) {
+                    delivered += activityTimes.size();
                     realtimeSent += realtimeDelivery.deliver(coord, activityTimes);
                 }
-                if (lastId > deliveryId) {
-                    sipIndex.setRealtimeDeliveryId(lastId, stackBuffer);
-                    LOG.debug("Delivered realtime for coord:{} deliveryId:{} lastId:{} gathered:{} missing:{} offered:{} sent:{}",
-                        coord, deliveryId, lastId, gathered, missing, activityTimes.size(), realtimeSent);
-                }
+                sipIndex.setRealtimeDeliveryId(lastId, stackBuffer);
+                realtimeIds.delivered(accessor.bitmaps, lastId);
+                LOG.debug("Delivered realtime for coord:{} deliveryId:{} lastId:{} scanned:{} tracked:{} missing:{} offered:{} sent:{}",
+                    coord, deliveryId, lastId, scanned, trackedIds.length, missing, offered, realtimeSent);
             }
         }
         LOG.inc("deliver>realtime>" + name + ">calls", 1);
+        LOG.inc("deliver>realtime>" + name + ">scanned", scanned);
         LOG.inc("deliver>realtime>" + name + ">gathered", gathered);
         LOG.inc("deliver>realtime>" + name + ">delivered", delivered);
         LOG.inc("deliver>realtime>" + name + ">power>" + FilerIO.chunkPower(delivered, 0), 1);
     }
 
+    private int gatherRealtime(int[] indexes,
+        MiruActivityIndex activityIndex,
+        List<Long> activityTimes,
+        int deliveryId,
+        int lastId,
+        StackBuffer stackBuffer) throws Exception {
+        int missing = 0;
+        TimeVersionRealtime[] timeVersionRealtimes = activityIndex.getAllTimeVersionRealtime("sipRealtime", indexes, stackBuffer);
+        for (int i = 0; i < timeVersionRealtimes.length; i++) {
+            TimeVersionRealtime tvr = timeVersionRealtimes[i];
+            if (tvr == null) {
+                LOG.debug("Missing realtime info at index:{} batch:{} offset:{} deliveryId:{} lastId:{} sent:{}",
+                    indexes[i], indexes.length, i, deliveryId, lastId, activityTimes.size());
+                missing++;
+            } else if (tvr.realtimeDelivery) {
+                activityTimes.add(tvr.timestamp);
+            }
+        }
+        return missing;
+    }
+
     @Override
     public String toString() {
         return "MiruLocalHostedPartition{"
@@ -9,7 +9,9 @@ import com.jivesoftware.os.miru.api.wal.MiruSipCursor;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.index.BloomIndex;
+import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResultCache;
 import com.jivesoftware.os.miru.service.MiruServiceConfig;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import com.jivesoftware.os.miru.service.stream.MiruContextFactory;
 import com.jivesoftware.os.miru.service.stream.MiruIndexAuthz;
 import com.jivesoftware.os.miru.service.stream.MiruIndexBloom;
@@ -29,6 +31,7 @@ import java.util.concurrent.ScheduledExecutorService;
 public class MiruLocalPartitionFactory<C extends MiruCursor<C, S>, S extends MiruSipCursor<S>> {
 
     private final MiruStats miruStats;
+    private final MiruMetricHandles metricHandles;
     private final MiruServiceConfig config;
     private final MiruContextFactory<S> miruContextFactory;
     private final MiruSipTrackerFactory<S> sipTrackerFactory;
@@ -49,8 +52,10 @@ public class MiruLocalPartitionFactory<C extends MiruCursor<C, S>, S extends Mir
     private final MiruMergeChits persistentMergeChits;
     private final MiruMergeChits transientMergeChits;
     private final PartitionErrorTracker partitionErrorTracker;
+    private final MiruPartitionResultCache resultCache;
 
     public MiruLocalPartitionFactory(MiruStats miruStats,
+        MiruMetricHandles metricHandles,
         MiruServiceConfig config,
         MiruContextFactory<S> miruContextFactory,
         MiruSipTrackerFactory<S> sipTrackerFactory,
@@ -70,9 +75,11 @@ public class MiruLocalPartitionFactory<C extends MiruCursor<C, S>, S extends Mir
         MiruIndexRepairs indexRepairs,
         MiruMergeChits persistentMergeChits,
         MiruMergeChits transientMergeChits,
-        PartitionErrorTracker partitionErrorTracker) {
+        PartitionErrorTracker partitionErrorTracker,
+        MiruPartitionResultCache resultCache) {
 
         this.miruStats = miruStats;
+        this.metricHandles = metricHandles;
         this.config = config;
         this.miruContextFactory = miruContextFactory;
         this.sipTrackerFactory = sipTrackerFactory;
@@ -93,6 +100,7 @@ public class MiruLocalPartitionFactory<C extends MiruCursor<C, S>, S extends Mir
         this.persistentMergeChits = persistentMergeChits;
         this.transientMergeChits = transientMergeChits;
         this.partitionErrorTracker = partitionErrorTracker;
+        this.resultCache = resultCache;
     }
 
     public <BM extends IBM, IBM> MiruLocalHostedPartition<BM, IBM, C, S> create(MiruBitmaps<BM, IBM> bitmaps,
@@ -100,6 +108,7 @@ public class MiruLocalPartitionFactory<C extends MiruCursor<C, S>, S extends Mir
         long expireAfterMillis) throws Exception {
 
         return new MiruLocalHostedPartition<>(miruStats,
+            metricHandles,
             bitmaps,
             partitionErrorTracker.track(coord),
             coord,
@@ -126,17 +135,23 @@ public class MiruLocalPartitionFactory<C extends MiruCursor<C, S>, S extends Mir
                 new MiruIndexValueBits<>(),
                 new MiruIndexBloom<>(new BloomIndex<>(bitmaps, Hashing.murmur3_128(), 100_000, 0.01f)),
                 new MiruIndexLatest<>(),
-                new MiruIndexPairedLatest<>()),
+                new MiruIndexPairedLatest<>(),
+                config.getPartitionIndexPipelineBatchSize(),
+                config.getPartitionRebuildBulkMaxIds()),
             config.getPartitionAllowNonLatestSchemaInteractions(),
             config.getPartitionCompactOnClosedWriters(),
             config.getPartitionRebuildBatchSize(),
             config.getPartitionSipBatchSize(),
+            config.getPartitionRebuildPrefetchMaxBytes(),
             persistentMergeChits,
             transientMergeChits,
+            resultCache,
             new MiruLocalHostedPartition.Timings(
                 config.getPartitionBootstrapIntervalInMillis(),
                 config.getPartitionRebuildIntervalInMillis(),
-                config.getPartitionSipMigrateIntervalInMillis(),
+                config.getPartitionSipNotificationsEnabled()
+                    ? config.getPartitionSipNotifiedMigrateIntervalInMillis()
+                    : config.getPartitionSipMigrateIntervalInMillis(),
                 config.getPartitionBanUnregisteredSchemaMillis(),
                 config.getPartitionMigrationWaitInMillis(),
                 config.getPartitionSipNotifyEndOfStreamMillis(),
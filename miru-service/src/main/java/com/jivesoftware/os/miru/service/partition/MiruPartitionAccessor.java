@@ -22,7 +22,10 @@ import com.jivesoftware.os.miru.plugin.index.MiruActivityAndId;
 import com.jivesoftware.os.miru.plugin.index.MiruTimeIndex;
 import com.jivesoftware.os.miru.plugin.partition.MiruPartitionUnavailableException;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResultCache;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequestHandle;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles.IngressMetrics;
 import com.jivesoftware.os.miru.service.stream.MiruContext;
 import com.jivesoftware.os.miru.service.stream.MiruContextFactory;
 import com.jivesoftware.os.miru.service.stream.MiruIndexer;
@@ -30,6 +33,8 @@ import com.jivesoftware.os.miru.service.stream.MiruRebuildDirector;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import com.jivesoftware.os.mlogger.core.ValueType;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.TLongIntMap;
 import gnu.trove.map.hash.TLongIntHashMap;
 import java.io.IOException;
@@ -54,6 +59,7 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
     private static final int PERMITS = 64; //TODO config?
 
     public final MiruStats miruStats;
+    public final MiruMetricHandles metricHandles;
     public final MiruBitmaps<BM, IBM> bitmaps;
     public final MiruPartitionCoord coord;
     public final MiruPartitionState state;
@@ -82,6 +88,7 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
     private final AtomicBoolean compactEndOfWAL;
 
     private MiruPartitionAccessor(MiruStats miruStats,
+        MiruMetricHandles metricHandles,
         MiruBitmaps<BM, IBM> bitmaps,
         MiruPartitionCoord coord,
         MiruPartitionState state,
@@ -105,6 +112,7 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
         AtomicBoolean compactEndOfWAL) {
 
         this.miruStats = miruStats;
+        this.metricHandles = metricHandles;
         this.bitmaps = bitmaps;
         this.coord = coord;
         this.state = state;
@@ -129,6 +137,7 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
     }
 
     static <BM extends IBM, IBM, C extends MiruCursor<C, S>, S extends MiruSipCursor<S>> MiruPartitionAccessor<BM, IBM, C, S> initialize(MiruStats miruStats,
+        MiruMetricHandles metricHandles,
         MiruBitmaps<BM, IBM> bitmaps,
         MiruPartitionCoord coord,
         MiruPartitionState state,
@@ -141,6 +150,7 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
         boolean sipEndOfWAL,
         boolean compactEndOfWAL) {
         return new MiruPartitionAccessor<BM, IBM, C, S>(miruStats,
+            metricHandles,
             bitmaps,
             coord,
             state,
@@ -166,6 +176,7 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
 
     MiruPartitionAccessor<BM, IBM, C, S> copyToState(MiruPartitionState toState) {
         return new MiruPartitionAccessor<>(miruStats,
+            metricHandles,
             bitmaps,
             coord,
             toState,
@@ -365,7 +376,7 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
             if (chits.taken(coord) == 0) {
                 LOG.info("Skipped merge because no chits have been acquired for name:{} coord:{}", name, coord);
                 chits.refundAll(coord);
-                LOG.inc("merge>" + name + ">skip>count");
+                LOG.inc(metricHandles.merge(name).skipCount);
                 return;
             }
             long start = System.currentTimeMillis();
@@ -383,7 +394,7 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
             elapsed = System.currentTimeMillis() - start;
             chits.refundAll(coord);
         }
-        LOG.inc("merge>" + name + ">time>pow>" + FilerIO.chunkPower(elapsed, 0));
+        LOG.inc(metricHandles.merge(name).timePow(FilerIO.chunkPower(elapsed, 0)));
     }
 
     void refundChits(MiruMergeChits mergeChits) {
@@ -473,6 +484,26 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
         return consumedCount;
     }
 
+    /**
+     * Writes anything deferred by bulk indexing during rebuild, which must happen before the context is queried.
+     */
+    void flushBulk(MiruContext<BM, IBM, S> context, ExecutorService indexExecutor) throws Exception {
+        writeSemaphore.acquire();
+        try {
+            if (closed.get()) {
+                return;
+            }
+            synchronized (context.writeLock) {
+                indexer.flush(context, coord, indexExecutor);
+            }
+        } catch (Exception e) {
+            checkCorruption(context, e);
+            throw e;
+        } finally {
+            writeSemaphore.release();
+        }
+    }
+
     private void checkCorruption(MiruContext<BM, IBM, S> got, Exception e) {
         Throwable t = e;
         while (t != null) {
@@ -499,20 +530,18 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
             if (batchType == MiruPartitionedActivity.Type.BEGIN) {
                 count = handleBoundaryType(batch);
             } else if (batchType == MiruPartitionedActivity.Type.ACTIVITY) {
-                count = handleActivityType(got, batch, indexExecutor, stackBuffer);
+                count = handleActivityType(got, batch, strategy == IndexStrategy.rebuild, indexExecutor, stackBuffer);
             } else if (batchType == MiruPartitionedActivity.Type.REPAIR) {
-                count = handleRepairType(got, batch, indexExecutor, stackBuffer);
+                count = handleRepairType(got, batch, strategy == IndexStrategy.rebuild, indexExecutor, stackBuffer);
             } else if (batchType == MiruPartitionedActivity.Type.REMOVE) {
                 count = handleRemoveType(got, batch, stackBuffer);
             } else {
                 LOG.warn("Attempt to index unsupported type {}", batchType);
             }
-            miruStats.ingressed(strategy.name() + ">" + coord.tenantId.toString() + ">" + coord.partitionId.getId() + ">index", count,
-                System.currentTimeMillis() - start);
-            miruStats.ingressed(strategy.name() + ">" + coord.tenantId.toString() + ">" + coord.partitionId.getId() + ">total", total,
-                System.currentTimeMillis() - start);
-            miruStats.ingressed(strategy.name() + ">" + coord.tenantId.toString() + ">" + coord.partitionId.getId() + ">calls", 1,
-                System.currentTimeMillis() - start);
+            IngressMetrics ingressMetrics = metricHandles.ingress(strategy.name(), coord);
+            miruStats.ingressed(ingressMetrics.index, count, System.currentTimeMillis() - start);
+            miruStats.ingressed(ingressMetrics.total, total, System.currentTimeMillis() - start);
+            miruStats.ingressed(ingressMetrics.calls, 1, System.currentTimeMillis() - start);
             batch.clear();
         }
         return count;
@@ -525,29 +554,32 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
 
     private int handleActivityType(MiruContext<BM, IBM, S> got,
         List<MiruPartitionedActivity> partitionedActivities,
+        boolean bulk,
         ExecutorService indexExecutor,
         StackBuffer stackBuffer)
         throws Exception {
-        return handleActivities(got, partitionedActivities, indexExecutor, false, true, false, false, stackBuffer);
+        return handleActivities(got, partitionedActivities, bulk, indexExecutor, false, true, false, false, stackBuffer);
     }
 
     private int handleRepairType(MiruContext<BM, IBM, S> got,
         List<MiruPartitionedActivity> partitionedActivities,
+        boolean bulk,
         ExecutorService indexExecutor,
         StackBuffer stackBuffer)
         throws Exception {
-        return handleActivities(got, partitionedActivities, indexExecutor, true, true, false, false, stackBuffer);
+        return handleActivities(got, partitionedActivities, bulk, indexExecutor, true, true, false, false, stackBuffer);
     }
 
     private int handleRemoveType(MiruContext<BM, IBM, S> got,
         List<MiruPartitionedActivity> partitionedActivities,
         StackBuffer stackBuffer)
         throws Exception {
-        return handleActivities(got, partitionedActivities, null, false, false, true, true, stackBuffer);
+        return handleActivities(got, partitionedActivities, false, null, false, false, true, true, stackBuffer);
     }
 
     private int handleActivities(MiruContext<BM, IBM, S> got,
         List<MiruPartitionedActivity> partitionedActivities,
+        boolean bulk,
         ExecutorService indexExecutor,
         boolean indexHits,
         boolean indexMisses,
@@ -630,6 +662,9 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
         }
 
         List<MiruActivityAndId<MiruActivity>> indexables = Lists.newArrayListWithCapacity(partitionedActivities.size());
+        int lastIdBeforeIndex = timeIndex.lastId();
+        TIntList realtimeIds = new TIntArrayList();
+        TIntList clearedIds = new TIntArrayList();
 
         if ((indexHits || removeHits) && hits > 0) {
             timeIndex.nextId(stackBuffer, hitTimestamps, hitIds, hitMonotonics);
@@ -637,8 +672,14 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
             for (int i = 0; i < hits; i++) {
                 if (indexHits) {
                     indexables.add(new MiruActivityAndId<>(hitActivities[i], hitIds[i], hitMonotonics[i]));
+                    if (hitActivities[i].realtimeDelivery) {
+                        realtimeIds.add(hitIds[i]);
+                    } else {
+                        clearedIds.add(hitIds[i]);
+                    }
                 } else {
                     indexer.remove(got, hitActivities[i], hitIds[i]);
+                    clearedIds.add(hitIds[i]);
                 }
             }
         }
@@ -652,6 +693,9 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
             for (int i = 0; i < misses; i++) {
                 if (indexMisses) {
                     indexables.add(new MiruActivityAndId<>(missActivities[i], missIds[i], missMonotonics[i]));
+                    if (missActivities[i].realtimeDelivery) {
+                        realtimeIds.add(missIds[i]);
+                    }
                 } else {
                     indexer.remove(got, missActivities[i], missIds[i]);
                 }
@@ -663,12 +707,19 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
         if (!indexables.isEmpty()) {
             activityCount = indexables.size(); // indexer consumes, so count first
             Collections.sort(indexables);
-            indexer.index(got, coord, indexables, indexExecutor);
+            // track before indexing so realtime delivery never sees an indexed id that is missing from the realtime ids
+            got.realtimeIds.indexed(bitmaps, lastIdBeforeIndex, realtimeIds, clearedIds);
+            indexer.index(got, coord, indexables, bulk, indexExecutor);
+        } else {
+            got.realtimeIds.indexed(bitmaps, lastIdBeforeIndex, realtimeIds, clearedIds);
         }
         return activityCount;
     }
 
-    MiruRequestHandle<BM, IBM, S> getRequestHandle(TrackError trackError, MiruMergeChits persistentMergeChits, ExecutorService persistentMergeExecutor) {
+    MiruRequestHandle<BM, IBM, S> getRequestHandle(TrackError trackError,
+        MiruMergeChits persistentMergeChits,
+        ExecutorService persistentMergeExecutor,
+        MiruPartitionResultCache resultCache) {
         LOG.debug("Request handle requested for {}", coord);
 
         if (closed.get()) {
@@ -728,6 +779,14 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
                 return trackError;
             }
 
+            @Override
+            public MiruPartitionResultCache.PartitionResults getPartitionResults() {
+                if (resultCache == null || !persistentContext.isPresent() || !persistentContext.get().isClosed()) {
+                    return null;
+                }
+                return resultCache.scope(coord, persistentContext.get().version);
+            }
+
             @Override
             public void close() throws Exception {
                 readSemaphore.release();
@@ -736,7 +795,7 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
             @Override
             public void submit(ExecutorService executorService, MiruRequestHandle.AsyncQuestion<BM, IBM> asyncQuestion) {
                 executorService.submit(() -> {
-                    try (MiruRequestHandle<BM, IBM, S> requestHandle = getRequestHandle(trackError, persistentMergeChits, persistentMergeExecutor)) {
+                    try (MiruRequestHandle<BM, IBM, S> requestHandle = getRequestHandle(trackError, persistentMergeChits, persistentMergeExecutor, resultCache)) {
                         asyncQuestion.ask(requestHandle);
                     } catch (Exception x) {
                         LOG.error("Failed handling async request.", x);
@@ -828,6 +887,7 @@ public class MiruPartitionAccessor<BM extends IBM, IBM, C extends MiruCursor<C,
                 Optional<Boolean> newHasPersistentStorage) {
 
                 return MiruPartitionAccessor.initialize(miruStats,
+                    metricHandles,
                     bitmaps,
                     coord,
                     newState.or(state),
@@ -0,0 +1,98 @@
+package com.jivesoftware.os.miru.service.partition;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks a running latency percentile for every replica (coord) that has answered a solve, plus a per-host rollup
+ * for replicas that haven't answered yet. Used to decide when to hedge with another replica and which replicas to
+ * rank down before the first submit. Replicas and hosts that go unqueried for a while are forgotten, so moved or
+ * retired replicas don't accumulate.
+ */
+public class MiruReplicaLatencies {
+
+    private static final long DEFAULT_EXPIRE_AFTER_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Cache<MiruPartitionCoord, RunningPercentile> coordPercentile;
+    private final Cache<MiruHost, RunningPercentile> hostPercentile;
+
+    private final int windowSize;
+    private final int percentile;
+    private final double slowReplicaFactor;
+
+    public MiruReplicaLatencies(int windowSize, int percentile, double slowReplicaFactor) {
+        this(windowSize, percentile, slowReplicaFactor, DEFAULT_EXPIRE_AFTER_MILLIS);
+    }
+
+    /**
+     * @param windowSize        the number of recent latencies retained per coord and per host
+     * @param percentile        the percentile used as the hedge delay, e.g. 95
+     * @param slowReplicaFactor a replica whose percentile exceeds this multiple of its fastest sibling is considered slow
+     * @param expireAfterMillis a coord or host that is neither recorded nor looked up for this long is forgotten
+     */
+    public MiruReplicaLatencies(int windowSize, int percentile, double slowReplicaFactor, long expireAfterMillis) {
+        this.windowSize = windowSize;
+        this.percentile = percentile;
+        this.slowReplicaFactor = slowReplicaFactor;
+        this.coordPercentile = CacheBuilder.newBuilder()
+            .expireAfterAccess(expireAfterMillis, TimeUnit.MILLISECONDS)
+            .build();
+        this.hostPercentile = CacheBuilder.newBuilder()
+            .expireAfterAccess(expireAfterMillis, TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    /**
+     * Records the latency of a solve that answered.
+     */
+    public void record(MiruPartitionCoord coord, long latencyInMillis) {
+        getOrCreate(coordPercentile, coord).add(latencyInMillis);
+        getOrCreate(hostPercentile, coord.host).add(latencyInMillis);
+    }
+
+    private <K> RunningPercentile getOrCreate(Cache<K, RunningPercentile> cache, K key) {
+        RunningPercentile running = cache.getIfPresent(key);
+        if (running == null) {
+            RunningPercentile created = new RunningPercentile(windowSize, percentile);
+            RunningPercentile existing = cache.asMap().putIfAbsent(key, created);
+            running = existing != null ? existing : created;
+        }
+        return running;
+    }
+
+    /**
+     * Records a solve that was cancelled or failed before it answered, so its latency is only known to be at least the
+     * elapsed time. The sample is raised to the replica's current percentile, which keeps a replica that keeps losing from
+     * looking faster than the answers it does give.
+     */
+    public void recordCensored(MiruPartitionCoord coord, long elapsedInMillis) {
+        record(coord, Math.max(elapsedInMillis, latencyPercentile(coord)));
+    }
+
+    /**
+     * @return the latency percentile for the coord, falling back to its host, or -1 if neither has answered yet
+     */
+    public long latencyPercentile(MiruPartitionCoord coord) {
+        RunningPercentile coordLatency = coordPercentile.getIfPresent(coord);
+        if (coordLatency != null) {
+            long latency = coordLatency.get();
+            if (latency >= 0) {
+                return latency;
+            }
+        }
+        RunningPercentile hostLatency = hostPercentile.getIfPresent(coord.host);
+        return hostLatency != null ? hostLatency.get() : -1;
+    }
+
+    /**
+     * @param latency        the replica's latency percentile
+     * @param fastestLatency the fastest latency percentile among the replica's siblings
+     * @return true if both latencies are known and the replica is slower than the sibling by more than the slow replica factor
+     */
+    public boolean isSlow(long latency, long fastestLatency) {
+        return latency >= 0 && fastestLatency >= 0 && latency > (long) (Math.max(fastestLatency, 1) * slowReplicaFactor);
+    }
+}
@@ -0,0 +1,68 @@
+package com.jivesoftware.os.miru.service.partition;
+
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
+import com.jivesoftware.os.miru.api.wal.MiruWALClient;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.List;
+
+/**
+ * Long-polls the WAL for partitions with new activity and wakes their sips, so that hosted partitions don't have to find
+ * new activity by polling on a fixed delay. Runs until its thread is interrupted.
+ */
+public class MiruSipNotificationListener implements Runnable {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final MiruHost host;
+    private final MiruWALClient<?, ?> walClient;
+    private final MiruExpectedTenants expectedTenants;
+    private final long pollTimeoutMillis;
+    private final long sleepOnFailureMillis;
+
+    public MiruSipNotificationListener(MiruHost host,
+        MiruWALClient<?, ?> walClient,
+        MiruExpectedTenants expectedTenants,
+        long pollTimeoutMillis,
+        long sleepOnFailureMillis) {
+        this.host = host;
+        this.walClient = walClient;
+        this.expectedTenants = expectedTenants;
+        this.pollTimeoutMillis = pollTimeoutMillis;
+        this.sleepOnFailureMillis = sleepOnFailureMillis;
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<TenantAndPartition> notified = walClient.pollActivityNotifications(pollTimeoutMillis);
+                if (notified == null) {
+                    LOG.info("WAL lost track of notifications, waking all partitions");
+                    LOG.inc("sipNotifications>reset");
+                    expectedTenants.notifyAllActivity();
+                } else if (!notified.isEmpty()) {
+                    int hosted = 0;
+                    for (TenantAndPartition tenantAndPartition : notified) {
+                        if (expectedTenants.notifyActivity(new MiruPartitionCoord(tenantAndPartition.tenantId, tenantAndPartition.partitionId, host))) {
+                            hosted++;
+                        }
+                    }
+                    LOG.inc("sipNotifications>notified", notified.size());
+                    LOG.inc("sipNotifications>hosted", hosted);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception x) {
+                LOG.error("Failed to poll activity notifications, will retry in {} ms", new Object[] { sleepOnFailureMillis }, x);
+                try {
+                    Thread.sleep(sleepOnFailureMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -265,6 +265,29 @@ public class MiruClusterExpectedTenants implements MiruExpectedTenants {
         return true;
     }
 
+    @Override
+    public boolean notifyActivity(MiruPartitionCoord coord) throws Exception {
+        MiruTenantTopology<?, ?> topology = localTopologies.get(coord.tenantId);
+        if (topology == null) {
+            return false;
+        }
+        Optional<? extends MiruLocalHostedPartition<?, ?, ?, ?>> partition = topology.getPartition(coord.partitionId);
+        if (partition.isPresent()) {
+            partition.get().notifyActivity();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void notifyAllActivity() throws Exception {
+        for (MiruTenantTopology<?, ?> topology : localTopologies.values()) {
+            for (MiruLocalHostedPartition<?, ?, ?, ?> hostedPartition : topology.allPartitions()) {
+                hostedPartition.notifyActivity();
+            }
+        }
+    }
+
     @Override
     public boolean rebuildTimeRange(MiruTimeRange miruTimeRange, boolean hotDeploy, boolean chunkStores, boolean labIndex) throws Exception {
         for (Map.Entry<MiruTenantId, MiruTenantTopology<?, ?>> entry : localTopologies.entrySet()) {
@@ -0,0 +1,214 @@
+package com.jivesoftware.os.miru.service.realtime;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.jive.utils.ordered.id.TimestampedOrderIdProvider;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.miru.api.MiruStats;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.realtime.MiruRealtimeDelivery;
+import com.jivesoftware.os.miru.api.realtime.RealtimeUpdate;
+import com.jivesoftware.os.miru.api.realtime.RealtimeUpdates;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.routing.bird.http.client.HttpResponse;
+import com.jivesoftware.os.routing.bird.http.client.TailAtScaleStrategy;
+import com.jivesoftware.os.routing.bird.http.client.TenantAwareHttpClient;
+import com.jivesoftware.os.routing.bird.shared.ClientCall.ClientResponse;
+import com.jivesoftware.os.routing.bird.shared.NextClientStrategy;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Buffers realtime updates from every partition on this host and delivers them once per tenant per coalescing window,
+ * as snappy compressed {@link RealtimeUpdates}, instead of making one call per partition sip. Updates from a failed
+ * delivery are requeued for the next window, minus any that have aged past the drop threshold. Each tenant holds at most
+ * maxPendingPerTenant updates, dropping its oldest first, so a receiver that stays down cannot grow the buffer without bound.
+ */
+public class CoalescingRealtimeDelivery implements MiruRealtimeDelivery {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final MiruHost miruHost;
+    private final TenantAwareHttpClient<String> deliveryClient;
+    private final String batchDeliveryEndpoint;
+    private final ObjectMapper objectMapper;
+    private final MiruStats miruStats;
+    private final TimestampedOrderIdProvider orderIdProvider;
+    private final long dropRealtimeDeliveryOlderThanNMillis;
+    private final int maxPendingPerTenant;
+    private final ExecutorService tasExecutors;
+    private final int tasWindowSize;
+    private final float tasPercentile;
+    private final long tasInitialSLAMillis;
+
+    private final Map<MiruTenantId, NextClientStrategy> tenantNextClientStrategy = Maps.newConcurrentMap();
+    private final Object pendingLock = new Object();
+    private Map<MiruTenantId, TenantPending> pending = Maps.newHashMap();
+
+    public CoalescingRealtimeDelivery(MiruHost miruHost,
+        TenantAwareHttpClient<String> deliveryClient,
+        String batchDeliveryEndpoint,
+        ObjectMapper objectMapper,
+        MiruStats miruStats,
+        TimestampedOrderIdProvider orderIdProvider,
+        long dropRealtimeDeliveryOlderThanNMillis,
+        int maxPendingPerTenant,
+        ExecutorService tasExecutors,
+        int tasWindowSize,
+        float tasPercentile,
+        long tasInitialSLAMillis) {
+        this.miruHost = miruHost;
+        this.deliveryClient = deliveryClient;
+        this.batchDeliveryEndpoint = batchDeliveryEndpoint;
+        this.objectMapper = objectMapper;
+        this.miruStats = miruStats;
+        this.orderIdProvider = orderIdProvider;
+        this.dropRealtimeDeliveryOlderThanNMillis = dropRealtimeDeliveryOlderThanNMillis;
+        this.maxPendingPerTenant = maxPendingPerTenant;
+        this.tasExecutors = tasExecutors;
+        this.tasWindowSize = tasWindowSize;
+        this.tasPercentile = tasPercentile;
+        this.tasInitialSLAMillis = tasInitialSLAMillis;
+    }
+
+    public void start(ScheduledExecutorService scheduledExecutor, long coalesceWindowMillis) {
+        scheduledExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Throwable t) {
+                LOG.error("Failed to flush coalesced realtime deliveries", t);
+            }
+        }, coalesceWindowMillis, coalesceWindowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int deliver(MiruPartitionCoord coord, List<Long> activityTimes) throws Exception {
+        List<Long> deliverables = RoutingBirdRealtimeDelivery.filter(orderIdProvider, dropRealtimeDeliveryOlderThanNMillis, activityTimes);
+        if (deliverables.isEmpty()) {
+            return 0;
+        }
+        synchronized (pendingLock) {
+            TenantPending tenantPending = pending.computeIfAbsent(coord.tenantId, key -> new TenantPending());
+            tenantPending.add(coord, deliverables);
+            tenantPending.cap();
+        }
+        return deliverables.size();
+    }
+
+    void flush() throws Exception {
+        Map<MiruTenantId, TenantPending> flushing;
+        synchronized (pendingLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            flushing = pending;
+            pending = Maps.newHashMap();
+        }
+
+        for (Map.Entry<MiruTenantId, TenantPending> entry : flushing.entrySet()) {
+            MiruTenantId tenantId = entry.getKey();
+            TenantPending tenantPending = entry.getValue();
+            List<RealtimeUpdate> updates = Lists.newArrayListWithCapacity(tenantPending.coordTimes.size());
+            for (Map.Entry<MiruPartitionCoord, List<Long>> coordTimes : tenantPending.coordTimes.entrySet()) {
+                updates.add(new RealtimeUpdate(miruHost, coordTimes.getKey(), coordTimes.getValue()));
+            }
+            int count = tenantPending.count;
+
+            long start = System.currentTimeMillis();
+            try {
+                post(tenantId, Snappy.compress(objectMapper.writeValueAsBytes(new RealtimeUpdates(miruHost, tenantId, updates))));
+                miruStats.egressed("realtime>delivery>success", count, System.currentTimeMillis() - start);
+                LOG.inc("realtime>coalesced>calls");
+                LOG.inc("realtime>coalesced>partitions", updates.size());
+            } catch (Exception e) {
+                miruStats.egressed("realtime>delivery>failure", count, System.currentTimeMillis() - start);
+                LOG.warn("Failed to deliver {} coalesced realtime updates for tenant:{}, will retry", new Object[] { count, tenantId }, e);
+                requeue(tenantId, tenantPending);
+            }
+        }
+    }
+
+    void post(MiruTenantId tenantId, byte[] bytes) throws Exception {
+        NextClientStrategy nextClientStrategy = tenantNextClientStrategy.computeIfAbsent(tenantId,
+            (key) -> new TailAtScaleStrategy(tasExecutors, tasWindowSize, tasPercentile, tasInitialSLAMillis));
+        deliveryClient.call("", nextClientStrategy, "deliverRealtimeBatch", httpClient -> {
+            HttpResponse httpResponse = httpClient.postBytes(batchDeliveryEndpoint, bytes, null);
+            if (httpResponse.getStatusCode() < 200 || httpResponse.getStatusCode() >= 300) {
+                throw new MiruRealtimeDeliveryException("Invalid response code: " + httpResponse.getStatusCode());
+            }
+            return new ClientResponse<Void>(null, true);
+        });
+    }
+
+    int pendingCount(MiruTenantId tenantId) {
+        synchronized (pendingLock) {
+            TenantPending tenantPending = pending.get(tenantId);
+            return tenantPending == null ? 0 : tenantPending.count;
+        }
+    }
+
+    private void requeue(MiruTenantId tenantId, TenantPending failed) {
+        // failed updates are older than anything that arrived since, so they go first and are the first to be dropped
+        TenantPending retry = new TenantPending();
+        for (Map.Entry<MiruPartitionCoord, List<Long>> entry : failed.coordTimes.entrySet()) {
+            retry.add(entry.getKey(), RoutingBirdRealtimeDelivery.filter(orderIdProvider, dropRealtimeDeliveryOlderThanNMillis, entry.getValue()));
+        }
+        LOG.inc("realtime>coalesced>expired", failed.count - retry.count);
+        synchronized (pendingLock) {
+            TenantPending since = pending.get(tenantId);
+            if (since != null) {
+                for (Map.Entry<MiruPartitionCoord, List<Long>> entry : since.coordTimes.entrySet()) {
+                    retry.add(entry.getKey(), entry.getValue());
+                }
+            }
+            retry.cap();
+            if (retry.count > 0) {
+                pending.put(tenantId, retry);
+            } else {
+                pending.remove(tenantId);
+            }
+        }
+    }
+
+    private class TenantPending {
+
+        private final Map<MiruPartitionCoord, List<Long>> coordTimes = Maps.newLinkedHashMap();
+        private int count;
+
+        private void add(MiruPartitionCoord coord, List<Long> activityTimes) {
+            if (!activityTimes.isEmpty()) {
+                coordTimes.computeIfAbsent(coord, key -> Lists.newArrayList()).addAll(activityTimes);
+                count += activityTimes.size();
+            }
+        }
+
+        private void cap() {
+            int overflow = count - maxPendingPerTenant;
+            if (overflow <= 0) {
+                return;
+            }
+            int dropped = 0;
+            Iterator<List<Long>> iter = coordTimes.values().iterator();
+            while (dropped < overflow && iter.hasNext()) {
+                List<Long> times = iter.next();
+                int drop = Math.min(times.size(), overflow - dropped);
+                if (drop == times.size()) {
+                    iter.remove();
+                } else {
+                    times.subList(0, drop).clear();
+                }
+                dropped += drop;
+            }
+            count -= dropped;
+            LOG.inc("realtime>coalesced>dropped", dropped);
+        }
+    }
+}
@@ -65,7 +65,7 @@ public class RoutingBirdRealtimeDelivery implements MiruRealtimeDelivery {
 
     @Override
     public int deliver(MiruPartitionCoord coord, List<Long> activityTimes) throws Exception {
-        List<Long> deliverables = filter(activityTimes);
+        List<Long> deliverables = filter(orderIdProvider, dropRealtimeDeliveryOlderThanNMillis, activityTimes);
         long start = System.currentTimeMillis();
         try {
             NextClientStrategy nextClientStrategy = tenantNextClientStrategy.computeIfAbsent(coord.tenantId,
@@ -92,7 +92,7 @@ public class RoutingBirdRealtimeDelivery implements MiruRealtimeDelivery {
         }
     }
 
-    private List<Long> filter(List<Long> activityTimes) {
+    static List<Long> filter(TimestampedOrderIdProvider orderIdProvider, long dropRealtimeDeliveryOlderThanNMillis, List<Long> activityTimes) {
         if (dropRealtimeDeliveryOlderThanNMillis > 0) {
             long cutoffOrderId = orderIdProvider.getApproximateId(System.currentTimeMillis() - dropRealtimeDeliveryOlderThanNMillis);
             List<Long> deliverables = Lists.newArrayList();
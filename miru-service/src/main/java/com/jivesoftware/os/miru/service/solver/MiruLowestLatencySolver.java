@@ -1,6 +1,7 @@
 package com.jivesoftware.os.miru.service.solver;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.jivesoftware.os.miru.api.MiruPartitionCoord;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
@@ -9,6 +10,9 @@ import com.jivesoftware.os.miru.plugin.solution.MiruSolution;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolvable;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles.SolveMetrics;
+import com.jivesoftware.os.miru.service.partition.MiruReplicaLatencies;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import com.jivesoftware.os.mlogger.core.ValueType;
@@ -35,16 +39,37 @@ public class MiruLowestLatencySolver implements MiruSolver {
     private final int maxNumberOfSolvers;
     private final long defaultAddAnotherSolverAfterNMillis;
     private final long failAfterNMillis;
+    private final long minAddAnotherSolverAfterNMillis;
+    private final MiruReplicaLatencies replicaLatencies;
+    private final MiruMetricHandles metricHandles;
 
     public MiruLowestLatencySolver(
         int initialSolvers,
         int maxNumberOfSolvers,
         long defaultAddAnotherSolverAfterNMillis,
-        long failAfterNMillis) {
+        long failAfterNMillis,
+        long minAddAnotherSolverAfterNMillis,
+        MiruReplicaLatencies replicaLatencies,
+        MiruMetricHandles metricHandles) {
         this.initialSolvers = initialSolvers;
         this.maxNumberOfSolvers = maxNumberOfSolvers;
         this.defaultAddAnotherSolverAfterNMillis = defaultAddAnotherSolverAfterNMillis;
         this.failAfterNMillis = failAfterNMillis;
+        this.minAddAnotherSolverAfterNMillis = minAddAnotherSolverAfterNMillis;
+        this.replicaLatencies = Preconditions.checkNotNull(replicaLatencies);
+        this.metricHandles = metricHandles;
+    }
+
+    /**
+     * Hedge against the most recently submitted replica once it exceeds its own latency percentile. Falls back to the
+     * caller's suggestion (or the default) until the replica has answered enough solves to have a percentile.
+     */
+    private long addAnotherSolverAfterNMillis(MiruPartitionCoord coord, long fallbackMillis) {
+        long latency = replicaLatencies.latencyPercentile(coord);
+        if (latency >= 0) {
+            return Math.max(latency, minAddAnotherSolverAfterNMillis);
+        }
+        return fallbackMillis;
     }
 
     @Override
@@ -59,24 +84,26 @@ public class MiruLowestLatencySolver implements MiruSolver {
         throws InterruptedException {
 
         long failAfterTime = System.currentTimeMillis() + failAfterNMillis;
-        long addAnotherSolverAfterNMillis = suggestedTimeoutInMillis.or(defaultAddAnotherSolverAfterNMillis);
+        long fallbackAddAnotherSolverAfterNMillis = suggestedTimeoutInMillis.or(defaultAddAnotherSolverAfterNMillis);
+        long addAnotherSolverAtTime = Long.MAX_VALUE;
 
         CompletionService<MiruPartitionResponse<R>> completionService = new ExecutorCompletionService<>(executor);
         int solversAdded = 0;
         int solversSuccess = 0;
         int solversFailed = 0;
         long startTime = System.currentTimeMillis();
+        SolveMetrics metrics = metricHandles.solve(requestName, queryKey);
         List<SolvableFuture<R>> futures = new ArrayList<>(initialSolvers);
         List<MiruPartitionCoord> triedPartitions = new ArrayList<>(initialSolvers);
         MiruSolved<R> solved = null;
         try {
-            log.set(ValueType.COUNT, "solve>request>" + requestName + ">" + queryKey + ">timeout", suggestedTimeoutInMillis.or(-1L));
+            log.set(ValueType.COUNT, metrics.timeout, suggestedTimeoutInMillis.or(-1L));
             log.inc("solve>calls");
-            log.inc("solve>request>" + requestName + ">" + queryKey + ">calls");
+            log.inc(metrics.calls);
 
             if (!solvables.hasNext()) {
                 log.inc("solve>empty");
-                log.inc("solve>request>" + requestName + ">" + queryKey + ">empty");
+                log.inc(metrics.empty);
                 solutionLog.log(MiruSolutionLogLevel.WARN, "WARNING: No solvables available tenant={} partition={}", tenantId, partitionId);
                 return null;
             }
@@ -85,69 +112,83 @@ public class MiruLowestLatencySolver implements MiruSolver {
                 MiruSolvable<R> solvable = solvables.next();
                 solutionLog.log(MiruSolutionLogLevel.INFO, "Initial solver index={} coord={}", solversAdded, solvable.getCoord());
                 triedPartitions.add(solvable.getCoord());
-                futures.add(new SolvableFuture<>(solvable, completionService.submit(solvable), System.currentTimeMillis()));
+                long submitTime = System.currentTimeMillis();
+                futures.add(new SolvableFuture<>(solvable, completionService.submit(solvable), submitTime));
+                addAnotherSolverAtTime = submitTime + addAnotherSolverAfterNMillis(solvable.getCoord(), fallbackAddAnotherSolverAfterNMillis);
                 log.inc("solve>initial");
-                log.inc("solve>request>" + requestName + ">" + queryKey + ">initial");
+                log.inc(metrics.initial);
                 solversAdded++;
             }
             while (solversFailed < maxNumberOfSolvers && System.currentTimeMillis() < failAfterTime) {
                 boolean mayAddSolver = (solversAdded < maxNumberOfSolvers && solvables.hasNext());
                 long timeout = Math.max(failAfterTime - System.currentTimeMillis(), 0);
                 if (timeout == 0) {
-                    log.inc("solve>request>" + requestName + ">" + queryKey + ">outOfTime");
+                    log.inc(metrics.outOfTime);
                     solutionLog.log(MiruSolutionLogLevel.WARN, "WARNING: Ran out of time. Took more than {} millis to compute a solution.", failAfterTime);
                     break; // out of time
                 }
                 if (mayAddSolver) {
-                    timeout = Math.min(timeout, addAnotherSolverAfterNMillis);
+                    timeout = Math.min(timeout, Math.max(addAnotherSolverAtTime - System.currentTimeMillis(), 0));
                 }
                 solutionLog.log(MiruSolutionLogLevel.INFO, "Polling completion service for {} millis", timeout);
                 Future<MiruPartitionResponse<R>> future = completionService.poll(timeout, TimeUnit.MILLISECONDS);
                 if (future != null) {
+                    // should be few enough of these that we prefer a linear lookup
+                    SolvableFuture<R> completed = null;
+                    for (SolvableFuture<R> f : futures) {
+                        if (f.future == future) {
+                            completed = f;
+                            break;
+                        }
+                    }
+                    long completedElapsed = completed != null ? System.currentTimeMillis() - completed.startTime : -1;
                     try {
                         MiruPartitionResponse<R> response = future.get();
                         if (response != null) {
-                            // should be few enough of these that we prefer a linear lookup
-                            for (SolvableFuture<R> f : futures) {
-                                if (f.future == future) {
-                                    MiruPartitionCoord coord = f.solvable.getCoord();
-                                    solutionLog.log(MiruSolutionLogLevel.INFO, "Got a solution coord={}.", coord);
-                                    long usedResultElapsed = System.currentTimeMillis() - f.startTime;
-                                    long totalElapsed = System.currentTimeMillis() - startTime;
-                                    solved = new MiruSolved<>(
-                                        new MiruSolution(coord,
-                                            usedResultElapsed,
-                                            totalElapsed,
-                                            triedPartitions,
-                                            response.log),
-                                        response.answer);
-                                    log.inc("solve>success");
-                                    log.inc("solve>request>" + requestName + ">" + queryKey + ">success");
-                                    String locality = f.solvable.isLocal() ? "local" : "remote";
-                                    log.incBucket("solve>throughput>success>" + locality, 1_000L, 100);
-                                    log.incBucket("solve>throughput>success>" + locality + ">" + requestName + ">" + queryKey, 1_000L, 100);
-                                    MiruSolutionLog solvableSolutionLog = f.solvable.getSolutionLog();
-                                    if (solvableSolutionLog != null) {
-                                        for (String l : solvableSolutionLog.asList()) {
-                                            solutionLog.log(MiruSolutionLogLevel.INFO, "[{}] {}", coord, l);
-                                        }
+                            if (completed != null) {
+                                MiruPartitionCoord coord = completed.solvable.getCoord();
+                                replicaLatencies.record(coord, completedElapsed);
+                                solutionLog.log(MiruSolutionLogLevel.INFO, "Got a solution coord={}.", coord);
+                                long totalElapsed = System.currentTimeMillis() - startTime;
+                                solved = new MiruSolved<>(
+                                    new MiruSolution(coord,
+                                        completedElapsed,
+                                        totalElapsed,
+                                        triedPartitions,
+                                        response.log),
+                                    response.answer);
+                                log.inc("solve>success");
+                                log.inc(metrics.success);
+                                if (completed.solvable.isLocal()) {
+                                    log.incBucket(SolveMetrics.THROUGHPUT_SUCCESS_LOCAL, 1_000L, 100);
+                                    log.incBucket(metrics.throughputSuccessLocal, 1_000L, 100);
+                                } else {
+                                    log.incBucket(SolveMetrics.THROUGHPUT_SUCCESS_REMOTE, 1_000L, 100);
+                                    log.incBucket(metrics.throughputSuccessRemote, 1_000L, 100);
+                                }
+                                MiruSolutionLog solvableSolutionLog = completed.solvable.getSolutionLog();
+                                if (solvableSolutionLog != null) {
+                                    for (String l : solvableSolutionLog.asList()) {
+                                        solutionLog.log(MiruSolutionLogLevel.INFO, "[{}] {}", coord, l);
                                     }
-                                    if (response.log != null) {
-                                        for (String l : response.log) {
-                                            solutionLog.log(MiruSolutionLogLevel.INFO, "[{}] {}", coord, l);
-                                        }
+                                }
+                                if (response.log != null) {
+                                    for (String l : response.log) {
+                                        solutionLog.log(MiruSolutionLogLevel.INFO, "[{}] {}", coord, l);
                                     }
-                                    solversSuccess++;
-                                    break;
                                 }
-                            }
-                            if (solved == null) {
+                                solversSuccess++;
+                            } else {
                                 log.error("Unmatched future");
                                 solutionLog.log(MiruSolutionLogLevel.ERROR, "Unmatched future.");
                             }
                             break;
                         } else {
-                            log.inc("solve>request>" + requestName + ">" + queryKey + ">solvableFailed");
+                            if (completed != null) {
+                                // no answer, so it only tells us an answer would have taken at least this long
+                                replicaLatencies.recordCensored(completed.solvable.getCoord(), completedElapsed);
+                            }
+                            log.inc(metrics.solvableFailed);
                             solversFailed++;
                         }
                     } catch (ExecutionException e) {
@@ -163,42 +204,56 @@ public class MiruLowestLatencySolver implements MiruSolver {
                             cause = cause.getCause();
                         }
                         if (interrupted) {
-                            log.inc("solve>request>" + requestName + ">" + queryKey + ">solvableInterrupted");
+                            log.inc(metrics.solvableInterrupted);
                         } else {
-                            log.inc("solve>request>" + requestName + ">" + queryKey + ">solvableError>" + e.getCause().getClass().getSimpleName());
+                            log.inc(metrics.solvableError + e.getCause().getClass().getSimpleName());
+                        }
+                        if (completed != null) {
+                            // a failure is not an answer, so it only tells us the answer would have taken at least this long
+                            replicaLatencies.recordCensored(completed.solvable.getCoord(), completedElapsed);
                         }
 
                         log.debug("Solver failed to execute", e.getCause());
                         log.incBucket("solve>throughput>failure", 1_000L, 100);
-                        log.incBucket("solve>throughput>failure>" + requestName + ">" + queryKey, 1_000L, 100);
+                        log.incBucket(metrics.throughputFailure, 1_000L, 100);
                         solutionLog.log(MiruSolutionLogLevel.WARN, "WARNING: Solver failed to execute. cause: {}", e.getMessage());
                         solversFailed++;
                     }
                 } else {
-                    log.inc("solve>request>" + requestName + ">" + queryKey + ">moreSolvers");
+                    log.inc(metrics.moreSolvers);
                     solutionLog.log(MiruSolutionLogLevel.WARN, "No solution completed within {} millis. Will add addition solver if possible.", timeout);
                 }
+                if (mayAddSolver && future == null && System.currentTimeMillis() < addAnotherSolverAtTime) {
+                    // woke early without a result, keep waiting out the hedge delay
+                    continue;
+                }
                 if (mayAddSolver) {
                     MiruSolvable<R> solvable = solvables.next();
                     solutionLog.log(MiruSolutionLogLevel.INFO, "Added a solver coord={}", solvable.getCoord());
                     log.inc("solve>added");
-                    log.inc("solve>request>" + requestName + ">" + queryKey + ">added");
+                    log.inc(metrics.added);
                     triedPartitions.add(solvable.getCoord());
-                    futures.add(new SolvableFuture<>(solvable, completionService.submit(solvable), System.currentTimeMillis()));
+                    long submitTime = System.currentTimeMillis();
+                    futures.add(new SolvableFuture<>(solvable, completionService.submit(solvable), submitTime));
+                    addAnotherSolverAtTime = submitTime + addAnotherSolverAfterNMillis(solvable.getCoord(), fallbackAddAnotherSolverAfterNMillis);
                     solversAdded++;
                 } else if (solversFailed == solversAdded) {
-                    log.inc("solve>request>" + requestName + ">" + queryKey + ">allFailed");
+                    log.inc(metrics.allFailed);
                     solutionLog.log(MiruSolutionLogLevel.ERROR, "All solvers failed to execute.");
                     break;
                 }
             }
         } finally {
+            long cancelTime = System.currentTimeMillis();
             for (SolvableFuture<R> f : futures) {
-                f.future.cancel(true);
+                if (f.future.cancel(true)) {
+                    // abandoned before it answered, so its latency is at least as long as we waited
+                    replicaLatencies.recordCensored(f.solvable.getCoord(), cancelTime - f.startTime);
+                }
             }
             int abandoned = solversAdded - solversSuccess - solversFailed;
             log.incBucket("solve>throughput>abandoned", 1_000L, 100, abandoned);
-            log.incBucket("solve>throughput>abandoned>" + requestName + ">" + queryKey, 1_000L, 100, abandoned);
+            log.incBucket(metrics.throughputAbandoned, 1_000L, 100, abandoned);
         }
 
         return solved;
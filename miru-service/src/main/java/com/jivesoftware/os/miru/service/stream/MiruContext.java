@@ -15,10 +15,12 @@ import com.jivesoftware.os.miru.plugin.index.MiruAuthzIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruFieldIndexProvider;
 import com.jivesoftware.os.miru.plugin.index.MiruInboxIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruRemovalIndex;
+import com.jivesoftware.os.miru.plugin.index.MiruRollupIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruSipIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
 import com.jivesoftware.os.miru.plugin.index.MiruTimeIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruUnreadTrackingIndex;
+import com.jivesoftware.os.miru.plugin.solution.MiruSharedFilters;
 import com.jivesoftware.os.miru.service.index.Closeable;
 import com.jivesoftware.os.miru.service.index.Commitable;
 import com.jivesoftware.os.miru.service.index.Compactable;
@@ -48,6 +50,8 @@ public class MiruContext<BM extends IBM, IBM, S extends MiruSipCursor<S>> implem
     public final MiruRemovalIndex<BM, IBM> removalIndex;
     public final MiruUnreadTrackingIndex<BM, IBM> unreadTrackingIndex;
     public final MiruInboxIndex<BM, IBM> inboxIndex;
+    public final MiruRollupIndex rollupIndex;
+    public final MiruSharedFilters<BM, IBM> sharedFilters;
     public final MiruPluginCacheProvider cacheProvider;
     public final MiruActivityInternExtern activityInternExtern;
     public final StripingLocksProvider<MiruStreamId> streamLocks;
@@ -55,6 +59,8 @@ public class MiruContext<BM extends IBM, IBM, S extends MiruSipCursor<S>> implem
     public final LABEnvironment[] labEnvironments;
     public final MiruBackingStorage storage;
     public final Object writeLock = new Object();
+    public final MiruPrimaryFieldRuns primaryFieldRuns = new MiruPrimaryFieldRuns();
+    public final MiruRealtimeIds<BM, IBM> realtimeIds = new MiruRealtimeIds<>();
     public final AtomicBoolean corrupt = new AtomicBoolean(false);
     public final MiruRebuildDirector.Token rebuildToken;
     public final AtomicBoolean closed = new AtomicBoolean(false);
@@ -75,6 +81,8 @@ public class MiruContext<BM extends IBM, IBM, S extends MiruSipCursor<S>> implem
         MiruRemovalIndex<BM, IBM> removalIndex,
         MiruUnreadTrackingIndex<BM, IBM> unreadTrackingIndex,
         MiruInboxIndex<BM, IBM> inboxIndex,
+        MiruRollupIndex rollupIndex,
+        MiruSharedFilters<BM, IBM> sharedFilters,
         MiruPluginCacheProvider cacheProvider,
         MiruActivityInternExtern activityInternExtern,
         StripingLocksProvider<MiruStreamId> streamLocks,
@@ -97,6 +105,8 @@ public class MiruContext<BM extends IBM, IBM, S extends MiruSipCursor<S>> implem
         this.removalIndex = removalIndex;
         this.unreadTrackingIndex = unreadTrackingIndex;
         this.inboxIndex = inboxIndex;
+        this.rollupIndex = rollupIndex;
+        this.sharedFilters = sharedFilters;
         this.cacheProvider = cacheProvider;
         this.activityInternExtern = activityInternExtern;
         this.streamLocks = streamLocks;
@@ -160,6 +170,16 @@ public class MiruContext<BM extends IBM, IBM, S extends MiruSipCursor<S>> implem
         return inboxIndex;
     }
 
+    @Override
+    public MiruRollupIndex getRollupIndex() {
+        return rollupIndex;
+    }
+
+    @Override
+    public MiruSharedFilters<BM, IBM> getSharedFilters() {
+        return sharedFilters;
+    }
+
     @Override
     public MiruPluginCacheProvider getCacheProvider() {
         return cacheProvider;
@@ -2,8 +2,6 @@ package com.jivesoftware.os.miru.service.stream;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.jivesoftware.os.filer.chunk.store.transaction.MapBackedKeyedFPIndex;
 import com.jivesoftware.os.filer.chunk.store.transaction.MapCreator;
@@ -54,18 +52,20 @@ import com.jivesoftware.os.miru.plugin.index.MiruFieldIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruFieldIndexProvider;
 import com.jivesoftware.os.miru.plugin.index.MiruInboxIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruRemovalIndex;
+import com.jivesoftware.os.miru.plugin.index.MiruRollupIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruSipIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruSipIndexMarshaller;
 import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
 import com.jivesoftware.os.miru.plugin.index.MiruTimeIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruUnreadTrackingIndex;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.plugin.solution.MiruSharedFilters;
 import com.jivesoftware.os.miru.service.index.KeyedFilerProvider;
 import com.jivesoftware.os.miru.service.index.MiruFilerProvider;
 import com.jivesoftware.os.miru.service.index.TimeIdIndex;
+import com.jivesoftware.os.miru.service.index.auth.MiruAuthzBitmapCache;
 import com.jivesoftware.os.miru.service.index.auth.MiruAuthzCache;
 import com.jivesoftware.os.miru.service.index.auth.MiruAuthzUtils;
-import com.jivesoftware.os.miru.service.index.auth.VersionedAuthzExpression;
 import com.jivesoftware.os.miru.service.index.filer.MiruFilerActivityIndex;
 import com.jivesoftware.os.miru.service.index.filer.MiruFilerAuthzIndex;
 import com.jivesoftware.os.miru.service.index.filer.MiruFilerFieldIndex;
@@ -80,11 +80,15 @@ import com.jivesoftware.os.miru.service.index.lab.LabFieldIndex;
 import com.jivesoftware.os.miru.service.index.lab.LabInboxIndex;
 import com.jivesoftware.os.miru.service.index.lab.LabRemovalIndex;
 import com.jivesoftware.os.miru.service.index.lab.LabSipIndex;
+import com.jivesoftware.os.miru.service.index.lab.LabTermOrdinals;
 import com.jivesoftware.os.miru.service.index.lab.LabTimeIndex;
 import com.jivesoftware.os.miru.service.index.lab.LabUnreadTrackingIndex;
+import com.jivesoftware.os.miru.service.index.lab.MiruHotTermBitmapCache;
+import com.jivesoftware.os.miru.service.index.rollup.MiruInMemoryRollupIndex;
 import com.jivesoftware.os.miru.service.locator.MiruPartitionCoordIdentifier;
 import com.jivesoftware.os.miru.service.locator.MiruResourceLocator;
 import com.jivesoftware.os.miru.service.locator.MiruResourcePartitionIdentifier;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import com.jivesoftware.os.miru.service.partition.PartitionErrorTracker;
 import com.jivesoftware.os.miru.service.stream.cache.FilerPluginCacheProvider;
 import com.jivesoftware.os.miru.service.stream.cache.LabPluginCacheProvider;
@@ -99,7 +103,6 @@ import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.builder.HashCodeBuilder;
@@ -131,11 +134,13 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
     private final Map<MiruBackingStorage, MiruChunkAllocator> allocators;
     private final MiruSipIndexMarshaller<S> sipMarshaller;
     private final MiruResourceLocator diskResourceLocator;
-    private final int partitionAuthzCacheSize;
+    private final MiruAuthzBitmapCache authzBitmapCache;
+    private final MiruHotTermBitmapCache hotTermBitmapCache;
     private final StripingLocksProvider<MiruTermId> fieldIndexStripingLocksProvider;
     private final StripingLocksProvider<MiruStreamId> streamStripingLocksProvider;
     private final StripingLocksProvider<String> authzStripingLocksProvider;
     private final PartitionErrorTracker partitionErrorTracker;
+    private final MiruMetricHandles metricHandles;
     private final MiruInterner<MiruTermId> termInterner;
     private final ObjectMapper objectMapper;
     private final long maxHeapPressureInBytes;
@@ -146,6 +151,11 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
     private final boolean realtimeDelivery;
     private final boolean fsyncOnCommit;
     private final boolean timeIndexVerboseLogging;
+    private final long rollupGranularityInMillis;
+    private final String[] rollupFieldNames;
+    private final long rollupMaxSizeInBytes;
+    private final long sharedFilterWindowMillis;
+    private final int sharedFilterMaxEntries;
 
     public MiruContextFactory(OrderIdProvider idProvider,
         TxCogs persistentCogs,
@@ -159,11 +169,13 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
         Map<MiruBackingStorage, MiruChunkAllocator> allocators,
         MiruSipIndexMarshaller<S> sipMarshaller,
         MiruResourceLocator diskResourceLocator,
-        int partitionAuthzCacheSize,
+        MiruAuthzBitmapCache authzBitmapCache,
+        MiruHotTermBitmapCache hotTermBitmapCache,
         StripingLocksProvider<MiruTermId> fieldIndexStripingLocksProvider,
         StripingLocksProvider<MiruStreamId> streamStripingLocksProvider,
         StripingLocksProvider<String> authzStripingLocksProvider,
         PartitionErrorTracker partitionErrorTracker,
+        MiruMetricHandles metricHandles,
         MiruInterner<MiruTermId> termInterner,
         ObjectMapper objectMapper,
         long maxHeapPressureInBytes,
@@ -173,7 +185,12 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
         boolean useLabIndexes,
         boolean realtimeDelivery,
         boolean fsyncOnCommit,
-        boolean timeIndexVerboseLogging) {
+        boolean timeIndexVerboseLogging,
+        long rollupGranularityInMillis,
+        String[] rollupFieldNames,
+        long rollupMaxSizeInBytes,
+        long sharedFilterWindowMillis,
+        int sharedFilterMaxEntries) {
 
         this.idProvider = idProvider;
         this.persistentCogs = persistentCogs;
@@ -187,11 +204,13 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
         this.allocators = allocators;
         this.sipMarshaller = sipMarshaller;
         this.diskResourceLocator = diskResourceLocator;
-        this.partitionAuthzCacheSize = partitionAuthzCacheSize;
+        this.authzBitmapCache = authzBitmapCache;
+        this.hotTermBitmapCache = hotTermBitmapCache;
         this.fieldIndexStripingLocksProvider = fieldIndexStripingLocksProvider;
         this.streamStripingLocksProvider = streamStripingLocksProvider;
         this.authzStripingLocksProvider = authzStripingLocksProvider;
         this.partitionErrorTracker = partitionErrorTracker;
+        this.metricHandles = metricHandles;
         this.termInterner = termInterner;
         this.objectMapper = objectMapper;
         this.maxHeapPressureInBytes = maxHeapPressureInBytes;
@@ -202,6 +221,11 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
         this.realtimeDelivery = realtimeDelivery;
         this.fsyncOnCommit = fsyncOnCommit;
         this.timeIndexVerboseLogging = timeIndexVerboseLogging;
+        this.rollupGranularityInMillis = rollupGranularityInMillis;
+        this.rollupFieldNames = rollupFieldNames;
+        this.rollupMaxSizeInBytes = rollupMaxSizeInBytes;
+        this.sharedFilterWindowMillis = sharedFilterWindowMillis;
+        this.sharedFilterMaxEntries = sharedFilterMaxEntries;
     }
 
     public MiruBackingStorage findBackingStorage(MiruPartitionCoord coord) throws Exception {
@@ -356,6 +380,7 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
 
             fieldIndexes[fieldType.getIndex()] = new MiruFilerFieldIndex<>(bitmaps,
                 trackError,
+                metricHandles,
                 indexes,
                 cardinalities,
                 fieldIndexStripingLocksProvider,
@@ -369,15 +394,13 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
 
         MiruAuthzUtils<BM, IBM> authzUtils = new MiruAuthzUtils<>(bitmaps);
 
-        Cache<VersionedAuthzExpression, BM> authzCache = CacheBuilder.newBuilder()
-            .maximumSize(partitionAuthzCacheSize)
-            .expireAfterAccess(1, TimeUnit.MINUTES) //TODO should be adjusted with respect to tuning GC (prevent promotion from eden space)
-            .build();
-        MiruAuthzCache<BM, IBM> miruAuthzCache = new MiruAuthzCache<>(bitmaps, authzCache, activityInternExtern, authzUtils);
+        MiruAuthzCache<BM, IBM> miruAuthzCache = new MiruAuthzCache<>(bitmaps, authzBitmapCache.partition(coord.tenantId), activityInternExtern,
+            authzUtils);
 
         MiruAuthzIndex<BM, IBM> authzIndex = new MiruFilerAuthzIndex<>(
             bitmaps,
             trackError,
+            metricHandles,
             new TxKeyedFilerStore<>(cogs, seed, chunkStores, keyBytes("authzIndex"), false,
                 TxNamedMapOfFiler.CHUNK_FILER_CREATOR,
                 TxNamedMapOfFiler.CHUNK_FILER_OPENER,
@@ -389,6 +412,7 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
         MiruRemovalIndex<BM, IBM> removalIndex = new MiruFilerRemovalIndex<>(
             bitmaps,
             trackError,
+            metricHandles,
             new TxKeyedFilerStore<>(cogs, seed, chunkStores, keyBytes("removalIndex"), false,
                 TxNamedMapOfFiler.CHUNK_FILER_CREATOR,
                 TxNamedMapOfFiler.CHUNK_FILER_OPENER,
@@ -400,6 +424,7 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
         MiruUnreadTrackingIndex<BM, IBM> unreadTrackingIndex = new MiruFilerUnreadTrackingIndex<>(
             bitmaps,
             trackError,
+            metricHandles,
             new TxKeyedFilerStore<>(cogs, seed, chunkStores, keyBytes("unreadTrackingIndex"), false,
                 TxNamedMapOfFiler.CHUNK_FILER_CREATOR,
                 TxNamedMapOfFiler.CHUNK_FILER_OPENER,
@@ -410,6 +435,7 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
         MiruInboxIndex<BM, IBM> inboxIndex = new MiruFilerInboxIndex<>(
             bitmaps,
             trackError,
+            metricHandles,
             new TxKeyedFilerStore<>(cogs, seed, chunkStores, keyBytes("inboxIndex"), false,
                 TxNamedMapOfFiler.CHUNK_FILER_CREATOR,
                 TxNamedMapOfFiler.CHUNK_FILER_OPENER,
@@ -433,6 +459,8 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
             removalIndex,
             unreadTrackingIndex,
             inboxIndex,
+            buildRollupIndex(schema),
+            buildSharedFilters(),
             cacheProvider,
             activityInternExtern,
             streamLocks,
@@ -450,6 +478,29 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
         return context;
     }
 
+    private MiruRollupIndex buildRollupIndex(MiruSchema schema) {
+        if (rollupGranularityInMillis <= 0 || rollupMaxSizeInBytes <= 0) {
+            return null;
+        }
+        boolean[] rolledUpFieldIds = new boolean[schema.fieldCount()];
+        boolean any = false;
+        for (String fieldName : rollupFieldNames) {
+            int fieldId = schema.getFieldId(fieldName.trim());
+            if (fieldId >= 0) {
+                rolledUpFieldIds[fieldId] = true;
+                any = true;
+            }
+        }
+        return any ? new MiruInMemoryRollupIndex(rollupGranularityInMillis, rolledUpFieldIds, rollupMaxSizeInBytes) : null;
+    }
+
+    private <BM extends IBM, IBM> MiruSharedFilters<BM, IBM> buildSharedFilters() {
+        if (sharedFilterWindowMillis < 0 || sharedFilterMaxEntries <= 0) {
+            return null;
+        }
+        return new MiruSharedFilters<>(sharedFilterWindowMillis, sharedFilterMaxEntries);
+    }
+
     private TimeIdIndex getTimeIdIndex(long version) {
         return timeIdIndexes[Math.abs((int) hash(version) % timeIdIndexes.length)];
     }
@@ -589,15 +640,53 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
             hashIndexEnabled));
         commitables.add(timeAndVersionIndex);
 
+        LabTermOrdinals termOrdinals = null;
+        ValueIndex<byte[]> ordinalStorage = null;
+        if (schema.isTermOrdinals()) {
+            ValueIndex<byte[]> termOrdinalIndex = labEnvironments[Math.abs((seed + 3) % labEnvironments.length)].open(new ValueIndexConfig("termOrdinals",
+                4096,
+                maxHeapPressureInBytes,
+                10 * 1024 * 1024,
+                -1L,
+                -1L,
+                NoOpFormatTransformerProvider.NAME,
+                KeyValueRawhide.NAME,
+                MemoryRawEntryFormat.NAME,
+                20,
+                labHashIndexType,
+                hashIndexLoadFactor,
+                hashIndexEnabled));
+            commitables.add(termOrdinalIndex);
+            termOrdinals = new LabTermOrdinals(idProvider, termOrdinalIndex, 64);
+
+            ordinalStorage = labEnvironments[Math.abs((seed + 3) % labEnvironments.length)].open(new ValueIndexConfig("ordinalStorage",
+                4096,
+                maxHeapPressureInBytes,
+                10 * 1024 * 1024,
+                -1L,
+                -1L,
+                NoOpFormatTransformerProvider.NAME,
+                KeyValueRawhide.NAME,
+                MemoryRawEntryFormat.NAME,
+                20,
+                labHashIndexType,
+                hashIndexLoadFactor,
+                hashIndexEnabled));
+            commitables.add(ordinalStorage);
+        }
+
         MiruActivityIndex activityIndex = new LabActivityIndex(
             idProvider,
             monotime,
             realtime,
+            schema.isColumnarActivityStorage(),
             timeAndVersionIndex,
             intTermIdsKeyValueMarshaller,
             metaIndex,
             keyBytes("lastId"),
-            termStorage);
+            termStorage,
+            termOrdinals,
+            ordinalStorage);
 
         TrackError trackError = partitionErrorTracker.track(coord);
 
@@ -673,6 +762,8 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
             }
         }
 
+        MiruHotTermBitmapCache.PartitionHotTermBitmaps hotTermBitmaps = atomized && hotTermBitmapCache.isEnabled() ? hotTermBitmapCache.partition() : null;
+
         @SuppressWarnings("unchecked")
         MiruFieldIndex<BM, IBM>[] fieldIndexes = new MiruFieldIndex[MiruFieldType.values().length];
         for (MiruFieldType fieldType : MiruFieldType.values()) {
@@ -690,6 +781,7 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
             fieldIndexes[fieldType.getIndex()] = new LabFieldIndex<>(idProvider,
                 bitmaps,
                 trackError,
+                metricHandles,
                 atomized,
                 bitmapPrefix,
                 bitmapIndex,
@@ -698,7 +790,8 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
                 cardinalityPrefix,
                 cardinalityIndex,
                 fieldIndexStripingLocksProvider,
-                termInterner);
+                termInterner,
+                hotTermBitmaps);
         }
         MiruFieldIndexProvider<BM, IBM> fieldIndexProvider = new MiruFieldIndexProvider<>(fieldIndexes);
 
@@ -714,6 +807,7 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
             idProvider,
             bitmaps,
             trackError,
+            metricHandles,
             atomized,
             metaIndex,
             keyBytes("removal"),
@@ -723,6 +817,7 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
             idProvider,
             bitmaps,
             trackError,
+            metricHandles,
             new byte[] { SHARED_UNREAD_BITMAP }, //TODO add config version to allow clean slate rollover
             new byte[] { SHARED_UNREAD_LAST_ACTIVITY_INDEX }, //TODO add config version to allow clean slate rollover
             new byte[] { SHARED_UNREAD_CURSORS }, //TODO add config version to allow clean slate rollover
@@ -735,6 +830,7 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
             idProvider,
             bitmaps,
             trackError,
+            metricHandles,
             new byte[] { SHARED_INBOX },
             atomized,
             bitmapIndex,
@@ -742,16 +838,14 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
 
         MiruAuthzUtils<BM, IBM> authzUtils = new MiruAuthzUtils<>(bitmaps);
 
-        Cache<VersionedAuthzExpression, BM> authzCache = CacheBuilder.newBuilder()
-            .maximumSize(partitionAuthzCacheSize)
-            .expireAfterAccess(1, TimeUnit.MINUTES) //TODO should be adjusted with respect to tuning GC (prevent promotion from eden space)
-            .build();
-        MiruAuthzCache<BM, IBM> miruAuthzCache = new MiruAuthzCache<>(bitmaps, authzCache, activityInternExtern, authzUtils);
+        MiruAuthzCache<BM, IBM> miruAuthzCache = new MiruAuthzCache<>(bitmaps, authzBitmapCache.partition(coord.tenantId), activityInternExtern,
+            authzUtils);
 
         MiruAuthzIndex<BM, IBM> authzIndex = new LabAuthzIndex<>(
             idProvider,
             bitmaps,
             trackError,
+            metricHandles,
             new byte[] { SHARED_AUTHZ },
             atomized,
             bitmapIndex,
@@ -761,7 +855,7 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
         StripingLocksProvider<MiruStreamId> streamLocks = new StripingLocksProvider<>(64);
 
         LabPluginCacheProvider<BM, IBM> cacheProvider = new LabPluginCacheProvider<>(idProvider, labEnvironments, labPluginCacheProviderLocks,
-            labPluginByteArrayLocks, bitmaps, trackError, atomized, hashIndexEnabled);
+            labPluginByteArrayLocks, bitmaps, trackError, metricHandles, atomized, hashIndexEnabled);
 
         MiruContext<BM, IBM, S> context = new MiruContext<>(version,
             getTimeIdIndex(version),
@@ -775,6 +869,8 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
             removalIndex,
             unreadTrackingIndex,
             inboxIndex,
+            buildRollupIndex(schema),
+            buildSharedFilters(),
             cacheProvider,
             activityInternExtern,
             streamLocks,
@@ -805,6 +901,9 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
                 cacheProvider.close(true, fsyncOnCommit);
                 getAllocator(storage).close(labEnvironments);
 
+                if (hotTermBitmaps != null) {
+                    hotTermBitmaps.clear();
+                }
             },
             () -> getAllocator(storage).remove(labEnvironments),
             (executorService, waitForCompletion) -> {
@@ -95,9 +95,15 @@ public class MiruIndexPrimaryFields<BM extends IBM, IBM> {
         return workFutures;
     }
 
+    /**
+     * Writes the composed work to the primary field index. When runs are given, work for indexed fields is accumulated
+     * instead and written by a later {@link #flush}. Fields that are indexedFirst or indexedLatest are always written
+     * directly, since the former depends on order of arrival and the latter reads back the primary index as it goes.
+     */
     public List<Future<?>> index(final MiruContext<BM, IBM, ?> context,
         MiruTenantId tenantId,
         List<Future<List<PrimaryIndexWork>>> fieldWorkFutures,
+        MiruPrimaryFieldRuns runs,
         ExecutorService indexExecutor)
         throws Exception {
 
@@ -109,6 +115,15 @@ public class MiruIndexPrimaryFields<BM extends IBM, IBM> {
         for (int fieldId = 0; fieldId < work.length; fieldId++) {
             List<PrimaryIndexWork> fieldWork = work[fieldId];
             MiruFieldDefinition fieldDefinition = context.getSchema().getFieldDefinition(fieldId);
+            if (runs != null
+                && fieldDefinition.type.hasFeature(MiruFieldDefinition.Feature.indexed)
+                && !fieldDefinition.type.hasFeature(MiruFieldDefinition.Feature.indexedLatest)) {
+                for (PrimaryIndexWork primaryIndexWork : fieldWork) {
+                    runs.add(fieldId, primaryIndexWork.fieldValue, primaryIndexWork.ids, primaryIndexWork.counts);
+                }
+                log.inc("count>accumulate", fieldWork.size());
+                continue;
+            }
             for (final PrimaryIndexWork primaryIndexWork : fieldWork) {
                 futures.add(indexExecutor.submit(() -> {
                     StackBuffer stackBuffer = new StackBuffer();
@@ -135,6 +150,38 @@ public class MiruIndexPrimaryFields<BM extends IBM, IBM> {
         return futures;
     }
 
+    /**
+     * Drains the accumulated runs, writing each term with a single set of all its ids.
+     */
+    public List<Future<?>> flush(final MiruContext<BM, IBM, ?> context,
+        MiruTenantId tenantId,
+        MiruPrimaryFieldRuns runs,
+        ExecutorService indexExecutor)
+        throws Exception {
+
+        final MiruFieldIndex<BM, IBM> fieldIndex = context.getFieldIndexProvider().getFieldIndex(MiruFieldType.primary);
+        MiruFieldDefinition[] fieldDefinitions = context.getSchema().getFieldDefinitions();
+        List<Future<?>> futures = Lists.newArrayList();
+        for (MiruFieldDefinition fieldDefinition : fieldDefinitions) {
+            List<PrimaryIndexWork> fieldWork = runs.drain(fieldDefinition.fieldId);
+            for (final PrimaryIndexWork primaryIndexWork : fieldWork) {
+                futures.add(indexExecutor.submit(() -> {
+                    StackBuffer stackBuffer = new StackBuffer();
+                    log.inc("count>set", primaryIndexWork.ids.size());
+                    log.inc("count>set", primaryIndexWork.ids.size(), tenantId.toString());
+                    log.inc("count>flush", primaryIndexWork.ids.size());
+                    fieldIndex.set(fieldDefinition,
+                        primaryIndexWork.fieldValue,
+                        primaryIndexWork.ids.toArray(),
+                        primaryIndexWork.counts != null ? primaryIndexWork.counts.toArray() : null,
+                        stackBuffer);
+                    return null;
+                }));
+            }
+        }
+        return futures;
+    }
+
     private List<PrimaryIndexWork>[] awaitFieldWorkFutures(List<Future<List<PrimaryIndexWork>>> fieldWorkFutures)
         throws InterruptedException, ExecutionException {
 
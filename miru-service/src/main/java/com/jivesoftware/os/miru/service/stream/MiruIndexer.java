@@ -1,13 +1,19 @@
 package com.jivesoftware.os.miru.service.stream;
 
+import com.google.common.collect.Lists;
 import com.jivesoftware.os.filer.io.api.StackBuffer;
 import com.jivesoftware.os.miru.api.MiruPartitionCoord;
 import com.jivesoftware.os.miru.api.activity.MiruActivity;
+import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition;
+import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
+import com.jivesoftware.os.miru.api.base.MiruTermId;
 import com.jivesoftware.os.miru.plugin.index.MiruActivityAndId;
 import com.jivesoftware.os.miru.plugin.index.MiruInternalActivity;
+import com.jivesoftware.os.miru.plugin.index.MiruRollupIndex;
 import com.jivesoftware.os.miru.plugin.index.TimeVersionRealtime;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -23,30 +29,65 @@ public class MiruIndexer<BM extends IBM, IBM> {
 
     private final static MetricLogger log = MetricLoggerFactory.getLogger();
 
+    private static final int INTERN_PARTITIONS = 48;
+
+    private static final int STAGE_INTERN = 0;
+    private static final int STAGE_COMPOSE = 1;
+    private static final int STAGE_PRIMARY = 2;
+    private static final int STAGE_OTHER = 3;
+    private static final int STAGE_READY = 4;
+    private static final String[] STAGES = { "intern", "compose", "primary", "other", "ready" };
+    private static final String[] STAGE_ACTIVITIES = new String[STAGES.length];
+    private static final String[] STAGE_BACKLOG = new String[STAGES.length];
+    private static final String[] STAGE_WAIT = new String[STAGES.length];
+    private static final String FLUSH_WAIT = "indexer>pipeline>flush>waitMillis";
+
+    static {
+        for (int i = 0; i < STAGES.length; i++) {
+            STAGE_ACTIVITIES[i] = "indexer>pipeline>" + STAGES[i] + ">activities";
+            STAGE_BACKLOG[i] = "indexer>pipeline>" + STAGES[i] + ">backlog";
+            STAGE_WAIT[i] = "indexer>pipeline>" + STAGES[i] + ">waitMillis";
+        }
+    }
+
     private final MiruIndexAuthz<BM, IBM> indexAuthz;
     private final MiruIndexPrimaryFields<BM, IBM> indexPrimaryFields;
     private final MiruIndexValueBits<BM, IBM> indexValueBits;
     private final MiruIndexBloom<BM, IBM> indexBloom;
     private final MiruIndexLatest<BM, IBM> indexLatest;
     private final MiruIndexPairedLatest<BM, IBM> indexPairedLatest;
+    private final int pipelineBatchSize;
+    private final long bulkRebuildMaxIds;
 
     public MiruIndexer(MiruIndexAuthz<BM, IBM> indexAuthz,
         MiruIndexPrimaryFields<BM, IBM> indexPrimaryFields,
         MiruIndexValueBits<BM, IBM> indexValueBits,
         MiruIndexBloom<BM, IBM> indexBloom,
         MiruIndexLatest<BM, IBM> indexLatest,
-        MiruIndexPairedLatest<BM, IBM> indexPairedLatest) {
+        MiruIndexPairedLatest<BM, IBM> indexPairedLatest,
+        int pipelineBatchSize,
+        long bulkRebuildMaxIds) {
         this.indexAuthz = indexAuthz;
         this.indexPrimaryFields = indexPrimaryFields;
         this.indexValueBits = indexValueBits;
         this.indexBloom = indexBloom;
         this.indexLatest = indexLatest;
         this.indexPairedLatest = indexPairedLatest;
+        this.pipelineBatchSize = pipelineBatchSize;
+        this.bulkRebuildMaxIds = bulkRebuildMaxIds;
+    }
+
+    /**
+     * @return true if bulk indexing is enabled, in which case callers must {@link #flush} before the context is queried
+     */
+    public boolean isBulkEnabled() {
+        return bulkRebuildMaxIds > 0;
     }
 
     public void index(final MiruContext<BM, IBM, ?> context,
         final MiruPartitionCoord coord,
         final List<MiruActivityAndId<MiruActivity>> activityAndIds,
+        boolean bulk,
         ExecutorService indexExecutor)
         throws Exception {
 
@@ -54,75 +95,127 @@ public class MiruIndexer<BM extends IBM, IBM> {
             return;
         }
 
+        // bulk runs defer primary field writes so each term is written once per flush instead of once per batch
+        MiruPrimaryFieldRuns runs = bulk && isBulkEnabled() ? context.primaryFieldRuns : null;
+
         @SuppressWarnings("unchecked")
         final List<MiruActivityAndId<MiruInternalActivity>> internalActivityAndIds = Arrays.<MiruActivityAndId<MiruInternalActivity>>asList(
             new MiruActivityAndId[activityAndIds.size()]);
 
         log.debug("Start: Index batch of {}", activityAndIds.size());
 
-        final int numPartitions = 48;
-        final int numActivities = internalActivityAndIds.size();
-        final int partitionSize = (numActivities + numPartitions - 1) / numPartitions;
+        List<IndexChunk> chunks = Lists.newArrayList();
+        for (int i = 0; i < activityAndIds.size(); i += pipelineBatchSize) {
+            int to = Math.min(i + pipelineBatchSize, activityAndIds.size());
+            chunks.add(new IndexChunk(activityAndIds.subList(i, to), internalActivityAndIds.subList(i, to)));
+        }
 
-        List<Future<?>> internFutures = new ArrayList<>(numPartitions);
-        for (int i = 0; i < activityAndIds.size(); i += partitionSize) {
-            final int startOfSubList = i;
-            internFutures.add(indexExecutor.submit(() -> {
-                StackBuffer stackBuffer = new StackBuffer();
-                context.activityInternExtern.intern(activityAndIds, startOfSubList, partitionSize, internalActivityAndIds, context.getSchema(), stackBuffer);
-                return null;
-            }));
+        // Each chunk flows through the stages in order, and each stage handles one chunk at a time, so successive chunks overlap
+        // (e.g. chunk N+1 composes while chunk N writes its primary fields) and at most one chunk per stage is ever in flight.
+        // The caller blocks until the last chunk is ready, which pushes back on indexInternal.
+        int numStages = STAGES.length;
+        for (int step = 0; step < chunks.size() + numStages - 1; step++) {
+            for (int stage = numStages - 1; stage >= 0; stage--) {
+                int c = step - stage;
+                if (c < 0 || c >= chunks.size()) {
+                    continue;
+                }
+                IndexChunk chunk = chunks.get(c);
+                if (stage > 0) {
+                    awaitFutures(chunk.futures, STAGE_WAIT[stage - 1]);
+                }
+                if (stage == numStages - 1 && c > 0) {
+                    awaitFutures(chunks.get(c - 1).futures, STAGE_WAIT[stage]);
+                }
+                log.inc(STAGE_ACTIVITIES[stage], chunk.activityAndIds.size());
+                log.set(ValueType.COUNT, STAGE_BACKLOG[stage], chunks.size() - c - 1);
+                chunk.futures = startStage(stage, context, coord, chunk, runs, indexExecutor);
+            }
         }
-        awaitFutures(internFutures, "indexIntern");
+        awaitFutures(chunks.get(chunks.size() - 1).futures, STAGE_WAIT[numStages - 1]);
 
-        // free for GC before we begin indexing
+        // free for GC
         activityAndIds.clear();
 
-        // 1. Compose work
-        List<Future<List<PrimaryIndexWork>>> primaryFieldsComposed = indexPrimaryFields.compose(context, internalActivityAndIds, indexExecutor);
-
-        // 2. Index field values work
-        List<Future<?>> primaryFieldFutures = indexPrimaryFields.index(context, coord.tenantId, primaryFieldsComposed, indexExecutor);
-
-        // 3. Wait for completion
-        awaitFutures(primaryFieldFutures, "indexPrimaryFields");
-
-        // 4. Index remaining work
-        final List<Future<?>> otherFutures = new ArrayList<>();
-        otherFutures.addAll(indexAuthz.index(context, coord.tenantId, internalActivityAndIds, indexExecutor));
-        otherFutures.addAll(indexLatest.index(context, coord.tenantId, internalActivityAndIds, indexExecutor));
-
-        // 5. Update activity index
-        otherFutures.add(indexExecutor.submit(() -> {
-            StackBuffer stackBuffer = new StackBuffer();
-            context.activityIndex.set(context.getSchema(), internalActivityAndIds, stackBuffer);
-            return null;
-        }));
-
-        /*TODO really? reevaluate if we need removes
-        // 6. Update removal index
-        otherFutures.add(indexExecutor.submit(() -> {
-            // repairs also unhide (remove from removal)
-            log.inc("count>remove", activityAndIds.size());
-            log.inc("count>remove", activityAndIds.size(), coord.tenantId.toString());
-            StackBuffer stackBuffer = new StackBuffer();
-            TIntList ids = new TIntArrayList();
-            for (MiruActivityAndId<MiruActivity> activityAndId : activityAndIds) {
-                ids.add(activityAndId.id);
-            }
-            context.removalIndex.remove(stackBuffer, ids.toArray());
-            return null;
-        }));
-        */
+        if (runs != null && runs.numIds() >= bulkRebuildMaxIds) {
+            flush(context, coord, indexExecutor);
+        }
 
-        // 7. Wait for completion
-        awaitFutures(otherFutures, "indexOther");
+        log.debug("End: Index batch of {}", internalActivityAndIds.size());
+    }
 
-        // 8. Mark as ready
-        StackBuffer stackBuffer = new StackBuffer();
-        context.activityIndex.ready(internalActivityAndIds.get(internalActivityAndIds.size() - 1).id, stackBuffer);
+    /**
+     * Writes any primary field runs accumulated by bulk indexing. Blocks until the writes complete.
+     */
+    public void flush(MiruContext<BM, IBM, ?> context, MiruPartitionCoord coord, ExecutorService indexExecutor) throws Exception {
+        MiruPrimaryFieldRuns runs = context.primaryFieldRuns;
+        if (runs.isEmpty()) {
+            return;
+        }
+        long numIds = runs.numIds();
+        long start = System.currentTimeMillis();
+        awaitFutures(indexPrimaryFields.flush(context, coord.tenantId, runs, indexExecutor), FLUSH_WAIT);
+        log.inc("indexer>bulk>flush>calls");
+        log.inc("indexer>bulk>flush>ids", numIds);
+        log.inc("indexer>bulk>flush>millis", System.currentTimeMillis() - start);
+    }
 
-        log.debug("End: Index batch of {}", internalActivityAndIds.size());
+    private List<? extends Future<?>> startStage(int stage,
+        MiruContext<BM, IBM, ?> context,
+        MiruPartitionCoord coord,
+        IndexChunk chunk,
+        MiruPrimaryFieldRuns runs,
+        ExecutorService indexExecutor) throws Exception {
+
+        List<MiruActivityAndId<MiruInternalActivity>> internalActivityAndIds = chunk.internalActivityAndIds;
+        switch (stage) {
+            case STAGE_INTERN:
+                int numActivities = chunk.activityAndIds.size();
+                int partitionSize = (numActivities + INTERN_PARTITIONS - 1) / INTERN_PARTITIONS;
+                List<Future<?>> internFutures = new ArrayList<>(INTERN_PARTITIONS);
+                for (int i = 0; i < numActivities; i += partitionSize) {
+                    final int startOfSubList = i;
+                    internFutures.add(indexExecutor.submit(() -> {
+                        StackBuffer stackBuffer = new StackBuffer();
+                        context.activityInternExtern.intern(chunk.activityAndIds, startOfSubList, partitionSize, internalActivityAndIds,
+                            context.getSchema(), stackBuffer);
+                        return null;
+                    }));
+                }
+                return internFutures;
+
+            case STAGE_COMPOSE:
+                chunk.primaryFieldsComposed = indexPrimaryFields.compose(context, internalActivityAndIds, indexExecutor);
+                return chunk.primaryFieldsComposed;
+
+            case STAGE_PRIMARY:
+                List<Future<?>> primaryFieldFutures = indexPrimaryFields.index(context, coord.tenantId, chunk.primaryFieldsComposed, runs,
+                    indexExecutor);
+                chunk.primaryFieldsComposed = null;
+                return primaryFieldFutures;
+
+            case STAGE_OTHER:
+                // Repairs may have added terms to ids that existing rollups already cover
+                invalidateRollups(context, internalActivityAndIds);
+
+                List<Future<?>> otherFutures = new ArrayList<>();
+                otherFutures.addAll(indexAuthz.index(context, coord.tenantId, internalActivityAndIds, indexExecutor));
+                otherFutures.addAll(indexLatest.index(context, coord.tenantId, internalActivityAndIds, indexExecutor));
+                otherFutures.add(indexExecutor.submit(() -> {
+                    StackBuffer stackBuffer = new StackBuffer();
+                    context.activityIndex.set(context.getSchema(), internalActivityAndIds, stackBuffer);
+                    return null;
+                }));
+                return otherFutures;
+
+            case STAGE_READY:
+                StackBuffer stackBuffer = new StackBuffer();
+                context.activityIndex.ready(internalActivityAndIds.get(internalActivityAndIds.size() - 1).id, stackBuffer);
+                return Collections.emptyList();
+
+            default:
+                throw new IllegalArgumentException("Unknown stage: " + stage);
+        }
     }
 
     public void set(MiruContext<BM, IBM, ?> context, List<MiruActivityAndId<MiruActivity>> activityAndIds) throws Exception {
@@ -156,18 +249,73 @@ public class MiruIndexer<BM extends IBM, IBM> {
             // hide (add to removal)
             context.removalIndex.set(stackBuffer, id);
 
+            // rollups count the terms we are about to replace, so invalidate them before the activity index is updated
+            invalidateRollups(context, id, existing.monoTimestamp, stackBuffer);
+
             // finally, update the activity index
             context.activityIndex.setAndReady(context.getSchema(), internalActivity, stackBuffer);
         }
     }
 
-    private void awaitFutures(List<Future<?>> futures, String futureName) throws InterruptedException, ExecutionException {
+    private void invalidateRollups(MiruContext<BM, IBM, ?> context,
+        List<MiruActivityAndId<MiruInternalActivity>> internalActivityAndIds) throws Exception {
+        MiruRollupIndex rollupIndex = context.rollupIndex;
+        if (rollupIndex == null) {
+            return;
+        }
+        int lastId = context.activityIndex.lastId(new StackBuffer());
+        for (MiruActivityAndId<MiruInternalActivity> activityAndId : internalActivityAndIds) {
+            if (activityAndId.id > lastId) {
+                continue;
+            }
+            MiruTermId[][] fieldsValues = activityAndId.activity.fieldsValues;
+            for (int fieldId = 0; fieldId < fieldsValues.length; fieldId++) {
+                if (fieldsValues[fieldId] != null && rollupIndex.isRolledUp(fieldId)) {
+                    rollupIndex.invalidate(fieldId, fieldsValues[fieldId], activityAndId.monoTimestamp);
+                }
+            }
+        }
+    }
+
+    private void invalidateRollups(MiruContext<BM, IBM, ?> context, int id, long monoTimestamp, StackBuffer stackBuffer) throws Exception {
+        MiruRollupIndex rollupIndex = context.rollupIndex;
+        if (rollupIndex == null) {
+            return;
+        }
+        MiruSchema schema = context.getSchema();
+        for (MiruFieldDefinition fieldDefinition : schema.getFieldDefinitions()) {
+            if (rollupIndex.isRolledUp(fieldDefinition.fieldId)) {
+                MiruTermId[] termIds = context.activityIndex.get("remove", id, fieldDefinition, stackBuffer);
+                if (termIds != null) {
+                    rollupIndex.invalidate(fieldDefinition.fieldId, termIds, monoTimestamp);
+                }
+            }
+        }
+    }
+
+    private void awaitFutures(List<? extends Future<?>> futures, String waitMetric) throws InterruptedException, ExecutionException {
         long start = System.currentTimeMillis();
         for (Future<?> future : futures) {
             future.get();
         }
+        long elapsed = System.currentTimeMillis() - start;
+        log.inc(waitMetric, elapsed);
         if (log.isTraceEnabled()) {
-            log.trace(futureName + ": Finished waiting for futures in " + (System.currentTimeMillis() - start) + " ms");
+            log.trace("{}: Finished waiting for futures in {} ms", waitMetric, elapsed);
+        }
+    }
+
+    private static class IndexChunk {
+
+        private final List<MiruActivityAndId<MiruActivity>> activityAndIds;
+        private final List<MiruActivityAndId<MiruInternalActivity>> internalActivityAndIds;
+        private List<Future<List<PrimaryIndexWork>>> primaryFieldsComposed;
+        private List<? extends Future<?>> futures;
+
+        private IndexChunk(List<MiruActivityAndId<MiruActivity>> activityAndIds,
+            List<MiruActivityAndId<MiruInternalActivity>> internalActivityAndIds) {
+            this.activityAndIds = activityAndIds;
+            this.internalActivityAndIds = internalActivityAndIds;
         }
     }
 }
@@ -0,0 +1,122 @@
+package com.jivesoftware.os.miru.service.stream;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.miru.api.base.MiruTermId;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates per-term id runs for the primary field index across rebuild batches, so that each term is read and written
+ * once per flush rather than once per batch. Runs are kept in id order; an id that arrives out of order (e.g. a repair)
+ * marks its run for a sort and dedupe at drain time, where the latest count for an id wins.
+ */
+public class MiruPrimaryFieldRuns {
+
+    private final Map<Integer, Map<MiruTermId, Run>> fieldRuns = Maps.newHashMap();
+    private long numIds = 0;
+
+    public synchronized void add(int fieldId, MiruTermId termId, TIntList ids, TLongList counts) {
+        Map<MiruTermId, Run> termRuns = fieldRuns.get(fieldId);
+        if (termRuns == null) {
+            termRuns = Maps.newHashMap();
+            fieldRuns.put(fieldId, termRuns);
+        }
+        Run run = termRuns.get(termId);
+        if (run == null) {
+            run = new Run(counts != null);
+            termRuns.put(termId, run);
+        }
+        run.add(ids, counts);
+        numIds += ids.size();
+    }
+
+    /**
+     * @return the number of ids accumulated since the last drain, including duplicates
+     */
+    public synchronized long numIds() {
+        return numIds;
+    }
+
+    public synchronized boolean isEmpty() {
+        return numIds == 0;
+    }
+
+    /**
+     * Removes and returns the accumulated runs for the given field, each with sorted and unique ids, largest first.
+     */
+    synchronized List<PrimaryIndexWork> drain(int fieldId) {
+        Map<MiruTermId, Run> termRuns = fieldRuns.remove(fieldId);
+        if (termRuns == null) {
+            return Collections.emptyList();
+        }
+        List<PrimaryIndexWork> workList = Lists.newArrayListWithCapacity(termRuns.size());
+        for (Map.Entry<MiruTermId, Run> entry : termRuns.entrySet()) {
+            Run run = entry.getValue();
+            numIds -= run.ids.size();
+            run.sortAndDedupe();
+            workList.add(new PrimaryIndexWork(entry.getKey(), run.ids, run.counts));
+        }
+        Collections.sort(workList);
+        return workList;
+    }
+
+    private static class Run {
+
+        private TIntList ids = new TIntArrayList();
+        private TLongList counts;
+        private boolean sorted = true;
+
+        private Run(boolean hasCardinality) {
+            this.counts = hasCardinality ? new TLongArrayList() : null;
+        }
+
+        private void add(TIntList addIds, TLongList addCounts) {
+            if (!addIds.isEmpty() && !ids.isEmpty() && addIds.get(0) <= ids.get(ids.size() - 1)) {
+                sorted = false;
+            }
+            ids.addAll(addIds);
+            if (counts != null) {
+                counts.addAll(addCounts);
+            }
+        }
+
+        private void sortAndDedupe() {
+            if (sorted) {
+                return;
+            }
+            int size = ids.size();
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            // stable, so later additions of the same id stay later
+            Arrays.sort(order, (a, b) -> Integer.compare(ids.get(a), ids.get(b)));
+
+            TIntList sortedIds = new TIntArrayList(size);
+            TLongList sortedCounts = counts != null ? new TLongArrayList(size) : null;
+            for (int i = 0; i < size; i++) {
+                int id = ids.get(order[i]);
+                if (!sortedIds.isEmpty() && sortedIds.get(sortedIds.size() - 1) == id) {
+                    if (sortedCounts != null) {
+                        sortedCounts.set(sortedCounts.size() - 1, counts.get(order[i]));
+                    }
+                } else {
+                    sortedIds.add(id);
+                    if (sortedCounts != null) {
+                        sortedCounts.add(counts.get(order[i]));
+                    }
+                }
+            }
+            ids = sortedIds;
+            counts = sortedCounts;
+            sorted = true;
+        }
+    }
+}
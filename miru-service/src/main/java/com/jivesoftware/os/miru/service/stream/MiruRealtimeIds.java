@@ -0,0 +1,63 @@
+package com.jivesoftware.os.miru.service.stream;
+
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+import gnu.trove.list.TIntList;
+
+/**
+ * Tracks the ids of activities flagged for realtime delivery as they are indexed, so that delivery reads a bitmap rather
+ * than every activity since the last delivery. Only ids indexed by this context are tracked, so ids at or below {@link
+ * #trackedAfterId()} (e.g. everything indexed before a restart) still have to be found by scanning the activity index.
+ */
+public class MiruRealtimeIds<BM extends IBM, IBM> {
+
+    private BM pending;
+    private int trackedAfterId = Integer.MAX_VALUE;
+
+    /**
+     * Called under the context write lock with the largest id before the batch was indexed. Repaired ids that are no longer
+     * flagged for realtime delivery are cleared.
+     */
+    public synchronized void indexed(MiruBitmaps<BM, IBM> bitmaps, int lastIdBeforeIndex, TIntList realtimeIds, TIntList clearedIds) {
+        if (trackedAfterId == Integer.MAX_VALUE) {
+            trackedAfterId = lastIdBeforeIndex;
+        }
+        if (!realtimeIds.isEmpty()) {
+            if (pending == null) {
+                pending = bitmaps.createWithBits(realtimeIds.toArray());
+            } else {
+                bitmaps.inPlaceOr(pending, bitmaps.createWithBits(realtimeIds.toArray()));
+            }
+        }
+        if (pending != null && !clearedIds.isEmpty()) {
+            bitmaps.inPlaceAndNot(pending, bitmaps.createWithBits(clearedIds.toArray()));
+        }
+    }
+
+    /**
+     * @return the largest id that was indexed before tracking began, or {@link Integer#MAX_VALUE} if nothing has been indexed
+     */
+    public synchronized int trackedAfterId() {
+        return trackedAfterId;
+    }
+
+    /**
+     * @return the tracked ids in the range (afterId, throughId] in ascending order
+     */
+    public synchronized int[] ids(MiruBitmaps<BM, IBM> bitmaps, int afterId, int throughId) {
+        if (pending == null || afterId >= throughId) {
+            return new int[0];
+        }
+        BM due = bitmaps.removeRange(pending, throughId + 1, Integer.MAX_VALUE);
+        bitmaps.inPlaceRemoveRange(due, 0, afterId + 1);
+        return bitmaps.indexes(due);
+    }
+
+    /**
+     * Forgets every tracked id up to and including the given id once it has been delivered.
+     */
+    public synchronized void delivered(MiruBitmaps<BM, IBM> bitmaps, int throughId) {
+        if (pending != null) {
+            bitmaps.inPlaceRemoveRange(pending, 0, throughId + 1);
+        }
+    }
+}
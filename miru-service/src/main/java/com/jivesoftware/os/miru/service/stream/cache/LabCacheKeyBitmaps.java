@@ -13,6 +13,7 @@ import com.jivesoftware.os.miru.plugin.cache.MiruPluginCacheProvider.CacheKeyBit
 import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
 import com.jivesoftware.os.miru.service.index.lab.LabInvertedIndex;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import java.util.Arrays;
 
 /**
@@ -27,6 +28,7 @@ public class LabCacheKeyBitmaps<BM extends IBM, IBM> implements CacheKeyBitmaps<
     private final OrderIdProvider idProvider;
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
+    private final MiruMetricHandles metricHandles;
     private final boolean atomized;
     private final ValueIndex<byte[]>[] stores;
     private final ByteArrayStripingLocksProvider stripingLocksProvider;
@@ -35,6 +37,7 @@ public class LabCacheKeyBitmaps<BM extends IBM, IBM> implements CacheKeyBitmaps<
         OrderIdProvider idProvider,
         MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
+        MiruMetricHandles metricHandles,
         boolean atomized,
         ValueIndex<byte[]>[] stores,
         ByteArrayStripingLocksProvider stripingLocksProvider) {
@@ -42,6 +45,7 @@ public class LabCacheKeyBitmaps<BM extends IBM, IBM> implements CacheKeyBitmaps<
         this.idProvider = idProvider;
         this.bitmaps = bitmaps;
         this.trackError = trackError;
+        this.metricHandles = metricHandles;
         this.atomized = atomized;
         this.stores = stores;
         this.stripingLocksProvider = stripingLocksProvider;
@@ -56,6 +60,7 @@ public class LabCacheKeyBitmaps<BM extends IBM, IBM> implements CacheKeyBitmaps<
         return new LabInvertedIndex<>(idProvider,
             bitmaps,
             trackError,
+            metricHandles,
             name,
             -1,
             atomized,
@@ -18,6 +18,7 @@ import com.jivesoftware.os.miru.plugin.cache.LabLastIdCacheKeyValues;
 import com.jivesoftware.os.miru.plugin.cache.LabTimestampedCacheKeyValues;
 import com.jivesoftware.os.miru.plugin.cache.MiruPluginCacheProvider;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.service.metric.MiruMetricHandles;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.util.Map;
@@ -35,6 +36,7 @@ public class LabPluginCacheProvider<BM extends IBM, IBM> implements MiruPluginCa
     private final ByteArrayStripingLocksProvider byteArrayStripingLocksProvider;
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
+    private final MiruMetricHandles metricHandles;
     private final boolean atomized;
     private final boolean hashIndexEnabled;
 
@@ -49,6 +51,7 @@ public class LabPluginCacheProvider<BM extends IBM, IBM> implements MiruPluginCa
         ByteArrayStripingLocksProvider byteArrayStripingLocksProvider,
         MiruBitmaps<BM, IBM> bitmaps,
         TrackError trackError,
+        MiruMetricHandles metricHandles,
         boolean atomized,
         boolean hashIndexEnabled) {
         this.idProvider = idProvider;
@@ -57,6 +60,7 @@ public class LabPluginCacheProvider<BM extends IBM, IBM> implements MiruPluginCa
         this.byteArrayStripingLocksProvider = byteArrayStripingLocksProvider;
         this.bitmaps = bitmaps;
         this.trackError = trackError;
+        this.metricHandles = metricHandles;
         this.atomized = atomized;
         this.hashIndexEnabled = hashIndexEnabled;
     }
@@ -187,7 +191,7 @@ public class LabPluginCacheProvider<BM extends IBM, IBM> implements MiruPluginCa
                         hashIndexLoadFactor,
                         hashIndexEnabled));
                 }
-                return new LabCacheKeyBitmaps<>(name, idProvider, bitmaps, trackError, atomized, cacheIndexes, byteArrayStripingLocksProvider);
+                return new LabCacheKeyBitmaps<>(name, idProvider, bitmaps, trackError, metricHandles, atomized, cacheIndexes, byteArrayStripingLocksProvider);
             } catch (Exception x) {
                 throw new RuntimeException("Failed to initialize plugin cache", x);
             }
@@ -32,4 +32,10 @@ public interface MiruSiphonConfig extends Config {
 
     @LongDefault(10_000)
     long getEnsureSiphonersIntervalMillis();
+
+    @IntDefault(16)
+    int getSiphonTransformThreadPoolSize();
+
+    @IntDefault(64)
+    int getSiphonFlushThreadPoolSize();
 }
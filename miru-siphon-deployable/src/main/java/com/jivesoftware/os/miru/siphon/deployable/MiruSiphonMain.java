@@ -311,6 +311,8 @@ public class MiruSiphonMain {
             AmzaSiphoners amzaSiphoners = new AmzaSiphoners(amzaClientProvider,
                 amzaClientAquariumProvider,
                 deployable.newBoundedExecutor(Runtime.getRuntime().availableProcessors() * 4, "siphoner"),
+                deployable.newBoundedExecutor(siphonConfig.getSiphonTransformThreadPoolSize(), "siphon-transform"),
+                deployable.newBoundedExecutor(siphonConfig.getSiphonFlushThreadPoolSize(), "siphon-flush"),
                 "miru-siphon",
                 siphonConfig.getSiphonStripingCount(),
                 senderConfigStorage,
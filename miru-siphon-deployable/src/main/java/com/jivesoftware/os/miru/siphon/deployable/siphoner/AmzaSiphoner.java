@@ -3,6 +3,7 @@ package com.jivesoftware.os.miru.siphon.deployable.siphoner;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.jivesoftware.os.amza.api.AmzaInterner;
 import com.jivesoftware.os.amza.api.PartitionClient;
@@ -25,14 +26,22 @@ import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * Siphons a partition as a pipeline: each call takes the next batch and transforms its rows in parallel while the previous
+ * batch is still being flushed. The take cursor is kept locally and only checkpointed to amza once the batch it covers has
+ * been flushed, and only while still elected, so a failure or lost election re-siphons from the last flushed batch. The
+ * cursor is re-read from amza whenever a run of calls starts, since leadership may have moved in between.
+ *
  * Created by jonathan.colt on 4/27/17.
  */
 public class AmzaSiphoner {
@@ -45,6 +54,9 @@ public class AmzaSiphoner {
 
     private static final AmzaSiphonCursor DEFAULT_CURSOR = new AmzaSiphonCursor(Maps.newHashMap());
 
+    private static final int TRANSFORM_CHUNK_SIZE = 64;
+
+    private static final Callable<Boolean> STOPPED = () -> false;
 
     private final long additionalSolverAfterNMillis = 10_000; //TODO expose to conf?
     private final long abandonLeaderSolutionAfterNMillis = 30_000; //TODO expose to conf?
@@ -64,8 +76,16 @@ public class AmzaSiphoner {
     public final MiruTenantId destinationTenantId;
     public final int batchSize;
     private final PartitionClientProvider partitionClientProvider;
+    private final ExecutorService transformExecutor;
+    private final ExecutorService flushExecutor;
     private final ObjectMapper mapper;
 
+    // guarded by runnable
+    private Map<RingMember, Long> takeCursor;
+    private AmzaSiphonCursor checkpointedCursor;
+    private PendingFlush pendingFlush;
+    private Callable<Boolean> isElected;
+
     public AmzaSiphoner(AmzaSiphonerConfig siphonerConfig,
         MiruSiphonPlugin miruSiphonPlugin,
         PartitionName partitionName,
@@ -73,6 +93,8 @@ public class AmzaSiphoner {
         MiruTenantId destinationTenantId,
         int batchSize,
         PartitionClientProvider partitionClientProvider,
+        ExecutorService transformExecutor,
+        ExecutorService flushExecutor,
         ObjectMapper mapper) {
 
         this.siphonerConfig = siphonerConfig;
@@ -83,6 +105,8 @@ public class AmzaSiphoner {
         this.batchSize = batchSize;
 
         this.partitionClientProvider = partitionClientProvider;
+        this.transformExecutor = transformExecutor;
+        this.flushExecutor = flushExecutor;
         this.mapper = mapper;
     }
 
@@ -97,7 +121,10 @@ public class AmzaSiphoner {
     }
 
     public void stop() {
-        runnable.set(() -> false);
+        if (runnable.getAndSet(STOPPED) == null) {
+            // nothing is siphoning, so the last batch is ours to drain
+            drainPendingFlush();
+        }
     }
 
     public boolean configHasChanged(AmzaSiphonerConfig siphonerConfig) {
@@ -108,20 +135,29 @@ public class AmzaSiphoner {
         return runnable.get() == null;
     }
 
-    public boolean siphon(Callable<Boolean> runnable, MiruSiphonActivityFlusher miruSiphonActivityFlusher) throws Exception {
-        if (!this.runnable.compareAndSet(null, runnable)) {
+    public boolean siphon(Callable<Boolean> isElected, MiruSiphonActivityFlusher miruSiphonActivityFlusher) throws Exception {
+        if (!this.runnable.compareAndSet(null, isElected)) {
             return true;
         }
         called.increment();
+        this.isElected = isElected;
 
+        String siphonerName = siphonerName();
         try {
-            String siphonerName = miruSiphonPlugin.name() + "-" + siphonInstancName;
-            AmzaSiphonCursor existingCursor = getPartitionCursor(siphonerName, partitionName, DEFAULT_CURSOR);
+            if (!isElected.call()) {
+                abandon();
+                return true;
+            }
+            if (takeCursor == null) {
+                // (re)elected, so resume from whatever the last leader checkpointed
+                checkpointedCursor = getPartitionCursor(siphonerName, partitionName, DEFAULT_CURSOR);
+                takeCursor = checkpointedCursor.memberTxIds;
+            }
             PartitionClient partitionClient = partitionClientProvider.getPartition(partitionName);
-            Map<RingMember, Long> cursorMemberTxIds = Maps.newHashMap(existingCursor.memberTxIds);
+            Map<RingMember, Long> cursorMemberTxIds = Maps.newHashMap(takeCursor);
 
             boolean tookToEnd = false;
-            ListMultimap<MiruTenantId, MiruActivity> tenantPartitionedActivites = ArrayListMultimap.create();
+            List<SiphonRow> rows = Lists.newArrayListWithCapacity(batchSize);
 
             TakeResult takeResult = partitionClient.takeFromTransactionId(null,
                 cursorMemberTxIds,
@@ -134,31 +170,18 @@ public class AmzaSiphoner {
                     }
                 },
                 (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
-
-                    ListMultimap<MiruTenantId, MiruActivity> activities = miruSiphonPlugin.siphon(destinationTenantId,
-                        rowTxId,
-                        prefix,
-                        key,
-                        value,
-                        valueTimestamp,
-                        valueTombstoned,
-                        valueVersion);
-
+                    rows.add(new SiphonRow(rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion));
                     siphoned.increment();
-                    tenantPartitionedActivites.putAll(activities);
                     return TxResult.MORE;
                 },
                 additionalSolverAfterNMillis,
                 abandonSolutionAfterNMillis,
                 Optional.empty());
 
-            if (runnable.call()) {
-
-                for (Entry<MiruTenantId, Collection<MiruActivity>> tenantsActivities : tenantPartitionedActivites.asMap().entrySet()) {
-                    miruSiphonActivityFlusher.flushActivities(miruSiphonPlugin, tenantsActivities.getKey(), tenantsActivities.getValue());
-                    flushed.add(tenantsActivities.getValue().size());
-                }
+            List<Future<ListMultimap<MiruTenantId, MiruActivity>>> transforms = transform(rows);
 
+            // the previous batch was flushing while we took and started transforming this one
+            if (awaitPendingFlush(siphonerName)) {
                 cursorMemberTxIds.merge(takeResult.tookFrom, takeResult.lastTxId, Math::max);
                 if (takeResult.tookToEnd != null) {
                     for (WALHighwater.RingMemberHighwater ringMemberHighwater : takeResult.tookToEnd.ringMemberHighwater) {
@@ -167,22 +190,122 @@ public class AmzaSiphoner {
                     tookToEnd = true;
                 }
 
-                AmzaSiphonCursor cursor = new AmzaSiphonCursor(cursorMemberTxIds);
-                if (!existingCursor.equals(cursor)) {
-                    savePartitionCursor(siphonerName, partitionName, cursor);
+                takeCursor = cursorMemberTxIds;
+                pendingFlush = new PendingFlush(new AmzaSiphonCursor(cursorMemberTxIds),
+                    flushExecutor.submit(() -> flush(transforms, miruSiphonActivityFlusher)));
+                if (tookToEnd) {
+                    // nothing left to overlap with, so don't leave the batch unflushed while idle
+                    awaitPendingFlush(siphonerName);
+                    // we won't be called again until the next election check, and another leader may have come and gone
+                    takeCursor = null;
                 }
                 return tookToEnd;
             } else {
+                cancel(transforms);
+                abandon();
                 return true;
             }
         } catch (Throwable t) {
             failed.increment();
+            abandon();
             throw t;
         } finally {
-            this.runnable.set(null);
+            if (!this.runnable.compareAndSet(isElected, null)) {
+                // stopped while we were siphoning
+                drainPendingFlush();
+            }
         }
     }
 
+    private String siphonerName() {
+        return miruSiphonPlugin.name() + "-" + siphonInstancName;
+    }
+
+    private List<Future<ListMultimap<MiruTenantId, MiruActivity>>> transform(List<SiphonRow> rows) {
+        List<Future<ListMultimap<MiruTenantId, MiruActivity>>> transforms = Lists.newArrayList();
+        for (List<SiphonRow> chunk : Lists.partition(rows, TRANSFORM_CHUNK_SIZE)) {
+            transforms.add(transformExecutor.submit(() -> {
+                ListMultimap<MiruTenantId, MiruActivity> activities = ArrayListMultimap.create();
+                for (SiphonRow row : chunk) {
+                    activities.putAll(miruSiphonPlugin.siphon(destinationTenantId,
+                        row.rowTxId,
+                        row.prefix,
+                        row.key,
+                        row.value,
+                        row.valueTimestamp,
+                        row.valueTombstoned,
+                        row.valueVersion));
+                }
+                return activities;
+            }));
+        }
+        return transforms;
+    }
+
+    private Void flush(List<Future<ListMultimap<MiruTenantId, MiruActivity>>> transforms,
+        MiruSiphonActivityFlusher miruSiphonActivityFlusher) throws Exception {
+
+        // chunks are merged in take order so each tenant's activities are flushed in the order they were written
+        ListMultimap<MiruTenantId, MiruActivity> tenantPartitionedActivites = ArrayListMultimap.create();
+        for (Future<ListMultimap<MiruTenantId, MiruActivity>> transform : transforms) {
+            tenantPartitionedActivites.putAll(transform.get());
+        }
+        for (Entry<MiruTenantId, Collection<MiruActivity>> tenantsActivities : tenantPartitionedActivites.asMap().entrySet()) {
+            miruSiphonActivityFlusher.flushActivities(miruSiphonPlugin, tenantsActivities.getKey(), tenantsActivities.getValue());
+            flushed.add(tenantsActivities.getValue().size());
+        }
+        return null;
+    }
+
+    /**
+     * Waits for the previous batch to finish flushing, and checkpoints its cursor if we are still elected. A deposed
+     * siphoner must never checkpoint, or it could move the cursor back behind the new leader's progress.
+     *
+     * @return true if we are still elected
+     */
+    private boolean awaitPendingFlush(String siphonerName) throws Exception {
+        PendingFlush flush = pendingFlush;
+        pendingFlush = null;
+        if (flush != null) {
+            flush.future.get();
+        }
+        if (!isElected.call()) {
+            LOG.inc("siphoner>notElected");
+            return false;
+        }
+        if (flush != null && !flush.cursor.equals(checkpointedCursor)) {
+            savePartitionCursor(siphonerName, partitionName, flush.cursor);
+            checkpointedCursor = flush.cursor;
+        }
+        return true;
+    }
+
+    private void drainPendingFlush() {
+        if (pendingFlush != null) {
+            try {
+                awaitPendingFlush(siphonerName());
+            } catch (Exception x) {
+                LOG.warn("Failed to drain pending flush for {}", new Object[] { this }, x);
+            }
+        }
+        takeCursor = null;
+    }
+
+    private void abandon() {
+        if (pendingFlush != null) {
+            pendingFlush.future.cancel(true);
+            pendingFlush = null;
+        }
+        // whoever is elected now owns the cursor, so re-read it if we are elected again
+        takeCursor = null;
+        checkpointedCursor = null;
+    }
+
+    private static void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
 
     private AmzaSiphonCursor getPartitionCursor(String siphonerName, PartitionName partitionName, AmzaSiphonCursor defaultCursor) throws Exception {
         AmzaSiphonCursor[] cursor = { defaultCursor };
@@ -292,4 +415,35 @@ public class AmzaSiphoner {
         return key;
     }
 
+    private static class SiphonRow {
+
+        private final long rowTxId;
+        private final byte[] prefix;
+        private final byte[] key;
+        private final byte[] value;
+        private final long valueTimestamp;
+        private final boolean valueTombstoned;
+        private final long valueVersion;
+
+        private SiphonRow(long rowTxId, byte[] prefix, byte[] key, byte[] value, long valueTimestamp, boolean valueTombstoned, long valueVersion) {
+            this.rowTxId = rowTxId;
+            this.prefix = prefix;
+            this.key = key;
+            this.value = value;
+            this.valueTimestamp = valueTimestamp;
+            this.valueTombstoned = valueTombstoned;
+            this.valueVersion = valueVersion;
+        }
+    }
+
+    private static class PendingFlush {
+
+        private final AmzaSiphonCursor cursor;
+        private final Future<Void> future;
+
+        private PendingFlush(AmzaSiphonCursor cursor, Future<Void> future) {
+            this.cursor = cursor;
+            this.future = future;
+        }
+    }
 }
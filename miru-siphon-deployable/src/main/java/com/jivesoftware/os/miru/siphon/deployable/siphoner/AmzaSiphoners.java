@@ -33,6 +33,8 @@ public class AmzaSiphoners {
     private final PartitionClientProvider partitionClientProvider;
     private final AmzaClientAquariumProvider amzaClientAquariumProvider;
     private final ExecutorService siphonerThreads;
+    private final ExecutorService transformThreads;
+    private final ExecutorService flushThreads;
 
     private final String siphonName;
     private final int siphonStripeCount;
@@ -46,6 +48,8 @@ public class AmzaSiphoners {
     public AmzaSiphoners(PartitionClientProvider partitionClientProvider,
         AmzaClientAquariumProvider amzaClientAquariumProvider,
         ExecutorService siphonerThreads,
+        ExecutorService transformThreads,
+        ExecutorService flushThreads,
         String siphonName,
         int siphonStripeCount,
         AmzaSiphonerConfigProvider siphonerConfigProvider,
@@ -57,6 +61,8 @@ public class AmzaSiphoners {
         this.partitionClientProvider = partitionClientProvider;
         this.amzaClientAquariumProvider = amzaClientAquariumProvider;
         this.siphonerThreads = siphonerThreads;
+        this.transformThreads = transformThreads;
+        this.flushThreads = flushThreads;
         this.siphonName = siphonName;
         this.siphonStripeCount = siphonStripeCount;
         this.siphonerConfigProvider = siphonerConfigProvider;
@@ -115,6 +121,8 @@ public class AmzaSiphoners {
                                     siphonerConfig.destinationTenantId,
                                     siphonerConfig.batchSize,
                                     partitionClientProvider,
+                                    transformThreads,
+                                    flushThreads,
                                     mapper);
 
                                 siphoners.put(entry.getKey(), siphoner);
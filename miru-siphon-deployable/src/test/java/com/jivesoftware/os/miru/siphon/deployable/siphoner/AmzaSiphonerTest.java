@@ -0,0 +1,369 @@
+package com.jivesoftware.os.miru.siphon.deployable.siphoner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.jivesoftware.os.amza.api.PartitionClient;
+import com.jivesoftware.os.amza.api.PartitionClientProvider;
+import com.jivesoftware.os.amza.api.RingPartitionProperties;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
+import com.jivesoftware.os.amza.api.stream.TxKeyValueStream.TxResult;
+import com.jivesoftware.os.amza.api.take.Highwaters;
+import com.jivesoftware.os.amza.api.take.TakeResult;
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
+import com.jivesoftware.os.amza.api.wal.WALHighwater;
+import com.jivesoftware.os.amza.client.test.InMemoryPartitionClient;
+import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.JiveEpochTimestampProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
+import com.jivesoftware.os.jive.utils.ordered.id.SnowflakeIdPacker;
+import com.jivesoftware.os.miru.api.activity.MiruActivity;
+import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.query.siphon.MiruSiphonPlugin;
+import com.jivesoftware.os.miru.siphon.deployable.MiruSiphonActivityFlusher;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ *
+ */
+public class AmzaSiphonerTest {
+
+    private final MiruTenantId tenantId = new MiruTenantId("tenant1".getBytes(StandardCharsets.UTF_8));
+    private final RingMember ringMember = new RingMember("member1");
+    private final PartitionName partitionName = new PartitionName(false, "ring".getBytes(StandardCharsets.UTF_8),
+        "siphoned".getBytes(StandardCharsets.UTF_8));
+
+    private OrderIdProvider orderIdProvider;
+    private TestPartitionClientProvider partitionClientProvider;
+    private TestPartitionClient siphonedClient;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        orderIdProvider = new OrderIdProviderImpl(new ConstantWriterIdProvider(1), new SnowflakeIdPacker(), new JiveEpochTimestampProvider());
+        siphonedClient = new TestPartitionClient(ringMember, orderIdProvider);
+        partitionClientProvider = new TestPartitionClientProvider(ringMember, orderIdProvider, partitionName, siphonedClient);
+    }
+
+    @Test
+    public void testFlushesInTakeOrder() throws Exception {
+        siphonedClient.write(100);
+        RecordingFlusher flusher = new RecordingFlusher();
+        AmzaSiphoner siphoner = siphoner(10);
+
+        AtomicBoolean elected = new AtomicBoolean(true);
+        int calls = siphonToEnd(siphoner, elected, flusher);
+
+        assertEquals(calls, 10);
+        assertEquals(flusher.times, range(0, 100));
+        assertEquals(siphoner.siphoned.intValue(), 100);
+        assertEquals(siphoner.flushed.intValue(), 100);
+        assertEquals(resumesFrom(), 100);
+    }
+
+    @Test
+    public void testCheckpointsOnlyAfterFlush() throws Exception {
+        siphonedClient.write(30);
+        RecordingFlusher flusher = new RecordingFlusher();
+        AmzaSiphoner siphoner = siphoner(10);
+        AtomicBoolean elected = new AtomicBoolean(true);
+
+        assertFalse(siphoner.siphon(elected::get, flusher));
+        assertEquals(flusher.times, range(0, 10));
+        // the batch is flushed but not checkpointed until the next call has overlapped with it
+        assertEquals(resumesFrom(), 0);
+
+        assertFalse(siphoner.siphon(elected::get, flusher));
+        assertEquals(flusher.times, range(0, 20));
+        assertEquals(resumesFrom(), 10);
+    }
+
+    @Test
+    public void testLostElectionDoesNotCheckpoint() throws Exception {
+        siphonedClient.write(30);
+        RecordingFlusher flusher = new RecordingFlusher();
+        AmzaSiphoner siphoner = siphoner(10);
+        AtomicBoolean elected = new AtomicBoolean(true);
+
+        assertFalse(siphoner.siphon(elected::get, flusher));
+        assertFalse(siphoner.siphon(elected::get, flusher));
+        assertEquals(resumesFrom(), 10);
+
+        // deposed after taking the next batch, so neither the pending batch nor the one just taken may be checkpointed
+        siphonedClient.afterTake = () -> elected.set(false);
+        assertTrue(siphoner.siphon(elected::get, flusher));
+        assertEquals(flusher.times, range(0, 20));
+        assertEquals(resumesFrom(), 10);
+    }
+
+    @Test
+    public void testReelectionRereadsCursor() throws Exception {
+        siphonedClient.write(30);
+        RecordingFlusher flusher = new RecordingFlusher();
+        AmzaSiphoner siphoner = siphoner(10);
+        AtomicBoolean elected = new AtomicBoolean(true);
+        siphonToEnd(siphoner, elected, flusher);
+        assertEquals(flusher.times, range(0, 30));
+
+        // another leader siphons the next range while we aren't looking
+        siphonedClient.write(10);
+        RecordingFlusher otherFlusher = new RecordingFlusher();
+        siphonToEnd(siphoner(10), new AtomicBoolean(true), otherFlusher);
+        assertEquals(otherFlusher.times, range(30, 40));
+
+        siphonedClient.write(10);
+        siphonToEnd(siphoner, elected, flusher);
+        List<Long> expected = range(0, 30);
+        expected.addAll(range(40, 50));
+        assertEquals(flusher.times, expected);
+    }
+
+    @Test
+    public void testFailedFlushResumesFromCheckpoint() throws Exception {
+        siphonedClient.write(30);
+        AtomicInteger failures = new AtomicInteger(1);
+        RecordingFlusher flusher = new RecordingFlusher() {
+            @Override
+            public void flushActivities(MiruSiphonPlugin miruSiphonPlugin, MiruTenantId tenantId, Collection<MiruActivity> activities) throws Exception {
+                if (activities.iterator().next().time == 10L && failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("flush failed");
+                }
+                super.flushActivities(miruSiphonPlugin, tenantId, activities);
+            }
+        };
+        AmzaSiphoner siphoner = siphoner(10);
+        AtomicBoolean elected = new AtomicBoolean(true);
+
+        assertFalse(siphoner.siphon(elected::get, flusher));
+        assertFalse(siphoner.siphon(elected::get, flusher));
+        try {
+            siphoner.siphon(elected::get, flusher);
+            fail("Expected the failed flush to surface");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(siphoner.failed.intValue(), 1);
+        assertTrue(siphoner.runnable());
+        assertEquals(resumesFrom(), 10);
+
+        siphonToEnd(siphoner, elected, flusher);
+        assertEquals(flusher.times, range(0, 30));
+        assertEquals(resumesFrom(), 30);
+    }
+
+    @Test
+    public void testStopDrainsPendingFlush() throws Exception {
+        siphonedClient.write(30);
+        RecordingFlusher flusher = new RecordingFlusher();
+        AmzaSiphoner siphoner = siphoner(10);
+        AtomicBoolean elected = new AtomicBoolean(true);
+
+        assertFalse(siphoner.siphon(elected::get, flusher));
+        assertEquals(resumesFrom(), 0);
+
+        siphoner.stop();
+        assertFalse(siphoner.runnable());
+        assertEquals(resumesFrom(), 10);
+        assertTrue(siphoner.siphon(elected::get, flusher));
+        assertEquals(flusher.times, range(0, 10));
+    }
+
+    private AmzaSiphoner siphoner(int batchSize) {
+        return siphoner(batchSize, new TestSiphonPlugin());
+    }
+
+    private AmzaSiphoner siphoner(int batchSize, MiruSiphonPlugin plugin) {
+        return new AmzaSiphoner(null,
+            plugin,
+            partitionName,
+            "test",
+            tenantId,
+            batchSize,
+            partitionClientProvider,
+            MoreExecutors.sameThreadExecutor(),
+            MoreExecutors.sameThreadExecutor(),
+            new ObjectMapper());
+    }
+
+    private int siphonToEnd(AmzaSiphoner siphoner, AtomicBoolean elected, MiruSiphonActivityFlusher flusher) throws Exception {
+        int calls = 1;
+        while (!siphoner.siphon(elected::get, flusher)) {
+            calls++;
+        }
+        return calls;
+    }
+
+    /**
+     * Takes a single row from the checkpointed cursor, as a new leader would, but is deposed before it can flush or checkpoint.
+     */
+    private long resumesFrom() throws Exception {
+        TestSiphonPlugin plugin = new TestSiphonPlugin();
+        AmzaSiphoner probe = siphoner(1, plugin);
+        AtomicInteger electionChecks = new AtomicInteger();
+        probe.siphon(() -> electionChecks.getAndIncrement() == 0, new RecordingFlusher());
+        return plugin.times.isEmpty() ? siphonedClient.rows.size() : plugin.times.get(0);
+    }
+
+    private static List<Long> range(long from, long to) {
+        List<Long> range = Lists.newArrayList();
+        for (long i = from; i < to; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+
+    private static class TestSiphonPlugin implements MiruSiphonPlugin {
+
+        private final List<Long> times = Collections.synchronizedList(Lists.newArrayList());
+
+        @Override
+        public String name() {
+            return "test";
+        }
+
+        @Override
+        public MiruSchema schema(MiruTenantId tenantId) throws Exception {
+            return null;
+        }
+
+        @Override
+        public ListMultimap<MiruTenantId, MiruActivity> siphon(MiruTenantId tenantId,
+            long rowTxId,
+            byte[] prefix,
+            byte[] key,
+            byte[] value,
+            long valueTimestamp,
+            boolean valueTombstoned,
+            long valueVersion) throws Exception {
+            long time = UIO.bytesLong(value, 0);
+            times.add(time);
+            ListMultimap<MiruTenantId, MiruActivity> activities = ArrayListMultimap.create();
+            activities.put(tenantId, new MiruActivity.Builder(tenantId, time, valueVersion, false, new String[0]).build());
+            return activities;
+        }
+    }
+
+    private static class RecordingFlusher extends MiruSiphonActivityFlusher {
+
+        private final List<Long> times = Collections.synchronizedList(Lists.newArrayList());
+
+        private RecordingFlusher() {
+            super(null, null, null, null);
+        }
+
+        @Override
+        public void flushActivities(MiruSiphonPlugin miruSiphonPlugin, MiruTenantId tenantId, Collection<MiruActivity> activities) throws Exception {
+            for (MiruActivity activity : activities) {
+                times.add(activity.time);
+            }
+        }
+    }
+
+    /**
+     * Serves takes from an in-memory list of rows, where row i has transaction id i + 1.
+     */
+    private static class TestPartitionClient extends InMemoryPartitionClient {
+
+        private final RingMember ringMember;
+        private final List<byte[]> rows = Collections.synchronizedList(Lists.newArrayList());
+        private volatile Runnable afterTake = () -> {
+        };
+
+        private TestPartitionClient(RingMember ringMember, OrderIdProvider orderIdProvider) {
+            super(ringMember, new ConcurrentSkipListMap<>(), new ConcurrentSkipListMap<>(KeyUtil.lexicographicalComparator()), orderIdProvider);
+            this.ringMember = ringMember;
+        }
+
+        private void write(int count) {
+            for (int i = 0; i < count; i++) {
+                byte[] value = new byte[8];
+                UIO.longBytes(rows.size(), value, 0);
+                rows.add(value);
+            }
+        }
+
+        @Override
+        public TakeResult takeFromTransactionId(List<RingMember> membersInOrder,
+            Map<RingMember, Long> membersTxId,
+            int limit,
+            Highwaters highwaters,
+            TxKeyValueStream stream,
+            long additionalSolverAfterNMillis,
+            long abandonSolutionAfterNMillis,
+            Optional<List<String>> solutionLog) throws Exception {
+
+            long txId = membersTxId.getOrDefault(ringMember, 0L);
+            int end = (int) Math.min(rows.size(), txId + limit);
+            for (int i = (int) txId; i < end; i++) {
+                byte[] value = rows.get(i);
+                if (stream.stream(i + 1, null, value, value, i, false, i) != TxResult.MORE) {
+                    break;
+                }
+            }
+            afterTake.run();
+            WALHighwater tookToEnd = end == rows.size()
+                ? new WALHighwater(Collections.singletonList(new WALHighwater.RingMemberHighwater(ringMember, end)))
+                : null;
+            return new TakeResult(ringMember, end, tookToEnd);
+        }
+    }
+
+    private static class TestPartitionClientProvider implements PartitionClientProvider {
+
+        private final RingMember ringMember;
+        private final OrderIdProvider orderIdProvider;
+        private final Map<PartitionName, PartitionClient> clients = Maps.newConcurrentMap();
+
+        private TestPartitionClientProvider(RingMember ringMember,
+            OrderIdProvider orderIdProvider,
+            PartitionName siphonedName,
+            PartitionClient siphonedClient) {
+            this.ringMember = ringMember;
+            this.orderIdProvider = orderIdProvider;
+            clients.put(siphonedName, siphonedClient);
+        }
+
+        @Override
+        public RingPartitionProperties getProperties(PartitionName partitionName) throws Exception {
+            return null;
+        }
+
+        @Override
+        public PartitionClient getPartition(PartitionName partitionName) throws Exception {
+            return clients.computeIfAbsent(partitionName,
+                partitionName1 -> new InMemoryPartitionClient(ringMember,
+                    new ConcurrentSkipListMap<>(),
+                    new ConcurrentSkipListMap<>(KeyUtil.lexicographicalComparator()),
+                    orderIdProvider));
+        }
+
+        @Override
+        public PartitionClient getPartition(PartitionName partitionName, int ringSize, PartitionProperties partitionProperties) throws Exception {
+            return getPartition(partitionName);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.jivesoftware.os.miru.stream.plugins.fulltext;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.jivesoftware.os.miru.api.query.filter.MiruValue;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import com.jivesoftware.os.miru.stream.plugins.fulltext.FullTextAnswer.ActivityScore;
+import java.util.Collections;
+import java.util.List;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ *
+ */
+public class FullTextAnswerChunkerTest {
+
+    private final MiruSolutionLog solutionLog = new MiruSolutionLog(MiruSolutionLogLevel.NONE);
+
+    @Test
+    public void testChunksMergeToOriginal() throws Exception {
+        FullTextAnswer answer = answer(0, 25, 1);
+        for (int maxItemsPerChunk : new int[] { 1, 7, 25, 100 }) {
+            List<FullTextAnswer> chunks = Lists.newArrayList();
+            new FullTextAnswerChunker().chunk(answer, maxItemsPerChunk, chunks::add);
+            assertEquals(chunks.size(), (25 + maxItemsPerChunk - 1) / maxItemsPerChunk);
+
+            FullTextAnswer merged = mergeAll(new FullTextAnswerMerger(100), Optional.absent(), chunks);
+            assertEquals(merged, answer, "Mismatch for maxItemsPerChunk " + maxItemsPerChunk);
+        }
+    }
+
+    @Test
+    public void testChunkedMergeMatchesWholeMerge() throws Exception {
+        // interleaved scores across two partitions, truncated to the desired number of results
+        FullTextAnswer first = answer(0, 30, 2);
+        FullTextAnswer second = answer(0, 30, 3);
+
+        FullTextAnswerMerger merger = new FullTextAnswerMerger(40);
+        FullTextAnswer whole = merger.merge(Optional.of(first), second, solutionLog);
+
+        List<FullTextAnswer> chunks = Lists.newArrayList();
+        new FullTextAnswerChunker().chunk(first, 4, chunks::add);
+        FullTextAnswer chunked = mergeAll(merger, Optional.absent(), chunks);
+        chunked = merger.merge(Optional.of(chunked), second, solutionLog);
+
+        assertEquals(chunked, whole);
+    }
+
+    @Test
+    public void testEmptyAnswerProducesOneChunk() throws Exception {
+        List<FullTextAnswer> chunks = Lists.newArrayList();
+        new FullTextAnswerChunker().chunk(new FullTextAnswer(Collections.emptyList(), 0, true), 4, chunks::add);
+        assertEquals(chunks.size(), 1);
+        assertEquals(chunks.get(0).results.size(), 0);
+    }
+
+    private FullTextAnswer mergeAll(FullTextAnswerMerger merger, Optional<FullTextAnswer> last, List<FullTextAnswer> chunks) {
+        for (FullTextAnswer chunk : chunks) {
+            last = Optional.of(merger.merge(last, chunk, solutionLog));
+        }
+        return merger.done(last, FullTextAnswer.EMPTY_RESULTS, solutionLog);
+    }
+
+    private static FullTextAnswer answer(int from, int to, int stride) {
+        List<ActivityScore> results = Lists.newArrayList();
+        for (int i = from; i < to; i++) {
+            // distinct timestamps keep the ordering total, so ties never depend on which side the merger favors
+            long timestamp = (long) i * stride * 10 + stride;
+            results.add(new ActivityScore(new MiruValue[][] { { new MiruValue(String.valueOf(timestamp)) } }, timestamp, (to - i) * stride));
+        }
+        Collections.sort(results);
+        return new FullTextAnswer(results, results.size(), true);
+    }
+}
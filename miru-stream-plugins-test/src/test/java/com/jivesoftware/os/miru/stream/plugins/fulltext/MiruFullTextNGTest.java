@@ -74,6 +74,7 @@ public class MiruFullTextNGTest {
 
     private MiruService service;
     private FullTextInjectable injectable;
+    private FullTextInjectable prunedInjectable;
 
     private final MiruPartitionedActivityFactory partitionedActivityFactory = new MiruPartitionedActivityFactory();
     private final String[] dictionary = new String[10];
@@ -85,6 +86,7 @@ public class MiruFullTextNGTest {
 
         this.service = miruProvider.getMiru(tenant1);
         this.injectable = new FullTextInjectable(miruProvider, new FullText(miruProvider));
+        this.prunedInjectable = new FullTextInjectable(miruProvider, new FullText(miruProvider, true));
 
         for (int i = 0; i < dictionary.length; i++) {
             dictionary[i] = Integer.toHexString(i);
@@ -141,6 +143,42 @@ public class MiruFullTextNGTest {
 
         runQueries(rand, timespan, time.get(), FullTextQuery.Strategy.TIME);
         runQueries(rand, timespan, time.get(), FullTextQuery.Strategy.TF_IDF);
+        runPrunedQueries(rand, timespan, time.get());
+    }
+
+    private void runPrunedQueries(Random rand, long timespan, long lastTime) throws MiruQueryServiceException, InterruptedException {
+        System.out.println("-------- TF_IDF pruned --------");
+        final MiruTimeRange timeRange = new MiruTimeRange(lastTime - timespan, lastTime);
+
+        for (int i = 0; i < numberOfQueries; i++) {
+            String query = queryAnd(rand, numberOfTermsPerQuery);
+            for (int desiredNumberOfResults : new int[] { 1, 5, 100 }) {
+                MiruRequest<FullTextQuery> request = new MiruRequest<>("test",
+                    tenant1,
+                    MiruActorId.NOT_PROVIDED,
+                    MiruAuthzExpression.NOT_PROVIDED,
+                    new FullTextQuery(timeRange,
+                        "text",
+                        "en",
+                        false,
+                        query,
+                        -1,
+                        MiruFilter.NO_FILTER,
+                        FullTextQuery.Strategy.TF_IDF,
+                        desiredNumberOfResults,
+                        new String[0]),
+                    MiruSolutionLogLevel.INFO);
+                MiruResponse<FullTextAnswer> exhaustive = injectable.filterCustomStream(request);
+                MiruResponse<FullTextAnswer> pruned = prunedInjectable.filterCustomStream(request);
+
+                assertEquals(pruned.answer.found, exhaustive.answer.found);
+                assertEquals(pruned.answer.results.size(), exhaustive.answer.results.size());
+                // terms are summed in a different order when pruning, and ties may resolve to different activities
+                for (int j = 0; j < exhaustive.answer.results.size(); j++) {
+                    assertEquals(pruned.answer.results.get(j).score, exhaustive.answer.results.get(j).score, 1e-5f);
+                }
+            }
+        }
     }
 
     private void runQueries(Random rand, long timespan, long lastTime, FullTextQuery.Strategy strategy) throws MiruQueryServiceException, InterruptedException {
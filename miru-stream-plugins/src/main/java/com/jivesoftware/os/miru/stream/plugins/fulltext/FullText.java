@@ -19,6 +19,7 @@ import com.jivesoftware.os.miru.plugin.MiruProvider;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruIntIterator;
 import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
+import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
 import com.jivesoftware.os.miru.plugin.index.MiruActivityInternExtern;
 import com.jivesoftware.os.miru.plugin.index.MiruFieldIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
@@ -28,6 +29,7 @@ import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
 import com.jivesoftware.os.miru.stream.plugins.fulltext.FullTextAnswer.ActivityScore;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -41,10 +43,18 @@ public class FullText {
 
     private static final MetricLogger log = MetricLoggerFactory.getLogger();
 
+    private static final int TF_IDF_BATCH_SIZE = 1000; //TODO configure?
+
     private final MiruProvider<? extends Miru> miruProvider;
+    private final boolean tfIdfTopKPruning;
 
     public FullText(MiruProvider<? extends Miru> miruProvider) {
+        this(miruProvider, false);
+    }
+
+    public FullText(MiruProvider<? extends Miru> miruProvider, boolean tfIdfTopKPruning) {
         this.miruProvider = miruProvider;
+        this.tfIdfTopKPruning = tfIdfTopKPruning;
     }
 
     public MiruFilter parseQuery(String defaultField, String locale, boolean useStopWords, String query) throws Exception {
@@ -130,30 +140,34 @@ public class FullText {
             .expectedSize(desiredNumberOfResults)
             .maximumSize(desiredNumberOfResults)
             .create();
-        MiruIntIterator iter = bitmaps.intIterator(answer);
         float minScore = lastReport.isPresent() ? lastReport.get().lowestScore : -Float.MAX_VALUE;
         MutableInt acceptableBelowMin = new MutableInt(desiredNumberOfResults - alreadyScoredCount);
 
-        int batchSize = 1000; //TODO configure?
-        int[] ids = new int[batchSize];
-        int i = 0;
-        while (iter.hasNext()) {
-            int lastSetBit = iter.next();
-            ids[i] = lastSetBit;
-            i++;
-
-            if (i == batchSize) {
-                batchTfIdf(name, requestContext, request, internExtern, primaryFieldIndex, termMultipliers, scored, minScore, acceptableBelowMin, ids,
-                    gatherFieldDefinitions, stackBuffer);
-                i = 0;
+        if (tfIdfTopKPruning) {
+            topKTfIdf(name, bitmaps, requestContext, primaryFieldIndex, termMultipliers, scored, desiredNumberOfResults, minScore, acceptableBelowMin,
+                answer, gatherFieldDefinitions, stackBuffer);
+        } else {
+            MiruIntIterator iter = bitmaps.intIterator(answer);
+            int[] ids = new int[TF_IDF_BATCH_SIZE];
+            int i = 0;
+            while (iter.hasNext()) {
+                int lastSetBit = iter.next();
+                ids[i] = lastSetBit;
+                i++;
+
+                if (i == TF_IDF_BATCH_SIZE) {
+                    batchTfIdf(name, requestContext, request, internExtern, primaryFieldIndex, termMultipliers, scored, minScore, acceptableBelowMin,
+                        ids, gatherFieldDefinitions, stackBuffer);
+                    i = 0;
+                }
             }
-        }
 
-        if (i > 0) {
-            int[] remainder = new int[i];
-            System.arraycopy(ids, 0, remainder, 0, i);
-            batchTfIdf(name, requestContext, request, internExtern, primaryFieldIndex, termMultipliers, scored, minScore, acceptableBelowMin, remainder,
-                gatherFieldDefinitions, stackBuffer);
+            if (i > 0) {
+                int[] remainder = new int[i];
+                System.arraycopy(ids, 0, remainder, 0, i);
+                batchTfIdf(name, requestContext, request, internExtern, primaryFieldIndex, termMultipliers, scored, minScore, acceptableBelowMin,
+                    remainder, gatherFieldDefinitions, stackBuffer);
+            }
         }
 
         Iterables.addAll(activityScores, Iterables.transform(scored, (RawBitScore input) -> {
@@ -219,6 +233,204 @@ public class FullText {
         }
     }
 
+    /**
+     * MaxScore-style top-k scoring. Each term gets an upper bound on its contribution to any activity: the global cardinality is the
+     * sum of the term's frequencies across the partition, so no single activity's term frequency can exceed it. This isn't tightened
+     * by the bitmap's cardinality, because an activity in the bitmap isn't guaranteed a nonzero frequency. Terms are sorted by upper
+     * bound, and once the sum of the smallest bounds can no longer beat the current threshold (the heap minimum when full, or the last
+     * report's lowest score once nothing below it is acceptable), activities that only match those terms are dropped from the
+     * candidates. Remaining candidates are checked against their own upper bound before any cardinalities are fetched, and only for
+     * the terms whose bitmaps actually contain them.
+     */
+    private <BM extends IBM, IBM> void topKTfIdf(String name,
+        MiruBitmaps<BM, IBM> bitmaps,
+        MiruRequestContext<BM, IBM, ?> requestContext,
+        MiruFieldIndex<BM, IBM> primaryFieldIndex,
+        Map<FieldAndTermId, Float> termMultipliers,
+        MinMaxPriorityQueue<RawBitScore> scored,
+        int desiredNumberOfResults,
+        float minScore,
+        MutableInt acceptableBelowMin,
+        BM answer,
+        MiruFieldDefinition[] gatherFieldDefinitions,
+        StackBuffer stackBuffer) throws Exception {
+
+        MiruSchema schema = requestContext.getSchema();
+
+        List<TermBound<BM>> termBounds = Lists.newArrayListWithCapacity(termMultipliers.size());
+        for (Map.Entry<FieldAndTermId, Float> entry : termMultipliers.entrySet()) {
+            FieldAndTermId fieldAndTermId = entry.getKey();
+            float multiplier = entry.getValue();
+            MiruFieldDefinition fieldDefinition = schema.getFieldDefinition(fieldAndTermId.fieldId);
+            BitmapAndLastId<BM> container = new BitmapAndLastId<>();
+            primaryFieldIndex.get(name, fieldAndTermId.fieldId, fieldAndTermId.termId).getIndex(container, stackBuffer);
+            if (!container.isSet()) {
+                continue;
+            }
+            BM bitmap = container.getBitmap();
+            long globalCardinality = primaryFieldIndex.getGlobalCardinality(fieldDefinition, fieldAndTermId.termId, stackBuffer);
+            // nudged up so float rounding in the summed scores can never push an activity past its bound
+            float upperBound = multiplier > 0 ? Math.nextUp(multiplier * globalCardinality) : 0f;
+            termBounds.add(new TermBound<>(fieldDefinition, fieldAndTermId.termId, multiplier, bitmap, upperBound));
+        }
+        Collections.sort(termBounds);
+
+        int numTerms = termBounds.size();
+        float[] prefixUpperBounds = new float[numTerms + 1];
+        for (int t = 0; t < numTerms; t++) {
+            prefixUpperBounds[t + 1] = prefixUpperBounds[t] + termBounds.get(t).upperBound;
+        }
+
+        int[] ids = new int[TF_IDF_BATCH_SIZE];
+        int nonEssential = -1;
+        MiruIntIterator iter = bitmaps.intIterator(answer);
+        long candidates = 0;
+        long pruned = 0;
+        while (true) {
+            int count = 0;
+            while (count < ids.length && iter.hasNext()) {
+                ids[count] = iter.next();
+                count++;
+            }
+            if (count == 0) {
+                break;
+            }
+            candidates += count;
+
+            float threshold = threshold(scored, desiredNumberOfResults, minScore, acceptableBelowMin);
+            pruned += scoreTopK(name, bitmaps, requestContext, primaryFieldIndex, termBounds, scored, minScore, acceptableBelowMin, threshold, ids, count,
+                gatherFieldDefinitions, stackBuffer);
+
+            // the threshold only ever rises, so the set of essential terms only ever shrinks
+            threshold = threshold(scored, desiredNumberOfResults, minScore, acceptableBelowMin);
+            int k = -1;
+            while (k + 1 <= numTerms && prefixUpperBounds[k + 1] < threshold) {
+                k++;
+            }
+            if (k > nonEssential) {
+                nonEssential = k;
+                if (nonEssential == numTerms) {
+                    break;
+                }
+                List<IBM> essential = Lists.newArrayListWithCapacity(numTerms - nonEssential);
+                for (int t = nonEssential; t < numTerms; t++) {
+                    essential.add(termBounds.get(t).bitmap);
+                }
+                BM remaining = bitmaps.and(Arrays.<IBM>asList(answer, bitmaps.or(essential)));
+                remaining = bitmaps.andNot(remaining, bitmaps.createWithRange(0, ids[count - 1] + 1));
+                iter = bitmaps.intIterator(remaining);
+                log.inc("fullText>topK>replan");
+            }
+        }
+
+        log.inc("fullText>topK>candidates", candidates);
+        log.inc("fullText>topK>pruned", pruned);
+        log.inc("fullText>topK>skipped", bitmaps.cardinality(answer) - candidates);
+    }
+
+    private static float threshold(MinMaxPriorityQueue<RawBitScore> scored, int desiredNumberOfResults, float minScore, MutableInt acceptableBelowMin) {
+        float threshold = -Float.MAX_VALUE;
+        if (acceptableBelowMin.intValue() <= 0) {
+            threshold = minScore;
+        }
+        if (scored.size() >= desiredNumberOfResults) {
+            // the "last" element is the lowest score
+            threshold = Math.max(threshold, scored.peekLast().score);
+        }
+        return threshold;
+    }
+
+    private <BM extends IBM, IBM> int scoreTopK(String name,
+        MiruBitmaps<BM, IBM> bitmaps,
+        MiruRequestContext<BM, IBM, ?> requestContext,
+        MiruFieldIndex<BM, IBM> primaryFieldIndex,
+        List<TermBound<BM>> termBounds,
+        MinMaxPriorityQueue<RawBitScore> scored,
+        float minScore,
+        MutableInt acceptableBelowMin,
+        float threshold,
+        int[] ids,
+        int count,
+        MiruFieldDefinition[] gatherFieldDefinitions,
+        StackBuffer stackBuffer) throws Exception {
+
+        float[] upperBounds = new float[count];
+        boolean[][] contains = new boolean[termBounds.size()][count];
+        for (int t = 0; t < termBounds.size(); t++) {
+            TermBound<BM> termBound = termBounds.get(t);
+            for (int i = 0; i < count; i++) {
+                if (bitmaps.isSet(termBound.bitmap, ids[i])) {
+                    contains[t][i] = true;
+                    upperBounds[i] += termBound.upperBound;
+                }
+            }
+        }
+
+        int pruned = 0;
+        boolean[] survivors = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            survivors[i] = upperBounds[i] >= threshold;
+            if (!survivors[i]) {
+                pruned++;
+            }
+        }
+
+        float[] scores = new float[count];
+        for (int t = 0; t < termBounds.size(); t++) {
+            TermBound<BM> termBound = termBounds.get(t);
+            int matches = 0;
+            for (int i = 0; i < count; i++) {
+                if (survivors[i] && contains[t][i]) {
+                    matches++;
+                }
+            }
+            if (matches == 0) {
+                continue;
+            }
+            int[] termIds = new int[matches];
+            int[] termIndexes = new int[matches];
+            for (int i = 0, m = 0; i < count; i++) {
+                if (survivors[i] && contains[t][i]) {
+                    termIds[m] = ids[i];
+                    termIndexes[m] = i;
+                    m++;
+                }
+            }
+            long[] tf = primaryFieldIndex.getCardinalities(termBound.fieldDefinition, termBound.termId, termIds, stackBuffer);
+            for (int m = 0; m < tf.length; m++) {
+                if (tf[m] > 0) {
+                    scores[termIndexes[m]] += termBound.multiplier * (float) tf[m];
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (!survivors[i]) {
+                continue;
+            }
+            int id = ids[i];
+            if (scores[i] > minScore) {
+                scored.add(new RawBitScore(gatherPromise(name, requestContext, id, gatherFieldDefinitions, stackBuffer), id, scores[i]));
+            } else if (acceptableBelowMin.intValue() > 0) {
+                scored.add(new RawBitScore(gatherPromise(name, requestContext, id, gatherFieldDefinitions, stackBuffer), id, scores[i]));
+                acceptableBelowMin.decrement();
+            }
+        }
+        return pruned;
+    }
+
+    private <BM extends IBM, IBM> Promise<TimestampedValues> gatherPromise(String name,
+        MiruRequestContext<BM, IBM, ?> requestContext,
+        int id,
+        MiruFieldDefinition[] gatherFieldDefinitions,
+        StackBuffer stackBuffer) {
+        return new Promise<>(() -> {
+            //TODO formalize gathering of fields/terms
+            TimeVersionRealtime tvr = requestContext.getActivityIndex().getTimeVersionRealtime(name, id, stackBuffer);
+            return new TimestampedValues(tvr.timestamp, gatherValues(name, requestContext, id, gatherFieldDefinitions, stackBuffer));
+        });
+    }
+
     private <BM extends IBM, IBM> List<ActivityScore> collectTime(String name,
         MiruBitmaps<BM, IBM> bitmaps,
         MiruRequestContext<BM, IBM, ?> requestContext,
@@ -279,6 +491,28 @@ public class FullText {
         return gatherValues;
     }
 
+    private static class TermBound<BM> implements Comparable<TermBound<BM>> {
+
+        private final MiruFieldDefinition fieldDefinition;
+        private final MiruTermId termId;
+        private final float multiplier;
+        private final BM bitmap;
+        private final float upperBound;
+
+        private TermBound(MiruFieldDefinition fieldDefinition, MiruTermId termId, float multiplier, BM bitmap, float upperBound) {
+            this.fieldDefinition = fieldDefinition;
+            this.termId = termId;
+            this.multiplier = multiplier;
+            this.bitmap = bitmap;
+            this.upperBound = upperBound;
+        }
+
+        @Override
+        public int compareTo(TermBound<BM> o) {
+            return Float.compare(upperBound, o.upperBound);
+        }
+    }
+
     private static class RawBitScore implements Comparable<RawBitScore> {
 
         private final Promise<TimestampedValues> values;
@@ -0,0 +1,29 @@
+package com.jivesoftware.os.miru.stream.plugins.fulltext;
+
+import com.google.common.collect.Lists;
+import com.jivesoftware.os.miru.plugin.solution.MiruAnswerChunker;
+import com.jivesoftware.os.miru.stream.plugins.fulltext.FullTextAnswer.ActivityScore;
+import java.util.List;
+
+/**
+ * Slices the already sorted results into consecutive chunks. Only the first chunk carries the found count, since
+ * {@link FullTextAnswerMerger} sums it across merges.
+ */
+public class FullTextAnswerChunker implements MiruAnswerChunker<FullTextAnswer> {
+
+    @Override
+    public void chunk(FullTextAnswer answer, int maxItemsPerChunk, ChunkStream<FullTextAnswer> stream) throws Exception {
+        List<ActivityScore> results = answer.results;
+        if (results == null || results.size() <= maxItemsPerChunk) {
+            stream.stream(answer);
+            return;
+        }
+
+        for (int from = 0; from < results.size(); from += maxItemsPerChunk) {
+            int to = Math.min(from + maxItemsPerChunk, results.size());
+            stream.stream(new FullTextAnswer(Lists.newArrayList(results.subList(from, to)),
+                from == 0 ? answer.found : 0,
+                answer.resultsExhausted));
+        }
+    }
+}
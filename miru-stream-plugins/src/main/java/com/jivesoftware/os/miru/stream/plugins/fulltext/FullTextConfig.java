@@ -22,4 +22,7 @@ public interface FullTextConfig extends Config {
     @ClassDefault(DisabledTermProviderInitializer.class)
     Class<? extends FullTextTermProviderInitializer> getTermProviderInitializerClass();
 
+    @BooleanDefault(false)
+    boolean getTfIdfTopKPruningEnabled();
+
 }
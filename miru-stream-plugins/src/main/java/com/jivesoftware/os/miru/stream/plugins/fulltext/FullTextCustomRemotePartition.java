@@ -45,6 +45,7 @@ public class FullTextCustomRemotePartition implements MiruRemotePartition<FullTe
             FullTextAnswer.class,
             report,
             endPointMetrics,
-            FullTextAnswer.EMPTY_RESULTS);
+            FullTextAnswer.EMPTY_RESULTS,
+            new FullTextAnswerMerger(request.query.desiredNumberOfResults));
     }
 }
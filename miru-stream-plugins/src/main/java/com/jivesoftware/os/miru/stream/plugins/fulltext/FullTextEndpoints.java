@@ -2,6 +2,7 @@ package com.jivesoftware.os.miru.stream.plugins.fulltext;
 
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.plugin.partition.MiruPartitionUnavailableException;
+import com.jivesoftware.os.miru.plugin.solution.ChunkedPartitionResponseWriter;
 import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResponse;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequestAndReport;
@@ -18,6 +19,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import org.nustaq.serialization.FSTConfiguration;
 
 import static com.jivesoftware.os.miru.stream.plugins.fulltext.FullTextConstants.FULLTEXT_PREFIX;
@@ -29,6 +31,8 @@ public class FullTextEndpoints {
 
     private static final MetricLogger log = MetricLoggerFactory.getLogger();
     private static final FSTConfiguration conf = FSTConfiguration.createDefaultConfiguration();
+    private static final ChunkedPartitionResponseWriter chunkedWriter = new ChunkedPartitionResponseWriter(1_000, true);
+    private static final FullTextAnswerChunker answerChunker = new FullTextAnswerChunker();
 
     private final FullTextInjectable injectable;
     private final ResponseHelper responseHelper = ResponseHelper.INSTANCE;
@@ -75,4 +79,22 @@ public class FullTextEndpoints {
             return Response.serverError().build();
         }
     }
+
+    @POST
+    @Path(FullTextConstants.CUSTOM_QUERY_ENDPOINT + "/{partitionId}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response filterCustomStreamChunked(@PathParam("partitionId") int id, MiruRequestAndReport<FullTextQuery, FullTextReport> requestAndReport) {
+        MiruPartitionId partitionId = MiruPartitionId.of(id);
+        try {
+            MiruPartitionResponse<FullTextAnswer> result = injectable.filterCustomStream(partitionId, requestAndReport);
+            StreamingOutput stream = os -> chunkedWriter.write(result, answerChunker, os);
+            return Response.ok(stream, MediaType.APPLICATION_OCTET_STREAM).build();
+        } catch (MiruPartitionUnavailableException | InterruptedException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Unavailable " + e.getMessage()).build();
+        } catch (Exception e) {
+            log.error("Failed to filter chunked custom stream for partition: " + partitionId.getId(), e);
+            return Response.serverError().build();
+        }
+    }
 }
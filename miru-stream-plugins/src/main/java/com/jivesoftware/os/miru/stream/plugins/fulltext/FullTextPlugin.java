@@ -6,6 +6,8 @@ import com.jivesoftware.os.miru.plugin.MiruProvider;
 import com.jivesoftware.os.miru.plugin.plugin.LifecycleMiruPlugin;
 import com.jivesoftware.os.miru.plugin.plugin.MiruEndpointInjectable;
 import com.jivesoftware.os.miru.plugin.plugin.MiruPlugin;
+import com.jivesoftware.os.miru.plugin.solution.ChunkedRemotePartitionConfig;
+import com.jivesoftware.os.miru.plugin.solution.ChunkedRemotePartitionReader;
 import com.jivesoftware.os.miru.plugin.solution.FstRemotePartitionReader;
 import com.jivesoftware.os.miru.plugin.solution.MiruRemotePartition;
 import com.jivesoftware.os.miru.plugin.solution.MiruRemotePartitionReader;
@@ -67,7 +69,8 @@ public class FullTextPlugin implements MiruPlugin<FullTextEndpoints, FullTextInj
     @Override
     public Collection<MiruEndpointInjectable<FullTextInjectable>> getInjectables(MiruProvider<? extends Miru> miruProvider) {
 
-        FullText fullText = new FullText(miruProvider);
+        FullTextConfig config = miruProvider.getConfig(FullTextConfig.class);
+        FullText fullText = new FullText(miruProvider, config.getTfIdfTopKPruningEnabled());
         return Collections.singletonList(new MiruEndpointInjectable<>(
             FullTextInjectable.class,
             new FullTextInjectable(miruProvider, fullText)
@@ -76,8 +79,11 @@ public class FullTextPlugin implements MiruPlugin<FullTextEndpoints, FullTextInj
 
     @Override
     public Collection<MiruRemotePartition<?, ?, ?>> getRemotePartitions(MiruProvider<? extends Miru> miruProvider) {
-        MiruRemotePartitionReader remotePartitionReader = new FstRemotePartitionReader(miruProvider.getReaderHttpClient(),
-                miruProvider.getReaderStrategyCache(), false);
+        ChunkedRemotePartitionConfig chunkedConfig = miruProvider.getConfig(ChunkedRemotePartitionConfig.class);
+        MiruRemotePartitionReader remotePartitionReader = chunkedConfig.getChunkedRemotePartitionEnabled()
+            ? new ChunkedRemotePartitionReader(miruProvider.getReaderHttpClient(), miruProvider.getReaderStrategyCache(),
+                chunkedConfig.getChunkedRemotePartitionMaxFrameSizeInBytes())
+            : new FstRemotePartitionReader(miruProvider.getReaderHttpClient(), miruProvider.getReaderStrategyCache(), false);
         return Arrays.asList(new FullTextCustomRemotePartition(remotePartitionReader));
     }
 }
@@ -1,6 +1,7 @@
 package com.jivesoftware.os.miru.stumptown.deployable;
 
 import org.merlin.config.Config;
+import org.merlin.config.defaults.BooleanDefault;
 import org.merlin.config.defaults.IntDefault;
 import org.merlin.config.defaults.LongDefault;
 
@@ -24,4 +25,16 @@ interface MiruStumptownConfig extends Config {
     @IntDefault(100)
     int getHealthSampleWindow();
 
+    @BooleanDefault(false)
+    boolean getPayloadSegmentsEnabled();
+
+    @IntDefault(1_000)
+    int getPayloadSegmentMaxBlockEvents();
+
+    @IntDefault(1_024 * 1_024)
+    int getPayloadSegmentMaxBlockSizeInBytes();
+
+    @BooleanDefault(true)
+    boolean getPayloadSegmentsReadLegacy();
+
 }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Objects;
 import com.jivesoftware.os.filer.queue.guaranteed.delivery.GuaranteedDeliveryService;
 import com.jivesoftware.os.miru.logappender.MiruLogEvent;
+import com.jivesoftware.os.miru.logappender.MiruLogEventCodec;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 
@@ -36,15 +37,7 @@ public class MiruStumptownIntakeEndpoints {
     @Consumes(MediaType.APPLICATION_JSON)
     public Response intake(List<MiruLogEvent> logEvents) throws Exception {
         try {
-            for (MiruLogEvent logEvent : logEvents) {
-                LOG.debug("host:{} service:{} instance:{} message:{}",
-                        logEvent.host, logEvent.service, logEvent.instance, logEvent.message);
-
-                int hash = Objects.hashCode(logEvent.host, logEvent.service, logEvent.instance, logEvent.threadName);
-                GuaranteedDeliveryService guaranteedDeliveryService = deliveryQueueProvider.getGuaranteedDeliveryServices(hash);
-                guaranteedDeliveryService.add(Collections.singletonList(mapper.writeValueAsBytes(logEvent)));
-            }
-
+            enqueue(logEvents);
             return Response.accepted().build();
         } catch (Throwable t) {
             LOG.error("Error on intake for {} events", new Object[]{logEvents.size()}, t);
@@ -52,4 +45,35 @@ public class MiruStumptownIntakeEndpoints {
         }
     }
 
+    @POST
+    @Path("/intake/binary")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    public Response intakeBinary(byte[] rawBytes) throws Exception {
+        List<MiruLogEvent> logEvents;
+        try {
+            logEvents = MiruLogEventCodec.decode(rawBytes);
+        } catch (Exception e) {
+            LOG.error("Failed to decode {} bytes on binary intake", new Object[]{rawBytes.length}, e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        try {
+            enqueue(logEvents);
+            return Response.accepted().build();
+        } catch (Throwable t) {
+            LOG.error("Error on binary intake for {} events", new Object[]{logEvents.size()}, t);
+            return Response.serverError().build();
+        }
+    }
+
+    private void enqueue(List<MiruLogEvent> logEvents) throws Exception {
+        for (MiruLogEvent logEvent : logEvents) {
+            LOG.debug("host:{} service:{} instance:{} message:{}",
+                    logEvent.host, logEvent.service, logEvent.instance, logEvent.message);
+
+            int hash = Objects.hashCode(logEvent.host, logEvent.service, logEvent.instance, logEvent.threadName);
+            GuaranteedDeliveryService guaranteedDeliveryService = deliveryQueueProvider.getGuaranteedDeliveryServices(hash);
+            guaranteedDeliveryService.add(Collections.singletonList(mapper.writeValueAsBytes(logEvent)));
+        }
+    }
+
 }
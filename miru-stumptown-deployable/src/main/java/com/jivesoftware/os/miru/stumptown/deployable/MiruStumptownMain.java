@@ -37,6 +37,7 @@ import com.jivesoftware.os.miru.stumptown.deployable.region.StumptownStatusPlugi
 import com.jivesoftware.os.miru.stumptown.deployable.region.StumptownTrendsPluginRegion;
 import com.jivesoftware.os.miru.stumptown.deployable.storage.MiruStumptownPayloadStorage;
 import com.jivesoftware.os.miru.stumptown.deployable.storage.MiruStumptownPayloadsAmzaIntializer;
+import com.jivesoftware.os.miru.stumptown.deployable.storage.MiruStumptownPayloadsSegmentedAmzaIntializer;
 import com.jivesoftware.os.miru.ui.MiruSoyRenderer;
 import com.jivesoftware.os.miru.ui.MiruSoyRendererInitializer;
 import com.jivesoftware.os.miru.ui.MiruSoyRendererInitializer.MiruSoyRendererConfig;
@@ -128,10 +129,20 @@ public class MiruStumptownMain {
 
                 deployable.addHealthCheck(new TenantAwareHttpClientHealthCheck("amza", amzaClient));
 
-                payloads = new MiruStumptownPayloadsAmzaIntializer().initialize(instanceConfig.getClusterName(),
-                    amzaClient,
-                    miruStumptownConfig.getAwaitLeaderElectionForNMillis(),
-                    mapper);
+                if (miruStumptownConfig.getPayloadSegmentsEnabled()) {
+                    payloads = new MiruStumptownPayloadsSegmentedAmzaIntializer().initialize(instanceConfig.getClusterName(),
+                        amzaClient,
+                        miruStumptownConfig.getAwaitLeaderElectionForNMillis(),
+                        mapper,
+                        miruStumptownConfig.getPayloadSegmentMaxBlockEvents(),
+                        miruStumptownConfig.getPayloadSegmentMaxBlockSizeInBytes(),
+                        miruStumptownConfig.getPayloadSegmentsReadLegacy());
+                } else {
+                    payloads = new MiruStumptownPayloadsAmzaIntializer().initialize(instanceConfig.getClusterName(),
+                        amzaClient,
+                        miruStumptownConfig.getAwaitLeaderElectionForNMillis(),
+                        mapper);
+                }
             } catch (Exception x) {
                 serviceStartupHealthCheck.info("Failed to setup connection to Amza.", x);
             }
@@ -219,8 +230,8 @@ public class MiruStumptownMain {
                 10_000,
                 1_000,
                 miruLogAppenderConfig.getQueueIsBlocking(),
-                miruLogAppenderConfig.getIfSuccessPauseMillis(),
-                miruLogAppenderConfig.getIfEmptyPauseMillis(),
+                miruLogAppenderConfig.getFlushMaxLatencyMillis(),
+                miruLogAppenderConfig.getFlushMaxLatencyMillis(),
                 miruLogAppenderConfig.getIfErrorPauseMillis(),
                 miruLogAppenderConfig.getNonBlockingDrainThreshold(),
                 miruLogAppenderConfig.getNonBlockingDrainCount()).install();
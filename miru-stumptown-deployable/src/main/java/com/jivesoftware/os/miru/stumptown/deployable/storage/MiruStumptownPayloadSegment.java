@@ -0,0 +1,147 @@
+package com.jivesoftware.os.miru.stumptown.deployable.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import org.xerial.snappy.Snappy;
+
+/**
+ * A block of time contiguous payloads. The first and last activity times are written uncompressed ahead of the snappy
+ * compressed body, so a reader can tell whether a block covers any of the times it wants without decompressing it. The
+ * body holds the activity times as ascending deltas followed by the length prefixed payload bytes.
+ */
+class MiruStumptownPayloadSegment {
+
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = 1 + 8 + 8;
+
+    private final long[] activityTimes;
+    private final byte[][] payloads;
+
+    private MiruStumptownPayloadSegment(long[] activityTimes, byte[][] payloads) {
+        this.activityTimes = activityTimes;
+        this.payloads = payloads;
+    }
+
+    /**
+     * @param activityTimes ascending activity times
+     * @param payloads the payload bytes for each activity time
+     */
+    static byte[] encode(long[] activityTimes, byte[][] payloads, int count) throws IOException {
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            size += payloads[i].length;
+        }
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(size + count * 8);
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        writeVarLong(body, count);
+        long lastTime = activityTimes[0];
+        for (int i = 0; i < count; i++) {
+            writeVarLong(body, activityTimes[i] - lastTime);
+            lastTime = activityTimes[i];
+        }
+        for (int i = 0; i < count; i++) {
+            writeVarLong(body, payloads[i].length);
+            body.write(payloads[i]);
+        }
+        body.flush();
+
+        byte[] compressed = Snappy.compress(bodyBytes.toByteArray());
+        byte[] bytes = new byte[HEADER_LENGTH + compressed.length];
+        bytes[0] = VERSION;
+        writeLong(bytes, 1, activityTimes[0]);
+        writeLong(bytes, 9, activityTimes[count - 1]);
+        System.arraycopy(compressed, 0, bytes, HEADER_LENGTH, compressed.length);
+        return bytes;
+    }
+
+    static long firstActivityTime(byte[] bytes) throws IOException {
+        checkVersion(bytes);
+        return readLong(bytes, 1);
+    }
+
+    static long lastActivityTime(byte[] bytes) throws IOException {
+        checkVersion(bytes);
+        return readLong(bytes, 9);
+    }
+
+    static MiruStumptownPayloadSegment decode(byte[] bytes) throws IOException {
+        checkVersion(bytes);
+        byte[] uncompressed = Snappy.uncompress(Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(uncompressed));
+        int count = (int) readVarLong(in);
+        long[] activityTimes = new long[count];
+        long lastTime = readLong(bytes, 1);
+        for (int i = 0; i < count; i++) {
+            lastTime += readVarLong(in);
+            activityTimes[i] = lastTime;
+        }
+        byte[][] payloads = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            payloads[i] = new byte[(int) readVarLong(in)];
+            in.readFully(payloads[i]);
+        }
+        return new MiruStumptownPayloadSegment(activityTimes, payloads);
+    }
+
+    /**
+     * @return the number of requested times that were found in this block
+     */
+    int collect(Collection<Long> wantedActivityTimes, Map<Long, byte[]> found) {
+        int count = 0;
+        for (Long activityTime : wantedActivityTimes) {
+            int index = Arrays.binarySearch(activityTimes, activityTime);
+            if (index >= 0) {
+                found.put(activityTime, payloads[index]);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void checkVersion(byte[] bytes) throws IOException {
+        if (bytes.length < HEADER_LENGTH || bytes[0] != VERSION) {
+            throw new IOException("Unsupported payload segment format version: " + (bytes.length == 0 ? "empty" : String.valueOf(bytes[0])));
+        }
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varlong");
+    }
+}
@@ -26,6 +26,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
@@ -146,4 +147,29 @@ public class MiruStumptownPayloadsAmza implements MiruStumptownPayloadStorage {
         return payloads;
     }
 
+    /**
+     * Reads the raw payload bytes for the given times into {@code found}, keyed by activity time. Times with no row are left out.
+     */
+    void multiGetBytes(MiruTenantId tenantId, Collection<Long> activityTimes, Map<Long, byte[]> found) throws Exception {
+        if (activityTimes.isEmpty()) {
+            return;
+        }
+        PartitionClient partition = clientProvider.getPartition(payload, 3, partitionProperties);
+        partition.get(Consistency.leader_quorum,
+            tenantId.getBytes(), (UnprefixedWALKeyStream keyStream) -> {
+                for (Long activityTime : activityTimes) {
+                    if (!keyStream.stream(UIO.longBytes(activityTime))) {
+                        return false;
+                    }
+                }
+                return true;
+            },
+            (prefix, key, value, timestamp, version) -> {
+                if (value != null) {
+                    found.put(UIO.bytesLong(key), value);
+                }
+                return true;
+            }, additionalSolverAfterNMillis, abandonLeaderSolutionAfterNMillis, abandonSolutionAfterNMillis, Optional.empty());
+    }
+
 }
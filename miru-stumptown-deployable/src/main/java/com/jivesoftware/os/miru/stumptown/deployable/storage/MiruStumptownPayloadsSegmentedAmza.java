@@ -0,0 +1,241 @@
+package com.jivesoftware.os.miru.stumptown.deployable.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.PartitionClient;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.api.partition.Durability;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.client.http.AmzaClientProvider;
+import com.jivesoftware.os.amza.client.http.HttpPartitionClientFactory;
+import com.jivesoftware.os.amza.client.http.HttpPartitionHostsProvider;
+import com.jivesoftware.os.amza.client.http.RingHostHttpClientProvider;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.routing.bird.http.client.HttpClient;
+import com.jivesoftware.os.routing.bird.http.client.TailAtScaleStrategy;
+import com.jivesoftware.os.routing.bird.http.client.TenantAwareHttpClient;
+import com.jivesoftware.os.routing.bird.shared.BoundedExecutor;
+import com.jivesoftware.os.routing.bird.shared.HttpClientException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores payloads in snappy compressed blocks of time contiguous events rather than one row per event. Each block is keyed by
+ * its last activity time and never spans a segment, which is a fixed window of the activity time space. The row keys then
+ * act as a sparse time index: the block holding a wanted time is the first one keyed at or after it, so to read a page of
+ * results we seek to the smallest time wanted in each touched segment and stop at the first block that reaches the largest.
+ * Times that no block holds are read from the legacy one row per event partition, if one is given, so payloads written
+ * before segments were enabled remain readable.
+ */
+public class MiruStumptownPayloadsSegmentedAmza implements MiruStumptownPayloadStorage {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    /**
+     * Activity times are snowflake ids with the timestamp above the low 22 bits, so a segment covers about 65 seconds.
+     */
+    static final int SEGMENT_BITS = 38;
+
+    private final ObjectMapper mapper;
+    private final MiruStumptownPayloadsAmza legacyPayloads;
+    private final AmzaClientProvider<HttpClient, HttpClientException> clientProvider;
+    private final int maxBlockEvents;
+    private final int maxBlockSizeInBytes;
+
+    private final PartitionName payload;
+
+    private final PartitionProperties partitionProperties;
+    private final long additionalSolverAfterNMillis = 1_000; //TODO expose to conf?
+    private final long abandonLeaderSolutionAfterNMillis = 5_000; //TODO expose to conf?
+    private final long abandonSolutionAfterNMillis = 30_000; //TODO expose to conf?
+
+    public MiruStumptownPayloadsSegmentedAmza(String nameSpace,
+        ObjectMapper mapper,
+        TenantAwareHttpClient<String> httpClient,
+        long awaitLeaderElectionForNMillis,
+        int maxBlockEvents,
+        int maxBlockSizeInBytes,
+        MiruStumptownPayloadsAmza legacyPayloads) {
+
+        this.mapper = mapper;
+        this.legacyPayloads = legacyPayloads;
+        this.maxBlockEvents = maxBlockEvents;
+        this.maxBlockSizeInBytes = maxBlockSizeInBytes;
+
+        payload = new PartitionName(false, "p".getBytes(StandardCharsets.UTF_8), (nameSpace + "-stumptown-segments").getBytes(StandardCharsets.UTF_8));
+
+        TailAtScaleStrategy tailAtScaleStrategy = new TailAtScaleStrategy(
+            BoundedExecutor.newBoundedExecutor(1024, "amza-client-tas"),
+            100, // TODO config
+            95, // TODO config
+            1000
+        );
+
+        this.clientProvider = new AmzaClientProvider<>(
+            new HttpPartitionClientFactory(),
+            new HttpPartitionHostsProvider(httpClient, tailAtScaleStrategy, mapper),
+            new RingHostHttpClientProvider(httpClient),
+            BoundedExecutor.newBoundedExecutor(1024, "amza-client"),
+            awaitLeaderElectionForNMillis,
+            -1,
+            -1);
+
+        long ttl = TimeUnit.DAYS.toMillis(1);
+
+        // blocks are already compressed
+        partitionProperties = new PartitionProperties(Durability.fsync_never,
+            ttl, ttl / 2, ttl, ttl / 2, ttl, ttl / 2, ttl, ttl / 2,
+            false,
+            Consistency.leader_quorum,
+            true,
+            true,
+            false,
+            RowType.primary,
+            "lab",
+            -1,
+            null,
+            -1,
+            -1);
+    }
+
+    static long segment(long activityTime) {
+        return activityTime >>> SEGMENT_BITS;
+    }
+
+    @Override
+    public <T> void multiPut(MiruTenantId tenantId, List<TimeAndPayload<T>> timesAndPayloads) throws Exception {
+        if (timesAndPayloads.isEmpty()) {
+            return;
+        }
+
+        List<TimeAndPayload<T>> sorted = new ArrayList<>(timesAndPayloads);
+        sorted.sort((o1, o2) -> Long.compare(o1.activityTime, o2.activityTime));
+
+        List<byte[]> keys = Lists.newArrayList();
+        List<byte[]> blocks = Lists.newArrayList();
+        long[] activityTimes = new long[maxBlockEvents];
+        byte[][] payloads = new byte[maxBlockEvents][];
+        int count = 0;
+        int sizeInBytes = 0;
+        for (TimeAndPayload<T> timeAndPayload : sorted) {
+            if (count > 0
+                && (count == maxBlockEvents
+                || sizeInBytes >= maxBlockSizeInBytes
+                || segment(timeAndPayload.activityTime) != segment(activityTimes[0]))) {
+                keys.add(UIO.longBytes(activityTimes[count - 1]));
+                blocks.add(MiruStumptownPayloadSegment.encode(activityTimes, payloads, count));
+                count = 0;
+                sizeInBytes = 0;
+            }
+            activityTimes[count] = timeAndPayload.activityTime;
+            payloads[count] = mapper.writeValueAsBytes(timeAndPayload.payload);
+            sizeInBytes += payloads[count].length;
+            count++;
+        }
+        keys.add(UIO.longBytes(activityTimes[count - 1]));
+        blocks.add(MiruStumptownPayloadSegment.encode(activityTimes, payloads, count));
+
+        PartitionClient partition = clientProvider.getPartition(payload, 3, partitionProperties);
+        long now = System.currentTimeMillis();
+        partition.commit(Consistency.leader_quorum,
+            tenantId.getBytes(), (stream) -> {
+                for (int i = 0; i < keys.size(); i++) {
+                    if (!stream.commit(keys.get(i), blocks.get(i), now, false)) {
+                        return false;
+                    }
+                }
+                return true;
+            },
+            additionalSolverAfterNMillis, abandonSolutionAfterNMillis, Optional.empty());
+        LOG.inc("segments>put>events", timesAndPayloads.size());
+        LOG.inc("segments>put>blocks", blocks.size());
+    }
+
+    @Override
+    public <T> T get(MiruTenantId tenantId, long activityTime, Class<T> payloadClass) throws Exception {
+        List<T> payloads = multiGet(tenantId, Collections.singletonList(activityTime), payloadClass);
+        return payloads.isEmpty() ? null : payloads.get(0);
+    }
+
+    @Override
+    public <T> List<T> multiGet(MiruTenantId tenantId, Collection<Long> activityTimes, final Class<T> payloadClass) throws Exception {
+        if (activityTimes.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        TreeMap<Long, TreeSet<Long>> segmentTimes = new TreeMap<>();
+        for (Long activityTime : activityTimes) {
+            segmentTimes.computeIfAbsent(segment(activityTime), key -> new TreeSet<>()).add(activityTime);
+        }
+
+        Map<Long, byte[]> found = Maps.newHashMapWithExpectedSize(activityTimes.size());
+        int[] scanned = new int[1];
+        int[] decoded = new int[1];
+        PartitionClient partition = clientProvider.getPartition(payload, 3, partitionProperties);
+        for (Map.Entry<Long, TreeSet<Long>> entry : segmentTimes.entrySet()) {
+            TreeSet<Long> wanted = entry.getValue();
+            long largestWanted = wanted.last();
+            byte[] fromKey = UIO.longBytes(wanted.first());
+            byte[] toKey = UIO.longBytes((entry.getKey() + 1) << SEGMENT_BITS);
+            partition.scan(Consistency.leader_quorum, false,
+                prefixedKeyRangeStream -> prefixedKeyRangeStream.stream(tenantId.getBytes(), fromKey, tenantId.getBytes(), toKey),
+                (prefix, key, value, timestamp, version) -> {
+                    scanned[0]++;
+                    if (value != null) {
+                        long firstTime = MiruStumptownPayloadSegment.firstActivityTime(value);
+                        long lastTime = MiruStumptownPayloadSegment.lastActivityTime(value);
+                        NavigableSet<Long> covered = wanted.subSet(firstTime, true, lastTime, true);
+                        if (!covered.isEmpty()) {
+                            MiruStumptownPayloadSegment.decode(value).collect(covered, found);
+                            decoded[0]++;
+                        }
+                    }
+                    return UIO.bytesLong(key) < largestWanted;
+                },
+                additionalSolverAfterNMillis,
+                abandonLeaderSolutionAfterNMillis,
+                abandonSolutionAfterNMillis,
+                Optional.empty());
+        }
+        LOG.inc("segments>get>events", activityTimes.size());
+        LOG.inc("segments>get>scanned", scanned[0]);
+        LOG.inc("segments>get>blocks", decoded[0]);
+
+        if (legacyPayloads != null && found.size() < activityTimes.size()) {
+            List<Long> missing = Lists.newArrayList();
+            for (Long activityTime : activityTimes) {
+                if (!found.containsKey(activityTime)) {
+                    missing.add(activityTime);
+                }
+            }
+            int foundInSegments = found.size();
+            legacyPayloads.multiGetBytes(tenantId, missing, found);
+            LOG.inc("segments>get>legacy", found.size() - foundInSegments);
+        }
+
+        List<T> payloads = Lists.newArrayListWithCapacity(found.size());
+        for (Long activityTime : activityTimes) {
+            byte[] value = found.get(activityTime);
+            if (value != null) {
+                payloads.add(mapper.readValue(value, payloadClass));
+            }
+        }
+        return payloads;
+    }
+
+}
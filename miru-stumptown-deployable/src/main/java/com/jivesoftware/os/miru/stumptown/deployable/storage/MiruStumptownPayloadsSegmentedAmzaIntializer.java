@@ -0,0 +1,26 @@
+package com.jivesoftware.os.miru.stumptown.deployable.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jivesoftware.os.routing.bird.http.client.TenantAwareHttpClient;
+import java.io.IOException;
+
+/**
+ *
+ */
+public class MiruStumptownPayloadsSegmentedAmzaIntializer {
+
+    public MiruStumptownPayloadStorage initialize(String nameSpace,
+        TenantAwareHttpClient<String> httpClient,
+        long awaitLeaderElectionForNMillis,
+        ObjectMapper mapper,
+        int maxBlockEvents,
+        int maxBlockSizeInBytes,
+        boolean readLegacyPayloads) throws IOException {
+
+        MiruStumptownPayloadsAmza legacyPayloads = readLegacyPayloads
+            ? new MiruStumptownPayloadsAmza(nameSpace, mapper, httpClient, awaitLeaderElectionForNMillis)
+            : null;
+        return new MiruStumptownPayloadsSegmentedAmza(nameSpace, mapper, httpClient, awaitLeaderElectionForNMillis, maxBlockEvents, maxBlockSizeInBytes,
+            legacyPayloads);
+    }
+}
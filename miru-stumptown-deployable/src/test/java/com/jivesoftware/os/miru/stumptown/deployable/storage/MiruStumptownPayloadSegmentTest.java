@@ -0,0 +1,47 @@
+package com.jivesoftware.os.miru.stumptown.deployable.storage;
+
+import com.google.common.collect.Maps;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+/**
+ *
+ */
+public class MiruStumptownPayloadSegmentTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        int count = 100;
+        long[] activityTimes = new long[count + 10];
+        byte[][] payloads = new byte[count + 10][];
+        for (int i = 0; i < count; i++) {
+            activityTimes[i] = (1_000L << 22) + i * 3;
+            payloads[i] = ("{\"message\":\"event " + i + "\"}").getBytes(StandardCharsets.UTF_8);
+        }
+
+        byte[] bytes = MiruStumptownPayloadSegment.encode(activityTimes, payloads, count);
+        assertEquals(MiruStumptownPayloadSegment.firstActivityTime(bytes), activityTimes[0]);
+        assertEquals(MiruStumptownPayloadSegment.lastActivityTime(bytes), activityTimes[count - 1]);
+
+        Map<Long, byte[]> found = Maps.newHashMap();
+        int collected = MiruStumptownPayloadSegment.decode(bytes).collect(Arrays.asList(activityTimes[0], activityTimes[7], activityTimes[7] + 1,
+            activityTimes[count - 1]), found);
+        assertEquals(collected, 3);
+        assertEquals(new String(found.get(activityTimes[7]), StandardCharsets.UTF_8), "{\"message\":\"event 7\"}");
+        assertEquals(new String(found.get(activityTimes[count - 1]), StandardCharsets.UTF_8), "{\"message\":\"event 99\"}");
+        assertFalse(found.containsKey(activityTimes[7] + 1));
+    }
+
+    @Test
+    public void testSegmentsAreTimeWindows() throws Exception {
+        long base = 123L << MiruStumptownPayloadsSegmentedAmza.SEGMENT_BITS;
+        assertEquals(MiruStumptownPayloadsSegmentedAmza.segment(base), 123L);
+        assertEquals(MiruStumptownPayloadsSegmentedAmza.segment(base + (1L << MiruStumptownPayloadsSegmentedAmza.SEGMENT_BITS) - 1), 123L);
+        assertEquals(MiruStumptownPayloadsSegmentedAmza.segment(base + (1L << MiruStumptownPayloadsSegmentedAmza.SEGMENT_BITS)), 124L);
+    }
+}
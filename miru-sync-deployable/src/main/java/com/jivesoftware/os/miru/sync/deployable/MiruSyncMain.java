@@ -479,7 +479,8 @@ public class MiruSyncMain {
                     1000,
                     mapper,
                     walClientSickThreads,
-                    10_000);
+                    10_000,
+                    walConfig.getBinaryActivityWrites());
 
                 syncCopier = (MiruSyncCopier) new MiruSyncCopier<>(amzaWALClient, syncConfig.getCopyBatchSize(), null, AmzaCursor.class);
 
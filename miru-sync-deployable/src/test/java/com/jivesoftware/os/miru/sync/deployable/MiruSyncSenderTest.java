@@ -27,6 +27,7 @@ import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivityFactory;
 import com.jivesoftware.os.miru.api.activity.MiruReadEvent;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
 import com.jivesoftware.os.miru.api.activity.TimeAndVersion;
 import com.jivesoftware.os.miru.api.activity.schema.DefaultMiruSchemaDefinition;
 import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
@@ -372,6 +373,11 @@ public class MiruSyncSenderTest {
             return null;
         }
 
+        @Override
+        public List<TenantAndPartition> pollActivityNotifications(long timeoutMillis) throws Exception {
+            return Collections.emptyList();
+        }
+
         @Override
         public OldestReadResult<AmzaSipCursor> oldestReadEventId(MiruTenantId tenantId,
             MiruStreamId streamId,
@@ -11,15 +11,18 @@ import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
 import com.jivesoftware.os.miru.api.activity.MiruReadEvent;
 import com.jivesoftware.os.miru.api.activity.StreamIdPartitionedActivities;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
 import com.jivesoftware.os.miru.api.activity.TimeAndVersion;
 import com.jivesoftware.os.miru.api.base.MiruStreamId;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.api.wal.AmzaCursor;
 import com.jivesoftware.os.miru.api.wal.AmzaSipCursor;
 import com.jivesoftware.os.miru.api.wal.MiruActivityWALStatus;
+import com.jivesoftware.os.miru.api.wal.MiruPartitionedActivityCodec;
 import com.jivesoftware.os.miru.api.wal.MiruVersionedActivityLookupEntry;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient;
 import com.jivesoftware.os.miru.api.wal.MiruWALEntry;
+import com.jivesoftware.os.miru.api.wal.MiruWALNotifications;
 import com.jivesoftware.os.miru.api.wal.SipAndLastSeen;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
@@ -35,6 +38,7 @@ import com.jivesoftware.os.routing.bird.shared.ClientCall.ClientResponse;
 import com.jivesoftware.os.routing.bird.shared.HostPort;
 import com.jivesoftware.os.routing.bird.shared.HttpClientException;
 import com.jivesoftware.os.routing.bird.shared.NextClientStrategy;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -59,7 +63,10 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
     private final HttpResponseMapper responseMapper;
     private final SickThreads sickThreads;
     private final long sleepOnFailureMillis;
+    private final boolean binaryActivityWrites;
+    private final MiruPartitionedActivityCodec activityCodec;
     private final Cache<TenantRoutingGroup<?>, NextClientStrategy> tenantRoutingCache;
+    private final MiruWALNotificationPoller notificationPoller;
 
     private final Map<MiruTenantId, NextClientStrategy> tenantNextClientStrategy = Maps.newConcurrentMap();
 
@@ -71,7 +78,9 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
         long tasInitialSLAMillis,
         ObjectMapper requestMapper,
         HttpResponseMapper responseMapper,
-        SickThreads sickThreads, long sleepOnFailureMillis) {
+        SickThreads sickThreads,
+        long sleepOnFailureMillis,
+        boolean binaryActivityWrites) {
 
         this.routingTenantId = routingTenantId;
         this.walClient = walClient;
@@ -83,10 +92,13 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
         this.responseMapper = responseMapper;
         this.sickThreads = sickThreads;
         this.sleepOnFailureMillis = sleepOnFailureMillis;
+        this.binaryActivityWrites = binaryActivityWrites;
+        this.activityCodec = new MiruPartitionedActivityCodec(requestMapper);
         this.tenantRoutingCache = CacheBuilder.newBuilder()
             .maximumSize(50_000) //TODO config
             .expireAfterWrite(5, TimeUnit.MINUTES) //TODO config
             .build();
+        this.notificationPoller = new MiruWALNotificationPoller(tasExecutors, this::pollNotifications, sleepOnFailureMillis);
     }
 
     private HostPort[] getTenantRoutingGroup(RoutingGroupType routingGroupType, MiruTenantId tenantId, boolean createIfAbsent) throws Exception {
@@ -131,12 +143,17 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
     @Override
     public void writeActivity(MiruTenantId tenantId, MiruPartitionId partitionId, List<MiruPartitionedActivity> partitionedActivities) throws Exception {
         try {
-            final String jsonActivities = requestMapper.writeValueAsString(partitionedActivities);
+            final String jsonActivities = binaryActivityWrites ? null : requestMapper.writeValueAsString(partitionedActivities);
+            final byte[] binaryActivities = binaryActivityWrites ? activityCodec.encodeActivities(partitionedActivities) : null;
             while (true) {
                 try {
                     String result = sendWithTenantPartition(RoutingGroupType.activity, tenantId, partitionId, true, "writeActivity",
                         client -> extract(
-                            client.postJson("/miru/wal/amza/write/activities/" + tenantId.toString() + "/" + partitionId.getId(), jsonActivities, null),
+                            binaryActivities != null
+                                ? client.postBytes("/miru/wal/amza/write/activities/binary/" + tenantId.toString() + "/" + partitionId.getId(),
+                                binaryActivities, null)
+                                : client.postJson("/miru/wal/amza/write/activities/" + tenantId.toString() + "/" + partitionId.getId(),
+                                jsonActivities, null),
                             String.class,
                             null));
                     if (result != null) {
@@ -246,15 +263,13 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
         try {
             while (true) {
                 try {
-                    @SuppressWarnings("unchecked")
                     StreamBatch<MiruWALEntry, AmzaSipCursor> response = sendWithTenantPartition(RoutingGroupType.activity, tenantId, partitionId, false,
                         "sipActivity",
-                        client -> extract(
-                            client.postJson("/miru/wal/amza/sip/activity/" + tenantId.toString() + "/" + partitionId.getId() + "/" + batchSize, jsonCursor,
+                        client -> extractBatch(
+                            client.postJson("/miru/wal/amza/sip/activity/" + tenantId.toString() + "/" + partitionId.getId() + "/" + batchSize + "?binary=true",
+                                jsonCursor,
                                 null),
-                            StreamBatch.class,
-                            new Class[] { MiruWALEntry.class, AmzaSipCursor.class },
-                            null));
+                            AmzaSipCursor.class));
                     if (response != null) {
                         return response;
                     }
@@ -271,6 +286,24 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
         }
     }
 
+    @Override
+    public List<TenantAndPartition> pollActivityNotifications(long timeoutMillis) throws Exception {
+        return notificationPoller.poll(timeoutMillis);
+    }
+
+    private MiruWALNotifications pollNotifications(HostPort hostPort, long sinceEpoch, long sinceSequence, long timeoutMillis) throws Exception {
+        return walClient.call(routingTenantId,
+            new ConnectionDescriptorSelectiveStrategy(new HostPort[] { hostPort }),
+            "pollActivityNotifications",
+            client -> {
+                HttpResponse httpResponse = client.get(
+                    "/miru/wal/amza/notifications/activity/" + sinceEpoch + "/" + sinceSequence + "/" + timeoutMillis,
+                    null);
+                MiruWALNotifications response = responseMapper.extractResultFromResponse(httpResponse, MiruWALNotifications.class, null);
+                return new ClientResponse<>(response, true);
+            });
+    }
+
     @Override
     public long getActivityCount(MiruTenantId tenantId, MiruPartitionId partitionId) throws Exception {
         try {
@@ -308,11 +341,11 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
         long stopAtTimestamp,
         MutableLong bytesCount) throws Exception {
         try {
-            String endpoint = "/miru/wal/amza/activity/" + tenantId.toString() + "/" + partitionId.getId() + "/" + batchSize + "/" + stopAtTimestamp;
+            String endpoint = "/miru/wal/amza/activity/" + tenantId.toString() + "/" + partitionId.getId() + "/" + batchSize + "/" + stopAtTimestamp
+                + "?binary=true";
             String jsonCursor = requestMapper.writeValueAsString(cursor);
             while (true) {
                 try {
-                    @SuppressWarnings("unchecked")
                     StreamBatch<MiruWALEntry, AmzaCursor> response = sendWithTenantPartition(RoutingGroupType.activity, tenantId, partitionId, false,
                         "getActivity",
                         client -> {
@@ -320,11 +353,7 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
                             if (bytesCount != null && httpResponse.getResponseBody() != null) {
                                 bytesCount.add(httpResponse.getResponseBody().length);
                             }
-                            return extract(
-                                httpResponse,
-                                StreamBatch.class,
-                                new Class[] { MiruWALEntry.class, AmzaCursor.class },
-                                null);
+                            return extractBatch(httpResponse, AmzaCursor.class);
                         });
                     if (response != null) {
                         return response;
@@ -403,6 +432,7 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
                         if (hostPorts == null || hostPorts.length == 0) {
                             throw new MiruRouteUnavailableException("No route available for tenant " + tenantId + " partition " + partitionId);
                         }
+                        notificationPoller.routed(hostPorts);
                         return new ConnectionDescriptorSelectiveStrategy(hostPorts);
                     });
                 SendResult<R> sendResult = walClient.call(routingTenantId, strategy, family, call);
@@ -503,6 +533,22 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
         return new ClientResponse<>(new SendResult<>(result, true, false), true);
     }
 
+    /**
+     * Activity streams ask for binary, but older WAL hosts still answer with json, so the body decides how it is read.
+     */
+    @SuppressWarnings("unchecked")
+    private <C> ClientResponse<SendResult<StreamBatch<MiruWALEntry, C>>> extractBatch(HttpResponse response, Class<C> cursorClass) {
+        byte[] body = response.getResponseBody();
+        if (responseMapper.isSuccessStatusCode(response.getStatusCode()) && MiruPartitionedActivityCodec.isBinary(body)) {
+            try {
+                return new ClientResponse<>(new SendResult<>(activityCodec.decodeBatch(body, cursorClass), true, false), true);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to decode binary activity batch", e);
+            }
+        }
+        return (ClientResponse) extract(response, StreamBatch.class, new Class[] { MiruWALEntry.class, cursorClass }, null);
+    }
+
     private static class TenantRoutingGroup<P> {
 
         private final RoutingGroupType type;
@@ -16,7 +16,8 @@ public class AmzaWALClientInitializer {
         long tasInitialSLAMillis,
         ObjectMapper mapper,
         SickThreads sickThreads,
-        long sleepOnFailureMillis) throws Exception {
+        long sleepOnFailureMillis,
+        boolean binaryActivityWrites) throws Exception {
 
         return new AmzaHttpWALClient(routingTenantId,
             client,
@@ -27,6 +28,7 @@ public class AmzaWALClientInitializer {
             mapper,
             new HttpResponseMapper(mapper),
             sickThreads,
-            sleepOnFailureMillis);
+            sleepOnFailureMillis,
+            binaryActivityWrites);
     }
 }
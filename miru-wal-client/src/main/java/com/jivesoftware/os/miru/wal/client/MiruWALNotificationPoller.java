@@ -0,0 +1,118 @@
+package com.jivesoftware.os.miru.wal.client;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
+import com.jivesoftware.os.miru.api.wal.MiruWALNotifications;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.routing.bird.shared.HostPort;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-polls activity notifications from every WAL host a client has been routed to. Each host keeps its own cursor and at
+ * most one poll in flight, and a poll returns as soon as any host answers. Answers from the other hosts are picked up by
+ * the next poll, so a quiet host never holds back a busy one.
+ */
+class MiruWALNotificationPoller {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    interface HostPoll {
+
+        MiruWALNotifications poll(HostPort hostPort, long sinceEpoch, long sinceSequence, long timeoutMillis) throws Exception;
+    }
+
+    private final ExecutorService executorService;
+    private final HostPoll hostPoll;
+    private final long sleepOnFailureMillis;
+
+    private final Set<HostPort> hostPorts = Sets.newConcurrentHashSet();
+    private final Map<HostPort, HostCursor> cursors = Maps.newHashMap();
+    private final Set<HostPort> inFlight = Sets.newHashSet();
+    private final LinkedBlockingQueue<HostAnswer> answers = new LinkedBlockingQueue<>();
+
+    MiruWALNotificationPoller(ExecutorService executorService, HostPoll hostPoll, long sleepOnFailureMillis) {
+        this.executorService = executorService;
+        this.hostPoll = hostPoll;
+        this.sleepOnFailureMillis = sleepOnFailureMillis;
+    }
+
+    void routed(HostPort[] routingGroup) {
+        hostPorts.addAll(Arrays.asList(routingGroup));
+    }
+
+    synchronized List<TenantAndPartition> poll(long timeoutMillis) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        for (HostPort hostPort : hostPorts) {
+            HostCursor cursor = cursors.computeIfAbsent(hostPort, key -> new HostCursor());
+            if (cursor.retryAfterTimestamp <= now && inFlight.add(hostPort)) {
+                long sinceEpoch = cursor.epoch;
+                long sinceSequence = cursor.sequence;
+                executorService.submit(() -> {
+                    try {
+                        answers.add(new HostAnswer(hostPort, hostPoll.poll(hostPort, sinceEpoch, sinceSequence, timeoutMillis), null));
+                    } catch (Throwable t) {
+                        answers.add(new HostAnswer(hostPort, null, t));
+                    }
+                });
+            }
+        }
+
+        HostAnswer answer = answers.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (answer == null) {
+            return Lists.newArrayList();
+        }
+        List<HostAnswer> answered = Lists.newArrayList(answer);
+        answers.drainTo(answered);
+
+        Set<TenantAndPartition> partitions = Sets.newHashSet();
+        boolean reset = false;
+        for (HostAnswer hostAnswer : answered) {
+            inFlight.remove(hostAnswer.hostPort);
+            HostCursor cursor = cursors.get(hostAnswer.hostPort);
+            if (hostAnswer.notifications == null) {
+                LOG.warn("Failed to poll activity notifications from {}, will retry in {} ms",
+                    new Object[] { hostAnswer.hostPort, sleepOnFailureMillis }, hostAnswer.failure);
+                cursor.retryAfterTimestamp = System.currentTimeMillis() + sleepOnFailureMillis;
+                continue;
+            }
+            MiruWALNotifications notifications = hostAnswer.notifications;
+            cursor.epoch = notifications.epoch;
+            cursor.sequence = notifications.sequence;
+            if (notifications.reset) {
+                reset = true;
+            } else if (notifications.partitions != null) {
+                partitions.addAll(notifications.partitions);
+            }
+        }
+        return reset ? null : Lists.newArrayList(partitions);
+    }
+
+    private static class HostCursor {
+
+        private long epoch = -1;
+        private long sequence = -1;
+        private long retryAfterTimestamp;
+    }
+
+    private static class HostAnswer {
+
+        private final HostPort hostPort;
+        private final MiruWALNotifications notifications;
+        private final Throwable failure;
+
+        private HostAnswer(HostPort hostPort, MiruWALNotifications notifications, Throwable failure) {
+            this.hostPort = hostPort;
+            this.notifications = notifications;
+            this.failure = failure;
+        }
+    }
+}
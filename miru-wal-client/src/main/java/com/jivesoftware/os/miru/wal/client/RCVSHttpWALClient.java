@@ -9,6 +9,7 @@ import com.google.common.collect.Maps;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
 import com.jivesoftware.os.miru.api.activity.MiruReadEvent;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
 import com.jivesoftware.os.miru.api.activity.TimeAndVersion;
 import com.jivesoftware.os.miru.api.base.MiruStreamId;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
@@ -16,6 +17,7 @@ import com.jivesoftware.os.miru.api.wal.MiruActivityWALStatus;
 import com.jivesoftware.os.miru.api.wal.MiruVersionedActivityLookupEntry;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient;
 import com.jivesoftware.os.miru.api.wal.MiruWALEntry;
+import com.jivesoftware.os.miru.api.wal.MiruWALNotifications;
 import com.jivesoftware.os.miru.api.wal.RCVSCursor;
 import com.jivesoftware.os.miru.api.wal.RCVSSipCursor;
 import com.jivesoftware.os.miru.api.wal.SipAndLastSeen;
@@ -58,6 +60,7 @@ public class RCVSHttpWALClient implements MiruWALClient<RCVSCursor, RCVSSipCurso
     private final SickThreads sickThreads;
     private final long sleepOnFailureMillis;
     private final Cache<TenantRoutingGroup<?>, NextClientStrategy> tenantRoutingCache;
+    private final MiruWALNotificationPoller notificationPoller;
 
     private final Map<MiruTenantId, NextClientStrategy> tenantNextClientStrategy = Maps.newConcurrentMap();
 
@@ -86,6 +89,7 @@ public class RCVSHttpWALClient implements MiruWALClient<RCVSCursor, RCVSSipCurso
             .maximumSize(50_000) //TODO config
             .expireAfterWrite(5, TimeUnit.MINUTES) //TODO config
             .build();
+        this.notificationPoller = new MiruWALNotificationPoller(tasExecutors, this::pollNotifications, sleepOnFailureMillis);
     }
 
     private HostPort[] getTenantPartitionRoutingGroup(RoutingGroupType routingGroupType,
@@ -273,6 +277,24 @@ public class RCVSHttpWALClient implements MiruWALClient<RCVSCursor, RCVSSipCurso
         }
     }
 
+    @Override
+    public List<TenantAndPartition> pollActivityNotifications(long timeoutMillis) throws Exception {
+        return notificationPoller.poll(timeoutMillis);
+    }
+
+    private MiruWALNotifications pollNotifications(HostPort hostPort, long sinceEpoch, long sinceSequence, long timeoutMillis) throws Exception {
+        return walClient.call(routingTenantId,
+            new ConnectionDescriptorSelectiveStrategy(new HostPort[] { hostPort }),
+            "pollActivityNotifications",
+            client -> {
+                HttpResponse httpResponse = client.get(
+                    "/miru/wal/rcvs/notifications/activity/" + sinceEpoch + "/" + sinceSequence + "/" + timeoutMillis,
+                    null);
+                MiruWALNotifications response = responseMapper.extractResultFromResponse(httpResponse, MiruWALNotifications.class, null);
+                return new ClientResponse<>(response, true);
+            });
+    }
+
     @Override
     public long getActivityCount(MiruTenantId tenantId, MiruPartitionId partitionId) throws Exception {
         try {
@@ -405,6 +427,7 @@ public class RCVSHttpWALClient implements MiruWALClient<RCVSCursor, RCVSSipCurso
                         if (hostPorts == null || hostPorts.length == 0) {
                             throw new MiruRouteUnavailableException("No route available for tenant " + tenantId + " partition " + partitionId);
                         }
+                        notificationPoller.routed(hostPorts);
                         return new ConnectionDescriptorSelectiveStrategy(hostPorts);
                     });
                 SendResult<R> sendResult = walClient.call(routingTenantId, strategy, family, call);
@@ -40,6 +40,7 @@ import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.api.topology.MiruClusterClient;
 import com.jivesoftware.os.miru.api.wal.AmzaCursor;
 import com.jivesoftware.os.miru.api.wal.AmzaSipCursor;
+import com.jivesoftware.os.miru.api.wal.MiruPartitionedActivityCodec;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient;
 import com.jivesoftware.os.miru.api.wal.MiruWALConfig;
 import com.jivesoftware.os.miru.api.wal.RCVSCursor;
@@ -420,11 +421,13 @@ public class MiruWALMain {
                     1000,
                     mapper,
                     walClientSickThreads,
-                    10_000);
+                    10_000,
+                    walConfig.getBinaryActivityWrites());
 
                 AmzaActivityWALWriter amzaActivityWALWriter = new AmzaActivityWALWriter(amzaWALUtil,
                     amzaServiceConfig.getReplicateTimeoutMillis(),
-                    mapper);
+                    mapper,
+                    walConfig.getBinaryActivityWrites());
                 AmzaActivityWALReader amzaActivityWALReader = new AmzaActivityWALReader(amzaWALUtil, mapper);
                 AmzaWALLookup amzaWALLookup = new AmzaWALLookup(amzaWALUtil,
                     amzaServiceConfig.getReplicateTimeoutMillis());
@@ -443,6 +446,7 @@ public class MiruWALMain {
 
                 deployable.addEndpoints(AmzaWALEndpoints.class);
                 deployable.addInjectables(AmzaWALDirector.class, amzaWALDirector);
+                deployable.addInjectables(MiruPartitionedActivityCodec.class, new MiruPartitionedActivityCodec(mapper));
 
                 if (primaryAmzaWAL) {
                     activityWALReader = amzaActivityWALReader;
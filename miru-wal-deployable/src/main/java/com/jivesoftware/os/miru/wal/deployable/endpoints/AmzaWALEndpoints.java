@@ -10,12 +10,14 @@ import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.api.wal.AmzaCursor;
 import com.jivesoftware.os.miru.api.wal.AmzaSipCursor;
 import com.jivesoftware.os.miru.api.wal.MiruActivityWALStatus;
+import com.jivesoftware.os.miru.api.wal.MiruPartitionedActivityCodec;
 import com.jivesoftware.os.miru.api.wal.MiruVersionedActivityLookupEntry;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient.OldestReadResult;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient.RoutingGroupType;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient.StreamBatch;
 import com.jivesoftware.os.miru.api.wal.MiruWALEntry;
+import com.jivesoftware.os.miru.api.wal.MiruWALNotifications;
 import com.jivesoftware.os.miru.api.wal.SipAndLastSeen;
 import com.jivesoftware.os.miru.wal.AmzaWALDirector;
 import com.jivesoftware.os.miru.wal.MiruWALNotInitializedException;
@@ -32,6 +34,7 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -48,11 +51,13 @@ public class AmzaWALEndpoints {
 
     private final AmzaWALDirector walDirector;
     private final MiruStats stats;
+    private final MiruPartitionedActivityCodec activityCodec;
     private final ResponseHelper responseHelper = ResponseHelper.INSTANCE;
 
-    public AmzaWALEndpoints(@Context AmzaWALDirector walDirector, @Context MiruStats stats) {
+    public AmzaWALEndpoints(@Context AmzaWALDirector walDirector, @Context MiruStats stats, @Context MiruPartitionedActivityCodec activityCodec) {
         this.walDirector = walDirector;
         this.stats = stats;
+        this.activityCodec = activityCodec;
     }
 
     @GET
@@ -183,6 +188,23 @@ public class AmzaWALEndpoints {
         }
     }
 
+    @POST
+    @Path("/write/activities/binary/{tenantId}/{partitionId}")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response writeActivityBinary(@PathParam("tenantId") String tenantId,
+        @PathParam("partitionId") int partitionId,
+        byte[] rawBytes) throws Exception {
+        List<MiruPartitionedActivity> partitionedActivities;
+        try {
+            partitionedActivities = activityCodec.decodeActivities(rawBytes);
+        } catch (Exception x) {
+            log.error("Failed to decode {} bytes calling writeActivityBinary({},{})", new Object[] { rawBytes.length, tenantId, partitionId }, x);
+            return responseHelper.errorResponse(Response.Status.BAD_REQUEST, "Bad activity encoding", x);
+        }
+        return writeActivity(tenantId, partitionId, partitionedActivities);
+    }
+
     @POST
     @Path("/write/reads/{tenantId}")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -330,10 +352,11 @@ public class AmzaWALEndpoints {
     @POST
     @Path("/sip/activity/{tenantId}/{partitionId}/{batchSize}")
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_OCTET_STREAM })
     public Response sipActivity(@PathParam("tenantId") String tenantId,
         @PathParam("partitionId") int partitionId,
         @PathParam("batchSize") int batchSize,
+        @QueryParam("binary") boolean binary,
         SipAndLastSeen<AmzaSipCursor> sipAndLastSeen)
         throws Exception {
         try {
@@ -341,7 +364,7 @@ public class AmzaWALEndpoints {
             StreamBatch<MiruWALEntry, AmzaSipCursor> sipActivity = walDirector.sipActivity(new MiruTenantId(tenantId.getBytes(Charsets.UTF_8)),
                 MiruPartitionId.of(partitionId), sipAndLastSeen.sipCursor, sipAndLastSeen.lastSeen, batchSize);
             stats.ingressed("/sip/activity/" + batchSize, 1, System.currentTimeMillis() - start);
-            return responseHelper.jsonResponse(sipActivity);
+            return batchResponse(sipActivity, binary);
         } catch (MiruWALNotInitializedException x) {
             log.error("WAL not initialized calling sipActivity({},{},{},{})",
                 new Object[] { tenantId, partitionId, batchSize, sipAndLastSeen }, x);
@@ -356,6 +379,23 @@ public class AmzaWALEndpoints {
         }
     }
 
+    @GET
+    @Path("/notifications/activity/{sinceEpoch}/{sinceSequence}/{timeoutMillis}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response pollActivityNotifications(@PathParam("sinceEpoch") long sinceEpoch,
+        @PathParam("sinceSequence") long sinceSequence,
+        @PathParam("timeoutMillis") long timeoutMillis) throws Exception {
+        try {
+            long start = System.currentTimeMillis();
+            MiruWALNotifications notifications = walDirector.pollActivityNotifications(sinceEpoch, sinceSequence, timeoutMillis);
+            stats.ingressed("/notifications/activity", 1, System.currentTimeMillis() - start);
+            return responseHelper.jsonResponse(notifications);
+        } catch (Exception x) {
+            log.error("Failed calling pollActivityNotifications({},{},{})", new Object[] { sinceEpoch, sinceSequence, timeoutMillis }, x);
+            return responseHelper.errorResponse("Server error", x);
+        }
+    }
+
     @POST
     @Path("/activityCount/{tenantId}/{partitionId}")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -385,11 +425,12 @@ public class AmzaWALEndpoints {
     @POST
     @Path("/activity/{tenantId}/{partitionId}/{batchSize}/{stopAtTimestamp}")
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_OCTET_STREAM })
     public Response getActivity(@PathParam("tenantId") String tenantId,
         @PathParam("partitionId") int partitionId,
         @PathParam("batchSize") int batchSize,
         @PathParam("stopAtTimestamp") long stopAtTimestamp,
+        @QueryParam("binary") boolean binary,
         AmzaCursor cursor)
         throws Exception {
         try {
@@ -397,7 +438,7 @@ public class AmzaWALEndpoints {
             StreamBatch<MiruWALEntry, AmzaCursor> activity = walDirector.getActivity(new MiruTenantId(tenantId.getBytes(Charsets.UTF_8)),
                 MiruPartitionId.of(partitionId), cursor, batchSize, stopAtTimestamp, null);
             stats.ingressed("/activity/" + tenantId + "/" + partitionId + "/" + batchSize, 1, System.currentTimeMillis() - start);
-            return responseHelper.jsonResponse(activity);
+            return batchResponse(activity, binary);
         } catch (MiruWALNotInitializedException x) {
             log.error("WAL not initialized calling getActivity({},{},{},{})",
                 new Object[] { tenantId, partitionId, batchSize, cursor }, x);
@@ -467,4 +508,13 @@ public class AmzaWALEndpoints {
         }
     }
 
+    /**
+     * Clients ask for binary with a query param, which older WAL hosts ignore, and tell the formats apart by the first byte.
+     */
+    private <C> Response batchResponse(StreamBatch<MiruWALEntry, C> batch, boolean binary) throws Exception {
+        if (binary) {
+            return Response.ok(activityCodec.encodeBatch(batch), MediaType.APPLICATION_OCTET_STREAM).build();
+        }
+        return responseHelper.jsonResponse(batch);
+    }
 }
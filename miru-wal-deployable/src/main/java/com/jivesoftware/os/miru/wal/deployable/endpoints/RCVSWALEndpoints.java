@@ -14,6 +14,7 @@ import com.jivesoftware.os.miru.api.wal.MiruWALClient.RoutingGroupType;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient.StreamBatch;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient.WriterCursor;
 import com.jivesoftware.os.miru.api.wal.MiruWALEntry;
+import com.jivesoftware.os.miru.api.wal.MiruWALNotifications;
 import com.jivesoftware.os.miru.api.wal.RCVSCursor;
 import com.jivesoftware.os.miru.api.wal.RCVSSipCursor;
 import com.jivesoftware.os.miru.api.wal.SipAndLastSeen;
@@ -364,6 +365,23 @@ public class RCVSWALEndpoints {
         }
     }
 
+    @GET
+    @Path("/notifications/activity/{sinceEpoch}/{sinceSequence}/{timeoutMillis}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response pollActivityNotifications(@PathParam("sinceEpoch") long sinceEpoch,
+        @PathParam("sinceSequence") long sinceSequence,
+        @PathParam("timeoutMillis") long timeoutMillis) throws Exception {
+        try {
+            long start = System.currentTimeMillis();
+            MiruWALNotifications notifications = walDirector.pollActivityNotifications(sinceEpoch, sinceSequence, timeoutMillis);
+            stats.ingressed("/notifications/activity", 1, System.currentTimeMillis() - start);
+            return responseHelper.jsonResponse(notifications);
+        } catch (Exception x) {
+            log.error("Failed calling pollActivityNotifications({},{},{})", new Object[] { sinceEpoch, sinceSequence, timeoutMillis }, x);
+            return responseHelper.errorResponse("Server error", x);
+        }
+    }
+
     @POST
     @Path("/activityCount/{tenantId}/{partitionId}")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -23,6 +23,7 @@ import com.jivesoftware.os.miru.api.wal.MiruWALClient.RoutingGroupType;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient.StreamBatch;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient.WriterCursor;
 import com.jivesoftware.os.miru.api.wal.MiruWALEntry;
+import com.jivesoftware.os.miru.api.wal.MiruWALNotifications;
 import com.jivesoftware.os.miru.wal.activity.amza.AmzaActivityWALReader;
 import com.jivesoftware.os.miru.wal.activity.amza.AmzaActivityWALWriter;
 import com.jivesoftware.os.miru.wal.lookup.MiruWALLookup;
@@ -124,6 +125,7 @@ public class AmzaWALDirector {
     private final AmzaReadTrackingWALReader readTrackingWALReader;
     private final AmzaReadTrackingWALWriter readTrackingWALWriter;
     private final MiruClusterClient clusterClient;
+    private final MiruWALNotifier notifier = new MiruWALNotifier(MiruWALNotifier.DEFAULT_MAX_PARTITIONS, MiruWALNotifier.DEFAULT_MAX_WAIT_MILLIS);
 
     private final Callable<Void> repairLookupCallback = () -> {
         repairLookup();
@@ -298,12 +300,17 @@ public class AmzaWALDirector {
 
         RangeMinMax partitionMinMax = activityWALWriter.write(tenantId, partitionId, partitionedActivities);
         walLookup.add(tenantId, partitionId);
+        notifier.notify(tenantId, partitionId);
 
         if (!onlyBoundaries) {
             clusterClient.updateIngress(new MiruIngressUpdate(tenantId, partitionId, partitionMinMax, System.currentTimeMillis(), false));
         }
     }
 
+    public MiruWALNotifications pollActivityNotifications(long sinceEpoch, long sinceSequence, long timeoutMillis) throws Exception {
+        return notifier.poll(sinceEpoch, sinceSequence, timeoutMillis);
+    }
+
     public void writeReadTracking(MiruTenantId tenantId, List<StreamIdPartitionedActivities> streamActivities) throws Exception {
         readTrackingWALWriter.write(tenantId, streamActivities);
     }
@@ -0,0 +1,84 @@
+package com.jivesoftware.os.miru.wal;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.wal.MiruWALNotifications;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tracks which partitions have been written through this WAL host so readers can long-poll for them instead of checking
+ * every partition on a timer. Each write takes the next sequence, and a partition is only remembered at its latest
+ * sequence. Once more than the max number of partitions are remembered the oldest are forgotten, and pollers whose cursor
+ * falls behind what was forgotten are told to reset.
+ */
+public class MiruWALNotifier {
+
+    public static final int DEFAULT_MAX_PARTITIONS = 100_000;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 30_000;
+
+    private final int maxPartitions;
+    private final long maxWaitMillis;
+    private final long epoch = System.currentTimeMillis();
+
+    private final Object lock = new Object();
+    private final Map<TenantAndPartition, Long> partitionSequences = Maps.newHashMap();
+    private final TreeMap<Long, TenantAndPartition> sequencePartitions = new TreeMap<>();
+    private long sequence;
+    private long forgottenSequence;
+
+    public MiruWALNotifier(int maxPartitions, long maxWaitMillis) {
+        this.maxPartitions = maxPartitions;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public void notify(MiruTenantId tenantId, MiruPartitionId partitionId) {
+        TenantAndPartition tenantAndPartition = new TenantAndPartition(tenantId, partitionId);
+        synchronized (lock) {
+            sequence++;
+            Long previous = partitionSequences.put(tenantAndPartition, sequence);
+            if (previous != null) {
+                sequencePartitions.remove(previous);
+            }
+            sequencePartitions.put(sequence, tenantAndPartition);
+            while (sequencePartitions.size() > maxPartitions) {
+                Map.Entry<Long, TenantAndPartition> eldest = sequencePartitions.pollFirstEntry();
+                partitionSequences.remove(eldest.getValue());
+                forgottenSequence = eldest.getKey();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits up to the given timeout for a write after the given cursor. A poller without a cursor (epoch -1) is handed the
+     * current cursor without waiting.
+     */
+    public MiruWALNotifications poll(long sinceEpoch, long sinceSequence, long timeoutMillis) throws InterruptedException {
+        synchronized (lock) {
+            if (sinceEpoch == -1) {
+                return new MiruWALNotifications(epoch, sequence, false, Collections.emptyList());
+            }
+            if (sinceEpoch != epoch || sinceSequence > sequence || sinceSequence < forgottenSequence) {
+                return new MiruWALNotifications(epoch, sequence, true, Collections.emptyList());
+            }
+
+            long waitUntil = System.currentTimeMillis() + Math.min(timeoutMillis, maxWaitMillis);
+            while (sequence <= sinceSequence) {
+                long remaining = waitUntil - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                lock.wait(remaining);
+            }
+            return new MiruWALNotifications(epoch,
+                sequence,
+                false,
+                Lists.newArrayList(sequencePartitions.tailMap(sinceSequence, false).values()));
+        }
+    }
+}
@@ -19,6 +19,7 @@ import com.jivesoftware.os.miru.api.wal.MiruWALClient.RoutingGroupType;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient.StreamBatch;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient.WriterCursor;
 import com.jivesoftware.os.miru.api.wal.MiruWALEntry;
+import com.jivesoftware.os.miru.api.wal.MiruWALNotifications;
 import com.jivesoftware.os.miru.api.wal.RCVSCursor;
 import com.jivesoftware.os.miru.api.wal.RCVSSipCursor;
 import com.jivesoftware.os.miru.wal.activity.rcvs.RCVSActivityWALReader;
@@ -48,6 +49,7 @@ public class RCVSWALDirector {
     private final RCVSReadTrackingWALReader readTrackingWALReader;
     private final RCVSReadTrackingWALWriter readTrackingWALWriter;
     private final MiruClusterClient clusterClient;
+    private final MiruWALNotifier notifier = new MiruWALNotifier(MiruWALNotifier.DEFAULT_MAX_PARTITIONS, MiruWALNotifier.DEFAULT_MAX_WAIT_MILLIS);
 
     private final Callable<Void> repairLookupCallback = () -> {
         repairLookup();
@@ -223,12 +225,17 @@ public class RCVSWALDirector {
 
         RangeMinMax partitionMinMax = activityWALWriter.write(tenantId, partitionId, partitionedActivities);
         walLookup.add(tenantId, partitionId);
+        notifier.notify(tenantId, partitionId);
 
         if (!onlyBoundaries) {
             clusterClient.updateIngress(new MiruIngressUpdate(tenantId, partitionId, partitionMinMax, System.currentTimeMillis(), false));
         }
     }
 
+    public MiruWALNotifications pollActivityNotifications(long sinceEpoch, long sinceSequence, long timeoutMillis) throws Exception {
+        return notifier.poll(sinceEpoch, sinceSequence, timeoutMillis);
+    }
+
     public void writeReadTracking(MiruTenantId tenantId, MiruStreamId streamId, List<MiruPartitionedActivity> partitionedActivities) throws Exception {
         readTrackingWALWriter.write(tenantId, streamId, partitionedActivities);
     }
@@ -5,6 +5,7 @@ import com.google.common.collect.ListMultimap;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
 import com.jivesoftware.os.miru.api.activity.MiruReadEvent;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
 import com.jivesoftware.os.miru.api.activity.TimeAndVersion;
 import com.jivesoftware.os.miru.api.base.MiruStreamId;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
@@ -12,6 +13,7 @@ import com.jivesoftware.os.miru.api.wal.MiruActivityWALStatus;
 import com.jivesoftware.os.miru.api.wal.MiruVersionedActivityLookupEntry;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient;
 import com.jivesoftware.os.miru.api.wal.MiruWALEntry;
+import com.jivesoftware.os.miru.api.wal.MiruWALNotifications;
 import com.jivesoftware.os.miru.api.wal.RCVSCursor;
 import com.jivesoftware.os.miru.api.wal.RCVSSipCursor;
 import java.util.List;
@@ -26,6 +28,9 @@ public class RCVSWALDirectorClient implements MiruWALClient<RCVSCursor, RCVSSipC
 
     private final RCVSWALDirector director;
 
+    private long notificationEpoch = -1;
+    private long notificationSequence = -1;
+
     public RCVSWALDirectorClient(RCVSWALDirector director) {
         this.director = director;
     }
@@ -106,6 +111,14 @@ public class RCVSWALDirectorClient implements MiruWALClient<RCVSCursor, RCVSSipC
         return director.sipActivity(tenantId, partitionId, cursor, lastSeen, batchSize);
     }
 
+    @Override
+    public synchronized List<TenantAndPartition> pollActivityNotifications(long timeoutMillis) throws Exception {
+        MiruWALNotifications notifications = director.pollActivityNotifications(notificationEpoch, notificationSequence, timeoutMillis);
+        notificationEpoch = notifications.epoch;
+        notificationSequence = notifications.sequence;
+        return notifications.reset ? null : notifications.partitions;
+    }
+
     @Override
     public OldestReadResult<RCVSSipCursor> oldestReadEventId(MiruTenantId tenantId,
         MiruStreamId streamId,
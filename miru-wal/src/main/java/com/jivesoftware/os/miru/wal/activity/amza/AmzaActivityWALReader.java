@@ -18,7 +18,7 @@ import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity.Type;
 import com.jivesoftware.os.miru.api.activity.TimeAndVersion;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
-import com.jivesoftware.os.miru.api.marshall.JacksonJsonObjectTypeMarshaller;
+import com.jivesoftware.os.miru.api.marshall.MiruPartitionedActivityMarshaller;
 import com.jivesoftware.os.miru.api.topology.NamedCursor;
 import com.jivesoftware.os.miru.api.wal.AmzaCursor;
 import com.jivesoftware.os.miru.api.wal.AmzaSipCursor;
@@ -52,11 +52,11 @@ public class AmzaActivityWALReader implements MiruActivityWALReader<AmzaCursor,
 
     private final AmzaWALUtil amzaWALUtil;
     private final MiruActivityWALColumnKeyMarshaller columnKeyMarshaller = new MiruActivityWALColumnKeyMarshaller();
-    private final JacksonJsonObjectTypeMarshaller<MiruPartitionedActivity> partitionedActivityMarshaller;
+    private final MiruPartitionedActivityMarshaller partitionedActivityMarshaller;
 
     public AmzaActivityWALReader(AmzaWALUtil amzaWALUtil, ObjectMapper mapper) {
         this.amzaWALUtil = amzaWALUtil;
-        this.partitionedActivityMarshaller = new JacksonJsonObjectTypeMarshaller<>(MiruPartitionedActivity.class, mapper);
+        this.partitionedActivityMarshaller = new MiruPartitionedActivityMarshaller(mapper, false);
     }
 
     private TakeCursors takeCursors(StreamMiruActivityWAL streamMiruActivityWAL,
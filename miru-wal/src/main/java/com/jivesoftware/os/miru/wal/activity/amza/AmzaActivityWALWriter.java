@@ -10,7 +10,7 @@ import com.jivesoftware.os.amza.service.PropertiesNotPresentException;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
-import com.jivesoftware.os.miru.api.marshall.JacksonJsonObjectTypeMarshaller;
+import com.jivesoftware.os.miru.api.marshall.MiruPartitionedActivityMarshaller;
 import com.jivesoftware.os.miru.api.topology.RangeMinMax;
 import com.jivesoftware.os.miru.wal.AmzaWALUtil;
 import com.jivesoftware.os.miru.wal.MiruWALWrongRouteException;
@@ -39,12 +39,12 @@ public class AmzaActivityWALWriter implements MiruActivityWALWriter {
 
     public AmzaActivityWALWriter(AmzaWALUtil amzaWALUtil,
         long replicateTimeoutMillis,
-        ObjectMapper mapper) {
+        ObjectMapper mapper,
+        boolean binaryActivities) {
         this.amzaWALUtil = amzaWALUtil;
         this.replicateTimeoutMillis = replicateTimeoutMillis;
 
-        JacksonJsonObjectTypeMarshaller<MiruPartitionedActivity> partitionedActivityMarshaller =
-            new JacksonJsonObjectTypeMarshaller<>(MiruPartitionedActivity.class, mapper);
+        MiruPartitionedActivityMarshaller partitionedActivityMarshaller = new MiruPartitionedActivityMarshaller(mapper, binaryActivities);
         this.activityWALKeyFunction = (partitionedActivity) -> {
             long activityCollisionId;
             if (partitionedActivity.type != MiruPartitionedActivity.Type.BEGIN && partitionedActivity.type != MiruPartitionedActivity.Type.END) {
@@ -0,0 +1,80 @@
+package com.jivesoftware.os.miru.wal;
+
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.wal.MiruWALNotifications;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class MiruWALNotifierTest {
+
+    private final MiruTenantId tenantId = new MiruTenantId("test".getBytes(StandardCharsets.UTF_8));
+
+    @Test
+    public void testPollSinceCursor() throws Exception {
+        MiruWALNotifier notifier = new MiruWALNotifier(100, 1_000);
+        MiruWALNotifications start = notifier.poll(-1, -1, 0);
+        assertFalse(start.reset);
+        assertTrue(start.partitions.isEmpty());
+
+        notifier.notify(tenantId, MiruPartitionId.of(1));
+        notifier.notify(tenantId, MiruPartitionId.of(2));
+        notifier.notify(tenantId, MiruPartitionId.of(1));
+
+        MiruWALNotifications notifications = notifier.poll(start.epoch, start.sequence, 0);
+        assertFalse(notifications.reset);
+        assertEquals(notifications.sequence, start.sequence + 3);
+        assertEquals(Sets.newHashSet(notifications.partitions), Sets.newHashSet(
+            new TenantAndPartition(tenantId, MiruPartitionId.of(1)),
+            new TenantAndPartition(tenantId, MiruPartitionId.of(2))));
+        assertEquals(notifications.partitions.size(), 2);
+
+        notifications = notifier.poll(notifications.epoch, notifications.sequence, 0);
+        assertFalse(notifications.reset);
+        assertTrue(notifications.partitions.isEmpty());
+    }
+
+    @Test
+    public void testPollWaitsForWrite() throws Exception {
+        MiruWALNotifier notifier = new MiruWALNotifier(100, 10_000);
+        MiruWALNotifications start = notifier.poll(-1, -1, 0);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<MiruWALNotifications> future = executor.submit(() -> notifier.poll(start.epoch, start.sequence, 10_000));
+            Thread.sleep(100);
+            assertFalse(future.isDone());
+            notifier.notify(tenantId, MiruPartitionId.of(3));
+            MiruWALNotifications notifications = future.get(5, TimeUnit.SECONDS);
+            assertEquals(notifications.partitions.size(), 1);
+            assertEquals(notifications.partitions.get(0), new TenantAndPartition(tenantId, MiruPartitionId.of(3)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testResetWhenCursorIsForgotten() throws Exception {
+        MiruWALNotifier notifier = new MiruWALNotifier(2, 1_000);
+        MiruWALNotifications start = notifier.poll(-1, -1, 0);
+        for (int i = 0; i < 3; i++) {
+            notifier.notify(tenantId, MiruPartitionId.of(i));
+        }
+        assertTrue(notifier.poll(start.epoch, start.sequence, 0).reset);
+        assertTrue(notifier.poll(start.epoch + 1, start.sequence, 0).reset);
+
+        MiruWALNotifications notifications = notifier.poll(start.epoch, start.sequence + 1, 0);
+        assertFalse(notifications.reset);
+        assertEquals(notifications.partitions.size(), 2);
+    }
+}
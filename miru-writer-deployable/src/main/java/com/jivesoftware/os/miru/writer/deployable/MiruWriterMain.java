@@ -260,7 +260,8 @@ public class MiruWriterMain {
                     1000,
                     mapper,
                     walClientSickThreads,
-                    10_000);
+                    10_000,
+                    walConfig.getBinaryActivityWrites());
                 walClient = amzaWALClient;
             } else {
                 throw new IllegalStateException("Invalid activity WAL type: " + walConfig.getActivityWALType());